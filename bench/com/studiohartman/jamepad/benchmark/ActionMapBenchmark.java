@@ -0,0 +1,103 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ActionMap;
+import com.studiohartman.jamepad.ActionState;
+import com.studiohartman.jamepad.ControllerAxis;
+import com.studiohartman.jamepad.ControllerButton;
+import com.studiohartman.jamepad.ControllerStateBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares working out numActions game actions for one controller state:
+ *
+ * - actionMap runs ActionMap.evaluate(), which does every action in one pass over the compiled table.
+ * - fieldByField checks each action's bindings against the state on its own, the way games do it by
+ *   hand: a couple of buttons, a chord and an axis threshold with hysteresis per action.
+ *
+ * The state changes every call, cycling through button masks and trigger values.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ActionMapBenchmark {
+
+    private static final ControllerButton[] BUTTONS = ControllerButton.values();
+
+    @Param({"8", "32"})
+    public int numActions;
+
+    private final ActionMap actionMap = new ActionMap();
+    private final ActionState actionState = new ActionState();
+    private final ControllerStateBuffer state = new ControllerStateBuffer();
+
+    private ControllerButton[] first;
+    private ControllerButton[] second;
+    private boolean[] triggerLatched;
+    private boolean[] held;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        first = new ControllerButton[numActions];
+        second = new ControllerButton[numActions];
+        triggerLatched = new boolean[numActions];
+        held = new boolean[numActions];
+        for(int i = 0; i < numActions; i++) {
+            first[i] = BUTTONS[i % BUTTONS.length];
+            second[i] = BUTTONS[(i * 7 + 3) % BUTTONS.length];
+
+            int action = actionMap.defineAction("action " + i);
+            actionMap.bindButton(action, first[i]);
+            actionMap.bindChord(action, first[i], second[i]);
+            actionMap.bindAxis(action, ControllerAxis.TRIGGERRIGHT, 0.5f, 0.3f);
+        }
+        state.isConnected = true;
+    }
+
+    private void nextState() {
+        tick++;
+        state.buttonMask = (int) ((tick * 2654435761L) >>> 17) & 0x7FFF;
+        state.rightTrigger = (tick % 100) / 100f;
+    }
+
+    @Benchmark
+    public long actionMap() {
+        nextState();
+        actionMap.evaluate(state, actionState);
+        return actionState.getHeldMask();
+    }
+
+    @Benchmark
+    public long fieldByField() {
+        nextState();
+        long mask = 0;
+        for(int i = 0; i < numActions; i++) {
+            boolean trigger = triggerLatched[i] ? state.rightTrigger >= 0.3f : state.rightTrigger >= 0.5f;
+            triggerLatched[i] = trigger;
+            boolean chord = state.isButtonPressed(first[i]) && state.isButtonPressed(second[i]);
+            held[i] = state.isButtonPressed(first[i]) || chord || trigger;
+            if(held[i]) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+}
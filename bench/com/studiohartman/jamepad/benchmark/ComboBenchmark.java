@@ -0,0 +1,162 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ComboPattern;
+import com.studiohartman.jamepad.ComboRecognizer;
+import com.studiohartman.jamepad.ControllerButton;
+import com.studiohartman.jamepad.ControllerStateBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares two ways of finding numPatterns motions ("236 X" and the like) on 8 controllers, for one
+ * frame:
+ *
+ * - recognizer advances a ComboRecognizer with each controller's state.
+ * - rescan keeps the last HISTORY frames of directions and presses per controller, and checks every
+ *   pattern against them from the newest frame back, which is how it had to be done before.
+ *
+ * The input is random but the same for both, with a direction change or press on about one frame in five.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ComboBenchmark {
+
+    private static final int CONTROLLERS = 8;
+    private static final int HISTORY = 64;
+    private static final int WINDOW = 12;
+    private static final int INPUT_FRAMES = 4096;
+    private static final ControllerButton[] BUTTONS = {ControllerButton.A, ControllerButton.B, ControllerButton.X, ControllerButton.Y};
+
+    @Param({"16", "256"})
+    public int numPatterns;
+
+    private ComboRecognizer recognizer;
+    private final ControllerStateBuffer[] states = new ControllerStateBuffer[CONTROLLERS];
+    private long frame;
+
+    //The same patterns for rescanning: three directions and a button each
+    private int[][] patternDirections;
+    private int[] patternButtons;
+    private final int[][] directions = new int[CONTROLLERS][HISTORY];
+    private final int[][] presses = new int[CONTROLLERS][HISTORY];
+
+    //Pregenerated input, per frame and controller: stick x, stick y and pressed button mask
+    private final int[] inputX = new int[INPUT_FRAMES * CONTROLLERS];
+    private final int[] inputY = new int[INPUT_FRAMES * CONTROLLERS];
+    private final int[] inputButtons = new int[INPUT_FRAMES * CONTROLLERS];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        recognizer = new ComboRecognizer(CONTROLLERS);
+        patternDirections = new int[numPatterns][3];
+        patternButtons = new int[numPatterns];
+        for(int p = 0; p < numPatterns; p++) {
+            StringBuilder notation = new StringBuilder();
+            for(int k = 0; k < 3; k++) {
+                patternDirections[p][k] = 1 + random.nextInt(9);
+                notation.append(patternDirections[p][k]);
+            }
+            ControllerButton button = BUTTONS[random.nextInt(BUTTONS.length)];
+            patternButtons[p] = 1 << button.ordinal();
+            notation.append(' ').append(button.name());
+            recognizer.definePattern("pattern " + p, ComboPattern.parse(notation.toString()).withStepWindow(WINDOW));
+        }
+
+        int x = 0, y = 0;
+        for(int i = 0; i < inputX.length; i++) {
+            if(random.nextInt(6) == 0) {
+                x = random.nextInt(3) - 1;
+                y = random.nextInt(3) - 1;
+            }
+            inputX[i] = x;
+            inputY[i] = y;
+            inputButtons[i] = random.nextInt(20) == 0 ? 1 << BUTTONS[random.nextInt(BUTTONS.length)].ordinal() : 0;
+        }
+        for(int c = 0; c < CONTROLLERS; c++) {
+            states[c] = new ControllerStateBuffer();
+            states[c].isConnected = true;
+        }
+    }
+
+    @Benchmark
+    public int recognizer() {
+        frame++;
+        int base = (int) (frame % INPUT_FRAMES) * CONTROLLERS;
+        int matches = 0;
+        for(int c = 0; c < CONTROLLERS; c++) {
+            ControllerStateBuffer state = states[c];
+            int pressed = inputButtons[base + c];
+            state.justPressedMask = pressed & ~state.buttonMask;
+            state.buttonMask = pressed;
+            state.leftStickX = inputX[base + c];
+            state.leftStickY = inputY[base + c];
+            recognizer.advance(c, frame, state);
+            if(recognizer.nextMatch(c, 0) >= 0) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int rescan() {
+        frame++;
+        int base = (int) (frame % INPUT_FRAMES) * CONTROLLERS;
+        int slot = (int) (frame % HISTORY);
+        int matches = 0;
+        for(int c = 0; c < CONTROLLERS; c++) {
+            int previous = presses[c][(slot + HISTORY - 1) % HISTORY];
+            directions[c][slot] = 5 + inputX[base + c] + 3 * inputY[base + c];
+            presses[c][slot] = inputButtons[base + c];
+            int justPressed = presses[c][slot] & ~previous;
+
+            for(int p = 0; p < numPatterns; p++) {
+                if((justPressed & patternButtons[p]) != 0 && endsWith(c, slot, patternDirections[p])) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Look back through the history for the directions of a pattern, newest first, each within the
+     * window of the one after it.
+     */
+    private boolean endsWith(int c, int slot, int[] pattern) {
+        int k = pattern.length - 1;
+        int lastStep = 0;
+        for(int age = 0; age < HISTORY - 1 && k >= 0; age++) {
+            if(age - lastStep > WINDOW) {
+                return false;
+            }
+            int i = (slot - age + HISTORY) % HISTORY;
+            int before = (i + HISTORY - 1) % HISTORY;
+            if(directions[c][i] == pattern[k] && directions[c][before] != pattern[k]) {
+                k--;
+                lastStep = age;
+            }
+        }
+        return k < 0;
+    }
+}
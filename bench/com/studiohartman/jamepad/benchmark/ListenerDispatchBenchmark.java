@@ -0,0 +1,113 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerButton;
+import com.studiohartman.jamepad.ControllerInterest;
+import com.studiohartman.jamepad.ControllerListener;
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.ControllerStateBuffer;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares two ways for numWidgets UI widgets, each caring about one button, to hear about a press:
+ *
+ * - listeners registers one ControllerListener per widget, with an interest of just its button.
+ * - pollAndDiff has every widget read the state each frame and compare its button with last frame's,
+ *   which is what had to be done before listeners.
+ *
+ * Each frame, one button is pressed or released on a simulated controller.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    private static final ControllerButton[] BUTTONS = ControllerButton.values();
+
+    @Param({"8", "64"})
+    public int numWidgets;
+
+    private SimulatedControllerBackend backend;
+    private int instanceId;
+    private ControllerManager listening;
+    private ControllerManager polling;
+    private int pollingInstanceId;
+    private SimulatedControllerBackend pollingBackend;
+    private final ControllerStateBuffer state = new ControllerStateBuffer();
+    private boolean[] lastPressed;
+    private int frame;
+    private long presses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = new SimulatedControllerBackend();
+        instanceId = backend.connect("Benchmark Controller");
+        listening = new ControllerManager(1, "/gamecontrollerdb.txt", backend);
+        listening.initSDLGamepad();
+        for(int i = 0; i < numWidgets; i++) {
+            ControllerButton button = BUTTONS[i % BUTTONS.length];
+            listening.addControllerListener(new ControllerListener() {
+                @Override
+                public void buttonDown(int controllerIndex, ControllerButton b) {
+                    presses++;
+                }
+            }, ControllerInterest.ALL.withButtons(button).withAxes().withConnections(false));
+        }
+
+        pollingBackend = new SimulatedControllerBackend();
+        pollingInstanceId = pollingBackend.connect("Benchmark Controller");
+        polling = new ControllerManager(1, "/gamecontrollerdb.txt", pollingBackend);
+        polling.initSDLGamepad();
+        polling.setFramePolling(true);
+        lastPressed = new boolean[numWidgets];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        listening.quitSDLGamepad();
+        polling.quitSDLGamepad();
+    }
+
+    @Benchmark
+    public long listeners() {
+        frame++;
+        backend.setButton(instanceId, BUTTONS[(frame >> 1) % BUTTONS.length], (frame & 1) == 0);
+        listening.update();
+        return presses;
+    }
+
+    @Benchmark
+    public void pollAndDiff(Blackhole blackhole) {
+        frame++;
+        pollingBackend.setButton(pollingInstanceId, BUTTONS[(frame >> 1) % BUTTONS.length], (frame & 1) == 0);
+        polling.update();
+        for(int i = 0; i < numWidgets; i++) {
+            polling.getState(0, state);
+            boolean pressed = state.isButtonPressed(BUTTONS[i % BUTTONS.length]);
+            if(pressed && !lastPressed[i]) {
+                blackhole.consume(i);
+            }
+            lastPressed[i] = pressed;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.MappingIndex;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares what startup costs with a mapping database of dbSize mappings:
+ *
+ * - eager reads every mapping and hands the ones for this platform to the backend, like
+ *   initSDLGamepad() does by default.
+ * - indexed opens a compiled MappingIndex and looks up the mappings for 4 plugged in controllers.
+ * - checked does the same with openOrCompile(), which first checks that the index was compiled from
+ *   the gamecontrollerdb.txt on the classpath, like initSDLGamepad() does after setMappingIndexFile().
+ *   That database is always the real one, so this doesn't change with dbSize, but it shows what the
+ *   check costs on top of indexed.
+ *
+ * eager should grow with dbSize, and indexed should barely move.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MappingIndexBenchmark {
+
+    private static final String[] PLATFORMS = {"Windows", "Mac OS X", "Linux", "Android", "iOS"};
+
+    @Param({"500", "2000", "8000"})
+    public int dbSize;
+
+    private byte[] mappings;
+    private String[] connectedGuids;
+    private Path indexFile;
+    private Path resourceIndexFile;
+    private ControllerManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        String[] guids = new String[dbSize];
+        StringBuilder file = new StringBuilder("# Game Controller DB for SDL\n\n");
+        for(int i = 0; i < dbSize; i++) {
+            StringBuilder guid = new StringBuilder();
+            for(int n = 0; n < 32; n++) {
+                guid.append(Character.forDigit(random.nextInt(16), 16));
+            }
+            guids[i] = guid.toString();
+            file.append(guids[i]).append(",Benchmark Controller ").append(i)
+                    .append(",a:b0,b:b1,back:b6,dpdown:h0.4,dpleft:h0.8,dpright:h0.2,dpup:h0.1,")
+                    .append("guide:b8,leftshoulder:b4,leftstick:b9,lefttrigger:a2,leftx:a0,lefty:a1,")
+                    .append("rightshoulder:b5,rightstick:b10,righttrigger:a5,rightx:a3,righty:a4,start:b7,")
+                    .append("x:b2,y:b3,platform:").append(PLATFORMS[i % PLATFORMS.length]).append(",\n");
+        }
+        mappings = file.toString().getBytes(StandardCharsets.UTF_8);
+
+        connectedGuids = new String[4];
+        for(int i = 0; i < connectedGuids.length; i++) {
+            connectedGuids[i] = guids[random.nextInt(dbSize)];
+        }
+
+        indexFile = Files.createTempFile("jamepad", ".idx");
+        MappingIndex.compile(new ByteArrayInputStream(mappings), indexFile);
+        resourceIndexFile = Files.createTempFile("jamepad", ".idx");
+        MappingIndex.openOrCompile("/gamecontrollerdb.txt", resourceIndexFile).close();
+
+        manager = new ControllerManager(4, "/gamecontrollerdb.txt", new SimulatedControllerBackend());
+        manager.initSDLGamepad();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.quitSDLGamepad();
+        Files.deleteIfExists(indexFile);
+        Files.deleteIfExists(resourceIndexFile);
+    }
+
+    @Benchmark
+    public int eager() throws IOException {
+        return manager.addMappings(new ByteArrayInputStream(mappings));
+    }
+
+    @Benchmark
+    public int indexed() throws IOException {
+        int found = 0;
+        try(MappingIndex index = MappingIndex.open(indexFile)) {
+            for(String guid: connectedGuids) {
+                if(index.find(guid) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int checked() throws IOException {
+        int found = 0;
+        try(MappingIndex index = MappingIndex.openOrCompile("/gamecontrollerdb.txt", resourceIndexFile)) {
+            for(String guid: connectedGuids) {
+                if(index.find(guid) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+}
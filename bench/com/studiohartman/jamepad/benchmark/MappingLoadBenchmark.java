@@ -0,0 +1,98 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways of loading controller mappings at startup:
+ *
+ * - tempFileRoundTrip is what addMappingsFromFile() used to do: copy the mappings to a temp file and
+ *   have the backend read the file back from disk.
+ * - inMemory is what it does now: stream the mappings in Java, keep the ones for this platform, and
+ *   hand them to the backend one at a time.
+ *
+ * The mappings are a made up file the size of gamecontrollerdb.txt (2000 mappings over 5 platforms).
+ * The simulated backend parses files in Java where SDL would parse them in C, so this compares the
+ * Java side of startup and the disk round trip, not SDL's own parser.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MappingLoadBenchmark {
+
+    private static final String[] PLATFORMS = {"Windows", "Mac OS X", "Linux", "Android", "iOS"};
+    private static final int MAPPINGS_PER_PLATFORM = 400;
+
+    private byte[] mappings;
+    private SimulatedControllerBackend backend;
+    private ControllerManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder file = new StringBuilder("# Game Controller DB for SDL\n\n");
+        for(String platform: PLATFORMS) {
+            file.append("# ").append(platform).append('\n');
+            for(int i = 0; i < MAPPINGS_PER_PLATFORM; i++) {
+                for(int n = 0; n < 32; n++) {
+                    file.append(Character.forDigit(random.nextInt(16), 16));
+                }
+                file.append(",Benchmark Controller ").append(i)
+                        .append(",a:b0,b:b1,back:b6,dpdown:h0.4,dpleft:h0.8,dpright:h0.2,dpup:h0.1,")
+                        .append("guide:b8,leftshoulder:b4,leftstick:b9,lefttrigger:a2,leftx:a0,lefty:a1,")
+                        .append("rightshoulder:b5,rightstick:b10,righttrigger:a5,rightx:a3,righty:a4,start:b7,")
+                        .append("x:b2,y:b3,platform:").append(platform).append(",\n");
+            }
+        }
+        mappings = file.toString().getBytes(StandardCharsets.UTF_8);
+
+        backend = new SimulatedControllerBackend();
+        manager = new ControllerManager(4, "/gamecontrollerdb.txt", backend);
+        manager.initSDLGamepad();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Benchmark
+    public boolean tempFileRoundTrip() throws IOException {
+        Path extractedLoc = Files.createTempFile(null, null).toAbsolutePath();
+        Files.copy(new ByteArrayInputStream(mappings), extractedLoc, StandardCopyOption.REPLACE_EXISTING);
+        boolean added = backend.addMappingsFromFile(extractedLoc.toString());
+        Files.delete(extractedLoc);
+        return added;
+    }
+
+    @Benchmark
+    public int inMemory() throws IOException {
+        return manager.addMappings(new ByteArrayInputStream(mappings));
+    }
+}
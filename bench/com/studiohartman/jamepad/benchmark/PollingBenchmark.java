@@ -0,0 +1,152 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerAxis;
+import com.studiohartman.jamepad.ControllerButton;
+import com.studiohartman.jamepad.ControllerIndex;
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.ControllerStateBuffer;
+import com.studiohartman.jamepad.ControllerUnpluggedException;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-frame cost of the polling paths: update(), getState() for every controller,
+ * and single button/axis queries through ControllerIndex.
+ *
+ * Everything runs against a SimulatedControllerBackend, so no SDL or input devices are needed. The
+ * simulated sticks and buttons change on every invocation so nothing can be cached away.
+ *
+ * Run with "./gradlew jmh", which also turns on the gc profiler for allocation rates.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollingBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int numControllers;
+
+    @Param({"false", "true"})
+    public boolean framePolling;
+
+    private SimulatedControllerBackend backend;
+    private ControllerManager manager;
+    private ControllerIndex[] controllers;
+    private int[] instanceIds;
+    private ControllerStateBuffer buffer;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = new SimulatedControllerBackend();
+        instanceIds = new int[numControllers];
+        for(int i = 0; i < numControllers; i++) {
+            instanceIds[i] = backend.connect("Benchmark Controller " + i);
+        }
+
+        manager = new ControllerManager(numControllers, "/gamecontrollerdb.txt", backend);
+        manager.setFramePolling(framePolling);
+        manager.initSDLGamepad();
+
+        controllers = new ControllerIndex[numControllers];
+        for(int i = 0; i < numControllers; i++) {
+            controllers[i] = manager.getControllerIndex(i);
+        }
+        buffer = new ControllerStateBuffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Setup(Level.Invocation)
+    public void moveInput() {
+        tick++;
+        for(int i = 0; i < numControllers; i++) {
+            backend.setButtons(instanceIds[i], tick & 0x7FFF);
+            backend.setAxis(instanceIds[i], ControllerAxis.LEFTX, (tick * 37) & 0x7FFF);
+        }
+    }
+
+    @Benchmark
+    public void update() {
+        manager.update();
+    }
+
+    @Benchmark
+    public void getStateAllControllers(Blackhole bh) {
+        if(framePolling) {
+            manager.update();
+        }
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(manager.getState(i));
+        }
+    }
+
+    @Benchmark
+    public void getStateIntoBufferAllControllers(Blackhole bh) {
+        if(framePolling) {
+            manager.update();
+        }
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(manager.getState(i, buffer));
+        }
+    }
+
+    @Benchmark
+    public void controllerStateConstruction(Blackhole bh) {
+        //Without frame polling getState() also updates, so only frame polling isolates construction
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(manager.getState(i));
+        }
+    }
+
+    @Benchmark
+    public void isButtonPressed(Blackhole bh) throws ControllerUnpluggedException {
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(controllers[i].isButtonPressed(ControllerButton.A));
+        }
+    }
+
+    @Benchmark
+    public void isButtonJustPressed(Blackhole bh) throws ControllerUnpluggedException {
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(controllers[i].isButtonJustPressed(ControllerButton.A));
+        }
+    }
+
+    @Benchmark
+    public void getButtonMask(Blackhole bh) throws ControllerUnpluggedException {
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(controllers[i].getButtonMask());
+        }
+    }
+
+    @Benchmark
+    public void getAxisState(Blackhole bh) throws ControllerUnpluggedException {
+        for(int i = 0; i < numControllers; i++) {
+            bh.consume(controllers[i].getAxisState(ControllerAxis.LEFTX));
+        }
+    }
+}
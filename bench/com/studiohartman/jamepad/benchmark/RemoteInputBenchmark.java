@@ -0,0 +1,138 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerAxis;
+import com.studiohartman.jamepad.ControllerButton;
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.ControllerState;
+import com.studiohartman.jamepad.InputServer;
+import com.studiohartman.jamepad.RemoteControllerBackend;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares two ways of getting one frame of 16 controllers to another process, over loopback:
+ *
+ * - stream polls the controllers with an InputServer running, and has a RemoteControllerBackend read
+ *   what was sent every 16 frames (as a 60 Hz game would with a 1000 Hz server).
+ * - javaSerialization writes the ControllerState of every controller with an ObjectOutputStream and
+ *   reads them back, which is what had to be done before. Nothing is sent over a socket here.
+ *
+ * Each frame, a couple of sticks move and a button is pressed or released. The bytes per frame for each
+ * way are printed at the end of the trial.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RemoteInputBenchmark {
+
+    private static final int CONTROLLERS = 16;
+
+    private SimulatedControllerBackend backend;
+    private final int[] instanceIds = new int[CONTROLLERS];
+    private ControllerManager server;
+    private InputServer inputServer;
+    private RemoteControllerBackend remote;
+    private ControllerManager client;
+    private int frame;
+
+    private long serializedFrames;
+    private long serializedBytes;
+    private long streamedFramesBefore;
+    private long streamedBytesBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        backend = new SimulatedControllerBackend();
+        for(int i = 0; i < CONTROLLERS; i++) {
+            instanceIds[i] = backend.connect("Benchmark Controller " + i);
+        }
+        server = new ControllerManager(CONTROLLERS, "/gamecontrollerdb.txt", backend);
+        server.setFramePolling(true);
+        server.initSDLGamepad();
+        inputServer = server.startInputServer(0);
+
+        remote = new RemoteControllerBackend(new InetSocketAddress("127.0.0.1", inputServer.getPort()), CONTROLLERS);
+        client = new ControllerManager(CONTROLLERS, "/gamecontrollerdb.txt", remote);
+        client.initSDLGamepad();
+
+        streamedFramesBefore = inputServer.getFramesSent();
+        streamedBytesBefore = inputServer.getBytesSent();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long streamedFrames = inputServer.getFramesSent() - streamedFramesBefore;
+        if(streamedFrames > 0) {
+            System.out.println("Streamed bytes per frame: " + (inputServer.getBytesSent() - streamedBytesBefore) / (double) streamedFrames);
+        }
+        if(serializedFrames > 0) {
+            System.out.println("Serialized bytes per frame: " + serializedBytes / (double) serializedFrames);
+        }
+        client.quitSDLGamepad();
+        server.quitSDLGamepad();
+    }
+
+    private void moveInput() {
+        frame++;
+        backend.setAxis(instanceIds[frame % CONTROLLERS], ControllerAxis.LEFTX, (frame * 97) % 65536 - 32768);
+        backend.setAxis(instanceIds[(frame + 5) % CONTROLLERS], ControllerAxis.RIGHTY, (frame * 31) % 65536 - 32768);
+        backend.setButton(instanceIds[(frame >> 1) % CONTROLLERS], ControllerButton.A, (frame & 1) == 0);
+    }
+
+    @Benchmark
+    public long stream() {
+        moveInput();
+        server.update();
+        if((frame & 15) == 0) {
+            client.update();
+        }
+        return remote.getFramesReceived();
+    }
+
+    @Benchmark
+    public Object javaSerialization() throws IOException, ClassNotFoundException {
+        moveInput();
+        server.update();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for(int i = 0; i < CONTROLLERS; i++) {
+                out.writeObject(server.getState(i));
+            }
+        }
+        serializedFrames++;
+        serializedBytes += bytes.size();
+
+        Object last = null;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for(int i = 0; i < CONTROLLERS; i++) {
+                last = (ControllerState) in.readObject();
+            }
+        }
+        return last;
+    }
+}
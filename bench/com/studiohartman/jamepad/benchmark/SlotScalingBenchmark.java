@@ -0,0 +1,102 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows how the per-frame cost of ControllerManager grows with the number of controllers. Nothing
+ * here should grow with numControllers except for the work that is actually per controller:
+ *
+ * - update() with nothing plugged in or unplugged, outside of frame polling mode
+ * - update() in frame polling mode when only 2 of numControllers slots have a controller in them
+ * - one controller being unplugged and plugged back in while numControllers - 1 others stay put
+ *
+ * Everything runs against a SimulatedControllerBackend. Every reconnect makes a new simulated device,
+ * which the backend keeps forever, so the hotplug benchmark runs fixed size batches instead of for a
+ * fixed time.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@Fork(1)
+public class SlotScalingBenchmark {
+
+    private static final int HOTPLUG_BATCH = 1000;
+
+    @Param({"4", "16", "32", "64"})
+    public int numControllers;
+
+    private SimulatedControllerBackend fullBackend;
+    private ControllerManager full;
+    private int lastInstanceId;
+
+    private ControllerManager sparse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fullBackend = new SimulatedControllerBackend();
+        for(int i = 0; i < numControllers; i++) {
+            lastInstanceId = fullBackend.connect("Benchmark Controller " + i);
+        }
+        full = new ControllerManager(numControllers, "/gamecontrollerdb.txt", fullBackend);
+        full.initSDLGamepad();
+
+        SimulatedControllerBackend sparseBackend = new SimulatedControllerBackend();
+        sparseBackend.connect("Benchmark Controller 0");
+        sparseBackend.connect("Benchmark Controller 1");
+        sparse = new ControllerManager(numControllers, "/gamecontrollerdb.txt", sparseBackend);
+        sparse.setFramePolling(true);
+        sparse.initSDLGamepad();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        full.quitSDLGamepad();
+        sparse.quitSDLGamepad();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void updateWithoutChanges() {
+        full.update();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void updateTwoOfManySlots() {
+        sparse.update();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, batchSize = HOTPLUG_BATCH)
+    @Measurement(iterations = 20, batchSize = HOTPLUG_BATCH)
+    public void unplugAndReplugOne() {
+        fullBackend.disconnect(lastInstanceId);
+        full.update();
+        lastInstanceId = fullBackend.connect("Benchmark Controller");
+        full.update();
+    }
+}
@@ -0,0 +1,70 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import com.studiohartman.jamepad.StartupReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times initSDLGamepad(), run once in a fresh JVM, so the numbers are what a game sees on launch. The
+ * simulated backend takes SDL_INIT_MILLIS to start up, which is about what SDL's joystick subsystems
+ * take, so there is something for reading the mappings file to overlap with.
+ *
+ * - init is initSDLGamepad().
+ * - initWarmUp is initSDLGamepad(WARM_UP_FRAMES). It takes longer, but the first frames of the game
+ *   don't run in the interpreter.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    private static final int SDL_INIT_MILLIS = 30;
+    private static final int WARM_UP_FRAMES = 5000;
+
+    private ControllerManager manager;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        SimulatedControllerBackend backend = new SimulatedControllerBackend();
+        backend.setInitDelayMillis(SDL_INIT_MILLIS);
+        backend.connect("Benchmark Controller 0");
+        backend.connect("Benchmark Controller 1");
+        manager = new ControllerManager(4, "/gamecontrollerdb.txt", backend);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Benchmark
+    public StartupReport init() {
+        manager.initSDLGamepad();
+        return manager.getStartupReport();
+    }
+
+    @Benchmark
+    public StartupReport initWarmUp() {
+        manager.initSDLGamepad(WARM_UP_FRAMES);
+        return manager.getStartupReport();
+    }
+}
@@ -0,0 +1,99 @@
+package com.studiohartman.jamepad.benchmark;
+
+import com.studiohartman.jamepad.ControllerAxis;
+import com.studiohartman.jamepad.ControllerManager;
+import com.studiohartman.jamepad.ControllerStateBuffer;
+import com.studiohartman.jamepad.SimulatedControllerBackend;
+import com.studiohartman.jamepad.StickPolarMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what building one controller state costs with each StickPolarMode. EXACT is how every
+ * state was built before the mode could be changed.
+ *
+ * Frame polling is on and update() is only called between iterations, so each invocation is just the
+ * state being built from the snapshot. The sticks are moved to a new diagonal for every iteration.
+ *
+ * @author William Hartman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StickPolarBenchmark {
+
+    @Param({"EXACT", "FAST", "LAZY"})
+    public StickPolarMode polarMode;
+
+    private SimulatedControllerBackend backend;
+    private ControllerManager manager;
+    private int instanceId;
+    private ControllerStateBuffer buffer;
+    private int iteration;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = new SimulatedControllerBackend();
+        instanceId = backend.connect("Benchmark Controller");
+
+        manager = new ControllerManager(1, "/gamecontrollerdb.txt", backend);
+        manager.setFramePolling(true);
+        manager.setStickPolarMode(polarMode);
+        manager.initSDLGamepad();
+        buffer = new ControllerStateBuffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Setup(Level.Iteration)
+    public void moveSticks() {
+        iteration++;
+        backend.setAxis(instanceId, ControllerAxis.LEFTX, 1000 * iteration);
+        backend.setAxis(instanceId, ControllerAxis.LEFTY, -700 * iteration);
+        backend.setAxis(instanceId, ControllerAxis.RIGHTX, -1300 * iteration);
+        backend.setAxis(instanceId, ControllerAxis.RIGHTY, 500 * iteration);
+        manager.update();
+    }
+
+    @Benchmark
+    public void getState(Blackhole bh) {
+        bh.consume(manager.getState(0));
+    }
+
+    @Benchmark
+    public void getStateIntoBuffer(Blackhole bh) {
+        bh.consume(manager.getState(0, buffer));
+    }
+
+    @Benchmark
+    public void getStateThenReadAngles(Blackhole bh) {
+        ControllerStateBuffer state = manager.getState(0, buffer);
+        if(polarMode == StickPolarMode.LAZY) {
+            bh.consume(state.getLeftStickAngle());
+            bh.consume(state.getRightStickAngle());
+        } else {
+            bh.consume(state.leftStickAngle);
+            bh.consume(state.rightStickAngle);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.studiohartman.jamepad;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events behind FlightRecorderEvents. This is the only class that needs jdk.jfr,
+ * so it's kept in its own source set, and FlightRecorderEvents only loads it by name.
+ *
+ * The event types are looked up once, so each start method can check whether its type is enabled
+ * before making an event.
+ *
+ * @author William Hartman
+ */
+final class JfrEvents extends FlightRecorderEvents {
+
+    private final EventType pollType = EventType.getEventType(Poll.class);
+    private final EventType deviceOpenType = EventType.getEventType(DeviceOpen.class);
+    private final EventType deviceCloseType = EventType.getEventType(DeviceClose.class);
+    private final EventType mappingLoadType = EventType.getEventType(MappingLoad.class);
+    private final EventType vibrationType = EventType.getEventType(Vibration.class);
+
+    JfrEvents() {
+    }
+
+    @Override
+    Object startPoll() {
+        if(!pollType.isEnabled()) {
+            return null;
+        }
+        Poll event = new Poll();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endPoll(Object event, long frame, int eventsPolled, boolean reconnected, long nativeCalls) {
+        Poll poll = (Poll) event;
+        if(poll.shouldCommit()) {
+            poll.frame = frame;
+            poll.eventsPolled = eventsPolled;
+            poll.reconnected = reconnected;
+            poll.nativeCalls = nativeCalls;
+            poll.commit();
+        }
+    }
+
+    @Override
+    Object startDeviceOpen() {
+        if(!deviceOpenType.isEnabled()) {
+            return null;
+        }
+        DeviceOpen event = new DeviceOpen();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endDeviceOpen(Object event, ControllerIndex controller, int deviceIndex) {
+        DeviceOpen open = (DeviceOpen) event;
+        if(open.shouldCommit()) {
+            open.index = controller.getIndex();
+            open.deviceIndex = deviceIndex;
+            open.instanceId = controller.getInstanceId();
+            open.guid = controller.getGUIDIfOpen();
+            open.opened = controller.isOpen();
+            open.commit();
+        }
+    }
+
+    @Override
+    Object startDeviceClose() {
+        if(!deviceCloseType.isEnabled()) {
+            return null;
+        }
+        DeviceClose event = new DeviceClose();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endDeviceClose(Object event, int index, int instanceId, String guid) {
+        DeviceClose close = (DeviceClose) event;
+        if(close.shouldCommit()) {
+            close.index = index;
+            close.instanceId = instanceId;
+            close.guid = guid;
+            close.commit();
+        }
+    }
+
+    @Override
+    Object startMappingLoad() {
+        if(!mappingLoadType.isEnabled()) {
+            return null;
+        }
+        MappingLoad event = new MappingLoad();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endMappingLoad(Object event, String path, long bytes, boolean succeeded) {
+        MappingLoad load = (MappingLoad) event;
+        if(load.shouldCommit()) {
+            load.path = path;
+            load.bytes = bytes;
+            load.succeeded = succeeded;
+            load.commit();
+        }
+    }
+
+    @Override
+    Object startVibration() {
+        if(!vibrationType.isEnabled()) {
+            return null;
+        }
+        Vibration event = new Vibration();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endVibration(Object event, ControllerIndex controller, float leftMagnitude,
+                      float rightMagnitude, int durationMillis, boolean started) {
+        Vibration vibration = (Vibration) event;
+        if(vibration.shouldCommit()) {
+            vibration.index = controller.getIndex();
+            vibration.guid = controller.getGUIDIfOpen();
+            vibration.leftMagnitude = leftMagnitude;
+            vibration.rightMagnitude = rightMagnitude;
+            vibration.durationMillis = durationMillis;
+            vibration.started = started;
+            vibration.commit();
+        }
+    }
+
+    @Name("com.studiohartman.jamepad.Poll")
+    @Label("Controller Poll")
+    @Description("One call to ControllerManager.update(), made by the game or by the input pump")
+    @Category("Jamepad")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Poll extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Events Polled")
+        @Description("The number of events taken off the native event queue")
+        int eventsPolled;
+
+        @Label("Reconnected")
+        @Description("Whether or not plugged in or unplugged controllers were handled")
+        boolean reconnected;
+
+        @Label("Native Calls")
+        @Description("The number of native calls made since the last poll")
+        long nativeCalls;
+    }
+
+    @Name("com.studiohartman.jamepad.DeviceOpen")
+    @Label("Controller Open")
+    @Category("Jamepad")
+    @Enabled(false)
+    static final class DeviceOpen extends Event {
+        @Label("Index")
+        int index;
+
+        @Label("Device Index")
+        int deviceIndex;
+
+        @Label("Instance ID")
+        int instanceId;
+
+        @Label("GUID")
+        String guid;
+
+        @Label("Opened")
+        boolean opened;
+    }
+
+    @Name("com.studiohartman.jamepad.DeviceClose")
+    @Label("Controller Close")
+    @Category("Jamepad")
+    @Enabled(false)
+    static final class DeviceClose extends Event {
+        @Label("Index")
+        int index;
+
+        @Label("Instance ID")
+        int instanceId;
+
+        @Label("GUID")
+        String guid;
+    }
+
+    @Name("com.studiohartman.jamepad.MappingLoad")
+    @Label("Controller Mapping Load")
+    @Category("Jamepad")
+    @Enabled(false)
+    static final class MappingLoad extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        long bytes;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("com.studiohartman.jamepad.Vibration")
+    @Label("Controller Vibration")
+    @Category("Jamepad")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Vibration extends Event {
+        @Label("Index")
+        int index;
+
+        @Label("GUID")
+        String guid;
+
+        @Label("Left Magnitude")
+        float leftMagnitude;
+
+        @Label("Right Magnitude")
+        float rightMagnitude;
+
+        @Label("Duration (ms)")
+        int durationMillis;
+
+        @Label("Started")
+        boolean started;
+    }
+}
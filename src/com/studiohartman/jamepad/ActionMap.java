@@ -0,0 +1,329 @@
+package com.studiohartman.jamepad;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named game actions ("jump", "fire", "pause") bound to controller inputs. Each action can have any
+ * number of bindings, and is held while any one of them is:
+ *
+ * - a button
+ * - a chord of buttons that all have to be held at once
+ * - an axis pushed past a threshold, with a lower release threshold so it doesn't flicker on and off
+ *   when the axis sits right at the threshold
+ *
+ * Bindings are compiled into a flat table: a bitmask of actions for each button, arrays for chords
+ * and axis bindings. evaluate() runs through that table once for a controller, mostly with bitmask
+ * operations, and fills in an ActionState with every action at once. Nothing is allocated while
+ * evaluating.
+ *
+ * Bindings can be changed at any time, from any thread. Each change recompiles the table and swaps it
+ * in, so a frame is always evaluated with one complete set of bindings.
+ *
+ * <pre>
+ * ActionMap actions = new ActionMap();
+ * int jump = actions.defineAction("jump");
+ * int dodge = actions.defineAction("dodge");
+ * actions.bindButton(jump, ControllerButton.A);
+ * actions.bindAxis(jump, ControllerAxis.LEFTY, 0.8f, 0.6f);
+ * actions.bindChord(dodge, ControllerButton.LEFTBUMPER, ControllerButton.A);
+ *
+ * ActionState p1 = new ActionState();
+ * //Each frame
+ * controllers.getState(0, state);
+ * actions.evaluate(state, p1);
+ * if(p1.isJustPressed(jump)) { ... }
+ * </pre>
+ *
+ * When a chord is held, its buttons don't also trigger actions bound to fewer of those buttons. In the
+ * example above, holding LEFTBUMPER and pressing A is a dodge, not a dodge and a jump.
+ *
+ * @author William Hartman
+ */
+public final class ActionMap {
+
+    /**
+     * The most actions one map can have.
+     */
+    public static final int MAX_ACTIONS = 64;
+
+    private static final int NUM_BUTTONS = ControllerButton.values().length;
+
+    //Every table gets its own version, so an ActionState can tell when it's handed a different one
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
+    private static final class AxisBinding {
+        final int action;
+        final int axis;
+        final float press;
+        final float release;
+
+        AxisBinding(int action, int axis, float press, float release) {
+            this.action = action;
+            this.axis = axis;
+            this.press = press;
+            this.release = release;
+        }
+    }
+
+    /**
+     * The compiled bindings. Never changed once made.
+     */
+    static final class Table {
+        final int version;
+
+        //The actions bound to each single button
+        final long[] buttonActions = new long[NUM_BUTTONS];
+
+        //Chords, with the ones with the most buttons first
+        final int[] chordMasks;
+        final long[] chordActions;
+
+        //Axis bindings. Thresholds are stored with the sign of the direction, so negative means down/left
+        final int[] axes;
+        final float[] pressThresholds;
+        final float[] releaseThresholds;
+        final long[] axisActions;
+
+        Table(ArrayList<int[]> chords, ArrayList<AxisBinding> axisBindings) {
+            this.version = VERSIONS.incrementAndGet();
+
+            ArrayList<int[]> singles = new ArrayList<>();
+            ArrayList<int[]> multis = new ArrayList<>();
+            for(int[] chord: chords) {
+                (Integer.bitCount(chord[1]) == 1 ? singles : multis).add(chord);
+            }
+            for(int[] single: singles) {
+                buttonActions[Integer.numberOfTrailingZeros(single[1])] |= 1L << single[0];
+            }
+
+            multis.sort((a, b) -> Integer.bitCount(b[1]) - Integer.bitCount(a[1]));
+            chordMasks = new int[multis.size()];
+            chordActions = new long[multis.size()];
+            for(int i = 0; i < multis.size(); i++) {
+                chordActions[i] = 1L << multis.get(i)[0];
+                chordMasks[i] = multis.get(i)[1];
+            }
+
+            int n = axisBindings.size();
+            axes = new int[n];
+            pressThresholds = new float[n];
+            releaseThresholds = new float[n];
+            axisActions = new long[n];
+            for(int i = 0; i < n; i++) {
+                AxisBinding b = axisBindings.get(i);
+                axes[i] = b.axis;
+                pressThresholds[i] = b.press;
+                releaseThresholds[i] = b.release;
+                axisActions[i] = 1L << b.action;
+            }
+        }
+    }
+
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<int[]> chords = new ArrayList<>();
+    private final ArrayList<AxisBinding> axisBindings = new ArrayList<>();
+    private volatile Table table = new Table(chords, axisBindings);
+
+    /**
+     * Add an action. Actions are numbered from 0 in the order they're defined, and the number is what
+     * the bind and query methods take.
+     *
+     * @param name The name of the action
+     * @return The number of the action
+     * @throws IllegalArgumentException if there's already an action with that name, or there are
+     *         already MAX_ACTIONS actions
+     */
+    public synchronized int defineAction(String name) {
+        if(names.contains(name)) {
+            throw new IllegalArgumentException("There is already an action called \"" + name + "\"!");
+        }
+        if(names.size() == MAX_ACTIONS) {
+            throw new IllegalArgumentException("An ActionMap can't have more than " + MAX_ACTIONS + " actions!");
+        }
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * Returns the number of the action with the passed name, or -1 if there isn't one.
+     *
+     * @param name The name of the action
+     * @return The number of the action
+     */
+    public synchronized int getAction(String name) {
+        return names.indexOf(name);
+    }
+
+    /**
+     * Returns the name of an action.
+     *
+     * @param action The number of the action
+     * @return The name of the action
+     */
+    public synchronized String getActionName(int action) {
+        checkAction(action);
+        return names.get(action);
+    }
+
+    /**
+     * Returns the number of actions that have been defined.
+     *
+     * @return The number of actions
+     */
+    public synchronized int getNumActions() {
+        return names.size();
+    }
+
+    /**
+     * Bind an action to a button.
+     *
+     * @param action The number of the action
+     * @param button The button
+     */
+    public void bindButton(int action, ControllerButton button) {
+        bindChord(action, button);
+    }
+
+    /**
+     * Bind an action to a chord: it's held while every one of the passed buttons is held.
+     *
+     * @param action The number of the action
+     * @param buttons The buttons of the chord
+     */
+    public synchronized void bindChord(int action, ControllerButton... buttons) {
+        checkAction(action);
+        if(buttons.length == 0) {
+            throw new IllegalArgumentException("A chord needs at least one button!");
+        }
+
+        int mask = 0;
+        for(ControllerButton button: buttons) {
+            mask |= 1 << button.ordinal();
+        }
+        chords.add(new int[] {action, mask});
+        compile();
+    }
+
+    /**
+     * Bind an action to an axis. The action goes down when the axis reaches the press threshold, and
+     * only goes up again once the axis falls back past the release threshold.
+     *
+     * The sign of the thresholds picks the direction. With positive thresholds, the axis has to go up
+     * (or right) past them, and with negative ones, down (or left). So to bind both ways on a stick,
+     * bind the same axis twice, to two actions.
+     *
+     * @param action The number of the action
+     * @param axis The axis
+     * @param pressThreshold Where the action goes down, between -1 and 1 but not 0
+     * @param releaseThreshold Where the action goes up, with the same sign as pressThreshold and no further
+     *                         from 0 than it
+     */
+    public synchronized void bindAxis(int action, ControllerAxis axis, float pressThreshold, float releaseThreshold) {
+        checkAction(action);
+        if(!(pressThreshold != 0 && Math.abs(pressThreshold) <= 1)) {
+            throw new IllegalArgumentException("The press threshold must be between -1 and 1, and not 0!");
+        }
+        if(Math.signum(releaseThreshold) != Math.signum(pressThreshold) ||
+                Math.abs(releaseThreshold) > Math.abs(pressThreshold)) {
+            throw new IllegalArgumentException("The release threshold must have the same sign as the press " +
+                    "threshold, and be no further from 0!");
+        }
+
+        axisBindings.add(new AxisBinding(action, axis.ordinal(), pressThreshold, releaseThreshold));
+        compile();
+    }
+
+    /**
+     * Remove every binding of an action, so it can be bound again.
+     *
+     * @param action The number of the action
+     */
+    public synchronized void clearBindings(int action) {
+        checkAction(action);
+        chords.removeIf(chord -> chord[0] == action);
+        axisBindings.removeIf(b -> b.action == action);
+        compile();
+    }
+
+    /**
+     * Work out every action for one controller, and write them into the passed ActionState. Call this
+     * once per frame for each controller, with a state read that frame. Keep one ActionState per
+     * controller, since it remembers the last frame for just pressed actions and release thresholds.
+     *
+     * @param state The state of the controller
+     * @param out Where to write the actions
+     */
+    public void evaluate(ControllerStateBuffer state, ActionState out) {
+        Table t = table;
+        out.beginFrame(t);
+
+        int buttons = state.isConnected ? state.buttonMask : 0;
+        long held = 0;
+
+        //Chords first, biggest first, so the buttons they use don't also set the actions bound to just
+        //some of those buttons. Chords of the same size don't hide each other.
+        int consumed = 0;
+        int consumedAtSize = 0;
+        int size = 0;
+        for(int i = 0; i < t.chordMasks.length; i++) {
+            int mask = t.chordMasks[i];
+            int chordSize = Integer.bitCount(mask);
+            if(chordSize != size) {
+                consumed |= consumedAtSize;
+                consumedAtSize = 0;
+                size = chordSize;
+            }
+            if((buttons & mask) == mask && (mask & ~consumed) != 0) {
+                held |= t.chordActions[i];
+                consumedAtSize |= mask;
+            }
+        }
+        consumed |= consumedAtSize;
+        for(int remaining = buttons & ~consumed; remaining != 0; remaining &= remaining - 1) {
+            held |= t.buttonActions[Integer.numberOfTrailingZeros(remaining)];
+        }
+        out.fullyHeld = held;
+
+        if(t.axes.length > 0) {
+            float[] axisValues = out.axisValues;
+            axisValues[0] = state.leftStickX;
+            axisValues[1] = state.leftStickY;
+            axisValues[2] = state.rightStickX;
+            axisValues[3] = state.rightStickY;
+            axisValues[4] = state.leftTrigger;
+            axisValues[5] = state.rightTrigger;
+
+            long[] latched = out.latched;
+            for(int i = 0; i < t.axes.length; i++) {
+                float press = t.pressThresholds[i];
+                //Flip negative bindings so everything below is "how far in the binding's direction"
+                float value = press > 0 ? axisValues[t.axes[i]] : -axisValues[t.axes[i]];
+                float pressAt = Math.abs(press);
+                float releaseAt = Math.abs(t.releaseThresholds[i]);
+
+                long bit = 1L << (i & 63);
+                boolean on = (latched[i >> 6] & bit) != 0 ? value >= releaseAt : value >= pressAt;
+                if(on) {
+                    latched[i >> 6] |= bit;
+                    held |= t.axisActions[i];
+                } else {
+                    latched[i >> 6] &= ~bit;
+                }
+                out.addAxisValue(t.axisActions[i], value);
+            }
+        }
+
+        out.endFrame(held);
+    }
+
+    private void checkAction(int action) {
+        if(action < 0 || action >= names.size()) {
+            throw new IllegalArgumentException("There is no action " + action + "!");
+        }
+    }
+
+    private void compile() {
+        table = new Table(chords, axisBindings);
+    }
+}
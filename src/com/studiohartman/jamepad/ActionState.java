@@ -0,0 +1,148 @@
+package com.studiohartman.jamepad;
+
+import java.util.Arrays;
+
+/**
+ * The actions of an ActionMap for one controller, as of the last call to ActionMap.evaluate(). Keep
+ * one of these per controller (or per player) and pass it to evaluate() every frame. It's overwritten
+ * in place, so nothing is allocated.
+ *
+ * Actions are held, just pressed and just released, like buttons, and are also available as bitmasks
+ * (bit n is the action numbered n) so several can be checked at once. Each action also has a value
+ * between 0 and 1: 1 if it's held by a button or chord, otherwise how far its axis bindings are pushed
+ * in their direction. That makes it easy to bind an analog action like "accelerate" to both a trigger
+ * and a button.
+ *
+ * This class is not thread safe.
+ *
+ * @author William Hartman
+ */
+public final class ActionState {
+
+    private long held;
+    private long justPressed;
+    private long justReleased;
+    private final float[] values = new float[ActionMap.MAX_ACTIONS];
+
+    //Filled in by ActionMap.evaluate()
+    final float[] axisValues = new float[ControllerAxis.values().length];
+    long[] latched = new long[1];
+    long fullyHeld;
+    private int tableVersion = -1;
+
+    /**
+     * Returns whether or not the passed action is held.
+     *
+     * @param action The number of the action
+     * @return Whether or not the action is held
+     */
+    public boolean isHeld(int action) {
+        return (held & (1L << action)) != 0;
+    }
+
+    /**
+     * Returns whether or not the passed action went down on the last evaluated frame.
+     *
+     * @param action The number of the action
+     * @return Whether or not the action was just pressed
+     */
+    public boolean isJustPressed(int action) {
+        return (justPressed & (1L << action)) != 0;
+    }
+
+    /**
+     * Returns whether or not the passed action went up on the last evaluated frame.
+     *
+     * @param action The number of the action
+     * @return Whether or not the action was just released
+     */
+    public boolean isJustReleased(int action) {
+        return (justReleased & (1L << action)) != 0;
+    }
+
+    /**
+     * Returns the value of the passed action, between 0 and 1.
+     *
+     * @param action The number of the action
+     * @return The value of the action
+     */
+    public float getValue(int action) {
+        return values[action];
+    }
+
+    /**
+     * Returns the held actions as a bitmask. Bit n is set if the action numbered n is held.
+     *
+     * @return The held actions
+     */
+    public long getHeldMask() {
+        return held;
+    }
+
+    /**
+     * Returns the just pressed actions as a bitmask, laid out like getHeldMask().
+     *
+     * @return The just pressed actions
+     */
+    public long getJustPressedMask() {
+        return justPressed;
+    }
+
+    /**
+     * Returns the just released actions as a bitmask, laid out like getHeldMask().
+     *
+     * @return The just released actions
+     */
+    public long getJustReleasedMask() {
+        return justReleased;
+    }
+
+    /**
+     * Forget every action, as if nothing had been held. The next evaluated frame won't report anything
+     * as just released.
+     */
+    public void clear() {
+        held = 0;
+        justPressed = 0;
+        justReleased = 0;
+        Arrays.fill(values, 0);
+        Arrays.fill(latched, 0);
+    }
+
+    void beginFrame(ActionMap.Table table) {
+        if(table.version != tableVersion) {
+            //The bindings changed, so the release thresholds being tracked are for other bindings
+            int words = (table.axes.length + 63) >> 6;
+            if(latched.length < words) {
+                latched = new long[words];
+            } else {
+                Arrays.fill(latched, 0);
+            }
+            tableVersion = table.version;
+        }
+        Arrays.fill(values, 0);
+    }
+
+    void addAxisValue(long actionBit, float value) {
+        int action = Long.numberOfTrailingZeros(actionBit);
+        float clamped = Math.max(0, Math.min(1, value));
+        if(clamped > values[action]) {
+            values[action] = clamped;
+        }
+    }
+
+    void endFrame(long nowHeld) {
+        for(long bits = fullyHeld; bits != 0; bits &= bits - 1) {
+            values[Long.numberOfTrailingZeros(bits)] = 1;
+        }
+        justPressed = nowHeld & ~held;
+        justReleased = held & ~nowHeld;
+        held = nowHeld;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionState{held=0x" + Long.toHexString(held) + ", justPressed=0x" + Long.toHexString(justPressed) +
+                ", justReleased=0x" + Long.toHexString(justReleased) + "}";
+    }
+}
@@ -0,0 +1,22 @@
+package com.studiohartman.jamepad;
+
+/**
+ * A response curve for an AxisProfile. It maps how far an axis is pushed past the dead zone to how far
+ * the processed value should be, both between 0 and 1.
+ *
+ * The curve is only called while an AxisProfile builds its lookup tables, not every frame, so it can be
+ * as slow as it needs to be. It should return 0 for 0 and 1 for 1, or the output will jump at the edges
+ * of the dead zones.
+ *
+ * @author William Hartman
+ */
+public interface AxisCurve {
+
+    /**
+     * Map an input between 0 and 1 to an output between 0 and 1.
+     *
+     * @param x How far the axis is pushed, between 0 and 1
+     * @return How far the processed axis should be, between 0 and 1
+     */
+    float apply(float x);
+}
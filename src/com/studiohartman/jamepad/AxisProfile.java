@@ -0,0 +1,300 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This class describes how raw axis values are turned into the floats returned by getAxisState() and
+ * put in ControllerState: dead zones, an anti dead zone and a response curve.
+ *
+ * Each value goes through the same steps:
+ *   - The raw value is scaled to between -1 and 1. -32768 is clamped to -1 instead of going slightly past it.
+ *   - Anything inside the dead zone is 0, and anything past the outer dead zone is 1.
+ *   - What's left is stretched back out to between 0 and 1 and put through the response curve.
+ *   - The result is scaled to start at the anti dead zone, for games that have their own dead zone
+ *     that you want to skip past.
+ *
+ * With an axial dead zone, each axis is handled on its own, and the whole thing is precomputed into a
+ * table with an entry for every one of the 65536 raw values. Processing an axis is then one array read.
+ * With a radial dead zone, the steps are applied to how far the stick is pushed in any direction, so
+ * diagonals aren't snapped to the axes. The response curve is precomputed into a smaller table for that.
+ * Tables are built the first time they're needed and shared by every controller using the profile.
+ *
+ * Profiles are immutable. The with*() methods return a changed copy:
+ *
+ * <pre>
+ * AxisProfile sticks = AxisProfile.LINEAR.withDeadZone(0.15f).withRadialDeadZone(true).withExponent(2);
+ * controllers.setStickProfile(sticks);
+ * </pre>
+ *
+ * @author William Hartman
+ */
+public final class AxisProfile {
+
+    /**
+     * The profile Jamepad uses by default. The raw value is just scaled to between -1 and 1.
+     */
+    public static final AxisProfile LINEAR = new AxisProfile(false, 0, 1, 0, 1, null);
+
+    private static final int RAW_MIN = -32768;
+    private static final int NUM_RAW_VALUES = 65536;
+    private static final float AXIS_MAX_VAL = 32767;
+    private static final int CURVE_STEPS = 1024;
+
+    private final boolean radial;
+    private final float deadZone;
+    private final float outerDeadZone;
+    private final float antiDeadZone;
+    private final float exponent;
+    private final AxisCurve curve;
+    private final boolean linear;
+
+    private volatile float[] axialTable;
+    private volatile float[] curveTable;
+
+    private AxisProfile(boolean radial, float deadZone, float outerDeadZone, float antiDeadZone, float exponent,
+                        AxisCurve curve) {
+        if(deadZone < 0 || deadZone >= outerDeadZone || outerDeadZone > 1) {
+            throw new IllegalArgumentException("The dead zones must have 0 <= deadZone < outerDeadZone <= 1!");
+        }
+        if(antiDeadZone < 0 || antiDeadZone >= 1) {
+            throw new IllegalArgumentException("The anti dead zone must be at least 0 and less than 1!");
+        }
+        if(!(exponent > 0)) {
+            throw new IllegalArgumentException("The exponent must be greater than 0!");
+        }
+
+        this.radial = radial;
+        this.deadZone = deadZone;
+        this.outerDeadZone = outerDeadZone;
+        this.antiDeadZone = antiDeadZone;
+        this.exponent = exponent;
+        this.curve = curve;
+        this.linear = deadZone == 0 && outerDeadZone == 1 && antiDeadZone == 0 && exponent == 1 && curve == null;
+    }
+
+    /**
+     * Returns a copy of this profile with the passed dead zone. Values closer to the center than this are 0.
+     *
+     * @param deadZone The dead zone, between 0 and the outer dead zone
+     * @return The new profile
+     */
+    public AxisProfile withDeadZone(float deadZone) {
+        return new AxisProfile(radial, deadZone, outerDeadZone, antiDeadZone, exponent, curve);
+    }
+
+    /**
+     * Returns a copy of this profile with the passed outer dead zone. Values further out than this are 1,
+     * which helps with sticks that never quite reach the edge.
+     *
+     * @param outerDeadZone The outer dead zone, between the dead zone and 1
+     * @return The new profile
+     */
+    public AxisProfile withOuterDeadZone(float outerDeadZone) {
+        return new AxisProfile(radial, deadZone, outerDeadZone, antiDeadZone, exponent, curve);
+    }
+
+    /**
+     * Returns a copy of this profile with the passed anti dead zone. As soon as an axis leaves the dead
+     * zone, it jumps to this value instead of starting at 0.
+     *
+     * @param antiDeadZone The anti dead zone, at least 0 and less than 1
+     * @return The new profile
+     */
+    public AxisProfile withAntiDeadZone(float antiDeadZone) {
+        return new AxisProfile(radial, deadZone, outerDeadZone, antiDeadZone, exponent, curve);
+    }
+
+    /**
+     * Returns a copy of this profile whose response curve is x to the power of the passed exponent.
+     * Exponents above 1 give finer control near the center. This replaces any custom curve.
+     *
+     * @param exponent The exponent, greater than 0
+     * @return The new profile
+     */
+    public AxisProfile withExponent(float exponent) {
+        return new AxisProfile(radial, deadZone, outerDeadZone, antiDeadZone, exponent, null);
+    }
+
+    /**
+     * Returns a copy of this profile with a custom response curve. This replaces the exponent.
+     *
+     * @param curve The response curve
+     * @return The new profile
+     */
+    public AxisProfile withCurve(AxisCurve curve) {
+        return new AxisProfile(radial, deadZone, outerDeadZone, antiDeadZone, 1, curve);
+    }
+
+    /**
+     * Returns a copy of this profile with a radial or axial dead zone. Radial dead zones only make sense
+     * for sticks; triggers are always handled one axis at a time.
+     *
+     * @param radial Whether the dead zone should be radial (true) or axial (false)
+     * @return The new profile
+     */
+    public AxisProfile withRadialDeadZone(boolean radial) {
+        return new AxisProfile(radial, deadZone, outerDeadZone, antiDeadZone, exponent, curve);
+    }
+
+    /**
+     * Returns whether or not the dead zone is radial.
+     *
+     * @return Whether or not the dead zone is radial
+     */
+    public boolean isRadial() {
+        return radial;
+    }
+
+    /**
+     * Returns the dead zone.
+     *
+     * @return The dead zone
+     */
+    public float getDeadZone() {
+        return deadZone;
+    }
+
+    /**
+     * Returns the outer dead zone.
+     *
+     * @return The outer dead zone
+     */
+    public float getOuterDeadZone() {
+        return outerDeadZone;
+    }
+
+    /**
+     * Returns the anti dead zone.
+     *
+     * @return The anti dead zone
+     */
+    public float getAntiDeadZone() {
+        return antiDeadZone;
+    }
+
+    /**
+     * Returns the exponent of the response curve. This is 1 if a custom curve is used.
+     *
+     * @return The exponent
+     */
+    public float getExponent() {
+        return exponent;
+    }
+
+    /**
+     * Returns the custom response curve, or null if the exponent is used.
+     *
+     * @return The response curve
+     */
+    public AxisCurve getCurve() {
+        return curve;
+    }
+
+    /**
+     * Process one axis on its own, ignoring radial dead zones. This is how triggers are processed.
+     *
+     * @param raw The raw value of the axis
+     * @return The processed value, between -1 and 1
+     */
+    float processAxis(int raw) {
+        if(linear) {
+            return normalize(raw);
+        }
+        float[] table = axialTable;
+        if(table == null) {
+            table = buildAxialTable();
+        }
+        return table[clampRaw(raw) - RAW_MIN];
+    }
+
+    /**
+     * Process both axes of a stick at once. The results are put in out[xIndex] and out[yIndex]. Neither
+     * is flipped, so down on the stick is still positive.
+     *
+     * @param rawX The raw value of the x axis
+     * @param rawY The raw value of the y axis
+     * @param out The array to put the results in
+     * @param xIndex Where to put the processed x value
+     * @param yIndex Where to put the processed y value
+     */
+    void processStick(int rawX, int rawY, float[] out, int xIndex, int yIndex) {
+        if(!radial) {
+            out[xIndex] = processAxis(rawX);
+            out[yIndex] = processAxis(rawY);
+            return;
+        }
+
+        float x = normalize(rawX);
+        float y = normalize(rawY);
+        float magnitude = (float) Math.sqrt(x * x + y * y);
+        float processed = processMagnitude(Math.min(1, magnitude));
+        if(processed == 0) {
+            out[xIndex] = 0;
+            out[yIndex] = 0;
+            return;
+        }
+
+        //Keep the direction, but use the processed distance. Square gates can go past 1 on the diagonals.
+        float scale = processed / magnitude;
+        out[xIndex] = x * scale;
+        out[yIndex] = y * scale;
+    }
+
+    /**
+     * Scale a raw axis value to between -1 and 1.
+     */
+    static float normalize(int raw) {
+        return Math.max(-1f, Math.min(1f, raw / AXIS_MAX_VAL));
+    }
+
+    private static int clampRaw(int raw) {
+        return Math.max(RAW_MIN, Math.min(RAW_MIN + NUM_RAW_VALUES - 1, raw));
+    }
+
+    private float processMagnitude(float magnitude) {
+        if(magnitude <= deadZone) {
+            return 0;
+        }
+        float t = Math.min(1, (magnitude - deadZone) / (outerDeadZone - deadZone));
+
+        float[] table = curveTable;
+        if(table == null) {
+            table = buildCurveTable();
+        }
+        float position = t * CURVE_STEPS;
+        int step = Math.min(CURVE_STEPS - 1, (int) position);
+        float fraction = position - step;
+        float response = table[step] + (table[step + 1] - table[step]) * fraction;
+        return antiDeadZone + (1 - antiDeadZone) * response;
+    }
+
+    private float response(float t) {
+        float value = curve != null ? curve.apply(t) : (float) Math.pow(t, exponent);
+        return Math.max(0f, Math.min(1f, value));
+    }
+
+    private float[] buildCurveTable() {
+        float[] table = new float[CURVE_STEPS + 1];
+        for(int i = 0; i <= CURVE_STEPS; i++) {
+            table[i] = response(i / (float) CURVE_STEPS);
+        }
+        curveTable = table;
+        return table;
+    }
+
+    private float[] buildAxialTable() {
+        float[] table = new float[NUM_RAW_VALUES];
+        for(int i = 0; i < NUM_RAW_VALUES; i++) {
+            float value = normalize(i + RAW_MIN);
+            float magnitude = Math.abs(value);
+            float processed;
+            if(magnitude <= deadZone) {
+                processed = 0;
+            } else {
+                float t = Math.min(1, (magnitude - deadZone) / (outerDeadZone - deadZone));
+                processed = antiDeadZone + (1 - antiDeadZone) * response(t);
+            }
+            table[i] = value < 0 ? -processed : processed;
+        }
+        axialTable = table;
+        return table;
+    }
+}
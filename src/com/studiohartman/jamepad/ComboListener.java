@@ -0,0 +1,22 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Called by a ComboRecognizer when a controller finishes one of its patterns. See
+ * ComboRecognizer.setListener().
+ *
+ * This is called on the thread advancing the recognizer, which is the input pump thread if it's running,
+ * so it should be quick and not block.
+ *
+ * @author William Hartman
+ */
+public interface ComboListener {
+
+    /**
+     * Called when a pattern is matched.
+     *
+     * @param controllerIndex The index of the controller that did the pattern
+     * @param pattern The number of the pattern, as returned by ComboRecognizer.definePattern()
+     * @param frame The frame the last step of the pattern happened on
+     */
+    void comboMatched(int controllerIndex, int pattern, long frame);
+}
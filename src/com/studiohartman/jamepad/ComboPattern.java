@@ -0,0 +1,191 @@
+package com.studiohartman.jamepad;
+
+import java.util.Arrays;
+
+/**
+ * A sequence of inputs for ComboRecognizer to look for, like a fighting game motion. Patterns are
+ * written in numpad notation, where the directions of the stick (or d-pad) are the digits laid out like
+ * a numpad: 8 is up, 2 is down, 4 is back (left), 6 is forward (right) and 5 is neutral.
+ *
+ * A pattern is a list of steps separated by spaces. Each step is one of:
+ *
+ * - A direction, which happens when the stick moves into it. A run of digits is one step per digit,
+ *   so "236" is down, down-forward, forward.
+ * - A button name from ControllerButton, which happens when the button is pressed.
+ * - A charge, like "[4]45": one or more directions in brackets, held for at least the passed number of
+ *   frames. It happens when the stick leaves those directions. "[147]45" can be charged anywhere back.
+ *
+ * <pre>
+ * ComboPattern hadouken = ComboPattern.parse("236 X");
+ * ComboPattern sonicBoom = ComboPattern.parse("[147]45 6 X");
+ * ComboPattern dash = ComboPattern.parse("6 5 6").withStepWindow(8);
+ * </pre>
+ *
+ * Steps don't have to follow each other directly. Anything can happen in between, as long as each step
+ * comes within the step window of the one before it. The window is in frames (calls to
+ * ControllerManager.update()), so pick it for the rate you update at. The default is 12.
+ *
+ * This class is immutable.
+ *
+ * @author William Hartman
+ */
+public final class ComboPattern {
+
+    static final int DIRECTION = 0;
+    static final int BUTTON = 1;
+    static final int CHARGE = 2;
+
+    /**
+     * The step window patterns get unless withStepWindow() is used.
+     */
+    public static final int DEFAULT_STEP_WINDOW = 12;
+
+    private static final ControllerButton[] BUTTONS = ControllerButton.values();
+
+    //For each step: its kind, then a numpad digit, button ordinal or mask of charge directions (bit n is
+    //digit n), and for charges the number of frames to hold
+    final int[] kinds;
+    final int[] values;
+    final int[] chargeFrames;
+    final int stepWindow;
+
+    private ComboPattern(int[] kinds, int[] values, int[] chargeFrames, int stepWindow) {
+        this.kinds = kinds;
+        this.values = values;
+        this.chargeFrames = chargeFrames;
+        this.stepWindow = stepWindow;
+    }
+
+    /**
+     * Make a pattern from its numpad notation. See the class description for the syntax.
+     *
+     * @param notation The pattern, like "236 X"
+     * @return The pattern
+     * @throws IllegalArgumentException if the notation can't be read
+     */
+    public static ComboPattern parse(String notation) {
+        String[] tokens = notation.trim().split("\\s+");
+        int[] kinds = new int[notation.length()];
+        int[] values = new int[notation.length()];
+        int[] chargeFrames = new int[notation.length()];
+        int n = 0;
+
+        for(String token: tokens) {
+            if(token.isEmpty()) {
+                continue;
+            }
+            if(isDirections(token, 0, token.length())) {
+                for(int i = 0; i < token.length(); i++) {
+                    kinds[n] = DIRECTION;
+                    values[n++] = token.charAt(i) - '0';
+                }
+            } else if(token.charAt(0) == '[') {
+                int close = token.indexOf(']');
+                if(close < 2 || close == token.length() - 1 || !isDirections(token, 1, close)) {
+                    throw new IllegalArgumentException("\"" + token + "\" isn't a charge like [4]45!");
+                }
+                int mask = 0;
+                for(int i = 1; i < close; i++) {
+                    mask |= 1 << (token.charAt(i) - '0');
+                }
+                int frames;
+                try {
+                    frames = Integer.parseInt(token.substring(close + 1));
+                } catch(NumberFormatException e) {
+                    throw new IllegalArgumentException("\"" + token + "\" isn't a charge like [4]45!");
+                }
+                if(frames <= 0) {
+                    throw new IllegalArgumentException("A charge has to be held for at least one frame!");
+                }
+                kinds[n] = CHARGE;
+                chargeFrames[n] = frames;
+                values[n++] = mask;
+            } else {
+                kinds[n] = BUTTON;
+                values[n++] = parseButton(token);
+            }
+        }
+
+        if(n == 0) {
+            throw new IllegalArgumentException("A pattern needs at least one step!");
+        }
+        return new ComboPattern(Arrays.copyOf(kinds, n), Arrays.copyOf(values, n), Arrays.copyOf(chargeFrames, n),
+                DEFAULT_STEP_WINDOW);
+    }
+
+    private static boolean isDirections(String token, int from, int to) {
+        for(int i = from; i < to; i++) {
+            char c = token.charAt(i);
+            if(c < '1' || c > '9') {
+                return false;
+            }
+        }
+        return to > from;
+    }
+
+    private static int parseButton(String token) {
+        for(ControllerButton button: BUTTONS) {
+            if(button.name().equalsIgnoreCase(token)) {
+                return button.ordinal();
+            }
+        }
+        throw new IllegalArgumentException("\"" + token + "\" isn't a direction, charge or button!");
+    }
+
+    /**
+     * Returns a copy of this pattern where each step has to come within the passed number of frames of
+     * the step before it.
+     *
+     * @param frames The step window in frames
+     * @return The new pattern
+     */
+    public ComboPattern withStepWindow(int frames) {
+        if(frames <= 0) {
+            throw new IllegalArgumentException("The step window must be positive!");
+        }
+        return new ComboPattern(kinds, values, chargeFrames, frames);
+    }
+
+    /**
+     * Returns the number of frames allowed between one step and the next.
+     *
+     * @return The step window in frames
+     */
+    public int getStepWindow() {
+        return stepWindow;
+    }
+
+    /**
+     * Returns the number of steps in this pattern.
+     *
+     * @return The number of steps
+     */
+    public int getNumSteps() {
+        return kinds.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < kinds.length; i++) {
+            boolean runOfDirections = kinds[i] == DIRECTION && i > 0 && kinds[i - 1] == DIRECTION;
+            if(i > 0 && !runOfDirections) {
+                sb.append(' ');
+            }
+            if(kinds[i] == DIRECTION) {
+                sb.append(values[i]);
+            } else if(kinds[i] == BUTTON) {
+                sb.append(BUTTONS[values[i]].name());
+            } else {
+                sb.append('[');
+                for(int d = 1; d <= 9; d++) {
+                    if((values[i] & (1 << d)) != 0) {
+                        sb.append(d);
+                    }
+                }
+                sb.append(']').append(chargeFrames[i]);
+            }
+        }
+        return sb.append(" (window ").append(stepWindow).append(')').toString();
+    }
+}
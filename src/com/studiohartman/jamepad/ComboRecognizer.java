@@ -0,0 +1,485 @@
+package com.studiohartman.jamepad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Recognizes combos and gestures, like quarter circles, charges and double taps, as they happen. Define
+ * patterns with ComboPattern, then advance the recognizer once per frame for each controller.
+ * ControllerManager.setComboRecognizer() does that from update() for every controller.
+ *
+ * Patterns are compiled into one table of transitions, indexed by input: for each direction, button
+ * and charge, the pattern steps it can complete. Each frame, only the inputs that changed are looked
+ * up, and each matching step is advanced if the step before it happened recently enough. The only thing
+ * remembered per controller is the frame each step was last reached on, so the history is never
+ * scanned again, and the cost of a frame depends on what changed, not on how long the patterns are.
+ *
+ * All the memory is allocated when patterns are defined. Advancing allocates nothing.
+ *
+ * <pre>
+ * ComboRecognizer combos = new ComboRecognizer(4);
+ * int hadouken = combos.definePattern("hadouken", ComboPattern.parse("236 X"));
+ * controllers.setComboRecognizer(combos);
+ *
+ * //Each frame, after update()
+ * if(combos.isMatched(0, hadouken)) { ... }
+ * </pre>
+ *
+ * Directions come from the left stick, or from the d-pad when any of it is held. Use setFacingLeft() for
+ * a player facing left, so 6 is still forward.
+ *
+ * Patterns can be defined from any thread, but they start matching from scratch once they change. The
+ * other methods should be called on the thread advancing the recognizer. With the input pump running,
+ * that's the pump thread, so use a ComboListener to hear about matches.
+ *
+ * @author William Hartman
+ */
+public final class ComboRecognizer {
+
+    /**
+     * How far the stick must be pushed along an axis to count as that direction, unless
+     * setDirectionThreshold() is used.
+     */
+    public static final float DEFAULT_DIRECTION_THRESHOLD = 0.5f;
+
+    private static final long NEVER = Long.MIN_VALUE;
+    private static final int NUM_BUTTONS = ControllerButton.values().length;
+    private static final int BUTTON_SYMBOLS = 10;
+    private static final int CHARGE_SYMBOLS = BUTTON_SYMBOLS + NUM_BUTTONS;
+    private static final int DPAD_MASK = (1 << ControllerButton.DPAD_UP.ordinal()) |
+            (1 << ControllerButton.DPAD_DOWN.ordinal()) | (1 << ControllerButton.DPAD_LEFT.ordinal()) |
+            (1 << ControllerButton.DPAD_RIGHT.ordinal());
+
+    /**
+     * The compiled patterns, along with the progress of every controller through them. The layout is
+     * never changed once made. The progress arrays are only touched by the thread advancing.
+     *
+     * Inputs are numbered as symbols: numpad digits 1-9 as themselves, then buttons, then each distinct
+     * set of charge directions.
+     */
+    private static final class Table {
+        final int numPatterns;
+        final int numSteps;
+        final int[] patternBase;
+        final int[] patternLength;
+        final int[] patternWindow;
+
+        //For each step of every pattern, numbered from the first step of the first pattern
+        final int[] stepPattern;
+        final int[] chargeFrames;
+
+        //The steps each symbol completes, symbol s having the ones from symbolStart[s] to symbolStart[s + 1].
+        //Steps of the same pattern are last step first, so one input can't complete two steps in a row
+        final int[] symbolStart;
+        final int[] symbolSteps;
+        final int[] chargeMasks;
+
+        //Per controller: the frame each step was last reached on, when each charge started being held,
+        //and the patterns matched on the last frame, as bits
+        final long[] reached;
+        final long[] chargeStarts;
+        final long[] matched;
+        final int matchedWords;
+        final boolean[] anyMatched;
+
+        Table(ArrayList<ComboPattern> patterns, int maxControllers) {
+            numPatterns = patterns.size();
+            patternBase = new int[numPatterns];
+            patternLength = new int[numPatterns];
+            patternWindow = new int[numPatterns];
+
+            int steps = 0;
+            ArrayList<Integer> masks = new ArrayList<>();
+            for(int p = 0; p < numPatterns; p++) {
+                ComboPattern pattern = patterns.get(p);
+                patternBase[p] = steps;
+                patternLength[p] = pattern.kinds.length;
+                patternWindow[p] = pattern.stepWindow;
+                steps += pattern.kinds.length;
+                for(int k = 0; k < pattern.kinds.length; k++) {
+                    if(pattern.kinds[k] == ComboPattern.CHARGE && !masks.contains(pattern.values[k])) {
+                        masks.add(pattern.values[k]);
+                    }
+                }
+            }
+            numSteps = steps;
+            chargeMasks = new int[masks.size()];
+            for(int i = 0; i < chargeMasks.length; i++) {
+                chargeMasks[i] = masks.get(i);
+            }
+
+            stepPattern = new int[numSteps];
+            chargeFrames = new int[numSteps];
+            int[] stepSymbol = new int[numSteps];
+            int numSymbols = CHARGE_SYMBOLS + chargeMasks.length;
+            symbolStart = new int[numSymbols + 1];
+            for(int p = 0; p < numPatterns; p++) {
+                ComboPattern pattern = patterns.get(p);
+                for(int k = 0; k < pattern.kinds.length; k++) {
+                    int g = patternBase[p] + k;
+                    stepPattern[g] = p;
+                    chargeFrames[g] = pattern.chargeFrames[k];
+                    stepSymbol[g] = symbolOf(pattern.kinds[k], pattern.values[k]);
+                    symbolStart[stepSymbol[g] + 1]++;
+                }
+            }
+            for(int s = 0; s < numSymbols; s++) {
+                symbolStart[s + 1] += symbolStart[s];
+            }
+            symbolSteps = new int[numSteps];
+            int[] fill = Arrays.copyOf(symbolStart, numSymbols);
+            for(int p = 0; p < numPatterns; p++) {
+                for(int g = patternBase[p] + patternLength[p] - 1; g >= patternBase[p]; g--) {
+                    symbolSteps[fill[stepSymbol[g]]++] = g;
+                }
+            }
+
+            reached = new long[maxControllers * numSteps];
+            chargeStarts = new long[maxControllers * chargeMasks.length];
+            matchedWords = (numPatterns + 63) >> 6;
+            matched = new long[maxControllers * matchedWords];
+            anyMatched = new boolean[maxControllers];
+            Arrays.fill(reached, NEVER);
+            Arrays.fill(chargeStarts, NEVER);
+        }
+
+        private int symbolOf(int kind, int value) {
+            if(kind == ComboPattern.DIRECTION) {
+                return value;
+            } else if(kind == ComboPattern.BUTTON) {
+                return BUTTON_SYMBOLS + value;
+            }
+            for(int i = 0; i < chargeMasks.length; i++) {
+                if(chargeMasks[i] == value) {
+                    return CHARGE_SYMBOLS + i;
+                }
+            }
+            throw new IllegalStateException("Unknown charge!");
+        }
+    }
+
+    private final int maxControllers;
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<ComboPattern> patterns = new ArrayList<>();
+    private volatile Table table;
+    private volatile ComboListener listener;
+    private volatile float directionThreshold = DEFAULT_DIRECTION_THRESHOLD;
+
+    private final int[] directions;
+    private final boolean[] facingLeft;
+    private Table advancedTable;
+
+    /**
+     * Constructor. Makes a recognizer with no patterns.
+     *
+     * @param maxControllers The number of controllers this can follow, numbered from 0
+     */
+    public ComboRecognizer(int maxControllers) {
+        if(maxControllers <= 0) {
+            throw new IllegalArgumentException("The number of controllers must be positive!");
+        }
+        this.maxControllers = maxControllers;
+        directions = new int[maxControllers];
+        facingLeft = new boolean[maxControllers];
+        Arrays.fill(directions, 5);
+        table = new Table(patterns, maxControllers);
+    }
+
+    /**
+     * Add a pattern to look for. Patterns are numbered from 0 in the order they're defined, and the
+     * number is what the query methods and ComboListener use.
+     *
+     * @param name The name of the pattern
+     * @param pattern The pattern
+     * @return The number of the pattern
+     * @throws IllegalArgumentException if there's already a pattern with that name
+     */
+    public synchronized int definePattern(String name, ComboPattern pattern) {
+        if(pattern == null) {
+            throw new IllegalArgumentException("The pattern can't be null!");
+        }
+        if(names.contains(name)) {
+            throw new IllegalArgumentException("There is already a pattern called \"" + name + "\"!");
+        }
+        names.add(name);
+        patterns.add(pattern);
+        table = new Table(patterns, maxControllers);
+        return patterns.size() - 1;
+    }
+
+    /**
+     * Returns the number of the pattern with the passed name, or -1 if there isn't one.
+     *
+     * @param name The name of the pattern
+     * @return The number of the pattern
+     */
+    public synchronized int getPattern(String name) {
+        return names.indexOf(name);
+    }
+
+    /**
+     * Returns the name of a pattern.
+     *
+     * @param pattern The number of the pattern
+     * @return The name of the pattern
+     */
+    public synchronized String getPatternName(int pattern) {
+        if(pattern < 0 || pattern >= names.size()) {
+            throw new IllegalArgumentException("There is no pattern " + pattern + "!");
+        }
+        return names.get(pattern);
+    }
+
+    /**
+     * Returns the number of patterns that have been defined.
+     *
+     * @return The number of patterns
+     */
+    public synchronized int getNumPatterns() {
+        return patterns.size();
+    }
+
+    /**
+     * Returns the number of controllers this recognizer can follow.
+     *
+     * @return The number of controllers
+     */
+    public int getMaxControllers() {
+        return maxControllers;
+    }
+
+    /**
+     * Set the listener called whenever a pattern is matched, or null for none.
+     *
+     * @param listener The listener
+     */
+    public void setListener(ComboListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set how far the stick must be pushed along an axis, between 0 and 1, to count as a direction.
+     *
+     * @param threshold The threshold
+     */
+    public void setDirectionThreshold(float threshold) {
+        if(!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException("The threshold must be between 0 and 1!");
+        }
+        directionThreshold = threshold;
+    }
+
+    /**
+     * Set whether or not the player on the passed controller faces left. If they do, left and right are
+     * swapped, so that 4 is always back and 6 is always forward.
+     *
+     * @param controllerIndex The index of the controller
+     * @param isFacingLeft Whether or not the player faces left
+     */
+    public void setFacingLeft(int controllerIndex, boolean isFacingLeft) {
+        checkController(controllerIndex);
+        facingLeft[controllerIndex] = isFacingLeft;
+    }
+
+    /**
+     * Returns whether or not the passed pattern was matched by the controller on the last frame it was
+     * advanced.
+     *
+     * @param controllerIndex The index of the controller
+     * @param pattern The number of the pattern
+     * @return Whether or not the pattern was just matched
+     */
+    public boolean isMatched(int controllerIndex, int pattern) {
+        checkController(controllerIndex);
+        Table t = advancedTable;
+        if(t == null || pattern < 0 || pattern >= t.numPatterns) {
+            return false;
+        }
+        return (t.matched[controllerIndex * t.matchedWords + (pattern >> 6)] & (1L << pattern)) != 0;
+    }
+
+    /**
+     * Returns the first pattern at or after fromPattern that was matched by the controller on the last
+     * frame it was advanced, or -1 if there isn't one. Loop over every match with
+     * {@code for(int p = combos.nextMatch(i, 0); p >= 0; p = combos.nextMatch(i, p + 1))}.
+     *
+     * @param controllerIndex The index of the controller
+     * @param fromPattern The number of the pattern to start looking at
+     * @return The number of the matched pattern
+     */
+    public int nextMatch(int controllerIndex, int fromPattern) {
+        checkController(controllerIndex);
+        Table t = advancedTable;
+        if(t == null || fromPattern < 0 || fromPattern >= t.numPatterns || !t.anyMatched[controllerIndex]) {
+            return -1;
+        }
+        int base = controllerIndex * t.matchedWords;
+        int word = fromPattern >> 6;
+        long bits = t.matched[base + word] & (-1L << fromPattern);
+        while(bits == 0) {
+            if(++word == t.matchedWords) {
+                return -1;
+            }
+            bits = t.matched[base + word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Forget the progress of the passed controller through every pattern, and where its stick is.
+     *
+     * @param controllerIndex The index of the controller
+     */
+    public void reset(int controllerIndex) {
+        checkController(controllerIndex);
+        Table t = table;
+        Arrays.fill(t.reached, controllerIndex * t.numSteps, (controllerIndex + 1) * t.numSteps, NEVER);
+        Arrays.fill(t.chargeStarts, controllerIndex * t.chargeMasks.length,
+                (controllerIndex + 1) * t.chargeMasks.length, NEVER);
+        clearMatches(t, controllerIndex);
+        directions[controllerIndex] = 5;
+    }
+
+    /**
+     * Feed one frame of a controller's state to the recognizer. ControllerManager.setComboRecognizer()
+     * makes update() call this, so only call it yourself if you get your input some other way.
+     *
+     * @param controllerIndex The index of the controller
+     * @param frame The number of the frame, which must count up by one each call
+     * @param state The state of the controller on that frame
+     */
+    public void advance(int controllerIndex, long frame, ControllerStateBuffer state) {
+        checkController(controllerIndex);
+        if(state.isConnected) {
+            advance(controllerIndex, frame, state.buttonMask, state.justPressedMask, state.leftStickX, state.leftStickY);
+        } else {
+            advance(controllerIndex, frame, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Does the work of advance(int, long, ControllerStateBuffer). ControllerIndex calls this directly
+     * when it polls a frame. The stick y is positive up.
+     */
+    void advance(int controllerIndex, long frame, int heldButtons, int justPressedButtons, float stickX, float stickY) {
+        Table t = table;
+        if(t != advancedTable) {
+            //The patterns changed, so the progress through the old ones doesn't mean anything anymore
+            Arrays.fill(directions, 5);
+            advancedTable = t;
+        }
+        clearMatches(t, controllerIndex);
+
+        int direction = direction(controllerIndex, heldButtons, stickX, stickY);
+        int lastDirection = directions[controllerIndex];
+        if(direction != lastDirection) {
+            directions[controllerIndex] = direction;
+            for(int i = 0; i < t.chargeMasks.length; i++) {
+                boolean wasHeld = (t.chargeMasks[i] & (1 << lastDirection)) != 0;
+                boolean isHeld = (t.chargeMasks[i] & (1 << direction)) != 0;
+                int slot = controllerIndex * t.chargeMasks.length + i;
+                if(wasHeld && !isHeld) {
+                    if(t.chargeStarts[slot] != NEVER) {
+                        input(t, controllerIndex, CHARGE_SYMBOLS + i, frame, t.chargeStarts[slot]);
+                    }
+                    t.chargeStarts[slot] = NEVER;
+                } else if(isHeld && !wasHeld) {
+                    t.chargeStarts[slot] = frame;
+                }
+            }
+            input(t, controllerIndex, direction, frame, frame);
+        }
+
+        for(int pressed = justPressedButtons; pressed != 0; pressed &= pressed - 1) {
+            input(t, controllerIndex, BUTTON_SYMBOLS + Integer.numberOfTrailingZeros(pressed), frame, frame);
+        }
+    }
+
+    /**
+     * Advance every step the passed input completes. Charges happen on the frame they're let go, but
+     * count as starting when they were first held, which is what has to be within the step window.
+     */
+    private void input(Table t, int controllerIndex, int symbol, long frame, long startFrame) {
+        long[] reached = t.reached;
+        int base = controllerIndex * t.numSteps;
+        int matchedPattern = -1;
+
+        for(int i = t.symbolStart[symbol]; i < t.symbolStart[symbol + 1]; i++) {
+            int g = t.symbolSteps[i];
+            int p = t.stepPattern[g];
+            if(p == matchedPattern) {
+                continue;
+            }
+            int first = t.patternBase[p];
+            if(g != first) {
+                long previous = reached[base + g - 1];
+                if(previous == NEVER || startFrame - previous > t.patternWindow[p]) {
+                    continue;
+                }
+            }
+            if(t.chargeFrames[g] > 0 && frame - startFrame < t.chargeFrames[g]) {
+                continue;
+            }
+
+            if(g == first + t.patternLength[p] - 1) {
+                //Start over, so the same inputs don't match it again
+                Arrays.fill(reached, base + first, base + g, NEVER);
+                matchedPattern = p;
+                matched(t, controllerIndex, p, frame);
+            } else {
+                reached[base + g] = frame;
+            }
+        }
+    }
+
+    private void matched(Table t, int controllerIndex, int pattern, long frame) {
+        t.matched[controllerIndex * t.matchedWords + (pattern >> 6)] |= 1L << pattern;
+        t.anyMatched[controllerIndex] = true;
+
+        ComboListener l = listener;
+        if(l != null) {
+            try {
+                l.comboMatched(controllerIndex, pattern, frame);
+            } catch(RuntimeException e) {
+                System.err.println("A ComboListener threw an exception");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void clearMatches(Table t, int controllerIndex) {
+        if(t.anyMatched[controllerIndex]) {
+            Arrays.fill(t.matched, controllerIndex * t.matchedWords, (controllerIndex + 1) * t.matchedWords, 0);
+            t.anyMatched[controllerIndex] = false;
+        }
+    }
+
+    /**
+     * Returns the numpad direction of the d-pad if any of it is held, otherwise of the stick.
+     */
+    private int direction(int controllerIndex, int heldButtons, float stickX, float stickY) {
+        int x, y;
+        if((heldButtons & DPAD_MASK) != 0) {
+            x = bit(heldButtons, ControllerButton.DPAD_RIGHT) - bit(heldButtons, ControllerButton.DPAD_LEFT);
+            y = bit(heldButtons, ControllerButton.DPAD_UP) - bit(heldButtons, ControllerButton.DPAD_DOWN);
+        } else {
+            float threshold = directionThreshold;
+            x = stickX >= threshold ? 1 : stickX <= -threshold ? -1 : 0;
+            y = stickY >= threshold ? 1 : stickY <= -threshold ? -1 : 0;
+        }
+        if(facingLeft[controllerIndex]) {
+            x = -x;
+        }
+        return 5 + x + 3 * y;
+    }
+
+    private static int bit(int mask, ControllerButton button) {
+        return (mask >> button.ordinal()) & 1;
+    }
+
+    private void checkController(int controllerIndex) {
+        if(controllerIndex < 0 || controllerIndex >= maxControllers) {
+            throw new IllegalArgumentException("There is no controller " + controllerIndex + " in this recognizer!");
+        }
+    }
+}
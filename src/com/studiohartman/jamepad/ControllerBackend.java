@@ -0,0 +1,248 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This interface is everything ControllerManager and ControllerIndex need from the layer that actually
+ * talks to gamepads. SDLControllerBackend is the default, and goes through SDL via sdl2gdx.
+ * SimulatedControllerBackend keeps everything in memory, so Jamepad can run without SDL or any
+ * input devices (in CI or benchmarks, for example).
+ *
+ * The names follow SDL. Devices that are plugged in have a device index from 0 to getNumDevices() - 1,
+ * which can change as other devices come and go, and an instance ID, which doesn't. An open device is
+ * identified by a handle, which is never 0.
+ *
+ * Backends don't have to be thread safe. ControllerManager only calls them from one thread at a time.
+ *
+ * @author William Hartman
+ */
+public interface ControllerBackend {
+
+    /**
+     * Start up the backend.
+     *
+     * @return Whether or not the backend was started
+     */
+    boolean init();
+
+    /**
+     * Shut down the backend. Open handles don't need to be closed first.
+     */
+    void quit();
+
+    /**
+     * Refresh the state of all open devices. This is called before a batch of button and axis reads.
+     */
+    void update();
+
+    /**
+     * Take the oldest event off the backend's event queue.
+     *
+     * @param out The event to overwrite with the oldest event
+     * @return false if there were no events
+     */
+    boolean pollEvent(Event out);
+
+    /**
+     * Returns the number of devices plugged in, including ones that aren't game controllers.
+     *
+     * @return The number of devices
+     */
+    int getNumDevices();
+
+    /**
+     * Returns whether or not the device with the passed device index is a game controller.
+     *
+     * @param deviceIndex The device index
+     * @return Whether or not the device is a game controller
+     */
+    boolean isGameController(int deviceIndex);
+
+    /**
+     * Returns the instance ID of the device with the passed device index.
+     *
+     * @param deviceIndex The device index
+     * @return The instance ID of the device, or -1 if there isn't one
+     */
+    int getDeviceInstanceId(int deviceIndex);
+
+    /**
+     * Returns the GUID of the device with the passed device index, without opening it as a controller.
+     * This works for devices SDL doesn't have a mapping for yet.
+     *
+     * @param deviceIndex The device index
+     * @return The GUID as 32 hex characters, or null if there isn't a device at that index
+     */
+    String getDeviceGUID(int deviceIndex);
+
+    /**
+     * Open the game controller with the passed device index.
+     *
+     * @param deviceIndex The device index
+     * @return A handle to the controller, or 0 if it couldn't be opened
+     */
+    long open(int deviceIndex);
+
+    /**
+     * Close an open controller.
+     *
+     * @param handle The handle of the controller
+     */
+    void close(long handle);
+
+    /**
+     * Returns whether or not an open controller is still plugged in.
+     *
+     * @param handle The handle of the controller
+     * @return Whether or not the controller is plugged in
+     */
+    boolean isAttached(long handle);
+
+    /**
+     * Returns the instance ID of an open controller.
+     *
+     * @param handle The handle of the controller
+     * @return The instance ID of the controller
+     */
+    int getInstanceId(long handle);
+
+    /**
+     * Returns whether or not a button of an open controller is held down.
+     *
+     * @param handle The handle of the controller
+     * @param button The ordinal of the ControllerButton
+     * @return Whether or not the button is held down
+     */
+    boolean getButton(long handle, int button);
+
+    /**
+     * Returns the raw value (-32768 to 32767) of an axis of an open controller.
+     *
+     * @param handle The handle of the controller
+     * @param axis The ordinal of the ControllerAxis
+     * @return The value of the axis
+     */
+    int getAxis(long handle, int axis);
+
+    /**
+     * Returns the name of an open controller.
+     *
+     * @param handle The handle of the controller
+     * @return The name of the controller, or null if it doesn't have one
+     */
+    String getName(long handle);
+
+    /**
+     * Returns the GUID of an open controller as a 32 character hex string. Every controller of the same
+     * model has the same GUID, and it's what controller mappings are keyed by.
+     *
+     * @param handle The handle of the controller
+     * @return The GUID of the controller, or null if it can't be read
+     */
+    String getGUID(long handle);
+
+    /**
+     * Returns the USB vendor ID of an open controller.
+     *
+     * @param handle The handle of the controller
+     * @return The vendor ID, or 0 if it isn't known
+     */
+    int getVendor(long handle);
+
+    /**
+     * Returns the USB product ID of an open controller.
+     *
+     * @param handle The handle of the controller
+     * @return The product ID, or 0 if it isn't known
+     */
+    int getProduct(long handle);
+
+    /**
+     * Vibrate an open controller.
+     *
+     * @param handle The handle of the controller
+     * @param leftMagnitude The speed of the left motor (0 to 65535)
+     * @param rightMagnitude The speed of the right motor (0 to 65535)
+     * @param duration_ms How long to vibrate for
+     * @return Whether or not vibration was started
+     */
+    boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int duration_ms);
+
+    /**
+     * Add the controller mappings held in the passed file.
+     *
+     * @param path The path to the file on disk
+     * @return Whether or not any mappings were added
+     */
+    boolean addMappingsFromFile(String path);
+
+    /**
+     * Add a single controller mapping, in the same format as a line of gamecontrollerdb.txt. If there
+     * already is a mapping for the same GUID, it is replaced.
+     *
+     * @param mapping The mapping
+     * @return 1 if the mapping was added, 0 if it replaced an existing one, or -1 if it was invalid
+     */
+    int addMapping(String mapping);
+
+    /**
+     * An event taken off a backend's event queue. One of these is reused for every event, so the
+     * fields are mutable.
+     */
+    final class Event {
+
+        /**
+         * The type for events ControllerManager doesn't care about
+         */
+        public static final int OTHER = 0;
+
+        /**
+         * The type for a device being plugged in. which is the device index.
+         */
+        public static final int DEVICE_ADDED = 1;
+
+        /**
+         * The type for a device being unplugged. which is the instance ID.
+         */
+        public static final int DEVICE_REMOVED = 2;
+
+        /**
+         * The type for a button going down. which is the instance ID and code is the button ordinal.
+         */
+        public static final int BUTTON_DOWN = 3;
+
+        /**
+         * The type for a button going up. which is the instance ID and code is the button ordinal.
+         */
+        public static final int BUTTON_UP = 4;
+
+        /**
+         * The type for an axis moving. which is the instance ID, code is the axis ordinal and value is
+         * the new raw value.
+         */
+        public static final int AXIS_MOTION = 5;
+
+        /**
+         * The type of the event
+         */
+        public int type;
+
+        /**
+         * When the event happened, in milliseconds
+         */
+        public int timestamp;
+
+        /**
+         * The device index or instance ID the event is about, depending on the type
+         */
+        public int which;
+
+        /**
+         * The button or axis ordinal the event is about
+         */
+        public int code;
+
+        /**
+         * The new value of the axis
+         */
+        public int value;
+    }
+}
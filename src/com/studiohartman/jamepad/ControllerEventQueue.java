@@ -0,0 +1,226 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This class is a fixed size queue of input events (button presses, button releases and axis motion)
+ * read from SDL's event queue by ControllerManager.update().
+ *
+ * Polling only tells you the state of a controller at the moment you checked. If a button is pressed
+ * and released between two calls to update(), polling never sees it. Those taps do show up here.
+ *
+ * Events are stored packed into preallocated int arrays, so nothing is allocated when events are added
+ * or read. Reading works like a cursor: next() moves to the oldest unread event and removes it from the
+ * queue, and the getters describe that event until next() is called again.
+ *
+ * <pre>
+ * while(queue.next()) {
+ *     if(queue.getType() == ControllerEventQueue.BUTTON_DOWN &amp;&amp; queue.getButton() == ControllerButton.A) {
+ *         jump(queue.getControllerIndex());
+ *     }
+ * }
+ * </pre>
+ *
+ * If more events come in than the queue can hold, the oldest events are thrown away. getDroppedCount()
+ * tells you how many were lost.
+ *
+ * This class is not thread safe.
+ *
+ * @author William Hartman
+ */
+public final class ControllerEventQueue {
+
+    /**
+     * The event type for a button going down
+     */
+    public static final int BUTTON_DOWN = 1;
+
+    /**
+     * The event type for a button going up
+     */
+    public static final int BUTTON_UP = 2;
+
+    /**
+     * The event type for an axis moving
+     */
+    public static final int AXIS_MOTION = 3;
+
+    private static final ControllerButton[] BUTTONS = ControllerButton.values();
+    private static final ControllerAxis[] AXES = ControllerAxis.values();
+
+    private final int[] timestamps;
+    private final int[] controllers;
+    private final int[] events;
+    private int head;
+    private int size;
+    private long droppedCount;
+
+    private int currTimestamp;
+    private int currController;
+    private int currEvent;
+
+    /**
+     * Constructor. Makes an empty queue that can hold the passed number of events.
+     *
+     * @param capacity The maximum number of events the queue can hold
+     */
+    public ControllerEventQueue(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive!");
+        }
+        timestamps = new int[capacity];
+        controllers = new int[capacity];
+        events = new int[capacity];
+    }
+
+    /**
+     * Add an event to the end of the queue. If the queue is full, the oldest event is thrown away.
+     *
+     * @param timestamp The SDL timestamp of the event in milliseconds
+     * @param type The type of the event
+     * @param controllerIndex The index of the controller the event came from
+     * @param code The ordinal of the ControllerButton or ControllerAxis the event is about
+     * @param value The raw axis value, or 1/0 for buttons
+     */
+    void add(int timestamp, int type, int controllerIndex, int code, int value) {
+        if(size == events.length) {
+            head = (head + 1) % events.length;
+            size--;
+            droppedCount++;
+        }
+
+        int tail = (head + size) % events.length;
+        timestamps[tail] = timestamp;
+        controllers[tail] = controllerIndex;
+        events[tail] = (type << 28) | ((code & 0xF) << 16) | (value & 0xFFFF);
+        size++;
+    }
+
+    /**
+     * Move to the oldest unread event and remove it from the queue.
+     *
+     * @return false if the queue was empty
+     */
+    public boolean next() {
+        if(size == 0) {
+            return false;
+        }
+
+        currTimestamp = timestamps[head];
+        currController = controllers[head];
+        currEvent = events[head];
+        head = (head + 1) % events.length;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the type of the current event. This is BUTTON_DOWN, BUTTON_UP or AXIS_MOTION.
+     *
+     * @return The type of the current event
+     */
+    public int getType() {
+        return currEvent >>> 28;
+    }
+
+    /**
+     * Returns the SDL timestamp of the current event. This is in milliseconds since SDL was initialized.
+     *
+     * @return The timestamp of the current event in milliseconds
+     */
+    public int getTimestamp() {
+        return currTimestamp;
+    }
+
+    /**
+     * Returns the index of the controller the current event came from.
+     *
+     * @return The index of the controller for the current event
+     */
+    public int getControllerIndex() {
+        return currController;
+    }
+
+    /**
+     * Returns the button the current event is about, or null if it is an axis event.
+     *
+     * @return The button for the current event
+     */
+    public ControllerButton getButton() {
+        return getType() == AXIS_MOTION ? null : BUTTONS[(currEvent >>> 16) & 0xF];
+    }
+
+    /**
+     * Returns the axis the current event is about, or null if it is a button event.
+     *
+     * @return The axis for the current event
+     */
+    public ControllerAxis getAxis() {
+        return getType() == AXIS_MOTION ? AXES[(currEvent >>> 16) & 0xF] : null;
+    }
+
+    /**
+     * Returns the new value of the axis for the current event, between -1 and 1, with up on the sticks
+     * being positive.
+     *
+     * This is the unprocessed value. The stick and trigger AxisProfiles aren't applied, since a stick's
+     * dead zone depends on both of its axes and an event only has one, so it won't match what
+     * ControllerIndex.getAxisState() reports for the same position.
+     *
+     * @return The new axis value, or 0 for button events
+     */
+    public float getAxisValue() {
+        if(getType() != AXIS_MOTION) {
+            return 0;
+        }
+
+        ControllerAxis axis = getAxis();
+        if(axis == ControllerAxis.LEFTY || axis == ControllerAxis.RIGHTY) {
+            return -AxisProfile.normalize(getRawValue());
+        }
+        return AxisProfile.normalize(getRawValue());
+    }
+
+    /**
+     * Returns the raw value of the current event. This is the native axis value (-32768 to 32767) for
+     * axis events, and 1 or 0 for button events.
+     *
+     * @return The raw value of the current event
+     */
+    public int getRawValue() {
+        return (short) (currEvent & 0xFFFF);
+    }
+
+    /**
+     * Returns the number of unread events in the queue.
+     *
+     * @return The number of unread events
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of events the queue can hold.
+     *
+     * @return The capacity of the queue
+     */
+    public int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * Returns the number of events that have been thrown away because the queue was full.
+     *
+     * @return The number of dropped events
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Throw away all unread events.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
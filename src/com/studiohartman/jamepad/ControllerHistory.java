@@ -0,0 +1,274 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This class holds the input of one controller for each of the last N frames. It is meant for things
+ * like rollback netcode and replays, where you need to know exactly what a player was pressing on a
+ * given frame.
+ *
+ * Entries are kept in preallocated primitive arrays indexed by frame number modulo the capacity, so
+ * looking up a frame is O(1), memory use is fixed, and nothing is allocated when a frame is recorded or
+ * read. Buttons are stored as a bitmask where bit n is set if the button with ordinal n is held down.
+ * Axes are stored both as raw native values and as they came out of the controller's stick and trigger
+ * profiles on that frame, so changing a profile later doesn't change what the history says was read.
+ *
+ * Frames are recorded by ControllerManager.update() in frame polling mode. A frame number is the value
+ * of ControllerManager.getFrame() right after the update() that polled it.
+ *
+ * This class is not thread safe.
+ *
+ * @author William Hartman
+ */
+public final class ControllerHistory {
+
+    private static final int NUM_AXES = ControllerAxis.values().length;
+
+    private final int capacity;
+    private final long[] frames;
+    private final long[] nanoTimes;
+    private final boolean[] connected;
+    private final String[] names;
+    private final int[] buttons;
+    private final short[] axes;
+    private final float[] axisStates;
+    private final StickPolarMode[] polarModes;
+    private long latestFrame = -1;
+
+    /**
+     * Constructor. Makes an empty history that remembers the passed number of frames.
+     *
+     * @param capacity The number of frames to remember
+     */
+    public ControllerHistory(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive!");
+        }
+
+        this.capacity = capacity;
+        frames = new long[capacity];
+        nanoTimes = new long[capacity];
+        connected = new boolean[capacity];
+        names = new String[capacity];
+        buttons = new int[capacity];
+        axes = new short[capacity * NUM_AXES];
+        axisStates = new float[capacity * NUM_AXES];
+        polarModes = new StickPolarMode[capacity];
+        clear();
+    }
+
+    /**
+     * Record the input of one frame, overwriting whatever frame was held in the same slot.
+     *
+     * @param frame The frame number
+     * @param nanoTime The System.nanoTime() when the frame was polled
+     * @param isConnected Whether or not the controller was connected
+     * @param name The name of the controller
+     * @param buttonMask The held down buttons
+     * @param rawAxes The native values of the axes, in ControllerAxis order
+     * @param processedAxes The axes after the stick and trigger profiles, in ControllerAxis order
+     * @param polarMode How the stick angles of the controller are worked out
+     */
+    void record(long frame, long nanoTime, boolean isConnected, String name, int buttonMask, int[] rawAxes,
+                float[] processedAxes, StickPolarMode polarMode) {
+        int slot = slot(frame);
+        frames[slot] = frame;
+        nanoTimes[slot] = nanoTime;
+        connected[slot] = isConnected;
+        names[slot] = name;
+        buttons[slot] = buttonMask;
+        for(int i = 0; i < NUM_AXES; i++) {
+            axes[slot * NUM_AXES + i] = (short) rawAxes[i];
+            axisStates[slot * NUM_AXES + i] = processedAxes[i];
+        }
+        polarModes[slot] = polarMode;
+        if(frame > latestFrame) {
+            latestFrame = frame;
+        }
+    }
+
+    /**
+     * Forget every recorded frame.
+     */
+    public void clear() {
+        for(int i = 0; i < capacity; i++) {
+            frames[i] = -1;
+            names[i] = null;
+            polarModes[i] = null;
+        }
+        latestFrame = -1;
+    }
+
+    /**
+     * Returns the number of frames this history can remember.
+     *
+     * @return The capacity of this history
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of the most recently recorded frame, or -1 if nothing has been recorded.
+     *
+     * @return The latest frame number
+     */
+    public long getLatestFrame() {
+        return latestFrame;
+    }
+
+    /**
+     * Returns whether or not the passed frame is still held in this history.
+     *
+     * @param frame The frame number
+     * @return Whether or not the frame is available
+     */
+    public boolean contains(long frame) {
+        return frame >= 0 && frames[slot(frame)] == frame;
+    }
+
+    /**
+     * Returns whether or not the controller was connected on the passed frame.
+     *
+     * @param frame The frame number
+     * @return Whether or not the controller was connected
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public boolean isConnected(long frame) {
+        return connected[checkedSlot(frame)];
+    }
+
+    /**
+     * Returns the buttons held down on the passed frame as a bitmask. Bit n is set if the button with
+     * ordinal n was held down.
+     *
+     * @param frame The frame number
+     * @return The held down buttons
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public int getButtonMask(long frame) {
+        return buttons[checkedSlot(frame)];
+    }
+
+    /**
+     * Returns whether or not the passed button was held down on the passed frame.
+     *
+     * @param frame The frame number
+     * @param button The button to check
+     * @return Whether or not the button was held down
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public boolean isButtonPressed(long frame, ControllerButton button) {
+        return (getButtonMask(frame) & (1 << button.ordinal())) != 0;
+    }
+
+    /**
+     * Returns the native value of the passed axis on the passed frame (-32768 to 32767).
+     *
+     * @param frame The frame number
+     * @param axis The axis to check
+     * @return The raw value of the axis
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public int getRawAxis(long frame, ControllerAxis axis) {
+        return axes[checkedSlot(frame) * NUM_AXES + axis.ordinal()];
+    }
+
+    /**
+     * Returns the value of the passed axis on the passed frame, as ControllerIndex.getAxisState()
+     * returned it on that frame: through the stick or trigger profile, with up on the sticks being
+     * positive.
+     *
+     * @param frame The frame number
+     * @param axis The axis to check
+     * @return The value of the axis
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public float getAxisState(long frame, ControllerAxis axis) {
+        return axisStates[checkedSlot(frame) * NUM_AXES + axis.ordinal()];
+    }
+
+    /**
+     * Returns the System.nanoTime() at which the passed frame was polled.
+     *
+     * @param frame The frame number
+     * @return The time the frame was polled
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public long getNanoTime(long frame) {
+        return nanoTimes[checkedSlot(frame)];
+    }
+
+    /**
+     * Returns the buttons that are held down in one of the two passed frames but not in the other.
+     *
+     * @param frameA The first frame number
+     * @param frameB The second frame number
+     * @return A bitmask of the buttons that differ between the two frames
+     * @throws IllegalArgumentException if either frame isn't held in this history
+     */
+    public int getChangedButtons(long frameA, long frameB) {
+        return getButtonMask(frameA) ^ getButtonMask(frameB);
+    }
+
+    /**
+     * Returns whether or not the input was exactly the same on the two passed frames. This compares
+     * the connection state, the buttons and the raw axis values.
+     *
+     * @param frameA The first frame number
+     * @param frameB The second frame number
+     * @return Whether or not the input was the same on both frames
+     * @throws IllegalArgumentException if either frame isn't held in this history
+     */
+    public boolean isSameInput(long frameA, long frameB) {
+        int slotA = checkedSlot(frameA);
+        int slotB = checkedSlot(frameB);
+        if(connected[slotA] != connected[slotB] || buttons[slotA] != buttons[slotB]) {
+            return false;
+        }
+        for(int i = 0; i < NUM_AXES; i++) {
+            if(axes[slotA * NUM_AXES + i] != axes[slotB * NUM_AXES + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Overwrite the passed buffer with the state of the controller on the passed frame. Buttons that
+     * were held down on the passed frame but not the one before it are reported as just pressed, and the
+     * other way around as just released. If the frame before isn't held in this history, no buttons are
+     * reported as just pressed or released. The stick angles are worked out with the polar mode the
+     * controller had on the passed frame.
+     *
+     * @param frame The frame number
+     * @param out The buffer that will be overwritten
+     * @return The passed buffer
+     * @throws IllegalArgumentException if the frame isn't held in this history
+     */
+    public ControllerStateBuffer stateAt(long frame, ControllerStateBuffer out) {
+        int slot = checkedSlot(frame);
+        if(!connected[slot]) {
+            out.setDisconnected();
+            return out;
+        }
+
+        int pressed = buttons[slot];
+        int changed = contains(frame - 1) ? pressed ^ buttons[slot(frame - 1)] : 0;
+        int base = slot * NUM_AXES;
+        out.set(polarModes[slot], names[slot], pressed, changed & pressed, changed & ~pressed,
+                axisStates[base + ControllerAxis.LEFTX.ordinal()], axisStates[base + ControllerAxis.LEFTY.ordinal()],
+                axisStates[base + ControllerAxis.RIGHTX.ordinal()], axisStates[base + ControllerAxis.RIGHTY.ordinal()],
+                axisStates[base + ControllerAxis.TRIGGERLEFT.ordinal()], axisStates[base + ControllerAxis.TRIGGERRIGHT.ordinal()]);
+        return out;
+    }
+
+    private int slot(long frame) {
+        return (int) (frame % capacity);
+    }
+
+    private int checkedSlot(long frame) {
+        if(!contains(frame)) {
+            throw new IllegalArgumentException("Frame " + frame + " is not held in this history!");
+        }
+        return slot(frame);
+    }
+}
@@ -1,7 +1,5 @@
 package com.studiohartman.jamepad;
 
-import org.libsdl.SDL;
-
 /**
  * This class is the main thing you're gonna need to deal with if you want lots of
  * control over your gamepads or want to avoid lots of ControllerState allocations.
@@ -16,37 +14,110 @@ import org.libsdl.SDL;
  */
 public final class ControllerIndex {
 
-    private static final float AXIS_MAX_VAL = 32767;
+    private static final int NUM_BUTTONS = ControllerButton.values().length;
+    private static final int LEFTX = ControllerAxis.LEFTX.ordinal();
+    private static final int LEFTY = ControllerAxis.LEFTY.ordinal();
+    private static final int RIGHTX = ControllerAxis.RIGHTX.ordinal();
+    private static final int RIGHTY = ControllerAxis.RIGHTY.ordinal();
+    private static final int TRIGGERLEFT = ControllerAxis.TRIGGERLEFT.ordinal();
+    private static final int TRIGGERRIGHT = ControllerAxis.TRIGGERRIGHT.ordinal();
+    private final ControllerBackend backend;
+    private final ControllerMetrics metrics;
+    private final ControllerSlots slots;
     private int index;
     private long controllerPtr;
+    private int instanceId = -1;
+    private ControllerInfo info;
+    private boolean attached;
+
+    private int heldButtons;
+    private int justPressedButtons;
+    private int justReleasedButtons;
 
-    private boolean[] heldDownButtons;
-    private boolean[] justPressedButtons;
+    private final boolean replaying;
+    private boolean framePolling;
+    private boolean polledConnected;
+    private int[] polledAxes;
+    private final float[] processedAxes = new float[ControllerAxis.values().length];
+    private final float[] stickScratch = new float[2];
+    private final int[] eventAxes = new int[ControllerAxis.values().length];
+    private final float[] eventScratch = new float[2];
+    private volatile AxisProfile stickProfile = AxisProfile.LINEAR;
+    private volatile AxisProfile triggerProfile = AxisProfile.LINEAR;
+    private volatile StickPolarMode polarMode = StickPolarMode.EXACT;
+    private ControllerHistory history;
+    private volatile ComboRecognizer combos;
 
     /**
-     * Constructor. Builds a controller at the given index and attempts to connect to it.
+     * Constructor. Builds an empty controller slot at the given index. Nothing is connected until
+     * connectDevice() is called. If replaying is true, no native gamepad is ever connected. Instead, the
+     * state of the controller is set each frame from an InputReplay by ControllerManager.
+     *
      * This is only accessible in the Jamepad package, so people can't go trying to make controllers
      * before the native library is loaded or initialized.
      *
+     * @param backend The backend used to talk to the gamepad
+     * @param metrics The metrics native calls and exceptions are counted in
+     * @param slots The slot table this controller is held in, which is told when it is opened or closed
      * @param index The index of the controller
+     * @param replaying Whether or not this controller is driven by a replay
      */
-    ControllerIndex(int index) {
+    ControllerIndex(ControllerBackend backend, ControllerMetrics metrics, ControllerSlots slots, int index, boolean replaying) {
+        this.backend = backend;
+        this.metrics = metrics;
+        this.slots = slots;
         this.index = index;
+        this.replaying = replaying;
+        this.framePolling = replaying;
 
-        heldDownButtons = new boolean[ControllerButton.values().length];
-        justPressedButtons = new boolean[ControllerButton.values().length];
-        for(int i = 0; i < heldDownButtons.length; i++) {
-            heldDownButtons[i] = false;
-            justPressedButtons[i] = false;
-        }
-
-        connectController();
+        polledAxes = new int[ControllerAxis.values().length];
     }
     private void connectController() {
-        controllerPtr = nativeConnectController(index);
+        connectDevice(index);
+    }
+
+    /**
+     * Close this controller and connect to the native gamepad with the passed device index instead.
+     * ControllerManager uses this to put a newly plugged in controller into a free slot without touching
+     * the other slots.
+     *
+     * @param deviceIndex The SDL device index of the gamepad to connect to
+     */
+    void connectDevice(int deviceIndex) {
+        if(replaying) {
+            return;
+        }
+        close();
+        heldButtons = 0;
+        justPressedButtons = 0;
+        justReleasedButtons = 0;
+        for(int i = 0; i < eventAxes.length; i++) {
+            eventAxes[i] = 0;
+        }
+
+        Object event = FlightRecorderEvents.beginDeviceOpen();
+        controllerPtr = nativeConnectController(deviceIndex);
+        if(controllerPtr != 0) {
+            instanceId = nativeGetInstanceId(controllerPtr);
+            info = new ControllerInfo(nativeGetName(controllerPtr), nativeGetGUID(controllerPtr),
+                    nativeGetVendor(controllerPtr), nativeGetProduct(controllerPtr));
+            attached = nativeIsConnected(controllerPtr);
+            slots.opened(index, instanceId);
+        } else {
+            instanceId = -1;
+            info = null;
+            attached = false;
+        }
+        polledConnected = attached;
+        FlightRecorderEvents.commitDeviceOpen(event, this, deviceIndex);
     }
     private long nativeConnectController(int index){
-        return SDL.SDL_GameControllerOpen(index);
+        metrics.nativeCalls++;
+        return backend.open(index);
+    }
+    private int nativeGetInstanceId(long controllerPtr){
+        metrics.nativeCalls++;
+        return backend.getInstanceId(controllerPtr);
     }
 
     /**
@@ -54,26 +125,32 @@ public final class ControllerIndex {
      */
     public void close() {
         if(controllerPtr != 0) {
+            String closedGuid = getGUIDIfOpen();
+            int closedInstanceId = instanceId;
+            Object event = FlightRecorderEvents.beginDeviceClose();
             nativeClose(controllerPtr);
             controllerPtr = 0;
+            instanceId = -1;
+            slots.closed(index, closedInstanceId);
+            FlightRecorderEvents.commitDeviceClose(event, index, closedInstanceId, closedGuid);
+        }
+        if(!replaying) {
+            info = null;
         }
+        attached = false;
+        polledConnected = false;
     }
     private void nativeClose(long controllerPtr){
-        if(controllerPtr != 0 && SDL.SDL_GameControllerGetAttached(controllerPtr)) {
-            SDL.SDL_GameControllerClose(controllerPtr);
-        }
-    } /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        if(pad && SDL_GameControllerGetAttached(pad)) {
-            SDL_GameControllerClose(pad);
-        }
-        pad = NULL;
-    */
+        metrics.nativeCalls++;
+        backend.close(controllerPtr);
+    }
 
     /**
      * Close and reconnect to the native gamepad at the index associated with this ControllerIndex object.
-     * This is will refresh the gamepad represented here. This should be called if something is plugged
-     * in or unplugged.
+     * This is will refresh the gamepad represented here.
+     *
+     * ControllerManager.update() takes care of controllers being plugged in or unplugged by itself, so
+     * you usually don't need to call this.
      *
      * @return whether or not the controller could successfully reconnect.
      */
@@ -85,24 +162,311 @@ public final class ControllerIndex {
     }
 
     /**
-     * Return whether or not the controller is currently connected. This first checks that the controller
-     * was successfully connected to our SDL backend. Then we check if the controller is currently plugged
-     * in.
+     * Turns frame-scoped polling on or off for this controller. While it is on, queries don't touch the
+     * native code at all. They are answered from the snapshot taken by the last call to pollFrame(), which
+     * ControllerManager.update() does once per frame.
+     *
+     * @param framePolling Whether or not queries should be answered from the last snapshot
+     */
+    void setFramePolling(boolean framePolling) {
+        if(replaying) {
+            return;
+        }
+        this.framePolling = framePolling;
+        polledConnected = attached;
+    }
+
+    /**
+     * Reads every button and axis of this controller into the snapshot used in frame polling mode.
+     * Just pressed buttons are the ones that are held down now but weren't in the previous snapshot.
+     *
+     * The backend isn't updated here, the caller is expected to have done that once for all controllers.
+     *
+     * @param frame The number of the frame being polled, used for the input history
+     */
+    void pollFrame(long frame) {
+        polledConnected = attached;
+
+        setButtons(polledConnected ? nativeReadButtons(controllerPtr) : 0);
+        for(int i = 0; i < polledAxes.length; i++) {
+            polledAxes[i] = polledConnected ? nativeReadAxis(controllerPtr, i) : 0;
+        }
+        processAxes();
+
+        if(history != null) {
+            history.record(frame, System.nanoTime(), polledConnected, getPolledName(), getHeldButtonMask(), polledAxes,
+                    processedAxes, polarMode);
+        }
+        advanceCombos(frame);
+    }
+
+    /**
+     * Sets the snapshot used in frame polling mode to the current frame of the passed replay. This is
+     * the replay version of pollFrame().
+     *
+     * @param frame The number of the frame being played back, used for the input history
+     * @param replay The replay to read this controller's state from
+     */
+    void replayFrame(long frame, InputReplay replay) {
+        boolean inReplay = index < replay.getNumControllers();
+        polledConnected = inReplay && replay.isConnected(index);
+        if(polledConnected) {
+            String replayedName = replay.getName(index);
+            if(info == null || !info.name.equals(replayedName)) {
+                info = new ControllerInfo(replayedName, null, 0, 0);
+            }
+        }
+
+        int buttonMask = polledConnected ? replay.getButtonMask(index) : 0;
+        setButtons(buttonMask);
+        for(int i = 0; i < polledAxes.length; i++) {
+            polledAxes[i] = polledConnected ? replay.getRawAxis(index, i) : 0;
+        }
+        processAxes();
+
+        if(history != null) {
+            history.record(frame, replay.getFrameNanoTime(), polledConnected, getPolledName(), buttonMask, polledAxes,
+                    processedAxes, polarMode);
+        }
+        advanceCombos(frame);
+    }
+
+    private void advanceCombos(long frame) {
+        ComboRecognizer recognizer = combos;
+        if(recognizer != null && index < recognizer.getMaxControllers()) {
+            recognizer.advance(index, frame, heldButtons, justPressedButtons,
+                    processedAxes[LEFTX], processedAxes[LEFTY]);
+        }
+    }
+
+    /**
+     * Run every axis in the snapshot through the axis profiles once, so queries until the next snapshot
+     * are just array reads.
+     */
+    private void processAxes() {
+        AxisProfile sticks = stickProfile;
+        AxisProfile triggers = triggerProfile;
+        sticks.processStick(polledAxes[LEFTX], polledAxes[LEFTY], processedAxes, LEFTX, LEFTY);
+        sticks.processStick(polledAxes[RIGHTX], polledAxes[RIGHTY], processedAxes, RIGHTX, RIGHTY);
+
+        //Note: we flip the Y values so up on the stick is positive. that makes more sense.
+        processedAxes[LEFTY] = -processedAxes[LEFTY];
+        processedAxes[RIGHTY] = -processedAxes[RIGHTY];
+
+        processedAxes[TRIGGERLEFT] = triggers.processAxis(polledAxes[TRIGGERLEFT]);
+        processedAxes[TRIGGERRIGHT] = triggers.processAxis(polledAxes[TRIGGERRIGHT]);
+    }
+
+    /**
+     * Set how the stick axes of this controller are processed. See AxisProfile. In frame polling mode,
+     * the current snapshot is processed again right away.
+     *
+     * ControllerManager.setStickProfile() sets this for every controller.
+     *
+     * @param profile The profile for both sticks
+     */
+    public void setStickProfile(AxisProfile profile) {
+        if(profile == null) {
+            throw new IllegalArgumentException("The profile can't be null!");
+        }
+        stickProfile = profile;
+        processAxes();
+    }
+
+    /**
+     * Set how the trigger axes of this controller are processed. See AxisProfile. Triggers are always
+     * processed one axis at a time, so radial dead zones don't apply.
+     *
+     * ControllerManager.setTriggerProfile() sets this for every controller.
+     *
+     * @param profile The profile for both triggers
+     */
+    public void setTriggerProfile(AxisProfile profile) {
+        if(profile == null) {
+            throw new IllegalArgumentException("The profile can't be null!");
+        }
+        triggerProfile = profile;
+        processAxes();
+    }
+
+    /**
+     * Returns the profile the sticks are processed with.
+     *
+     * @return The stick profile
+     */
+    public AxisProfile getStickProfile() {
+        return stickProfile;
+    }
+
+    /**
+     * Returns the profile the triggers are processed with.
+     *
+     * @return The trigger profile
+     */
+    public AxisProfile getTriggerProfile() {
+        return triggerProfile;
+    }
+
+    /**
+     * Set how ControllerState and ControllerStateBuffer fill in the stick angles and magnitudes for this
+     * controller. ControllerManager.setStickPolarMode() sets this for every controller.
+     *
+     * @param polarMode How the stick angles and magnitudes are worked out
+     */
+    void setStickPolarMode(StickPolarMode polarMode) {
+        this.polarMode = polarMode;
+    }
+
+    StickPolarMode getStickPolarMode() {
+        return polarMode;
+    }
+
+    /**
+     * Returns the name of the controller in the current snapshot, or null if it isn't connected.
+     *
+     * @return The name of the controller
+     */
+    String getPolledName() {
+        return polledConnected ? readName() : null;
+    }
+
+    /**
+     * Returns the native value of the passed axis in the current snapshot.
+     *
+     * @param axisIndex The ordinal of the axis
+     * @return The raw value of the axis
+     */
+    int getRawAxis(int axisIndex) {
+        return polledAxes[axisIndex];
+    }
+
+    /**
+     * Returns the buttons held down as of the last read as a bitmask, without reading anything. Bit n is
+     * set if the button with ordinal n is held down.
+     *
+     * @return The held down buttons
+     */
+    int getHeldButtonMask() {
+        return heldButtons;
+    }
+
+    /**
+     * Returns the buttons that went down on the last read as a bitmask, without reading anything.
+     *
+     * @return The just pressed buttons
+     */
+    int getPolledJustPressedMask() {
+        return justPressedButtons;
+    }
+
+    /**
+     * Returns the buttons that went up on the last read as a bitmask, without reading anything.
+     *
+     * @return The just released buttons
+     */
+    int getPolledJustReleasedMask() {
+        return justReleasedButtons;
+    }
+
+    /**
+     * Replace the held down buttons with the passed mask, and work out which buttons went down and which
+     * went up for all of them at once.
+     */
+    private void setButtons(int pressed) {
+        int changed = pressed ^ heldButtons;
+        justPressedButtons = changed & pressed;
+        justReleasedButtons = changed & heldButtons;
+        heldButtons = pressed;
+    }
+
+    /**
+     * Start keeping the input of this controller for the last capacity frames. Frames are only recorded
+     * in frame polling mode, once per call to ControllerManager.update(). Any history kept before is
+     * thrown away.
+     *
+     * @param capacity The number of frames to remember
+     * @return The history that frames will be recorded into
+     */
+    public ControllerHistory enableHistory(int capacity) {
+        history = new ControllerHistory(capacity);
+        return history;
+    }
+
+    /**
+     * Stop keeping the input history of this controller.
+     */
+    public void disableHistory() {
+        history = null;
+    }
+
+    /**
+     * Returns the input history of this controller, or null if enableHistory() hasn't been called.
+     *
+     * @return The input history of this controller
+     */
+    public ControllerHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Set the recognizer fed this controller's input each polled frame, or null to stop. Like the history,
+     * this only happens in frame polling mode. ControllerManager.setComboRecognizer() sets this for every
+     * controller.
+     *
+     * @param recognizer The recognizer
+     */
+    void setComboRecognizer(ComboRecognizer recognizer) {
+        combos = recognizer;
+    }
+
+    /**
+     * Return whether or not the controller is currently connected.
+     *
+     * This doesn't ask the native code. Whether or not the controller is plugged in is checked once when
+     * it's opened, and after that it's only changed when ControllerManager.update() sees it get unplugged.
+     * So if you're using ControllerIndex objects directly, you still need to call update() to find out
+     * about disconnections.
      *
      * @return Whether or not the controller is plugged in.
      */
     public boolean isConnected() {
-        return controllerPtr != 0 && nativeIsConnected(controllerPtr);
+        if(framePolling) {
+            return polledConnected;
+        }
+        return attached;
     }
     private boolean nativeIsConnected(long controllerPtr){
-        return (controllerPtr != 0 && SDL.SDL_GameControllerGetAttached(controllerPtr));
-    }; /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        if (pad && SDL_GameControllerGetAttached(pad)) {
-            return JNI_TRUE;
-        }
-        return JNI_FALSE;
-    */
+        metrics.nativeCalls++;
+        return backend.isAttached(controllerPtr);
+    }
+
+    /**
+     * Mark this controller as unplugged. ControllerManager calls this as soon as it sees the controller's
+     * removal event, even if the slot isn't closed until later.
+     */
+    void markDetached() {
+        attached = false;
+    }
+
+    /**
+     * Returns whether or not this slot currently holds an open native gamepad. Unlike isConnected(), this
+     * doesn't check if the gamepad is still plugged in.
+     *
+     * @return Whether or not a native gamepad is open
+     */
+    boolean isOpen() {
+        return controllerPtr != 0;
+    }
+
+    /**
+     * Returns the SDL joystick instance ID of the connected controller, or -1 if nothing was connected.
+     * SDL events identify controllers by this ID.
+     *
+     * @return The instance ID of the connected controller
+     */
+    int getInstanceId() {
+        return instanceId;
+    }
 
     /**
      * Returns the index of the current controller.
@@ -128,12 +492,9 @@ public final class ControllerIndex {
     }
 
     private boolean nativeDoVibration(long controllerPtr, int leftMagnitude, int rightMagnitude, int duration_ms){
-        long joystick = SDL.SDL_GameControllerGetJoystick(controllerPtr);
-        return SDL.SDL_JoystickRumble(joystick, leftMagnitude, rightMagnitude, duration_ms);
-    }; /*
-        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
-        return SDL_JoystickRumble(joystick, leftMagnitude, rightMagnitude,  duration_ms) == 0;
-    */
+        metrics.nativeCalls++;
+        return backend.rumble(controllerPtr, leftMagnitude, rightMagnitude, duration_ms);
+    }
 
     /**
      * Vibrate the controller using the new rumble API
@@ -156,7 +517,36 @@ public final class ControllerIndex {
             throw new IllegalArgumentException("The passed values are not in the range 0 to 1!");
         }
 
-        return nativeDoVibration(controllerPtr, (int) (65535 * leftMagnitude), (int) (65535 * rightMagnitude), duration_ms);
+        //Replayed controllers have nothing to vibrate
+        if(controllerPtr == 0) {
+            return false;
+        }
+
+        Object event = FlightRecorderEvents.beginVibration();
+        boolean started = nativeDoVibration(controllerPtr, (int) (65535 * leftMagnitude), (int) (65535 * rightMagnitude), duration_ms);
+        FlightRecorderEvents.commitVibration(event, this, leftMagnitude, rightMagnitude, duration_ms, started);
+        return started;
+    }
+
+    /**
+     * Send a rumble command queued by the HapticsMixer. ControllerManager calls this from the polling
+     * thread. Unlike doVibration(), it doesn't throw if the controller is unplugged.
+     *
+     * @param leftMagnitude The speed of the left motor (0 to 65535)
+     * @param rightMagnitude The speed of the right motor (0 to 65535)
+     * @param duration_ms How long to vibrate for
+     * @return Whether or not vibration was started
+     */
+    boolean sendRumble(int leftMagnitude, int rightMagnitude, int duration_ms) {
+        if(controllerPtr == 0 || !attached) {
+            return false;
+        }
+
+        Object event = FlightRecorderEvents.beginVibration();
+        boolean started = nativeDoVibration(controllerPtr, leftMagnitude, rightMagnitude, duration_ms);
+        FlightRecorderEvents.commitVibration(event, this, leftMagnitude / 65535f, rightMagnitude / 65535f,
+                duration_ms, started);
+        return started;
     }
 
     /**
@@ -176,7 +566,7 @@ public final class ControllerIndex {
      */
     public boolean isButtonPressed(ControllerButton toCheck) throws ControllerUnpluggedException {
         updateButton(toCheck.ordinal());
-        return heldDownButtons[toCheck.ordinal()];
+        return (heldButtons & (1 << toCheck.ordinal())) != 0;
     }
 
     /**
@@ -185,33 +575,135 @@ public final class ControllerIndex {
      * side of things). If the button was not pressed the last time you checked but is now, this method
      * will return true.
      *
+     * In frame polling mode, this is instead whether the button went down between the last two calls to
+     * ControllerManager.update(), no matter how many times it is queried.
+     *
      * @param toCheck The ControllerButton to check the state of
      * @return Whether or not the button has just been pressed.
      * @throws ControllerUnpluggedException If the controller is not connected
      */
     public boolean isButtonJustPressed(ControllerButton toCheck) throws ControllerUnpluggedException {
         updateButton(toCheck.ordinal());
-        return justPressedButtons[toCheck.ordinal()];
+        return (justPressedButtons & (1 << toCheck.ordinal())) != 0;
+    }
+
+    /**
+     * Returns whether or not a given button has just been released since you last made a query about
+     * that button. This works just like isButtonJustPressed(), but for the button going up.
+     *
+     * @param toCheck The ControllerButton to check the state of
+     * @return Whether or not the button has just been released.
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public boolean isButtonJustReleased(ControllerButton toCheck) throws ControllerUnpluggedException {
+        updateButton(toCheck.ordinal());
+        return (justReleasedButtons & (1 << toCheck.ordinal())) != 0;
+    }
+
+    /**
+     * Returns every held down button as a bitmask. Bit n is set if the ControllerButton with ordinal n
+     * is held down, so this is one read instead of one query per button, and two masks can be compared
+     * with ==.
+     *
+     * Outside of frame polling mode, all buttons are read from the native code at once, and the masks
+     * returned by getJustPressedMask() and getJustReleasedMask() are updated to match this read.
+     *
+     * @return The held down buttons
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public int getButtonMask() throws ControllerUnpluggedException {
+        updateButtons();
+        return heldButtons;
+    }
+
+    /**
+     * Returns every button that was just pressed as a bitmask, laid out like getButtonMask(). Outside
+     * of frame polling mode, all buttons are read again, so this is the buttons that went down since the
+     * last read. In frame polling mode, it's the buttons that went down between the last two calls to
+     * ControllerManager.update().
+     *
+     * @return The just pressed buttons
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public int getJustPressedMask() throws ControllerUnpluggedException {
+        updateButtons();
+        return justPressedButtons;
+    }
+
+    /**
+     * Returns every button that was just released as a bitmask, laid out like getButtonMask(). This
+     * works just like getJustPressedMask(), but for buttons going up.
+     *
+     * @return The just released buttons
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public int getJustReleasedMask() throws ControllerUnpluggedException {
+        updateButtons();
+        return justReleasedButtons;
     }
 
     private void updateButton(int buttonIndex) throws ControllerUnpluggedException {
         ensureConnected();
 
-        boolean currButtonIsPressed = nativeCheckButton(controllerPtr, buttonIndex);
-        justPressedButtons[buttonIndex] = (currButtonIsPressed && !heldDownButtons[buttonIndex]);
-        heldDownButtons[buttonIndex] = currButtonIsPressed;
+        //In frame polling mode the button states only change in pollFrame()
+        if(framePolling) {
+            return;
+        }
+
+        int bit = 1 << buttonIndex;
+        int pressed = nativeCheckButton(controllerPtr, buttonIndex) ? heldButtons | bit : heldButtons & ~bit;
+        int changed = pressed ^ heldButtons;
+        justPressedButtons = (justPressedButtons & ~bit) | (changed & pressed);
+        justReleasedButtons = (justReleasedButtons & ~bit) | (changed & heldButtons);
+        heldButtons = pressed;
+    }
+
+    /**
+     * Read every button from the native code at once, unless frame polling is on. ControllerState and
+     * ControllerStateBuffer use this so one update covers all buttons.
+     *
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    void updateButtons() throws ControllerUnpluggedException {
+        ensureConnected();
+
+        //In frame polling mode the button states only change in pollFrame()
+        if(framePolling) {
+            return;
+        }
+
+        nativeUpdate();
+        setButtons(nativeReadButtons(controllerPtr));
     }
     private boolean nativeCheckButton(long controllerPtr, int buttonIndex) {
-        SDL.SDL_GameControllerUpdate();
-        return SDL.SDL_GameControllerGetButton(controllerPtr, buttonIndex)==1;
-    }/*
-        SDL_GameControllerUpdate();
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerGetButton(pad, (SDL_GameControllerButton) buttonIndex);
-    */
+        nativeUpdate();
+        return nativeReadButton(controllerPtr, buttonIndex);
+    }
+    private void nativeUpdate() {
+        metrics.nativeCalls++;
+        backend.update();
+    }
+    private int nativeReadButtons(long controllerPtr) {
+        int pressed = 0;
+        for(int i = 0; i < NUM_BUTTONS; i++) {
+            if(nativeReadButton(controllerPtr, i)) {
+                pressed |= 1 << i;
+            }
+        }
+        return pressed;
+    }
+    private boolean nativeReadButton(long controllerPtr, int buttonIndex) {
+        metrics.nativeCalls++;
+        return backend.getButton(controllerPtr, buttonIndex);
+    }
 
     /**
-     * Returns the current state of a passed axis.
+     * Returns the current state of a passed axis, after it's been through the stick or trigger profile.
+     * With the default profiles, sticks are between -1 and 1, and triggers are between 0 and 1.
+     *
+     * In frame polling mode, every axis is processed once per frame, so this is just an array read.
+     * Otherwise, the axis is read and processed now. With a radial dead zone, that means reading the
+     * other axis of the same stick too.
      *
      * @param toCheck The ControllerAxis to check the state of
      * @return The current state of the requested axis.
@@ -220,54 +712,137 @@ public final class ControllerIndex {
     public float getAxisState(ControllerAxis toCheck) throws ControllerUnpluggedException {
         ensureConnected();
 
-        float toReturn;
+        int axis = toCheck.ordinal();
+        if(framePolling) {
+            return processedAxes[axis];
+        }
 
-        //Note: we flip the Y values so up on the stick is positive. that makes more sense.
-        if(toCheck == ControllerAxis.LEFTY || toCheck == ControllerAxis.RIGHTY) {
-            toReturn = nativeCheckAxis(controllerPtr, toCheck.ordinal()) / -AXIS_MAX_VAL;
+        if(axis == TRIGGERLEFT || axis == TRIGGERRIGHT) {
+            return triggerProfile.processAxis(nativeCheckAxis(controllerPtr, axis));
+        }
+
+        float toReturn;
+        AxisProfile sticks = stickProfile;
+        if(sticks.isRadial()) {
+            int stickX = axis & ~1;
+            nativeUpdate();
+            sticks.processStick(nativeReadAxis(controllerPtr, stickX), nativeReadAxis(controllerPtr, stickX + 1),
+                    stickScratch, 0, 1);
+            toReturn = stickScratch[axis - stickX];
         } else {
-            toReturn = nativeCheckAxis(controllerPtr, toCheck.ordinal()) / AXIS_MAX_VAL;
+            toReturn = sticks.processAxis(nativeCheckAxis(controllerPtr, axis));
         }
 
+        //Note: we flip the Y values so up on the stick is positive. that makes more sense.
+        if(axis == LEFTY || axis == RIGHTY) {
+            toReturn = -toReturn;
+        }
         return toReturn;
     }
+
+    /**
+     * Remember the raw value of an axis from an axis motion event, for getEventAxisState().
+     *
+     * @param axis The ordinal of the axis
+     * @param raw The raw value from the event
+     */
+    void setEventAxis(int axis, int raw) {
+        eventAxes[axis] = raw;
+    }
+
+    /**
+     * Returns an axis as of the last axis motion event for it, through the stick or trigger profile the
+     * same way getAxisState() does it, so listeners see the same values as everything else. With a
+     * radial dead zone, the other axis of the stick is taken from its last event too. No native calls
+     * are made.
+     *
+     * @param axis The ordinal of the axis
+     * @return The processed value of the axis
+     */
+    float getEventAxisState(int axis) {
+        if(axis == TRIGGERLEFT || axis == TRIGGERRIGHT) {
+            return triggerProfile.processAxis(eventAxes[axis]);
+        }
+
+        int stickX = axis & ~1;
+        stickProfile.processStick(eventAxes[stickX], eventAxes[stickX + 1], eventScratch, 0, 1);
+        float value = eventScratch[axis - stickX];
+
+        //Note: we flip the Y values so up on the stick is positive, like everywhere else
+        return axis == LEFTY || axis == RIGHTY ? -value : value;
+    }
+
     private int nativeCheckAxis(long controllerPtr, int axisIndex){
-        SDL.SDL_GameControllerUpdate();
-        return SDL.SDL_GameControllerGetAxis(controllerPtr, axisIndex);
-    } /*
-        SDL_GameControllerUpdate();
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerGetAxis(pad, (SDL_GameControllerAxis) axisIndex);
-    */
+        nativeUpdate();
+        return nativeReadAxis(controllerPtr, axisIndex);
+    }
+    private int nativeReadAxis(long controllerPtr, int axisIndex){
+        metrics.nativeCalls++;
+        return backend.getAxis(controllerPtr, axisIndex);
+    }
 
     /**
      * Returns the implementation dependent name of this controller.
      *
+     * The name is read from the native code when the controller is opened, and the same String is
+     * returned until the controller is reconnected.
+     *
      * @return The the name of this controller
      * @throws ControllerUnpluggedException If the controller is not connected
      */
     public String getName() throws ControllerUnpluggedException {
         ensureConnected();
-        String controllerName = nativeGetName(controllerPtr);
+        return readName();
+    }
+    private String readName() {
+        return info != null ? info.name : "Unnamed Controller";
+    }
 
-        //Return a descriptive string instead of null if the attached controller does not have a name
-        if(controllerName == null) {
-            return "Unnamed Controller";
-        }
-        return controllerName;
+    /**
+     * Returns the name, GUID, USB IDs and type of this controller. These are read from the native code
+     * once when the controller is opened, so this is just a field read. A controller being played back
+     * from an InputReplay only has its name filled in.
+     *
+     * @return The information about this controller
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public ControllerInfo getInfo() throws ControllerUnpluggedException {
+        ensureConnected();
+        return info;
     }
     private  String nativeGetName(long controllerPtr){
-        return SDL.SDL_GameControllerName(controllerPtr);
-    }; /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return env->NewStringUTF(SDL_GameControllerName(pad));
-    */
+        metrics.nativeCalls++;
+        return backend.getName(controllerPtr);
+    }
+
+    private String nativeGetGUID(long controllerPtr){
+        metrics.nativeCalls++;
+        return backend.getGUID(controllerPtr);
+    }
+    private int nativeGetVendor(long controllerPtr){
+        metrics.nativeCalls++;
+        return backend.getVendor(controllerPtr);
+    }
+    private int nativeGetProduct(long controllerPtr){
+        metrics.nativeCalls++;
+        return backend.getProduct(controllerPtr);
+    }
+
+    /**
+     * Returns the GUID of the open native gamepad, or null if nothing is open.
+     *
+     * @return The GUID of the open gamepad
+     */
+    String getGUIDIfOpen() {
+        return controllerPtr != 0 && info != null ? info.guid : null;
+    }
 
     /**
      * Convenience method to throw an exception if the controller is not connected.
      */
     private void ensureConnected() throws ControllerUnpluggedException {
         if(!isConnected()) {
+            metrics.exceptions++;
             throw new ControllerUnpluggedException("Controller at index " + index + " is not connected!");
         }
     }
@@ -0,0 +1,58 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This class describes a controller that was opened by Jamepad: its name, GUID, USB IDs and type.
+ * None of this changes while a controller is plugged in, so it's read from the native code once when the
+ * controller is opened, and never again.
+ *
+ * All fields are public, but immutable.
+ *
+ * @author William Hartman
+ */
+public final class ControllerInfo {
+
+    /**
+     * The GUID SDL reports when it doesn't know the real one.
+     */
+    public static final String UNKNOWN_GUID = "00000000000000000000000000000000";
+
+    /**
+     * The implementation dependent name of the controller (i.e. "PS4 Controller" or "XInput Controller")
+     */
+    public final String name;
+
+    /**
+     * The GUID of the controller as 32 hex characters. Every controller of the same model has the same
+     * GUID, and it's what controller mappings are keyed by.
+     */
+    public final String guid;
+
+    /**
+     * The USB vendor ID of the controller, or 0 if it isn't known
+     */
+    public final int vendorId;
+
+    /**
+     * The USB product ID of the controller, or 0 if it isn't known
+     */
+    public final int productId;
+
+    /**
+     * The family of the controller, worked out from the vendor ID
+     */
+    public final ControllerType type;
+
+    ControllerInfo(String name, String guid, int vendorId, int productId) {
+        //Use a descriptive string instead of null if the attached controller does not have a name
+        this.name = name != null ? name : "Unnamed Controller";
+        this.guid = guid != null ? guid : UNKNOWN_GUID;
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.type = ControllerType.fromVendorId(vendorId);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + type + ", " + String.format("%04x:%04x", vendorId, productId) + ", " + guid + ")";
+    }
+}
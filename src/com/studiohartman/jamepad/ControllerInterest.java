@@ -0,0 +1,156 @@
+package com.studiohartman.jamepad;
+
+import java.util.BitSet;
+
+/**
+ * Which controllers, buttons and axes a ControllerListener wants to hear about. Listeners are only
+ * called for what's in their interest, and ControllerManager keeps listeners sorted by the buttons and
+ * axes they care about, so a press of A never even looks at a listener that only cares about START.
+ *
+ * Interests are immutable. Start from ALL and narrow it down with the with*() methods:
+ *
+ * <pre>
+ * ControllerInterest menu = ControllerInterest.ALL
+ *         .withControllers(0)
+ *         .withButtons(ControllerButton.A, ControllerButton.B, ControllerButton.START)
+ *         .withAxes();
+ * ControllerInterest aim = ControllerInterest.ALL
+ *         .withButtons()
+ *         .withAxes(ControllerAxis.RIGHTX, ControllerAxis.RIGHTY)
+ *         .withAxisEpsilon(0.02f);
+ * </pre>
+ *
+ * @author William Hartman
+ */
+public final class ControllerInterest {
+
+    private static final int ALL_BUTTONS = (1 << ControllerButton.values().length) - 1;
+    private static final int ALL_AXES = (1 << ControllerAxis.values().length) - 1;
+
+    /**
+     * Every controller, button and axis, plus connections and disconnections, with no axis epsilon.
+     */
+    public static final ControllerInterest ALL = new ControllerInterest(null, ALL_BUTTONS, ALL_AXES, 0, true);
+
+    private final BitSet controllers;
+    private final int buttonMask;
+    private final int axisMask;
+    private final float axisEpsilon;
+    private final boolean connections;
+
+    private ControllerInterest(BitSet controllers, int buttonMask, int axisMask, float axisEpsilon,
+                               boolean connections) {
+        this.controllers = controllers;
+        this.buttonMask = buttonMask;
+        this.axisMask = axisMask;
+        this.axisEpsilon = axisEpsilon;
+        this.connections = connections;
+    }
+
+    /**
+     * Returns a copy of this interest that only covers the controllers at the passed indices.
+     *
+     * @param controllerIndices The indices of the controllers
+     * @return The new interest
+     */
+    public ControllerInterest withControllers(int... controllerIndices) {
+        BitSet newControllers = new BitSet();
+        for(int index: controllerIndices) {
+            if(index < 0) {
+                throw new IllegalArgumentException("Controller indices can't be negative!");
+            }
+            newControllers.set(index);
+        }
+        return new ControllerInterest(newControllers, buttonMask, axisMask, axisEpsilon, connections);
+    }
+
+    /**
+     * Returns a copy of this interest that covers every controller.
+     *
+     * @return The new interest
+     */
+    public ControllerInterest withAllControllers() {
+        return new ControllerInterest(null, buttonMask, axisMask, axisEpsilon, connections);
+    }
+
+    /**
+     * Returns a copy of this interest that only covers the passed buttons. Pass nothing for no buttons.
+     *
+     * @param buttons The buttons
+     * @return The new interest
+     */
+    public ControllerInterest withButtons(ControllerButton... buttons) {
+        int newMask = 0;
+        for(ControllerButton button: buttons) {
+            newMask |= 1 << button.ordinal();
+        }
+        return new ControllerInterest(controllers, newMask, axisMask, axisEpsilon, connections);
+    }
+
+    /**
+     * Returns a copy of this interest that only covers the passed axes. Pass nothing for no axes.
+     *
+     * @param axes The axes
+     * @return The new interest
+     */
+    public ControllerInterest withAxes(ControllerAxis... axes) {
+        int newMask = 0;
+        for(ControllerAxis axis: axes) {
+            newMask |= 1 << axis.ordinal();
+        }
+        return new ControllerInterest(controllers, buttonMask, newMask, axisEpsilon, connections);
+    }
+
+    /**
+     * Returns a copy of this interest with the passed axis epsilon. axisMoved() is only called once an
+     * axis has moved at least this far from the last value the listener was told about. This skips
+     * the jitter of a stick that is being held still.
+     *
+     * @param epsilon How far an axis must move, between 0 and 2
+     * @return The new interest
+     */
+    public ControllerInterest withAxisEpsilon(float epsilon) {
+        if(!(epsilon >= 0 && epsilon <= 2)) {
+            throw new IllegalArgumentException("The axis epsilon must be between 0 and 2!");
+        }
+        return new ControllerInterest(controllers, buttonMask, axisMask, epsilon, connections);
+    }
+
+    /**
+     * Returns a copy of this interest that does or doesn't cover controllers being plugged in and
+     * unplugged.
+     *
+     * @param connections Whether or not connected() and disconnected() should be called
+     * @return The new interest
+     */
+    public ControllerInterest withConnections(boolean connections) {
+        return new ControllerInterest(controllers, buttonMask, axisMask, axisEpsilon, connections);
+    }
+
+    boolean coversController(int controllerIndex) {
+        return controllers == null || controllers.get(controllerIndex);
+    }
+
+    boolean coversButton(int button) {
+        return (buttonMask & (1 << button)) != 0;
+    }
+
+    boolean coversAxis(int axis) {
+        return (axisMask & (1 << axis)) != 0;
+    }
+
+    boolean coversConnections() {
+        return connections;
+    }
+
+    float getAxisEpsilon() {
+        return axisEpsilon;
+    }
+
+    @Override
+    public String toString() {
+        return "ControllerInterest{controllers=" + (controllers == null ? "all" : controllers.toString()) +
+                ", buttons=0x" + Integer.toHexString(buttonMask) + ", axes=0x" + Integer.toHexString(axisMask) +
+                ", axisEpsilon=" + axisEpsilon + ", connections=" + connections + "}";
+    }
+}
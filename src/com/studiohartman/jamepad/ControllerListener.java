@@ -0,0 +1,66 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Callbacks for controllers being plugged in and unplugged, and for buttons and axes changing. Register
+ * one with ControllerManager.addControllerListener(), along with a ControllerInterest saying which
+ * controllers, buttons and axes it cares about. It's only called for those.
+ *
+ * Every method does nothing by default, so just override the ones you need.
+ *
+ * Listeners are called from inside ControllerManager.update(), on whatever thread calls it (the input
+ * pump thread, if it's running). They're fed by SDL's events, so they hear about every press and release,
+ * even ones that happen between two calls to update(). Listeners aren't called while an InputReplay
+ * is being played back.
+ *
+ * @author William Hartman
+ */
+public interface ControllerListener {
+
+    /**
+     * Called when a controller is opened at an index, including the controllers that are already
+     * plugged in when initSDLGamepad() is called.
+     *
+     * @param controllerIndex The index of the controller
+     * @param info The name, GUID and type of the controller
+     */
+    default void connected(int controllerIndex, ControllerInfo info) {
+    }
+
+    /**
+     * Called when the controller at an index is unplugged.
+     *
+     * @param controllerIndex The index the controller was at
+     */
+    default void disconnected(int controllerIndex) {
+    }
+
+    /**
+     * Called when a button goes down.
+     *
+     * @param controllerIndex The index of the controller
+     * @param button The button
+     */
+    default void buttonDown(int controllerIndex, ControllerButton button) {
+    }
+
+    /**
+     * Called when a button goes up.
+     *
+     * @param controllerIndex The index of the controller
+     * @param button The button
+     */
+    default void buttonUp(int controllerIndex, ControllerButton button) {
+    }
+
+    /**
+     * Called when an axis moves by at least the axis epsilon of the listener's ControllerInterest since
+     * the last value it was told about. An axis going back to exactly 0 is always passed on.
+     *
+     * @param controllerIndex The index of the controller
+     * @param axis The axis
+     * @param value The new value, through the controller's stick or trigger profile like
+     *              ControllerIndex.getAxisState(), so dead zones and curves apply here too
+     */
+    default void axisMoved(int controllerIndex, ControllerAxis axis, float value) {
+    }
+}
@@ -1,16 +1,17 @@
 package com.studiohartman.jamepad;
 
-import org.libsdl.SDL;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-
-import static org.libsdl.SDL.Event.SDL_JOYDEVICEADDED;
-import static org.libsdl.SDL.Event.SDL_JOYDEVICEREMOVED;
-import static org.libsdl.SDL.SDL_IsGameController;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class handles initializing the native library, connecting to controllers, and managing the
@@ -27,9 +28,49 @@ import static org.libsdl.SDL.SDL_IsGameController;
  */
 public class ControllerManager {
 
+    private static final int NUM_BUTTONS = ControllerButton.values().length;
+    private static final int NUM_AXES = ControllerAxis.values().length;
+    private static final long NO_RUMBLE = -1;
+
+    private final ControllerBackend backend;
     private String mappingsPath;
-    private boolean isInitialized;
-    private ControllerIndex[] controllers;
+    private Path mappingIndexFile;
+    private MappingIndex mappingIndex;
+    private final HashSet<Integer> mappedInstances = new HashSet<>();
+    private volatile boolean isInitialized;
+    private volatile boolean isInitializing;
+    private volatile StartupReport startupReport;
+    private boolean framePolling;
+    private volatile InputPump inputPump;
+    private volatile HapticsMixer hapticsMixer;
+    private final AtomicLongArray queuedRumble;
+    private volatile boolean rumbleQueued;
+    private int historyCapacity;
+    private volatile ComboRecognizer comboRecognizer;
+    private AxisProfile stickProfile = AxisProfile.LINEAR;
+    private AxisProfile triggerProfile = AxisProfile.LINEAR;
+    private StickPolarMode polarMode = StickPolarMode.EXACT;
+    private volatile long frame;
+    private InputReplay replay;
+    private InputRecorder recorder;
+    private volatile InputServer inputServer;
+    private final int maxNumControllers;
+    private ControllerSlots slots;
+    private ControllerEventQueue eventQueue;
+    private final ListenerDispatcher listeners;
+    private final InputWaiters waiters = new InputWaiters();
+    private final ControllerBackend.Event event = new ControllerBackend.Event();
+    private final ControllerMetrics metrics = new ControllerMetrics();
+
+    private long hotplugDebounceNanos;
+    private long lastHotplugTime;
+    private boolean hotplugPending;
+    private int[] pendingRemovals = new int[4];
+    private int numPendingRemovals;
+    private int[] pendingAdditions = new int[4];
+    private int numPendingAdditions;
+    private int numConnected;
+    private int numEventsPolled;
 
     /**
      * Default constructor. Makes a manager for 4 controllers with the built in mappings from here:
@@ -55,80 +96,355 @@ public class ControllerManager {
      * @param maxNumControllers The number of controller this ControllerManager can deal with
      */
     public ControllerManager(int maxNumControllers, String mappingsPath) {
+        this(maxNumControllers, mappingsPath, new SDLControllerBackend());
+    }
+
+    /**
+     * Constructor. Uses the passed backend instead of SDL to talk to the gamepads. Use a
+     * SimulatedControllerBackend to run without SDL or any input devices.
+     *
+     * @param mappingsPath The path to a file containing SDL controller mappings.
+     * @param maxNumControllers The number of controller this ControllerManager can deal with. Slots are
+     *                          only created as controllers are plugged in, so this can be large.
+     * @param backend The backend used for everything that would normally go to SDL
+     */
+    public ControllerManager(int maxNumControllers, String mappingsPath, ControllerBackend backend) {
+        this.backend = backend;
         this.mappingsPath = mappingsPath;
         isInitialized = false;
-        controllers = new ControllerIndex[maxNumControllers];
+        this.maxNumControllers = maxNumControllers;
+        slots = new ControllerSlots(maxNumControllers);
+        listeners = new ListenerDispatcher(maxNumControllers);
+        queuedRumble = new AtomicLongArray(Math.max(0, maxNumControllers));
+        for(int i = 0; i < queuedRumble.length(); i++) {
+            queuedRumble.set(i, NO_RUMBLE);
+        }
     }
 
     /**
      * Initialize the ControllerIndex library. This loads the native library and initializes SDL
      * in the native code.
      *
+     * The mappings file is read on another thread while SDL starts up, since that doesn't need SDL.
+     * Everything that talks to SDL still happens on the calling thread, since SDL wants to be started
+     * and polled from the same thread (the main one, on some platforms), and the mappings are handed to
+     * SDL on this thread once they're read. Where the time went can be found with getStartupReport().
+     *
      * @throws IllegalStateException If the native code fails to initialize or if SDL is already initialized
      */
     public void initSDLGamepad() throws IllegalStateException {
-        if(isInitialized) {
+        initSDLGamepad(0);
+    }
+
+    /**
+     * Initialize the ControllerIndex library like initSDLGamepad(), then warm up. Warming up polls
+     * every controller slot for the passed number of frames, so the JIT has compiled update() and
+     * getState() by the time the game starts, instead of the first frames of gameplay running in the
+     * interpreter. A few thousand frames is usually enough, and they take a few milliseconds.
+     *
+     * Warm up frames are left out of the update() and getState() latency metrics, and if the event
+     * queue is enabled, the events collected while warming up are thrown away.
+     *
+     * @param warmUpFrames The number of frames to poll, or 0 to skip warming up
+     * @throws IllegalStateException If the native code fails to initialize or if SDL is already initialized
+     */
+    public void initSDLGamepad(int warmUpFrames) throws IllegalStateException {
+        if(warmUpFrames < 0) {
+            throw new IllegalArgumentException("The number of warm up frames can't be negative!");
+        }
+
+        beginInit();
+        try {
+            init(warmUpFrames);
+        } finally {
+            isInitializing = false;
+        }
+    }
+
+    /**
+     * Returns where the time went in the last call to initSDLGamepad(), or null if this
+     * ControllerManager hasn't been initialized.
+     *
+     * @return The startup report
+     */
+    public StartupReport getStartupReport() {
+        return startupReport;
+    }
+
+    private synchronized void beginInit() throws IllegalStateException {
+        if(isInitialized || isInitializing) {
             throw new IllegalStateException("SDL is already initialized!");
         }
+        isInitializing = true;
+    }
+
+    private void init(int warmUpFrames) throws IllegalStateException {
+        StartupReport report = new StartupReport();
+        long start = System.nanoTime();
+
+        //Reading the mappings doesn't need SDL, so it can happen while SDL starts up
+        CompletableFuture<PreparedMappings> preparing =
+                CompletableFuture.supplyAsync(this::prepareMappings, daemonThread("Jamepad mappings"));
 
         //Initialize SDL
+        long phaseStart = System.nanoTime();
         if (!nativeInitSDLGamepad()) {
+            preparing.thenAccept(PreparedMappings::close);
             throw new IllegalStateException("Failed to initialize SDL in native method!");
         } else {
             isInitialized = true;
         }
+        report.sdlInitNanos = System.nanoTime() - phaseStart;
 
         //Set controller mappings. The possible exception is caught, since stuff will still work ok
         //for most people if mapping aren't set.
+        PreparedMappings prepared;
         try {
-            addMappingsFromFile(mappingsPath);
-        } catch (IOException | IllegalStateException e) {
+            prepared = preparing.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            prepared = new PreparedMappings();
+            prepared.source = mappingsPath;
+            prepared.error = (Exception) e.getCause();
+        }
+        report.mappingPrepareNanos = prepared.nanos;
+        phaseStart = System.nanoTime();
+        report.mappingsLoaded = applyPreparedMappings(prepared);
+        report.mappingApplyNanos = System.nanoTime() - phaseStart;
+
+        //Connect and keep track of the controllers. Slots are only made for devices that are plugged in,
+        //the rest are made when something is plugged in later.
+        phaseStart = System.nanoTime();
+        slots = new ControllerSlots(maxNumControllers);
+        metrics.nativeCalls++;
+        int numDevices = Math.min(backend.getNumDevices(), maxNumControllers);
+        for(int i = 0; i < numDevices; i++) {
+            applyIndexedMapping(i);
+            ControllerIndex c = createSlot(i);
+            c.connectDevice(i);
+            dispatchConnected(c);
+        }
+        numConnected = nativeGetNumRollers();
+        hotplugPending = false;
+        numPendingRemovals = 0;
+        numPendingAdditions = 0;
+        report.controllersOpened = slots.getNumOpen();
+        report.controllerOpenNanos = System.nanoTime() - phaseStart;
+
+        if(warmUpFrames > 0) {
+            phaseStart = System.nanoTime();
+            warmUp(warmUpFrames);
+            report.warmUpFrames = warmUpFrames;
+            report.warmUpNanos = System.nanoTime() - phaseStart;
+        }
+
+        report.totalNanos = System.nanoTime() - start;
+        startupReport = report;
+    }
+
+    /**
+     * The mappings, read and ready to be handed to SDL: either a mapping index, or every mapping for
+     * this platform.
+     */
+    private static final class PreparedMappings {
+        Object event;
+        String source;
+        MappingIndex index;
+        MappingParser parser;
+        Exception error;
+        long bytes = -1;
+        long nanos;
+
+        void close() {
+            if(index != null) {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Read the mappings file, or open the mapping index if one was set. Nothing here touches SDL or the
+     * state of this ControllerManager, so it's safe to run on another thread.
+     */
+    private PreparedMappings prepareMappings() {
+        PreparedMappings prepared = new PreparedMappings();
+        prepared.event = FlightRecorderEvents.beginMappingLoad();
+        long start = System.nanoTime();
+
+        if(mappingIndexFile != null) {
+            try {
+                prepared.index = MappingIndex.openOrCompile(mappingsPath, mappingIndexFile);
+                prepared.source = mappingIndexFile.toString();
+                prepared.bytes = Files.size(mappingIndexFile);
+            } catch (IOException e) {
+                System.err.println("Failed to open mapping index \"" + mappingIndexFile + "\", " +
+                        "Loading every mapping instead");
+                e.printStackTrace();
+            }
+        }
+        if(prepared.index == null) {
+            prepared.source = mappingsPath;
+            try(InputStream in = openResource(mappingsPath)) {
+                prepared.parser = readMappings(in);
+                prepared.bytes = prepared.parser.getBytesRead();
+            } catch (IOException e) {
+                prepared.error = e;
+            }
+        }
+
+        prepared.nanos = System.nanoTime() - start;
+        return prepared;
+    }
+
+    private boolean applyPreparedMappings(PreparedMappings prepared) {
+        long start = System.nanoTime();
+        Exception error = prepared.error;
+        if(prepared.index != null) {
+            mappingIndex = prepared.index;
+        } else if(prepared.parser != null) {
+            try {
+                applyMappings(prepared.parser);
+            } catch (IllegalStateException e) {
+                error = e;
+            }
+        }
+
+        boolean succeeded = error == null;
+        metrics.mappingLoadFinished(prepared.nanos + System.nanoTime() - start, succeeded);
+        FlightRecorderEvents.commitMappingLoad(prepared.event, prepared.source, succeeded ? prepared.bytes : -1, succeeded);
+        if(!succeeded) {
             System.err.println("Failed to load mapping with original location \"" + mappingsPath + "\", " +
                     "Falling back of SDL's built in mappings");
-            e.printStackTrace();
+            error.printStackTrace();
         }
+        return succeeded;
+    }
 
+    /**
+     * Poll every controller slot the way a game would, so the JIT compiles the polling code.
+     */
+    private void warmUp(int frames) {
+        ControllerStateBuffer buffer = new ControllerStateBuffer();
+        for(int frame = 0; frame < frames; frame++) {
+            update();
+            for(int i = slots.nextOpen(0); i >= 0; i = slots.nextOpen(i + 1)) {
+                getState(i, buffer);
+                getState(i);
+            }
+        }
 
-
-        //Connect and keep track of the controllers
-        for(int i = 0; i < controllers.length; i++) {
-            controllers[i] = new ControllerIndex(i);
+        metrics.warmUpFinished();
+        if(eventQueue != null) {
+            eventQueue.clear();
         }
     }
+
+    private static Executor daemonThread(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
     private boolean nativeInitSDLGamepad(){
-        if (SDL.SDL_Init(SDL.SDL_INIT_EVENTS | SDL.SDL_INIT_JOYSTICK | SDL.SDL_INIT_GAMECONTROLLER) != 0){
-            return false;
-        }
-        SDL.Event event = new SDL.Event();
-        while(SDL.SDL_PollEvent(event)){}
-        return true;
+        metrics.nativeCalls++;
+        return backend.init();
     }
-    /*
-        if (SDL_Init(SDL_INIT_EVENTS | SDL_INIT_JOYSTICK | SDL_INIT_GAMECONTROLLER) != 0) {
-            printf("NATIVE METHOD: SDL_Init failed: %s\n", SDL_GetError());
-            return JNI_FALSE;
+
+    /**
+     * Initialize this ControllerManager to play back a recording instead of using SDL. The native
+     * library isn't touched. Each call to update() moves to the next frame of the recording, and the
+     * controllers report exactly what was recorded for them. Once the recording has ended, they keep
+     * reporting the last frame.
+     *
+     * Frame polling is always used while replaying, so getState() doesn't call update(). Vibration
+     * requests just return false.
+     *
+     * Call quitSDLGamepad() when you're done. The replay isn't closed by this ControllerManager.
+     *
+     * @param replay The recording to play back
+     * @throws IllegalStateException if this ControllerManager is already initialized
+     */
+    public void initReplay(InputReplay replay) throws IllegalStateException {
+        if(isInitialized) {
+            throw new IllegalStateException("SDL is already initialized!");
+        }
+
+        this.replay = replay;
+        slots = new ControllerSlots(maxNumControllers);
+        int numReplayed = Math.min(replay.getNumControllers(), maxNumControllers);
+        for(int i = 0; i < numReplayed; i++) {
+            createSlot(i);
         }
+        numConnected = 0;
+        isInitialized = true;
+    }
 
-        //We don't want any controller connections events (which are automatically generated at init)
-        //since they interfere with us detecting new controllers, so we go through all events and clear them.
-        while (SDL_PollEvent(&event));
+    /**
+     * Make the slot at the passed index and put it in the slot table, with all the settings made on
+     * this ControllerManager. Replayed slots are polled every frame.
+     */
+    private ControllerIndex createSlot(int index) {
+        boolean replaying = replay != null;
+        ControllerIndex c = new ControllerIndex(backend, metrics, slots, index, replaying);
+        c.setFramePolling(framePolling || inputPump != null);
+        c.setStickProfile(stickProfile);
+        c.setTriggerProfile(triggerProfile);
+        c.setStickPolarMode(polarMode);
+        if(historyCapacity > 0) {
+            c.enableHistory(historyCapacity);
+        }
+        c.setComboRecognizer(comboRecognizer);
+        slots.add(c);
+        if(replaying) {
+            slots.markPolled(index);
+        }
+        return c;
+    }
 
-        return JNI_TRUE;
-    */
+    /**
+     * Returns the recording this ControllerManager is playing back, or null if it was initialized with
+     * initSDLGamepad().
+     *
+     * @return The recording being played back
+     */
+    public InputReplay getReplay() {
+        return replay;
+    }
 
     /**
      * This method quits all the native stuff. Call it when you're done with Jamepad.
      */
     public void quitSDLGamepad() {
-        for(ControllerIndex c: controllers) {
-            c.close();
+        waiters.cancelAll();
+        stopHapticsMixer();
+        stopInputPump();
+        //Whatever the mixer queued last is what stops the motors
+        sendQueuedRumble();
+        stopRecording();
+        stopInputServer();
+        for(int i = slots.nextOpen(0); i >= 0; i = slots.nextOpen(i + 1)) {
+            slots.get(i).close();
+        }
+        if(replay == null) {
+            nativeCloseSDLGamepad();
+        }
+        metrics.unregisterMBean();
+        if(mappingIndex != null) {
+            mappingIndex.close();
+            mappingIndex = null;
         }
-        nativeCloseSDLGamepad();
-        controllers = new ControllerIndex[0];
+        mappedInstances.clear();
+        replay = null;
+        slots = new ControllerSlots(maxNumControllers);
         isInitialized = false;
     }
     private void nativeCloseSDLGamepad(){
-        SDL.SDL_Quit();
+        metrics.nativeCalls++;
+        backend.quit();
     }
 
 
@@ -142,8 +458,8 @@ public class ControllerManager {
      *
      * The returned state is immutable. This means an object is allocated every time you call this
      * (unless the controller is disconnected). This shouldn't be a big deal (even for games) if your
-     * GC is tuned well, but if this is a problem for you, you can go directly through the internal
-     * ControllerIndex objects using getControllerIndex().
+     * GC is tuned well, but if this is a problem for you, you can use getState(int, ControllerStateBuffer)
+     * to fill in a buffer you reuse instead.
      *
      * update() is called each time this method is called. Buttons are also queried, so values
      * returned from isButtonJustPressed() in ControllerIndex may not be what you expect. Calling
@@ -151,6 +467,12 @@ public class ControllerManager {
      * This should be fine unless you are mixing and matching this method with ControllerIndex
      * objects, which you probably shouldn't do anyway.
      *
+     * In frame polling mode, update() is not called here. The returned state is read from the snapshot
+     * taken by your last call to update().
+     *
+     * While the input pump is running, the returned state is the latest one published by the pump thread,
+     * and this can be called from any thread.
+     *
      * @param index The index of the controller to be checked
      * @return The state of the controller at the passed index.
      * @throws IllegalStateException if Jamepad was not initialized
@@ -158,14 +480,69 @@ public class ControllerManager {
     public ControllerState getState(int index) throws IllegalStateException {
         verifyInitialized();
 
-        if(index < controllers.length && index >= 0) {
-            update();
-            return ControllerState.getInstanceFromController(controllers[index]);
+        InputPump pump = inputPump;
+        if(index < maxNumControllers && index >= 0) {
+            if(pump != null) {
+                return pump.readState(index);
+            }
+            long start = System.nanoTime();
+            if(!framePolling && replay == null) {
+                update();
+            }
+            ControllerIndex c = slots.get(index);
+            if(c == null) {
+                return ControllerState.getDisconnectedControllerInstance();
+            }
+            ControllerState state = ControllerState.getInstanceFromController(c);
+            metrics.getStateFinished(System.nanoTime() - start);
+            return state;
         } else {
             return ControllerState.getDisconnectedControllerInstance();
         }
     }
 
+    /**
+     * Overwrite the passed buffer with the state of the controller at the passed index. This works
+     * just like getState(int), but instead of allocating a new ControllerState, the caller owns the
+     * buffer and can reuse it every frame.
+     *
+     * No exceptions are thrown here (unless Jamepad isn't initialized). If there is no controller at the
+     * passed index, the buffer is set to the disconnected state.
+     *
+     * While the input pump is running, the latest state published by the pump thread is copied into the
+     * buffer, and this can be called from any thread.
+     *
+     * @param index The index of the controller to be checked
+     * @param out The buffer that will be overwritten with the state of the controller
+     * @return The passed buffer
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public ControllerStateBuffer getState(int index, ControllerStateBuffer out) throws IllegalStateException {
+        verifyInitialized();
+
+        InputPump pump = inputPump;
+        if(index < maxNumControllers && index >= 0) {
+            if(pump != null) {
+                pump.read(index, out);
+                return out;
+            }
+            long start = System.nanoTime();
+            if(!framePolling && replay == null) {
+                update();
+            }
+            ControllerIndex c = slots.get(index);
+            if(c == null) {
+                out.setDisconnected();
+                return out;
+            }
+            out.setFromController(c);
+            metrics.getStateFinished(System.nanoTime() - start);
+        } else {
+            out.setDisconnected();
+        }
+        return out;
+    }
+
     /**
      * Starts vibrating the controller at this given index. If this fails for one reason or another (e.g.
      * the controller at that index doesn't support haptics, or if there is no controller at that index),
@@ -180,9 +557,18 @@ public class ControllerManager {
     public boolean doVibration(int index, float leftMagnitude, float rightMagnitude, int duration_ms) throws IllegalStateException {
         verifyInitialized();
 
-        if(index < controllers.length && index >= 0) {
+        InputPump pump = inputPump;
+        if(index < maxNumControllers && index >= 0) {
+            //The pump thread owns the native calls, so it makes the call on its next tick
+            if(pump != null && !pump.isOnPumpThread()) {
+                return pump.requestVibration(index, leftMagnitude, rightMagnitude, duration_ms);
+            }
+            ControllerIndex c = slots.get(index);
+            if(c == null) {
+                return false;
+            }
             try {
-                return controllers[index].doVibration(leftMagnitude, rightMagnitude, duration_ms);
+                return c.doVibration(leftMagnitude, rightMagnitude, duration_ms);
             } catch (ControllerUnpluggedException e) {
                 return false;
             }
@@ -216,20 +602,23 @@ public class ControllerManager {
     public void stopVibration(int index) {
         verifyInitialized();
 
-        if(index < controllers.length && index >= 0) {
-            controllers[index].stopVibration();
+        ControllerIndex c = slots.get(index);
+        if(c != null) {
+            c.stopVibration();
         }
     }
 
     /**
      * Returns a the ControllerIndex object with the passed index (0 for p1, 1 for p2, etc.).
      *
-     * You should only use this method if you're worried about the object allocations from getState().
+     * You should only use this method if you need more control than getState() gives you. If you're just
+     * worried about the object allocations from getState(), use getState(int, ControllerStateBuffer).
      * If you decide to do things this way, your code will be a good bit more verbose and you'll
      * need to deal with potential exceptions.
      *
      * It is generally safe to store objects returned from this method. They will only change internally
-     * if you call quitSDLGamepad() followed by a call to initSDLGamepad().
+     * if you call quitSDLGamepad() followed by a call to initSDLGamepad(). If no controller has been
+     * plugged in at this index yet, the slot is made now.
      *
      * Calling update() will run through all the controllers to check for newly plugged in or unplugged
      * controllers. You could do this from your code, but keep that in mind.
@@ -240,28 +629,59 @@ public class ControllerManager {
      */
     public ControllerIndex getControllerIndex(int index) {
         verifyInitialized();
-        return controllers[index];
+        if(index < 0 || index >= maxNumControllers) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        ControllerIndex c = slots.get(index);
+        return c != null ? c : createSlot(index);
+    }
+
+    /**
+     * Fill the passed array with the indices of the slots that have a controller open in them, in order,
+     * and return how many there are. Only as many as fit in the array are written. This only looks at
+     * the slots in use, so it stays cheap however many controllers this ControllerManager can deal with.
+     *
+     * Like getNumControllers(), this is only refreshed by update().
+     *
+     * @param out The array to fill with controller indices
+     * @return The number of slots with a controller in them
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public int getConnectedIndices(int[] out) {
+        verifyInitialized();
+        int count = 0;
+        for(int i = slots.nextOpen(0); i >= 0; i = slots.nextOpen(i + 1)) {
+            if(count < out.length) {
+                out[count] = i;
+            }
+            count++;
+        }
+        return count;
     }
 
     /**
-     * Return the number of controllers that are actually connected. This may disagree with
-     * the ControllerIndex objects held in here if something has been plugged in or unplugged
-     * since update() was last called.
+     * Return the number of controllers that are actually connected. This includes controllers that
+     * didn't fit in this ControllerManager.
+     *
+     * The count is only refreshed when update() handles something being plugged in or unplugged, so it
+     * may be out of date if that has happened since update() was last called.
      *
      * @return the number of connected controllers.
      * @throws IllegalStateException if Jamepad was not initialized
      */
     public int getNumControllers() {
         verifyInitialized();
-        return nativeGetNumRollers();
+        return numConnected;
     }
     private int nativeGetNumRollers() {
-        int numJoysticks = SDL.SDL_NumJoysticks();
+        metrics.nativeCalls++;
+        int numJoysticks = backend.getNumDevices();
 
         int numGamepads = 0;
 
         for (int i = 0; i < numJoysticks; i++) {
-            if (SDL_IsGameController(i)) {
+            if (nativeIsGameController(i)) {
                 numGamepads++;
             }
         }
@@ -269,69 +689,1009 @@ public class ControllerManager {
         return numGamepads;
     }
 
+    /**
+     * Turn frame polling mode on or off.
+     *
+     * Normally, every button or axis query made through getState() or a ControllerIndex asks SDL to
+     * update the controllers before reading the one value. That adds up to dozens of native updates
+     * for each getState() call.
+     *
+     * In frame polling mode, update() pumps SDL once and reads every button and axis of every controller
+     * into a snapshot. All queries until the next update() are answered from that snapshot, so you should
+     * call update() once per frame. getState() doesn't call update() in this mode, and just pressed buttons
+     * are the ones that went down between the last two calls to update().
+     *
+     * This can be changed before or after initSDLGamepad() is called.
+     *
+     * @param framePolling Whether or not frame polling should be used
+     * @throws IllegalStateException if the input pump is running
+     */
+    public void setFramePolling(boolean framePolling) {
+        if(inputPump != null) {
+            throw new IllegalStateException("Frame polling can't be changed while the input pump is running!");
+        }
+        this.framePolling = framePolling;
+        if(isInitialized) {
+            for(ControllerIndex c: slots) {
+                c.setFramePolling(framePolling);
+            }
+        }
+    }
+
+    /**
+     * Returns whether or not frame polling mode is on. See setFramePolling().
+     *
+     * @return Whether or not frame polling is being used
+     */
+    public boolean isFramePolling() {
+        return framePolling;
+    }
+
+    /**
+     * Keep the input of every controller for the last capacity frames. Each ControllerIndex gets its own
+     * ControllerHistory, which you can get with ControllerIndex.getHistory(). Frames are only recorded in
+     * frame polling mode (or while the input pump runs), once per update(), and only while a slot has a
+     * controller in it (plus the frame it was unplugged on). Passing 0 stops keeping history.
+     *
+     * This can be called before or after initSDLGamepad().
+     *
+     * @param capacity The number of frames to remember, or 0 to turn history off
+     */
+    public void setHistoryCapacity(int capacity) {
+        if(capacity < 0) {
+            throw new IllegalArgumentException("The capacity can't be negative!");
+        }
+
+        historyCapacity = capacity;
+        if(isInitialized) {
+            for(ControllerIndex c: slots) {
+                if(capacity > 0) {
+                    c.enableHistory(capacity);
+                } else {
+                    c.disableHistory();
+                }
+            }
+        }
+    }
+
+    /**
+     * Feed the input of every controller to the passed ComboRecognizer on each update(), or pass null to
+     * stop. Controller n is fed to the recognizer's controller n, for the ones it has room for. Like the
+     * history, this only happens in frame polling mode, while the input pump runs, or while replaying.
+     *
+     * This can be called before or after initSDLGamepad().
+     *
+     * @param recognizer The recognizer
+     */
+    public void setComboRecognizer(ComboRecognizer recognizer) {
+        comboRecognizer = recognizer;
+        if(isInitialized) {
+            for(ControllerIndex c: slots) {
+                c.setComboRecognizer(recognizer);
+            }
+        }
+    }
+
+    /**
+     * Returns the recognizer set with setComboRecognizer(), or null if there isn't one.
+     *
+     * @return The combo recognizer
+     */
+    public ComboRecognizer getComboRecognizer() {
+        return comboRecognizer;
+    }
+
+    /**
+     * Set how the sticks of every controller are processed: dead zones, anti dead zone and response curve.
+     * See AxisProfile. The default is AxisProfile.LINEAR, which just scales the raw values.
+     *
+     * In frame polling mode (or while the input pump runs), the sticks are processed once per update(),
+     * and every getState() and getAxisState() call after that reads the result.
+     *
+     * This can be called before or after initSDLGamepad(). It shouldn't be called while the input pump
+     * is running.
+     *
+     * @param profile The profile for the sticks
+     */
+    public void setStickProfile(AxisProfile profile) {
+        if(profile == null) {
+            throw new IllegalArgumentException("The profile can't be null!");
+        }
+        stickProfile = profile;
+        if(isInitialized) {
+            for(ControllerIndex c: slots) {
+                c.setStickProfile(profile);
+            }
+        }
+    }
+
+    /**
+     * Set how the triggers of every controller are processed. See setStickProfile() and AxisProfile.
+     *
+     * @param profile The profile for the triggers
+     */
+    public void setTriggerProfile(AxisProfile profile) {
+        if(profile == null) {
+            throw new IllegalArgumentException("The profile can't be null!");
+        }
+        triggerProfile = profile;
+        if(isInitialized) {
+            for(ControllerIndex c: slots) {
+                c.setTriggerProfile(profile);
+            }
+        }
+    }
+
+    /**
+     * Set how the stick angle and magnitude fields are filled in by getState(). The default is
+     * StickPolarMode.EXACT. If you never read those fields, StickPolarMode.LAZY skips the work, and you
+     * can still call getLeftStickAngle() and the other getters when you do need them. See StickPolarMode.
+     *
+     * This can be called before or after initSDLGamepad().
+     *
+     * @param polarMode How the stick angles and magnitudes are worked out
+     */
+    public void setStickPolarMode(StickPolarMode polarMode) {
+        if(polarMode == null) {
+            throw new IllegalArgumentException("The polar mode can't be null!");
+        }
+        this.polarMode = polarMode;
+        if(isInitialized) {
+            for(ControllerIndex c: slots) {
+                c.setStickPolarMode(polarMode);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the frame most recently polled by update(). This counts up by one on each
+     * call to update() (or each poll of the input pump), and is the frame number used by ControllerHistory.
+     *
+     * @return The current frame number
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Start writing the polled state of every controller to the passed file on each update(). The file
+     * can be played back with InputReplay and initReplay(). Frames are only recorded in frame polling mode,
+     * while the input pump runs, or while replaying. If a recording is already being made, it is stopped
+     * first.
+     *
+     * @param file The file to write to. It is replaced if it already exists.
+     * @throws IOException if the file can't be created
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public void startRecording(Path file) throws IOException, IllegalStateException {
+        verifyInitialized();
+        stopRecording();
+        recorder = new InputRecorder(file, maxNumControllers);
+    }
+
+    /**
+     * Stop the recording started by startRecording(), and flush and close its file. If nothing is being
+     * recorded, this does nothing.
+     */
+    public void stopRecording() {
+        InputRecorder toClose = recorder;
+        recorder = null;
+        if(toClose != null) {
+            try {
+                toClose.close();
+            } catch (IOException e) {
+                System.err.println("Failed to finish writing the input recording");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Start streaming the polled state of every controller over UDP on each update(), to any
+     * RemoteControllerBackend on this machine that connects to the passed port. See InputServer. Like
+     * recording, frames are only sent in frame polling mode, while the input pump runs, or while
+     * replaying. If a server is already running, it is stopped first.
+     *
+     * @param port The loopback port to listen on, or 0 to pick a free one
+     * @return The server, to read its port and statistics from or change its batching
+     * @throws IOException if the socket can't be opened
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public InputServer startInputServer(int port) throws IOException, IllegalStateException {
+        return startInputServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Same as startInputServer(int), but listens on the passed address, so other machines can connect.
+     * Pass new InetSocketAddress(port) to listen on every interface.
+     *
+     * @param address The address to listen on
+     * @return The server, to read its port and statistics from or change its batching
+     * @throws IOException if the socket can't be opened
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public InputServer startInputServer(InetSocketAddress address) throws IOException, IllegalStateException {
+        verifyInitialized();
+        stopInputServer();
+        InputServer server = new InputServer(address, maxNumControllers);
+        inputServer = server;
+        return server;
+    }
+
+    /**
+     * Stop the server started by startInputServer() and close its socket. If it isn't running, this does
+     * nothing.
+     */
+    public void stopInputServer() {
+        InputServer toClose = inputServer;
+        inputServer = null;
+        if(toClose != null) {
+            try {
+                toClose.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close the input server");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the server started by startInputServer(), or null if it isn't running.
+     *
+     * @return The input server
+     */
+    public InputServer getInputServer() {
+        return inputServer;
+    }
+
+    /**
+     * Start a background thread that polls all controllers at the passed rate. While it runs, that thread
+     * makes all the native calls. After each poll it publishes a snapshot of every controller, which
+     * getState() reads on any thread without locking or touching the native code. doVibration() hands its
+     * request to the pump thread.
+     *
+     * Frame polling is used while the pump runs, and update() does nothing since the pump thread takes
+     * care of it. Just pressed buttons are the ones that went down between the last two polls of the
+     * pump, so a reader that is slower than the pump can miss them, and a faster one can see them twice.
+     *
+     * The ControllerIndex objects and the event queue are owned by the pump thread while it runs, so you
+     * shouldn't use them directly until stopInputPump() is called.
+     *
+     * @param pollsPerSecond How many times per second the controllers should be polled
+     * @throws IllegalStateException if Jamepad was not initialized or the pump is already running
+     */
+    public synchronized void startInputPump(int pollsPerSecond) {
+        verifyInitialized();
+        if(inputPump != null) {
+            throw new IllegalStateException("The input pump is already running!");
+        }
+
+        for(ControllerIndex c: slots) {
+            c.setFramePolling(true);
+        }
+        InputPump pump = new InputPump(this, slots, pollsPerSecond);
+        inputPump = pump;
+        pump.start();
+    }
+
+    /**
+     * Stop the background thread started by startInputPump() and wait for it to finish. Polling goes back
+     * to happening on whichever thread calls getState() or update(). Threads blocked in awaitButton() and
+     * friends stop waiting, since nothing is polling for them anymore. If the pump isn't running, this
+     * does nothing.
+     */
+    public synchronized void stopInputPump() {
+        InputPump pump = inputPump;
+        if(pump == null) {
+            return;
+        }
+
+        pump.stop();
+        inputPump = null;
+        waiters.cancelAll();
+        for(ControllerIndex c: slots) {
+            c.setFramePolling(framePolling);
+        }
+    }
+
+    /**
+     * Called on the pump thread when polling threw, to do what stopInputPump() would have. This can't
+     * take the lock, since stopInputPump() holds it while it waits for the pump thread to finish.
+     */
+    void inputPumpFailed(InputPump pump) {
+        if(inputPump != pump) {
+            return;
+        }
+        inputPump = null;
+        waiters.cancelAll();
+        for(ControllerIndex c: slots) {
+            c.setFramePolling(framePolling);
+        }
+    }
+
+    /**
+     * Returns whether or not the input pump is running. See startInputPump().
+     *
+     * @return Whether or not the input pump is running
+     */
+    public boolean isInputPumpRunning() {
+        return inputPump != null;
+    }
+
+    /**
+     * Start a HapticsMixer, which mixes the HapticEffects playing on the controllers on its own thread.
+     * On each tick, it queues at most one rumble command per controller, only when the output changed,
+     * and the thread polling the controllers sends it on its next poll. See HapticsMixer.
+     *
+     * doVibration() still works while the mixer is running, but the mixer will override it on its next
+     * command to the same controller.
+     *
+     * @param ticksPerSecond How many times per second effects are mixed and sent
+     * @return The mixer
+     * @throws IllegalStateException if Jamepad was not initialized or the mixer is already running
+     */
+    public synchronized HapticsMixer startHapticsMixer(int ticksPerSecond) {
+        verifyInitialized();
+        if(hapticsMixer != null) {
+            throw new IllegalStateException("The haptics mixer is already running!");
+        }
+
+        HapticsMixer mixer = new HapticsMixer(this, ticksPerSecond);
+        hapticsMixer = mixer;
+        mixer.start();
+        return mixer;
+    }
+
+    /**
+     * Stop the mixer started by startHapticsMixer(), silence every controller it was rumbling, and wait
+     * for its thread to finish. If the mixer isn't running, this does nothing.
+     */
+    public synchronized void stopHapticsMixer() {
+        HapticsMixer mixer = hapticsMixer;
+        if(mixer == null) {
+            return;
+        }
+
+        mixer.stop();
+        hapticsMixer = null;
+    }
+
+    /**
+     * Returns the mixer started by startHapticsMixer(), or null if it isn't running.
+     *
+     * @return The haptics mixer
+     */
+    public HapticsMixer getHapticsMixer() {
+        return hapticsMixer;
+    }
+
+    /**
+     * Called by the mixer's thread if it dies, so a new one can be started.
+     */
+    void hapticsMixerFailed(HapticsMixer mixer) {
+        if(hapticsMixer == mixer) {
+            hapticsMixer = null;
+        }
+    }
+
+    /**
+     * Queue a rumble command from the haptics mixer for the controller at the passed index. It is sent
+     * by the polling thread the next time it polls, replacing any command for that controller that is
+     * still waiting. This never blocks and never touches the slots.
+     *
+     * @param index The index of the controller
+     * @param leftMagnitude The speed of the left motor (0 to 65535)
+     * @param rightMagnitude The speed of the right motor (0 to 65535)
+     * @param duration_ms How long to vibrate for
+     * @return Whether or not the index is one this manager can have a controller at
+     */
+    boolean queueRumble(int index, int leftMagnitude, int rightMagnitude, int duration_ms) {
+        if(index < 0 || index >= queuedRumble.length()) {
+            return false;
+        }
+        long duration = Math.max(0, duration_ms) & 0x7FFFFFFFL;
+        queuedRumble.set(index, (duration << 32) | ((long) leftMagnitude << 16) | rightMagnitude);
+        rumbleQueued = true;
+        return true;
+    }
+
+    /**
+     * Send every rumble command queued by the haptics mixer. Only the polling thread calls this.
+     */
+    private void sendQueuedRumble() {
+        //Checked first, so polls where the mixer queued nothing don't look at every controller
+        if(!rumbleQueued) {
+            return;
+        }
+        rumbleQueued = false;
+        for(int i = 0; i < queuedRumble.length(); i++) {
+            if(queuedRumble.get(i) == NO_RUMBLE) {
+                continue;
+            }
+            long rumble = queuedRumble.getAndSet(i, NO_RUMBLE);
+            ControllerIndex c = slots.get(i);
+            if(c != null) {
+                c.sendRumble((int) ((rumble >>> 16) & 0xFFFF), (int) (rumble & 0xFFFF), (int) (rumble >>> 32));
+            }
+        }
+    }
+
+    /**
+     * Register a listener that is called for everything: every controller being plugged in or unplugged,
+     * and every button and axis change. See addControllerListener(ControllerListener, ControllerInterest).
+     *
+     * @param listener The listener
+     */
+    public void addControllerListener(ControllerListener listener) {
+        addControllerListener(listener, ControllerInterest.ALL);
+    }
+
+    /**
+     * Register a listener that is called when the controllers, buttons and axes in the passed interest
+     * change. Listeners are called from update(), on the thread calling it (the input pump thread, if
+     * it's running), in the order they were added. They hear about every button press and release SDL
+     * reports, including ones that start and end between two calls to update().
+     *
+     * Listeners that don't care about a button or axis aren't looked at when it changes, and nothing is
+     * allocated while calling them, so it's fine to have lots of narrow listeners.
+     *
+     * If the listener is already registered, its interest is replaced. This can be called from any thread.
+     *
+     * @param listener The listener
+     * @param interest What the listener wants to hear about
+     */
+    public void addControllerListener(ControllerListener listener, ControllerInterest interest) {
+        if(listener == null || interest == null) {
+            throw new IllegalArgumentException("The listener and interest can't be null!");
+        }
+        listeners.add(listener, interest);
+    }
+
+    /**
+     * Unregister a listener added by addControllerListener(). This can be called from any thread,
+     * including from inside a listener.
+     *
+     * @param listener The listener
+     * @return Whether or not the listener was registered
+     */
+    public boolean removeControllerListener(ControllerListener listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Block until the passed button is pressed on the controller at the passed index, or the timeout
+     * runs out. A button that is already held down doesn't count, it has to go down after this is called.
+     *
+     * The waiting thread is parked, so it doesn't use any CPU, and this is fine to call from lots of
+     * threads at once, virtual threads included. The controllers are polled by the input pump, so it has
+     * to be started with startInputPump() first. If it's stopped while threads are waiting, they stop
+     * waiting and get false.
+     *
+     * @param index The index of the controller
+     * @param button The button to wait for
+     * @param timeout How long to wait, or a negative number to wait forever
+     * @param unit The unit of the timeout
+     * @return true if the button was pressed, false if the timeout ran out, the input pump was stopped or
+     *         Jamepad was quit
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws IllegalStateException if Jamepad was not initialized, the input pump isn't running, or this
+     *                               is called from a listener
+     */
+    public boolean awaitButton(int index, ControllerButton button, long timeout, TimeUnit unit)
+            throws InterruptedException, IllegalStateException {
+        return await(InputWaiters.BUTTON, index, button.ordinal(), timeout, unit) >= 0;
+    }
+
+    /**
+     * Block until any button is pressed or any axis is pushed more than half way, on any controller, or
+     * the timeout runs out. See awaitButton() for how waiting works.
+     *
+     * @param timeout How long to wait, or a negative number to wait forever
+     * @param unit The unit of the timeout
+     * @return The index of the controller the input came from, or -1 if the timeout ran out, the input
+     *         pump was stopped or Jamepad was quit
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws IllegalStateException if Jamepad was not initialized, the input pump isn't running, or this
+     *                               is called from a listener
+     */
+    public int awaitAnyInput(long timeout, TimeUnit unit) throws InterruptedException, IllegalStateException {
+        return await(InputWaiters.ANY_INPUT, -1, -1, timeout, unit);
+    }
+
+    /**
+     * Block until a controller is plugged in and opened, or the timeout runs out. Controllers that are
+     * already connected don't count. See awaitButton() for how waiting works.
+     *
+     * @param timeout How long to wait, or a negative number to wait forever
+     * @param unit The unit of the timeout
+     * @return The index the controller was opened at, or -1 if the timeout ran out, the input pump was
+     *         stopped or Jamepad was quit
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws IllegalStateException if Jamepad was not initialized, the input pump isn't running, or this
+     *                               is called from a listener
+     */
+    public int awaitConnection(long timeout, TimeUnit unit) throws InterruptedException, IllegalStateException {
+        return await(InputWaiters.CONNECTION, -1, -1, timeout, unit);
+    }
+
+    private int await(int type, int index, int button, long timeout, TimeUnit unit)
+            throws InterruptedException, IllegalStateException {
+        verifyInitialized();
+        if(replay != null) {
+            throw new IllegalStateException("Can't wait for input while replaying!");
+        }
+        InputPump pump = inputPump;
+        if(pump == null) {
+            throw new IllegalStateException("Start the input pump before waiting for input!");
+        }
+        if(pump.isOnPumpThread()) {
+            throw new IllegalStateException("Can't wait for input on the thread that polls the controllers!");
+        }
+        //stopInputPump() may have already cancelled everyone by the time this waiter is added
+        return waiters.await(type, index, button, timeout < 0 ? -1 : unit.toNanos(timeout), () -> inputPump == pump);
+    }
+
+    /**
+     * Start collecting button and axis events into a queue. After this is called, update() moves every
+     * button press, button release and axis motion that SDL reports into the returned queue, including
+     * presses that start and end between two calls to update(). Read and empty the queue each frame.
+     *
+     * Events from controllers that aren't held by this ControllerManager are ignored.
+     *
+     * @param capacity The number of events the queue can hold before the oldest are thrown away
+     * @return The queue that events will be added to
+     */
+    public ControllerEventQueue enableEventQueue(int capacity) {
+        eventQueue = new ControllerEventQueue(capacity);
+        return eventQueue;
+    }
+
+    /**
+     * Stop collecting events. Button and axis events will be thrown away by update() again.
+     */
+    public void disableEventQueue() {
+        eventQueue = null;
+    }
+
+    /**
+     * Returns the queue events are being collected into, or null if enableEventQueue() hasn't been called.
+     *
+     * @return The event queue
+     */
+    public ControllerEventQueue getEventQueue() {
+        return eventQueue;
+    }
+
+    /**
+     * Set how long update() waits after a controller is plugged in or unplugged before handling it.
+     * Every connection and disconnection that happens within this window is handled together, so a
+     * device that flaps on a bad USB hub only causes one round of work. The default is 0, which handles
+     * changes on the same update() call they are seen.
+     *
+     * @param millis The debounce window in milliseconds
+     */
+    public void setHotplugDebounceMillis(int millis) {
+        if(millis < 0) {
+            throw new IllegalArgumentException("The debounce window can't be negative!");
+        }
+        hotplugDebounceNanos = millis * 1000000L;
+    }
+
+    /**
+     * Returns the metrics for this ControllerManager. They show how long update() and getState() take,
+     * how many native calls are made per frame, and how often controllers are plugged in or unplugged.
+     * See ControllerMetrics for how to register them as a JMX MBean.
+     *
+     * @return The metrics for this ControllerManager
+     */
+    public ControllerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Refresh the connected controllers in the controller list if something has been connected or
      * unplugged.
      *
      * If there hasn't been a change in whether controller are connected or not, nothing will happen.
+     * Otherwise, only the affected controllers are touched. An unplugged controller's slot is closed, and
+     * a newly plugged in controller is put in the first free slot. Other controllers keep their slots and
+     * button states.
+     *
+     * In frame polling mode, this also takes the snapshot of every controller that queries are answered
+     * from until the next call.
+     *
+     * While the input pump is running, this does nothing.
      *
      * @throws IllegalStateException if Jamepad was not initialized
      */
     public void update() {
         verifyInitialized();
+        if (inputPump == null) {
+            updateNow();
+        }
+    }
+
+    /**
+     * Does the work of update(). The input pump calls this directly from its thread.
+     */
+    void updateNow() {
+        Object event = FlightRecorderEvents.beginPoll();
+        long nativeCallsBefore = metrics.nativeCalls;
+        long reconnectsBefore = metrics.reconnects;
+        long start = System.nanoTime();
+        numEventsPolled = 0;
+        if (replay != null) {
+            updateFromReplay();
+        } else {
+            updateFromBackend();
+        }
+        metrics.updateFinished(System.nanoTime() - start);
+        FlightRecorderEvents.commitPoll(event, frame, numEventsPolled, metrics.reconnects != reconnectsBefore,
+                metrics.nativeCalls - nativeCallsBefore);
+    }
+    private void updateFromReplay() {
+        replay.nextFrame();
+        frame++;
+        numConnected = 0;
+        for (int i = slots.nextPolled(0); i >= 0; i = slots.nextPolled(i + 1)) {
+            ControllerIndex c = slots.get(i);
+            c.replayFrame(frame, replay);
+            if (c.isConnected()) {
+                numConnected++;
+            }
+        }
+        recordFrame(replay.getFrameNanoTime());
+        publishFrame(replay.getFrameNanoTime());
+    }
+    private void updateFromBackend() {
+        slots.retireClosed();
         if (nativeControllerConnectedOrDisconnected()) {
-            for (int i = 0; i < controllers.length; i++) {
-                controllers[i].reconnectController();
+            hotplugPending = true;
+            lastHotplugTime = System.nanoTime();
+        }
+        if (hotplugPending && System.nanoTime() - lastHotplugTime >= hotplugDebounceNanos) {
+            hotplugPending = false;
+            reconnectChangedControllers();
+        }
+        if (eventQueue != null) {
+            metrics.eventsQueued(eventQueue.size());
+        }
+        if (framePolling || inputPump != null) {
+            frame++;
+            for (int i = slots.nextPolled(0); i >= 0; i = slots.nextPolled(i + 1)) {
+                slots.get(i).pollFrame(frame);
+            }
+            long nanoTime = System.nanoTime();
+            recordFrame(nanoTime);
+            publishFrame(nanoTime);
+        }
+        sendQueuedRumble();
+    }
+    private void recordFrame(long nanoTime) {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.recordFrame(slots, nanoTime);
+        } catch (IOException e) {
+            System.err.println("Failed to write the input recording, recording stopped");
+            e.printStackTrace();
+            stopRecording();
+        }
+    }
+    private void publishFrame(long nanoTime) {
+        InputServer server = inputServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            server.publishFrame(slots, nanoTime);
+        } catch (IOException e) {
+            if (inputServer == server) {
+                System.err.println("Failed to send input to remote clients, input server stopped");
+                e.printStackTrace();
+                stopInputServer();
             }
         }
     }
     private boolean nativeControllerConnectedOrDisconnected(){
-        SDL.SDL_GameControllerUpdate();
-        SDL.Event event = new SDL.Event();
-        while(SDL.SDL_PollEvent(event)){
-            if(event.type == SDL_JOYDEVICEADDED || event.type == SDL_JOYDEVICEREMOVED){
-                return true;
+        metrics.nativeCalls++;
+        backend.update();
+        boolean connectedOrDisconnected = false;
+        while(nativePollEvent()){
+            if(event.type == ControllerBackend.Event.DEVICE_ADDED) {
+                metrics.hotplugEvents++;
+                connectedOrDisconnected = true;
+                pendingAdditions = addPending(pendingAdditions, numPendingAdditions++, event.which);
+            } else if(event.type == ControllerBackend.Event.DEVICE_REMOVED) {
+                metrics.hotplugEvents++;
+                connectedOrDisconnected = true;
+                markDetached(event.which);
+                pendingRemovals = addPending(pendingRemovals, numPendingRemovals++, event.which);
+            } else if(eventQueue != null || !listeners.isEmpty() || !waiters.isEmpty()) {
+                handleInputEvent();
             }
         }
+        return connectedOrDisconnected;
+    }
+    private boolean nativePollEvent() {
+        metrics.nativeCalls++;
+        if(backend.pollEvent(event)) {
+            numEventsPolled++;
+            return true;
+        }
         return false;
-    } /*
-        SDL_JoystickUpdate();
-        while (SDL_PollEvent(&event)) {
-            if (event.type == SDL_JOYDEVICEADDED || event.type == SDL_JOYDEVICEREMOVED) {
-                return JNI_TRUE;
+    }
+    private void markDetached(int instanceId) {
+        ControllerIndex c = slots.findInstance(instanceId);
+        if(c != null) {
+            c.markDetached();
+        }
+    }
+    private static int[] addPending(int[] pending, int index, int value) {
+        if(index == pending.length) {
+            int[] newPending = new int[pending.length * 2];
+            System.arraycopy(pending, 0, newPending, 0, index);
+            pending = newPending;
+        }
+        pending[index] = value;
+        return pending;
+    }
+
+    /**
+     * Close the slots of controllers that were unplugged, and open newly plugged in controllers in free
+     * slots. Slots whose controller is still plugged in are left alone.
+     *
+     * Only the devices SDL sent events about are looked at. Every device is only checked again if that
+     * isn't enough: a device was plugged in and another unplugged in the same batch (so the device
+     * indices in the events might have moved), or a slot opened up while there were controllers that
+     * didn't fit.
+     */
+    private void reconnectChangedControllers() {
+        metrics.reconnects++;
+        boolean removedAny = numPendingRemovals > 0;
+        for(int i = 0; i < numPendingRemovals; i++) {
+            ControllerIndex c = slots.findInstance(pendingRemovals[i]);
+            if(c != null) {
+                metrics.controllersClosed++;
+                c.close();
+                numConnected--;
+                if(!listeners.isEmpty()) {
+                    listeners.disconnected(c.getIndex());
+                }
+            }
+        }
+        numPendingRemovals = 0;
+
+        boolean rescan = removedAny && (numPendingAdditions > 0 || numConnected > slots.getNumOpen());
+        if(rescan) {
+            numPendingAdditions = 0;
+            openAllDevices();
+            return;
+        }
+
+        for(int i = 0; i < numPendingAdditions; i++) {
+            int deviceIndex = pendingAdditions[i];
+            if(!nativeIsGameController(deviceIndex)) {
+                continue;
+            }
+            metrics.nativeCalls++;
+            if(slots.findInstance(backend.getDeviceInstanceId(deviceIndex)) == null) {
+                numConnected++;
+                openInFreeSlot(deviceIndex);
             }
         }
-        return JNI_FALSE;
-    */
+        numPendingAdditions = 0;
+    }
+
+    /**
+     * Go through every device, recount the controllers, and open the ones that aren't in a slot yet.
+     */
+    private void openAllDevices() {
+        numConnected = 0;
+        metrics.nativeCalls++;
+        int numJoysticks = backend.getNumDevices();
+        for(int deviceIndex = 0; deviceIndex < numJoysticks; deviceIndex++) {
+            if(!nativeIsGameController(deviceIndex)) {
+                continue;
+            }
+            numConnected++;
+
+            metrics.nativeCalls++;
+            if(slots.findInstance(backend.getDeviceInstanceId(deviceIndex)) == null) {
+                openInFreeSlot(deviceIndex);
+            }
+        }
+    }
+
+    private void openInFreeSlot(int deviceIndex) {
+        int index = slots.firstFreeSlot();
+        if(index < 0) {
+            return;
+        }
+
+        ControllerIndex c = slots.get(index);
+        if(c == null) {
+            c = createSlot(index);
+        }
+        metrics.controllersOpened++;
+        c.connectDevice(deviceIndex);
+        dispatchConnected(c);
+    }
+
+    private void dispatchConnected(ControllerIndex c) {
+        if(!c.isOpen()) {
+            return;
+        }
+        if(!listeners.isEmpty()) {
+            try {
+                listeners.connected(c.getIndex(), c.getInfo());
+            } catch (ControllerUnpluggedException e) {
+                //It was unplugged already, and the removal will be seen on the next update()
+            }
+        }
+        waiters.connected(c.getIndex());
+    }
+
+    private void handleInputEvent() {
+        int type;
+        switch(event.type) {
+            case ControllerBackend.Event.BUTTON_DOWN:
+                type = ControllerEventQueue.BUTTON_DOWN;
+                break;
+            case ControllerBackend.Event.BUTTON_UP:
+                type = ControllerEventQueue.BUTTON_UP;
+                break;
+            case ControllerBackend.Event.AXIS_MOTION:
+                type = ControllerEventQueue.AXIS_MOTION;
+                break;
+            default:
+                return;
+        }
+        int code = event.code;
+        int value = event.value;
+
+        //Skip buttons and axes that SDL knows about but Jamepad doesn't
+        if(code < 0 || code >= (type == ControllerEventQueue.AXIS_MOTION ? NUM_AXES : NUM_BUTTONS)) {
+            return;
+        }
+
+        ControllerIndex c = slots.findInstance(event.which);
+        if(c == null) {
+            return;
+        }
+        if(eventQueue != null) {
+            eventQueue.add(event.timestamp, type, c.getIndex(), code, value);
+        }
+        if(type == ControllerEventQueue.AXIS_MOTION) {
+            c.setEventAxis(code, value);
+        }
+        if(!listeners.isEmpty() || !waiters.isEmpty()) {
+            if(type == ControllerEventQueue.AXIS_MOTION) {
+                float axisValue = c.getEventAxisState(code);
+                listeners.axis(c.getIndex(), code, axisValue);
+                waiters.axis(c.getIndex(), axisValue);
+            } else {
+                boolean down = type == ControllerEventQueue.BUTTON_DOWN;
+                listeners.button(c.getIndex(), code, down);
+                if(down) {
+                    waiters.button(c.getIndex(), code);
+                }
+            }
+        }
+    }
 
     /**
-     * This method adds mappings held in the specified file. The file is copied to the temp folder so
-     * that it can be read by the native code (if running from a .jar for instance)
+     * This method adds mappings held in the specified file. The file is found on the classpath (so it
+     * can be inside a .jar), read in Java a line at a time, and only the mappings for the platform this
+     * is running on are handed to SDL. Nothing is written to disk.
      *
      * @param path The path to the file containing controller mappings.
-     * @throws IOException if the file cannot be read, copied to a temp folder, or deleted.
+     * @throws IOException if the file cannot be read
      * @throws IllegalStateException if the mappings cannot be applied to SDL
      */
     public void addMappingsFromFile(String path) throws IOException, IllegalStateException {
-        /*
-        Copy the file to a temp folder. SDL can't read files held in .jars, and that's probably how
-        most people would use this library.
-         */
-        Path extractedLoc =  Files.createTempFile(null, null).toAbsolutePath();
-        InputStream source = getClass().getResourceAsStream(path);
+        Object event = FlightRecorderEvents.beginMappingLoad();
+        long start = System.nanoTime();
+        long bytes = -1;
+        try {
+            try(InputStream in = openResource(path)) {
+                MappingParser parser = readMappings(in);
+                applyMappings(parser);
+                bytes = parser.getBytesRead();
+            }
+        } finally {
+            metrics.mappingLoadFinished(System.nanoTime() - start, bytes >= 0);
+            FlightRecorderEvents.commitMappingLoad(event, path, bytes, bytes >= 0);
+        }
+    }
+
+    /**
+     * This method adds the mappings read from the passed stream, which should be in the format of
+     * gamecontrollerdb.txt. Mappings for other platforms are skipped, and if a controller shows up more
+     * than once, only its last mapping is used. The stream isn't closed.
+     *
+     * @param in The stream to read mappings from
+     * @return The number of mappings that were applied
+     * @throws IOException if the stream cannot be read
+     * @throws IllegalStateException if none of the mappings could be applied to SDL
+     */
+    public int addMappings(InputStream in) throws IOException, IllegalStateException {
+        return applyMappings(readMappings(in));
+    }
+    static InputStream openResource(String path) throws IOException {
+        InputStream source = ControllerManager.class.getResourceAsStream(path);
         if(source==null) source = ClassLoader.getSystemResourceAsStream(path);
         if(source==null) throw new IOException("Cannot open resource from classpath "+path);
+        return source;
+    }
+    private MappingParser readMappings(InputStream in) throws IOException {
+        MappingParser parser = new MappingParser(MappingParser.currentPlatform());
+        parser.read(in);
+        return parser;
+    }
+    private int applyMappings(MappingParser parser) throws IllegalStateException {
+        int applied = 0;
+        for(String mapping: parser.getMappings().values()) {
+            if(nativeAddMapping(mapping) >= 0) {
+                applied++;
+            }
+        }
 
-        Files.copy(source, extractedLoc, StandardCopyOption.REPLACE_EXISTING);
-
-        if(!nativeAddMappingsFromFile(extractedLoc.toString())) {
+        if(applied == 0) {
             throw new IllegalStateException("Failed to set SDL controller mappings! Falling back to build in SDL mappings.");
         }
+        return applied;
+    }
+    private int nativeAddMapping(String mapping) {
+        metrics.nativeCalls++;
+        return backend.addMapping(mapping);
+    }
 
-        Files.delete(extractedLoc);
+    /**
+     * Use a compiled mapping index instead of handing every mapping to SDL in initSDLGamepad(). The
+     * index is kept in the passed file: it's compiled from the mappings file the first time (and again
+     * if the mappings file changes), and memory mapped after that. A mapping is only handed to SDL when
+     * a device with its GUID is first seen, so startup doesn't depend on how many mappings there are.
+     * See MappingIndex.
+     *
+     * This must be called before initSDLGamepad(). If the index can't be opened or written, all the
+     * mappings are loaded like normal instead.
+     *
+     * @param file Where to keep the index, or null to load every mapping at startup (the default)
+     */
+    public void setMappingIndexFile(Path file) {
+        if(isInitialized || isInitializing) {
+            throw new IllegalStateException("The mapping index must be set before initSDLGamepad() is called!");
+        }
+        mappingIndexFile = file;
     }
-    private boolean nativeAddMappingsFromFile(String path) {
-        return (SDL.SDL_GameControllerAddMappingsFromFile(path) > 0) ;
+
+    /**
+     * If a mapping index is in use, hand SDL the mapping for the device at the passed device index.
+     * This is only done the first time each device is seen.
+     */
+    private void applyIndexedMapping(int deviceIndex) {
+        if(mappingIndex == null) {
+            return;
+        }
+
+        metrics.nativeCalls++;
+        if(!mappedInstances.add(backend.getDeviceInstanceId(deviceIndex))) {
+            return;
+        }
+        metrics.nativeCalls++;
+        String mapping = mappingIndex.find(backend.getDeviceGUID(deviceIndex));
+        if(mapping != null) {
+            nativeAddMapping(mapping);
+        }
+    }
+
+    private boolean nativeIsGameController(int deviceIndex) {
+        //SDL only knows a device is a game controller once it has a mapping for it
+        applyIndexedMapping(deviceIndex);
+        metrics.nativeCalls++;
+        return backend.isGameController(deviceIndex);
     }
 
     private boolean verifyInitialized() throws IllegalStateException {
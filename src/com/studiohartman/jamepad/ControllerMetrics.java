@@ -0,0 +1,325 @@
+package com.studiohartman.jamepad;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counters and histograms that show what Jamepad is costing you. Every ControllerManager keeps one of
+ * these, and you can get it with ControllerManager.getMetrics().
+ *
+ * The metrics are always on. Recording them is a couple of System.nanoTime() calls per update() and
+ * getState(), plus some increments, and nothing is allocated, so it should be fine to leave them running
+ * in a shipped game.
+ *
+ * Values are written by whichever thread polls the controllers (the input pump thread, if it's running).
+ * You can read them from any thread, but the numbers can be slightly stale, and a reset() from another
+ * thread can race with a poll. getState() calls answered by the input pump aren't timed, since they don't
+ * touch the native code and can happen on many threads at once.
+ *
+ * @author William Hartman
+ */
+public final class ControllerMetrics implements ControllerMetricsMXBean {
+
+    /**
+     * The JMX name used by registerMBean() if no other name is passed.
+     */
+    public static final String DEFAULT_MBEAN_NAME = "com.studiohartman.jamepad:type=ControllerMetrics";
+
+    private final MetricsHistogram updateLatency = new MetricsHistogram();
+    private final MetricsHistogram getStateLatency = new MetricsHistogram();
+    private final MetricsHistogram nativeCallsPerFrame = new MetricsHistogram();
+    private final MetricsHistogram eventQueueDepth = new MetricsHistogram();
+    private final MetricsHistogram mappingLoadLatency = new MetricsHistogram();
+
+    long nativeCalls;
+    long exceptions;
+    long hotplugEvents;
+    long reconnects;
+    long controllersOpened;
+    long controllersClosed;
+    long mappingLoadFailures;
+    private long nativeCallsAtLastFrame;
+
+    private ObjectName registeredName;
+
+    ControllerMetrics() {
+    }
+
+    void updateFinished(long nanos) {
+        updateLatency.record(nanos);
+        nativeCallsPerFrame.record(nativeCalls - nativeCallsAtLastFrame);
+        nativeCallsAtLastFrame = nativeCalls;
+    }
+
+    void getStateFinished(long nanos) {
+        getStateLatency.record(nanos);
+    }
+
+    void eventsQueued(int depth) {
+        eventQueueDepth.record(depth);
+    }
+
+    void mappingLoadFinished(long nanos, boolean succeeded) {
+        mappingLoadLatency.record(nanos);
+        if(!succeeded) {
+            mappingLoadFailures++;
+        }
+    }
+
+    /**
+     * Forget the update() and getState() timings recorded while warming up, so they don't hide what
+     * the game actually sees.
+     */
+    void warmUpFinished() {
+        updateLatency.reset();
+        getStateLatency.reset();
+        nativeCallsPerFrame.reset();
+        nativeCallsAtLastFrame = nativeCalls;
+    }
+
+    /**
+     * Returns the histogram of how long each update() took in nanoseconds, including the updates the
+     * input pump makes and the ones getState() makes outside of frame polling mode.
+     *
+     * @return The update latency histogram
+     */
+    public MetricsHistogram getUpdateLatency() {
+        return updateLatency;
+    }
+
+    /**
+     * Returns the histogram of how long each getState() call took in nanoseconds.
+     *
+     * @return The getState latency histogram
+     */
+    public MetricsHistogram getGetStateLatency() {
+        return getStateLatency;
+    }
+
+    /**
+     * Returns the histogram of how many calls were made to the native code between two updates. Outside of
+     * frame polling mode this includes the calls made to read each button and axis.
+     *
+     * @return The histogram of native calls per frame
+     */
+    public MetricsHistogram getNativeCallsPerFrame() {
+        return nativeCallsPerFrame;
+    }
+
+    /**
+     * Returns the histogram of how many events were waiting in the event queue after each update(). Nothing
+     * is recorded unless the event queue is enabled.
+     *
+     * @return The event queue depth histogram
+     */
+    public MetricsHistogram getEventQueueDepth() {
+        return eventQueueDepth;
+    }
+
+    /**
+     * Returns the histogram of how long each call to addMappingsFromFile() took in nanoseconds.
+     *
+     * @return The mapping load latency histogram
+     */
+    public MetricsHistogram getMappingLoadLatency() {
+        return mappingLoadLatency;
+    }
+
+    @Override
+    public long getUpdateCount() {
+        return updateLatency.getCount();
+    }
+
+    @Override
+    public double getUpdateLatencyMeanNanos() {
+        return updateLatency.getMean();
+    }
+
+    @Override
+    public long getUpdateLatencyP50Nanos() {
+        return updateLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getUpdateLatencyP99Nanos() {
+        return updateLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getUpdateLatencyMaxNanos() {
+        return updateLatency.getMax();
+    }
+
+    @Override
+    public long getGetStateCount() {
+        return getStateLatency.getCount();
+    }
+
+    @Override
+    public long getGetStateLatencyP50Nanos() {
+        return getStateLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getGetStateLatencyP99Nanos() {
+        return getStateLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getGetStateLatencyMaxNanos() {
+        return getStateLatency.getMax();
+    }
+
+    /**
+     * Returns the number of calls made to the backend (SDL, normally) since this was created or reset.
+     *
+     * @return The number of native calls
+     */
+    @Override
+    public long getNativeCallCount() {
+        return nativeCalls;
+    }
+
+    @Override
+    public long getNativeCallsPerFrameP50() {
+        return nativeCallsPerFrame.getPercentile(50);
+    }
+
+    @Override
+    public long getNativeCallsPerFrameP99() {
+        return nativeCallsPerFrame.getPercentile(99);
+    }
+
+    @Override
+    public long getNativeCallsPerFrameMax() {
+        return nativeCallsPerFrame.getMax();
+    }
+
+    /**
+     * Returns the number of ControllerUnpluggedExceptions thrown, including the ones getState() catches.
+     *
+     * @return The number of exceptions thrown
+     */
+    @Override
+    public long getExceptionCount() {
+        return exceptions;
+    }
+
+    /**
+     * Returns the number of plug and unplug events seen by update().
+     *
+     * @return The number of hotplug events
+     */
+    @Override
+    public long getHotplugEventCount() {
+        return hotplugEvents;
+    }
+
+    /**
+     * Returns the number of times update() went through the connected controllers after a hotplug event.
+     * With a debounce window, this can be lower than the number of hotplug events.
+     *
+     * @return The number of reconnects
+     */
+    @Override
+    public long getReconnectCount() {
+        return reconnects;
+    }
+
+    @Override
+    public long getControllersOpenedCount() {
+        return controllersOpened;
+    }
+
+    @Override
+    public long getControllersClosedCount() {
+        return controllersClosed;
+    }
+
+    @Override
+    public long getMappingLoadCount() {
+        return mappingLoadLatency.getCount();
+    }
+
+    @Override
+    public long getMappingLoadFailureCount() {
+        return mappingLoadFailures;
+    }
+
+    @Override
+    public long getMappingLoadLatencyMaxNanos() {
+        return mappingLoadLatency.getMax();
+    }
+
+    @Override
+    public long getEventQueueDepthP99() {
+        return eventQueueDepth.getPercentile(99);
+    }
+
+    @Override
+    public long getEventQueueDepthMax() {
+        return eventQueueDepth.getMax();
+    }
+
+    @Override
+    public void reset() {
+        updateLatency.reset();
+        getStateLatency.reset();
+        nativeCallsPerFrame.reset();
+        eventQueueDepth.reset();
+        mappingLoadLatency.reset();
+        nativeCalls = 0;
+        nativeCallsAtLastFrame = 0;
+        exceptions = 0;
+        hotplugEvents = 0;
+        reconnects = 0;
+        controllersOpened = 0;
+        controllersClosed = 0;
+        mappingLoadFailures = 0;
+    }
+
+    /**
+     * Register these metrics with the platform MBean server under DEFAULT_MBEAN_NAME.
+     *
+     * @throws JMException if the name is taken or the bean can't be registered
+     */
+    public void registerMBean() throws JMException {
+        registerMBean(DEFAULT_MBEAN_NAME);
+    }
+
+    /**
+     * Register these metrics with the platform MBean server under the passed name. Use this if you have
+     * more than one ControllerManager. If they're already registered, the old registration is removed first.
+     *
+     * @param name The JMX object name, like "com.studiohartman.jamepad:type=ControllerMetrics,name=p2"
+     * @throws JMException if the name is invalid or taken, or the bean can't be registered
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    /**
+     * Remove these metrics from the platform MBean server. If they aren't registered, this does nothing.
+     * ControllerManager.quitSDLGamepad() calls this for you.
+     */
+    public synchronized void unregisterMBean() {
+        if(registeredName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(registeredName)) {
+                server.unregisterMBean(registeredName);
+            }
+        } catch (JMException e) {
+            System.err.println("Failed to unregister the controller metrics MBean");
+            e.printStackTrace();
+        }
+        registeredName = null;
+    }
+}
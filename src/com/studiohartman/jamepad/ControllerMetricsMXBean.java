@@ -0,0 +1,48 @@
+package com.studiohartman.jamepad;
+
+/**
+ * The JMX view of ControllerMetrics. Register it with ControllerMetrics.registerMBean() to see how much
+ * time Jamepad is taking from something like VisualVM or JConsole.
+ *
+ * All latencies are in nanoseconds. Percentiles come from a MetricsHistogram, so they can be up to 12.5%
+ * high.
+ *
+ * @author William Hartman
+ */
+public interface ControllerMetricsMXBean {
+
+    long getUpdateCount();
+    double getUpdateLatencyMeanNanos();
+    long getUpdateLatencyP50Nanos();
+    long getUpdateLatencyP99Nanos();
+    long getUpdateLatencyMaxNanos();
+
+    long getGetStateCount();
+    long getGetStateLatencyP50Nanos();
+    long getGetStateLatencyP99Nanos();
+    long getGetStateLatencyMaxNanos();
+
+    long getNativeCallCount();
+    long getNativeCallsPerFrameP50();
+    long getNativeCallsPerFrameP99();
+    long getNativeCallsPerFrameMax();
+
+    long getExceptionCount();
+
+    long getHotplugEventCount();
+    long getReconnectCount();
+    long getControllersOpenedCount();
+    long getControllersClosedCount();
+
+    long getMappingLoadCount();
+    long getMappingLoadFailureCount();
+    long getMappingLoadLatencyMaxNanos();
+
+    long getEventQueueDepthP99();
+    long getEventQueueDepthMax();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
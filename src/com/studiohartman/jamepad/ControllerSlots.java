@@ -0,0 +1,314 @@
+package com.studiohartman.jamepad;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class holds the ControllerIndex slots of a ControllerManager. Slots are only created when
+ * something needs them (a controller is plugged in, or getControllerIndex() asks for one), so a
+ * manager that allows 32 controllers but only has 2 plugged in only pays for 2.
+ *
+ * The table keeps track of which slots hold an open controller and which need polling, as bit sets,
+ * and maps SDL instance IDs to slots. That way update() and hotplugging only touch the slots that
+ * actually have something going on, no matter how many slots there are.
+ *
+ * Like the rest of ControllerManager, this isn't thread safe. It is only used from the thread doing
+ * the polling.
+ *
+ * @author William Hartman
+ */
+final class ControllerSlots implements Iterable<ControllerIndex> {
+
+    private static final int NO_INSTANCE = -1;
+
+    private final int maxSlots;
+    private ControllerIndex[] slots = new ControllerIndex[4];
+    private int numSlots;
+
+    private final BitSet open = new BitSet();
+    private final BitSet polled = new BitSet();
+    private int numOpen;
+
+    //Open addressing map from instance ID to slot index, with linear probing
+    private int[] instanceIds = new int[16];
+    private int[] instanceSlots = new int[16];
+    private int numInstances;
+
+    /**
+     * Constructor. Makes a table with no slots.
+     *
+     * @param maxSlots The most slots the table can hold
+     */
+    ControllerSlots(int maxSlots) {
+        if(maxSlots < 0) {
+            throw new IllegalArgumentException("The number of controllers can't be negative!");
+        }
+        this.maxSlots = maxSlots;
+        Arrays.fill(instanceIds, NO_INSTANCE);
+    }
+
+    /**
+     * Returns the most slots this table can hold.
+     *
+     * @return The maximum number of slots
+     */
+    int getMaxSlots() {
+        return maxSlots;
+    }
+
+    /**
+     * Returns one more than the highest index of a slot that has been created.
+     *
+     * @return The number of slot indices in use
+     */
+    int size() {
+        return numSlots;
+    }
+
+    /**
+     * Returns the slot at the passed index, or null if it hasn't been created.
+     *
+     * @param index The index of the slot
+     * @return The slot, or null
+     */
+    ControllerIndex get(int index) {
+        return index >= 0 && index < numSlots ? slots[index] : null;
+    }
+
+    /**
+     * Put a newly created slot into the table at its index.
+     *
+     * @param c The new slot
+     */
+    void add(ControllerIndex c) {
+        int index = c.getIndex();
+        if(index < 0 || index >= maxSlots) {
+            throw new IllegalArgumentException("Slot " + index + " is out of range!");
+        }
+        if(index >= slots.length) {
+            int newLength = slots.length;
+            while(newLength <= index) {
+                newLength *= 2;
+            }
+            ControllerIndex[] newSlots = new ControllerIndex[Math.min(newLength, maxSlots)];
+            System.arraycopy(slots, 0, newSlots, 0, numSlots);
+            slots = newSlots;
+        }
+        slots[index] = c;
+        numSlots = Math.max(numSlots, index + 1);
+    }
+
+    /**
+     * Called by a slot when a controller has been opened in it.
+     *
+     * @param index The index of the slot
+     * @param instanceId The instance ID of the controller
+     */
+    void opened(int index, int instanceId) {
+        if(!open.get(index)) {
+            open.set(index);
+            numOpen++;
+        }
+        polled.set(index);
+        putInstance(instanceId, index);
+    }
+
+    /**
+     * Called by a slot when its controller has been closed. The slot is still polled once more, so its
+     * snapshot shows the controller going away.
+     *
+     * @param index The index of the slot
+     * @param instanceId The instance ID the controller had
+     */
+    void closed(int index, int instanceId) {
+        if(open.get(index)) {
+            open.clear(index);
+            numOpen--;
+        }
+        removeInstance(instanceId);
+    }
+
+    /**
+     * Returns the number of slots holding an open controller.
+     *
+     * @return The number of open slots
+     */
+    int getNumOpen() {
+        return numOpen;
+    }
+
+    /**
+     * Returns the lowest index of a slot without an open controller, or -1 if every slot is taken. The
+     * slot might not have been created yet.
+     *
+     * @return The index of the first free slot
+     */
+    int firstFreeSlot() {
+        int index = open.nextClearBit(0);
+        return index < maxSlots ? index : -1;
+    }
+
+    /**
+     * Returns the index of the first slot at or after the passed index holding an open controller, or -1
+     * if there aren't any.
+     *
+     * @param fromIndex The index to start looking at
+     * @return The index of the next open slot
+     */
+    int nextOpen(int fromIndex) {
+        return open.nextSetBit(fromIndex);
+    }
+
+    /**
+     * Returns the index of the first slot at or after the passed index that needs polling, or -1 if
+     * there aren't any. These are the open slots, plus the ones that were closed since the last call
+     * to retireClosed().
+     *
+     * @param fromIndex The index to start looking at
+     * @return The index of the next slot to poll
+     */
+    int nextPolled(int fromIndex) {
+        return polled.nextSetBit(fromIndex);
+    }
+
+    /**
+     * Poll the passed slot every frame, whether or not it has an open controller. Replayed slots are
+     * never opened, so this is how they get polled.
+     *
+     * @param index The index of the slot
+     */
+    void markPolled(int index) {
+        polled.set(index);
+    }
+
+    /**
+     * Stop polling slots that were closed before this call. This should be done at the start of a frame,
+     * after the slots closed during the last one have been polled one last time.
+     */
+    void retireClosed() {
+        polled.and(open);
+    }
+
+    /**
+     * Returns the slot holding the open controller with the passed instance ID, or null if no slot holds
+     * it.
+     *
+     * @param instanceId The instance ID of the controller
+     * @return The slot holding the controller
+     */
+    ControllerIndex findInstance(int instanceId) {
+        if(instanceId < 0) {
+            return null;
+        }
+        int mask = instanceIds.length - 1;
+        for(int i = mix(instanceId) & mask; instanceIds[i] != NO_INSTANCE; i = (i + 1) & mask) {
+            if(instanceIds[i] == instanceId) {
+                return slots[instanceSlots[i]];
+            }
+        }
+        return null;
+    }
+
+    private void putInstance(int instanceId, int index) {
+        if(instanceId < 0) {
+            return;
+        }
+        if((numInstances + 1) * 2 > instanceIds.length) {
+            rehash(instanceIds.length * 2);
+        }
+        int mask = instanceIds.length - 1;
+        int i = mix(instanceId) & mask;
+        while(instanceIds[i] != NO_INSTANCE && instanceIds[i] != instanceId) {
+            i = (i + 1) & mask;
+        }
+        if(instanceIds[i] == NO_INSTANCE) {
+            numInstances++;
+        }
+        instanceIds[i] = instanceId;
+        instanceSlots[i] = index;
+    }
+
+    private void removeInstance(int instanceId) {
+        if(instanceId < 0) {
+            return;
+        }
+        int mask = instanceIds.length - 1;
+        int i = mix(instanceId) & mask;
+        while(instanceIds[i] != instanceId) {
+            if(instanceIds[i] == NO_INSTANCE) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        //Shift the rest of the run back, so lookups never stop early at the hole
+        int hole = i;
+        for(int j = (hole + 1) & mask; instanceIds[j] != NO_INSTANCE; j = (j + 1) & mask) {
+            int home = mix(instanceIds[j]) & mask;
+            boolean canMove = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+            if(canMove) {
+                instanceIds[hole] = instanceIds[j];
+                instanceSlots[hole] = instanceSlots[j];
+                hole = j;
+            }
+        }
+        instanceIds[hole] = NO_INSTANCE;
+        numInstances--;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldIds = instanceIds;
+        int[] oldSlots = instanceSlots;
+        instanceIds = new int[capacity];
+        instanceSlots = new int[capacity];
+        Arrays.fill(instanceIds, NO_INSTANCE);
+        numInstances = 0;
+        for(int i = 0; i < oldIds.length; i++) {
+            if(oldIds[i] != NO_INSTANCE) {
+                putInstance(oldIds[i], oldSlots[i]);
+            }
+        }
+    }
+
+    private static int mix(int instanceId) {
+        //Instance IDs count up from 0, so spread them out a little
+        return ((instanceId * 0x9E3779B9) >>> 16) ^ instanceId;
+    }
+
+    /**
+     * Iterates over every slot that has been created, in index order. This allocates, so it is meant for
+     * changing settings, not for anything done every frame.
+     *
+     * @return An iterator over the created slots
+     */
+    @Override
+    public Iterator<ControllerIndex> iterator() {
+        return new Iterator<ControllerIndex>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while(from < numSlots && slots[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            @Override
+            public ControllerIndex next() {
+                if(next >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                ControllerIndex c = slots[next];
+                next = advance(next + 1);
+                return c;
+            }
+        };
+    }
+}
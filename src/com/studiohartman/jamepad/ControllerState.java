@@ -18,7 +18,9 @@ import java.io.Serializable;
  */
 public final class ControllerState implements Serializable {
     private static final ControllerState DISCONNECTED_CONTROLLER = new ControllerState();
-    private static final long serialVersionUID = -3068755590868647792L;
+    //Changed when the button masks were added. States serialized before that would otherwise come back
+    //with masks of 0 that disagree with the button fields.
+    private static final long serialVersionUID = -2964294238642968328L;
 
     /**
      * Whether or not the controller is currently connected.
@@ -54,23 +56,27 @@ public final class ControllerState implements Serializable {
 
     /**
      * The angle of the left stick (for reference, 0 is right, 90 is up, 180 is left, 270 is down)
+     * This is NaN if StickPolarMode.LAZY is used.
      */
     public final float leftStickAngle;
 
     /**
      * The amount the left stick is pushed in the current direction. This probably between 0 and 1,
      * but this can't be guaranteed due to weird gamepads (like the square holes on a Logitech Dual Action)
+     * This is NaN if StickPolarMode.LAZY is used.
      */
     public final float leftStickMagnitude;
 
     /**
      * The angle of the right stick (for reference, 0 is right, 90 is up, 180 is left, 270 is down)
+     * This is NaN if StickPolarMode.LAZY is used.
      */
     public final float rightStickAngle;
 
     /**
      * The amount the right stick is pushed in the current direction. This probably between 0 and 1,
      * but this can't be guaranteed due to weird gamepads (like the square holes on a Logitech Dual Action)
+     * This is NaN if StickPolarMode.LAZY is used.
      */
     public final float rightStickMagnitude;
 
@@ -236,6 +242,23 @@ public final class ControllerState implements Serializable {
      */
     public final boolean dpadRightJustPressed;
 
+    /**
+     * The held down buttons as a bitmask. Bit n is set if the ControllerButton with ordinal n is held
+     * down, so A is held down if {@code (buttonMask & (1 << ControllerButton.A.ordinal())) != 0}.
+     */
+    public final int buttonMask;
+
+    /**
+     * The just pressed buttons as a bitmask, laid out like buttonMask
+     */
+    public final int justPressedMask;
+
+    /**
+     * The just released buttons as a bitmask, laid out like buttonMask. These are the buttons that were
+     * held down on the last read but aren't anymore.
+     */
+    public final int justReleasedMask;
+
     /**
      * Return a controller state based on the current state of the passed controller.
      *
@@ -252,6 +275,19 @@ public final class ControllerState implements Serializable {
         }
     }
 
+    /**
+     * Return a controller state with the same values as the passed buffer. If the buffer represents a
+     * disconnected controller, the shared disconnected controller is returned.
+     *
+     * @param buffer The buffer whose values should be copied.
+     */
+    static ControllerState getInstanceFromBuffer(ControllerStateBuffer buffer) {
+        if(!buffer.isConnected) {
+            return DISCONNECTED_CONTROLLER;
+        }
+        return new ControllerState(buffer);
+    }
+
     /**
      * Return a ControllerState that represents a disconnected controller. This object is shared.
      *
@@ -262,51 +298,106 @@ public final class ControllerState implements Serializable {
     }
 
     private ControllerState(ControllerIndex c) throws ControllerUnpluggedException {
+        //Read every button at once, so the masks all describe the same instant
+        c.updateButtons();
+        buttonMask = c.getHeldButtonMask();
+        justPressedMask = c.getPolledJustPressedMask();
+        justReleasedMask = c.getPolledJustReleasedMask();
+
+        StickPolarMode polarMode = c.getStickPolarMode();
         isConnected = true;
         controllerType = c.getName();
         leftStickX = c.getAxisState(ControllerAxis.LEFTX);
         leftStickY = c.getAxisState(ControllerAxis.LEFTY);
         rightStickX = c.getAxisState(ControllerAxis.RIGHTX);
         rightStickY = c.getAxisState(ControllerAxis.RIGHTY);
-        leftStickAngle = (float) Math.toDegrees(Math.atan2(leftStickY, leftStickX));
-        leftStickMagnitude = (float) Math.sqrt((leftStickX * leftStickX) + (leftStickY * leftStickY));
-        rightStickAngle = (float) Math.toDegrees(Math.atan2(rightStickY, rightStickX));
-        rightStickMagnitude = (float) Math.sqrt((rightStickX * rightStickX) + (rightStickY * rightStickY));
+        leftStickAngle = polarMode.angle(leftStickX, leftStickY);
+        leftStickMagnitude = polarMode.magnitude(leftStickX, leftStickY);
+        rightStickAngle = polarMode.angle(rightStickX, rightStickY);
+        rightStickMagnitude = polarMode.magnitude(rightStickX, rightStickY);
         leftTrigger = c.getAxisState(ControllerAxis.TRIGGERLEFT);
         rightTrigger = c.getAxisState(ControllerAxis.TRIGGERRIGHT);
 
-        leftStickJustClicked = c.isButtonJustPressed(ControllerButton.LEFTSTICK);
-        rightStickJustClicked = c.isButtonJustPressed(ControllerButton.RIGHTSTICK);
-        leftStickClick = c.isButtonPressed(ControllerButton.LEFTSTICK);
-        rightStickClick = c.isButtonPressed(ControllerButton.RIGHTSTICK);
-
-        aJustPressed = c.isButtonJustPressed(ControllerButton.A);
-        bJustPressed = c.isButtonJustPressed(ControllerButton.B);
-        xJustPressed = c.isButtonJustPressed(ControllerButton.X);
-        yJustPressed = c.isButtonJustPressed(ControllerButton.Y);
-        lbJustPressed = c.isButtonJustPressed(ControllerButton.LEFTBUMPER);
-        rbJustPressed = c.isButtonJustPressed(ControllerButton.RIGHTBUMPER);
-        startJustPressed = c.isButtonJustPressed(ControllerButton.START);
-        backJustPressed = c.isButtonJustPressed(ControllerButton.BACK);
-        guideJustPressed = c.isButtonJustPressed(ControllerButton.GUIDE);
-        dpadUpJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_UP);
-        dpadDownJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_DOWN);
-        dpadLeftJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_LEFT);
-        dpadRightJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_RIGHT);
-
-        a = c.isButtonPressed(ControllerButton.A);
-        b = c.isButtonPressed(ControllerButton.B);
-        x = c.isButtonPressed(ControllerButton.X);
-        y = c.isButtonPressed(ControllerButton.Y);
-        lb = c.isButtonPressed(ControllerButton.LEFTBUMPER);
-        rb = c.isButtonPressed(ControllerButton.RIGHTBUMPER);
-        start = c.isButtonPressed(ControllerButton.START);
-        back = c.isButtonPressed(ControllerButton.BACK);
-        guide = c.isButtonPressed(ControllerButton.GUIDE);
-        dpadUp = c.isButtonPressed(ControllerButton.DPAD_UP);
-        dpadDown = c.isButtonPressed(ControllerButton.DPAD_DOWN);
-        dpadLeft = c.isButtonPressed(ControllerButton.DPAD_LEFT);
-        dpadRight = c.isButtonPressed(ControllerButton.DPAD_RIGHT);
+        leftStickJustClicked = isSet(justPressedMask, ControllerButton.LEFTSTICK);
+        rightStickJustClicked = isSet(justPressedMask, ControllerButton.RIGHTSTICK);
+        leftStickClick = isSet(buttonMask, ControllerButton.LEFTSTICK);
+        rightStickClick = isSet(buttonMask, ControllerButton.RIGHTSTICK);
+
+        aJustPressed = isSet(justPressedMask, ControllerButton.A);
+        bJustPressed = isSet(justPressedMask, ControllerButton.B);
+        xJustPressed = isSet(justPressedMask, ControllerButton.X);
+        yJustPressed = isSet(justPressedMask, ControllerButton.Y);
+        lbJustPressed = isSet(justPressedMask, ControllerButton.LEFTBUMPER);
+        rbJustPressed = isSet(justPressedMask, ControllerButton.RIGHTBUMPER);
+        startJustPressed = isSet(justPressedMask, ControllerButton.START);
+        backJustPressed = isSet(justPressedMask, ControllerButton.BACK);
+        guideJustPressed = isSet(justPressedMask, ControllerButton.GUIDE);
+        dpadUpJustPressed = isSet(justPressedMask, ControllerButton.DPAD_UP);
+        dpadDownJustPressed = isSet(justPressedMask, ControllerButton.DPAD_DOWN);
+        dpadLeftJustPressed = isSet(justPressedMask, ControllerButton.DPAD_LEFT);
+        dpadRightJustPressed = isSet(justPressedMask, ControllerButton.DPAD_RIGHT);
+
+        a = isSet(buttonMask, ControllerButton.A);
+        b = isSet(buttonMask, ControllerButton.B);
+        x = isSet(buttonMask, ControllerButton.X);
+        y = isSet(buttonMask, ControllerButton.Y);
+        lb = isSet(buttonMask, ControllerButton.LEFTBUMPER);
+        rb = isSet(buttonMask, ControllerButton.RIGHTBUMPER);
+        start = isSet(buttonMask, ControllerButton.START);
+        back = isSet(buttonMask, ControllerButton.BACK);
+        guide = isSet(buttonMask, ControllerButton.GUIDE);
+        dpadUp = isSet(buttonMask, ControllerButton.DPAD_UP);
+        dpadDown = isSet(buttonMask, ControllerButton.DPAD_DOWN);
+        dpadLeft = isSet(buttonMask, ControllerButton.DPAD_LEFT);
+        dpadRight = isSet(buttonMask, ControllerButton.DPAD_RIGHT);
+    }
+
+    private ControllerState(ControllerStateBuffer buffer) {
+        isConnected = buffer.isConnected;
+        controllerType = buffer.controllerType;
+        leftStickX = buffer.leftStickX;
+        leftStickY = buffer.leftStickY;
+        rightStickX = buffer.rightStickX;
+        rightStickY = buffer.rightStickY;
+        leftStickAngle = buffer.leftStickAngle;
+        leftStickMagnitude = buffer.leftStickMagnitude;
+        rightStickAngle = buffer.rightStickAngle;
+        rightStickMagnitude = buffer.rightStickMagnitude;
+        leftStickClick = buffer.leftStickClick;
+        rightStickClick = buffer.rightStickClick;
+        leftTrigger = buffer.leftTrigger;
+        rightTrigger = buffer.rightTrigger;
+        leftStickJustClicked = buffer.leftStickJustClicked;
+        rightStickJustClicked = buffer.rightStickJustClicked;
+        a = buffer.a;
+        b = buffer.b;
+        x = buffer.x;
+        y = buffer.y;
+        lb = buffer.lb;
+        rb = buffer.rb;
+        start = buffer.start;
+        back = buffer.back;
+        guide = buffer.guide;
+        dpadUp = buffer.dpadUp;
+        dpadDown = buffer.dpadDown;
+        dpadLeft = buffer.dpadLeft;
+        dpadRight = buffer.dpadRight;
+        aJustPressed = buffer.aJustPressed;
+        bJustPressed = buffer.bJustPressed;
+        xJustPressed = buffer.xJustPressed;
+        yJustPressed = buffer.yJustPressed;
+        lbJustPressed = buffer.lbJustPressed;
+        rbJustPressed = buffer.rbJustPressed;
+        startJustPressed = buffer.startJustPressed;
+        backJustPressed = buffer.backJustPressed;
+        guideJustPressed = buffer.guideJustPressed;
+        dpadUpJustPressed = buffer.dpadUpJustPressed;
+        dpadDownJustPressed = buffer.dpadDownJustPressed;
+        dpadLeftJustPressed = buffer.dpadLeftJustPressed;
+        dpadRightJustPressed = buffer.dpadRightJustPressed;
+        buttonMask = buffer.buttonMask;
+        justPressedMask = buffer.justPressedMask;
+        justReleasedMask = buffer.justReleasedMask;
     }
 
     private ControllerState() {
@@ -355,5 +446,84 @@ public final class ControllerState implements Serializable {
         dpadDown = false;
         dpadLeft = false;
         dpadRight = false;
+
+        buttonMask = 0;
+        justPressedMask = 0;
+        justReleasedMask = 0;
+    }
+
+    /**
+     * Returns whether or not the passed button is held down. This is the same as the matching boolean
+     * field.
+     *
+     * @param button The button to check
+     * @return Whether or not the button is held down
+     */
+    public boolean isButtonPressed(ControllerButton button) {
+        return isSet(buttonMask, button);
+    }
+
+    /**
+     * Returns whether or not the passed button was just pressed.
+     *
+     * @param button The button to check
+     * @return Whether or not the button was just pressed
+     */
+    public boolean isButtonJustPressed(ControllerButton button) {
+        return isSet(justPressedMask, button);
+    }
+
+    /**
+     * Returns whether or not the passed button was just released.
+     *
+     * @param button The button to check
+     * @return Whether or not the button was just released
+     */
+    public boolean isButtonJustReleased(ControllerButton button) {
+        return isSet(justReleasedMask, button);
+    }
+
+    /**
+     * Returns the angle of the left stick, worked out now with Math.atan2(). This works with any
+     * StickPolarMode, including LAZY.
+     *
+     * @return The angle of the left stick (0 is right, 90 is up, 180 is left, 270 is down)
+     */
+    public float getLeftStickAngle() {
+        return isConnected ? StickPolarMode.exactAngle(leftStickX, leftStickY) : 0;
+    }
+
+    /**
+     * Returns how far the left stick is pushed, worked out now. This works with any StickPolarMode,
+     * including LAZY.
+     *
+     * @return The magnitude of the left stick
+     */
+    public float getLeftStickMagnitude() {
+        return isConnected ? StickPolarMode.exactMagnitude(leftStickX, leftStickY) : 0;
+    }
+
+    /**
+     * Returns the angle of the right stick, worked out now with Math.atan2(). This works with any
+     * StickPolarMode, including LAZY.
+     *
+     * @return The angle of the right stick (0 is right, 90 is up, 180 is left, 270 is down)
+     */
+    public float getRightStickAngle() {
+        return isConnected ? StickPolarMode.exactAngle(rightStickX, rightStickY) : 0;
+    }
+
+    /**
+     * Returns how far the right stick is pushed, worked out now. This works with any StickPolarMode,
+     * including LAZY.
+     *
+     * @return The magnitude of the right stick
+     */
+    public float getRightStickMagnitude() {
+        return isConnected ? StickPolarMode.exactMagnitude(rightStickX, rightStickY) : 0;
+    }
+
+    private static boolean isSet(int mask, ControllerButton button) {
+        return (mask & (1 << button.ordinal())) != 0;
     }
 }
@@ -0,0 +1,529 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This class is a mutable version of ControllerState. It has all the same fields, but they are
+ * overwritten each time the buffer is passed to ControllerManager.getState(int, ControllerStateBuffer).
+ *
+ * This lets you keep one buffer per controller around and read the state of your gamepads every frame
+ * without allocating anything, while still getting the simple, exception free behavior of getState().
+ *
+ * Like with ControllerState, if isConnected is false, all other fields will be zero or false.
+ *
+ * @author William Hartman
+ */
+public final class ControllerStateBuffer {
+
+    /**
+     * Whether or not the controller is currently connected.
+     *
+     * If the controller is disconnected, all other fields will be 0 or false.
+     */
+    public boolean isConnected;
+
+    /**
+     * A string describing the type of controller (i.e. "PS4 Controller" or "XInput Controller")
+     */
+    public String controllerType = "Not Connected";
+
+    /**
+     * The x position of the left stick between -1 and 1
+     */
+    public float leftStickX;
+
+    /**
+     * The y position of the left stick between -1 and 1
+     */
+    public float leftStickY;
+
+    /**
+     * The x position of the right stick between -1 and 1
+     */
+    public float rightStickX;
+
+    /**
+     * The y position of the right stick between -1 and 1
+     */
+    public float rightStickY;
+
+    /**
+     * The angle of the left stick (for reference, 0 is right, 90 is up, 180 is left, 270 is down)
+     * This is NaN if StickPolarMode.LAZY is used.
+     */
+    public float leftStickAngle;
+
+    /**
+     * The amount the left stick is pushed in the current direction. This probably between 0 and 1,
+     * but this can't be guaranteed due to weird gamepads (like the square holes on a Logitech Dual Action)
+     * This is NaN if StickPolarMode.LAZY is used.
+     */
+    public float leftStickMagnitude;
+
+    /**
+     * The angle of the right stick (for reference, 0 is right, 90 is up, 180 is left, 270 is down)
+     * This is NaN if StickPolarMode.LAZY is used.
+     */
+    public float rightStickAngle;
+
+    /**
+     * The amount the right stick is pushed in the current direction. This probably between 0 and 1,
+     * but this can't be guaranteed due to weird gamepads (like the square holes on a Logitech Dual Action)
+     * This is NaN if StickPolarMode.LAZY is used.
+     */
+    public float rightStickMagnitude;
+
+    /**
+     * Whether or not the left stick is clicked in
+     */
+    public boolean leftStickClick;
+
+    /**
+     * Whether or not the right stick is clicked in
+     */
+    public boolean rightStickClick;
+
+    /**
+     * The position of the left trigger between 0 and 1
+     */
+    public float leftTrigger;
+
+    /**
+     * The position of the right trigger between 0 and 1
+     */
+    public float rightTrigger;
+
+    /**
+     * Whether or not the left stick was just is clicked in
+     */
+    public boolean leftStickJustClicked;
+
+    /**
+     * Whether or not the right stick was just is clicked in
+     */
+    public boolean rightStickJustClicked;
+
+    /**
+     * Whether or not the a button is pressed
+     */
+    public boolean a;
+
+    /**
+     * Whether or not the b button is pressed
+     */
+    public boolean b;
+
+    /**
+     * Whether or not the x button is pressed
+     */
+    public boolean x;
+
+    /**
+     * Whether or not the y button is pressed
+     */
+    public boolean y;
+
+    /**
+     * Whether or not the left bumper is pressed
+     */
+    public boolean lb;
+
+    /**
+     * Whether or not the right bumper is pressed
+     */
+    public boolean rb;
+
+    /**
+     * Whether or not the start button is pressed
+     */
+    public boolean start;
+
+    /**
+     * Whether or not the back button is pressed
+     */
+    public boolean back;
+
+    /**
+     * Whether or not the guide button is pressed. For some controller/platform combinations this
+     * doesn't work. You probably shouldn't use this.
+     */
+    public boolean guide;
+
+    /**
+     * Whether or not the up button on the dpad is pushed
+     */
+    public boolean dpadUp;
+
+    /**
+     * Whether or not the down button on the dpad is pushed
+     */
+    public boolean dpadDown;
+
+    /**
+     * Whether or not the left button on the dpad is pushed
+     */
+    public boolean dpadLeft;
+
+    /**
+     * Whether or not the right button on the dpad is pushed
+     */
+    public boolean dpadRight;
+
+    /**
+     * Whether or not the a button was just pressed
+     */
+    public boolean aJustPressed;
+
+    /**
+     * Whether or not the b button was just pressed
+     */
+    public boolean bJustPressed;
+
+    /**
+     * Whether or not the x button was just pressed
+     */
+    public boolean xJustPressed;
+
+    /**
+     * Whether or not the y button was just pressed
+     */
+    public boolean yJustPressed;
+
+    /**
+     * Whether or not the left bumper was just pressed
+     */
+    public boolean lbJustPressed;
+
+    /**
+     * Whether or not the right bumper was just pressed
+     */
+    public boolean rbJustPressed;
+
+    /**
+     * Whether or not the start button was just pressed
+     */
+    public boolean startJustPressed;
+
+    /**
+     * Whether or not the back button was just pressed
+     */
+    public boolean backJustPressed;
+
+    /**
+     * Whether or not the guide button was just pressed
+     */
+    public boolean guideJustPressed;
+
+    /**
+     * Whether or not the up button on the dpad was just pressed
+     */
+    public boolean dpadUpJustPressed;
+
+    /**
+     * Whether or not the down button on the dpad was just pressed
+     */
+    public boolean dpadDownJustPressed;
+
+    /**
+     * Whether or not the left button on the dpad was just pressed
+     */
+    public boolean dpadLeftJustPressed;
+
+    /**
+     * Whether or not the right button on the dpad was just pressed
+     */
+    public boolean dpadRightJustPressed;
+
+    /**
+     * The held down buttons as a bitmask. Bit n is set if the ControllerButton with ordinal n is held
+     * down, so A is held down if {@code (buttonMask & (1 << ControllerButton.A.ordinal())) != 0}.
+     */
+    public int buttonMask;
+
+    /**
+     * The just pressed buttons as a bitmask, laid out like buttonMask
+     */
+    public int justPressedMask;
+
+    /**
+     * The just released buttons as a bitmask, laid out like buttonMask. These are the buttons that were
+     * held down on the last read but aren't anymore.
+     */
+    public int justReleasedMask;
+
+    /**
+     * Overwrite this buffer with the contents of another buffer.
+     *
+     * @param other The buffer to copy from
+     */
+    public void copyFrom(ControllerStateBuffer other) {
+        isConnected = other.isConnected;
+        controllerType = other.controllerType;
+        leftStickX = other.leftStickX;
+        leftStickY = other.leftStickY;
+        rightStickX = other.rightStickX;
+        rightStickY = other.rightStickY;
+        leftStickAngle = other.leftStickAngle;
+        leftStickMagnitude = other.leftStickMagnitude;
+        rightStickAngle = other.rightStickAngle;
+        rightStickMagnitude = other.rightStickMagnitude;
+        leftStickClick = other.leftStickClick;
+        rightStickClick = other.rightStickClick;
+        leftTrigger = other.leftTrigger;
+        rightTrigger = other.rightTrigger;
+        leftStickJustClicked = other.leftStickJustClicked;
+        rightStickJustClicked = other.rightStickJustClicked;
+        a = other.a;
+        b = other.b;
+        x = other.x;
+        y = other.y;
+        lb = other.lb;
+        rb = other.rb;
+        start = other.start;
+        back = other.back;
+        guide = other.guide;
+        dpadUp = other.dpadUp;
+        dpadDown = other.dpadDown;
+        dpadLeft = other.dpadLeft;
+        dpadRight = other.dpadRight;
+        aJustPressed = other.aJustPressed;
+        bJustPressed = other.bJustPressed;
+        xJustPressed = other.xJustPressed;
+        yJustPressed = other.yJustPressed;
+        lbJustPressed = other.lbJustPressed;
+        rbJustPressed = other.rbJustPressed;
+        startJustPressed = other.startJustPressed;
+        backJustPressed = other.backJustPressed;
+        guideJustPressed = other.guideJustPressed;
+        dpadUpJustPressed = other.dpadUpJustPressed;
+        dpadDownJustPressed = other.dpadDownJustPressed;
+        dpadLeftJustPressed = other.dpadLeftJustPressed;
+        dpadRightJustPressed = other.dpadRightJustPressed;
+        buttonMask = other.buttonMask;
+        justPressedMask = other.justPressedMask;
+        justReleasedMask = other.justReleasedMask;
+    }
+
+    /**
+     * Overwrite this buffer with the current state of the passed controller.
+     *
+     * If the controller is disconnected mid-read, the buffer is set to the disconnected state, and the
+     * pre-disconnection read data is thrown away.
+     *
+     * @param c The ControllerIndex object whose state should be read.
+     */
+    void setFromController(ControllerIndex c) {
+        try {
+            read(c);
+        } catch (ControllerUnpluggedException e) {
+            setDisconnected();
+        }
+    }
+
+    private void read(ControllerIndex c) throws ControllerUnpluggedException {
+        //Read every button at once, so the masks all describe the same instant
+        c.updateButtons();
+        set(c.getStickPolarMode(), c.getName(), c.getHeldButtonMask(), c.getPolledJustPressedMask(), c.getPolledJustReleasedMask(),
+                c.getAxisState(ControllerAxis.LEFTX), c.getAxisState(ControllerAxis.LEFTY),
+                c.getAxisState(ControllerAxis.RIGHTX), c.getAxisState(ControllerAxis.RIGHTY),
+                c.getAxisState(ControllerAxis.TRIGGERLEFT), c.getAxisState(ControllerAxis.TRIGGERRIGHT));
+    }
+
+    /**
+     * Overwrite this buffer with the state of a connected controller given as button bitmasks and
+     * axis values. Bit n of a mask is the button with ordinal n.
+     *
+     * @param polarMode How the stick angles and magnitudes are worked out
+     * @param name The name of the controller
+     * @param pressed The held down buttons
+     * @param justPressed The just pressed buttons
+     * @param justReleased The just released buttons
+     * @param lx The x position of the left stick
+     * @param ly The y position of the left stick
+     * @param rx The x position of the right stick
+     * @param ry The y position of the right stick
+     * @param lt The position of the left trigger
+     * @param rt The position of the right trigger
+     */
+    void set(StickPolarMode polarMode, String name, int pressed, int justPressed, int justReleased,
+             float lx, float ly, float rx, float ry, float lt, float rt) {
+        isConnected = true;
+        controllerType = name;
+        leftStickX = lx;
+        leftStickY = ly;
+        rightStickX = rx;
+        rightStickY = ry;
+        leftStickAngle = polarMode.angle(leftStickX, leftStickY);
+        leftStickMagnitude = polarMode.magnitude(leftStickX, leftStickY);
+        rightStickAngle = polarMode.angle(rightStickX, rightStickY);
+        rightStickMagnitude = polarMode.magnitude(rightStickX, rightStickY);
+        leftTrigger = lt;
+        rightTrigger = rt;
+
+        buttonMask = pressed;
+        justPressedMask = justPressed;
+        justReleasedMask = justReleased;
+
+        leftStickJustClicked = isSet(justPressedMask, ControllerButton.LEFTSTICK);
+        rightStickJustClicked = isSet(justPressedMask, ControllerButton.RIGHTSTICK);
+        leftStickClick = isSet(buttonMask, ControllerButton.LEFTSTICK);
+        rightStickClick = isSet(buttonMask, ControllerButton.RIGHTSTICK);
+
+        aJustPressed = isSet(justPressedMask, ControllerButton.A);
+        bJustPressed = isSet(justPressedMask, ControllerButton.B);
+        xJustPressed = isSet(justPressedMask, ControllerButton.X);
+        yJustPressed = isSet(justPressedMask, ControllerButton.Y);
+        lbJustPressed = isSet(justPressedMask, ControllerButton.LEFTBUMPER);
+        rbJustPressed = isSet(justPressedMask, ControllerButton.RIGHTBUMPER);
+        startJustPressed = isSet(justPressedMask, ControllerButton.START);
+        backJustPressed = isSet(justPressedMask, ControllerButton.BACK);
+        guideJustPressed = isSet(justPressedMask, ControllerButton.GUIDE);
+        dpadUpJustPressed = isSet(justPressedMask, ControllerButton.DPAD_UP);
+        dpadDownJustPressed = isSet(justPressedMask, ControllerButton.DPAD_DOWN);
+        dpadLeftJustPressed = isSet(justPressedMask, ControllerButton.DPAD_LEFT);
+        dpadRightJustPressed = isSet(justPressedMask, ControllerButton.DPAD_RIGHT);
+
+        a = isSet(buttonMask, ControllerButton.A);
+        b = isSet(buttonMask, ControllerButton.B);
+        x = isSet(buttonMask, ControllerButton.X);
+        y = isSet(buttonMask, ControllerButton.Y);
+        lb = isSet(buttonMask, ControllerButton.LEFTBUMPER);
+        rb = isSet(buttonMask, ControllerButton.RIGHTBUMPER);
+        start = isSet(buttonMask, ControllerButton.START);
+        back = isSet(buttonMask, ControllerButton.BACK);
+        guide = isSet(buttonMask, ControllerButton.GUIDE);
+        dpadUp = isSet(buttonMask, ControllerButton.DPAD_UP);
+        dpadDown = isSet(buttonMask, ControllerButton.DPAD_DOWN);
+        dpadLeft = isSet(buttonMask, ControllerButton.DPAD_LEFT);
+        dpadRight = isSet(buttonMask, ControllerButton.DPAD_RIGHT);
+    }
+
+
+    /**
+     * Overwrite this buffer with the state of a disconnected controller.
+     */
+    void setDisconnected() {
+        isConnected = false;
+        controllerType = "Not Connected";
+        leftStickX = 0;
+        leftStickY = 0;
+        rightStickX = 0;
+        rightStickY = 0;
+        leftStickAngle = 0;
+        leftStickMagnitude = 0;
+        rightStickAngle = 0;
+        rightStickMagnitude = 0;
+        leftTrigger = 0;
+        rightTrigger = 0;
+
+        leftStickJustClicked = false;
+        rightStickJustClicked = false;
+        leftStickClick = false;
+        rightStickClick = false;
+
+        aJustPressed = false;
+        bJustPressed = false;
+        xJustPressed = false;
+        yJustPressed = false;
+        lbJustPressed = false;
+        rbJustPressed = false;
+        startJustPressed = false;
+        backJustPressed = false;
+        guideJustPressed = false;
+        dpadUpJustPressed = false;
+        dpadDownJustPressed = false;
+        dpadLeftJustPressed = false;
+        dpadRightJustPressed = false;
+
+        a = false;
+        b = false;
+        x = false;
+        y = false;
+        lb = false;
+        rb = false;
+        start = false;
+        back = false;
+        guide = false;
+        dpadUp = false;
+        dpadDown = false;
+        dpadLeft = false;
+        dpadRight = false;
+
+        buttonMask = 0;
+        justPressedMask = 0;
+        justReleasedMask = 0;
+    }
+
+    /**
+     * Returns whether or not the passed button is held down. This is the same as the matching boolean
+     * field.
+     *
+     * @param button The button to check
+     * @return Whether or not the button is held down
+     */
+    public boolean isButtonPressed(ControllerButton button) {
+        return isSet(buttonMask, button);
+    }
+
+    /**
+     * Returns whether or not the passed button was just pressed.
+     *
+     * @param button The button to check
+     * @return Whether or not the button was just pressed
+     */
+    public boolean isButtonJustPressed(ControllerButton button) {
+        return isSet(justPressedMask, button);
+    }
+
+    /**
+     * Returns whether or not the passed button was just released.
+     *
+     * @param button The button to check
+     * @return Whether or not the button was just released
+     */
+    public boolean isButtonJustReleased(ControllerButton button) {
+        return isSet(justReleasedMask, button);
+    }
+
+    /**
+     * Returns the angle of the left stick, worked out now with Math.atan2(). This works with any
+     * StickPolarMode, including LAZY.
+     *
+     * @return The angle of the left stick (0 is right, 90 is up, 180 is left, 270 is down)
+     */
+    public float getLeftStickAngle() {
+        return isConnected ? StickPolarMode.exactAngle(leftStickX, leftStickY) : 0;
+    }
+
+    /**
+     * Returns how far the left stick is pushed, worked out now. This works with any StickPolarMode,
+     * including LAZY.
+     *
+     * @return The magnitude of the left stick
+     */
+    public float getLeftStickMagnitude() {
+        return isConnected ? StickPolarMode.exactMagnitude(leftStickX, leftStickY) : 0;
+    }
+
+    /**
+     * Returns the angle of the right stick, worked out now with Math.atan2(). This works with any
+     * StickPolarMode, including LAZY.
+     *
+     * @return The angle of the right stick (0 is right, 90 is up, 180 is left, 270 is down)
+     */
+    public float getRightStickAngle() {
+        return isConnected ? StickPolarMode.exactAngle(rightStickX, rightStickY) : 0;
+    }
+
+    /**
+     * Returns how far the right stick is pushed, worked out now. This works with any StickPolarMode,
+     * including LAZY.
+     *
+     * @return The magnitude of the right stick
+     */
+    public float getRightStickMagnitude() {
+        return isConnected ? StickPolarMode.exactMagnitude(rightStickX, rightStickY) : 0;
+    }
+
+    private static boolean isSet(int mask, ControllerButton button) {
+        return (mask & (1 << button.ordinal())) != 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This is an enumerated type for the families of controllers Jamepad can tell apart.
+ *
+ * The type is worked out from the USB vendor ID of the controller, so anything that isn't made by
+ * Microsoft, Sony or Nintendo is UNKNOWN, even if it acts like one of those.
+ *
+ * @author William Hartman
+ */
+public enum ControllerType {
+    UNKNOWN,
+    XBOX,
+    PLAYSTATION,
+    NINTENDO;
+
+    private static final int VENDOR_MICROSOFT = 0x045E;
+    private static final int VENDOR_SONY = 0x054C;
+    private static final int VENDOR_NINTENDO = 0x057E;
+
+    /**
+     * Returns the type of controller made by the vendor with the passed USB vendor ID.
+     *
+     * @param vendorId The USB vendor ID
+     * @return The type of controller
+     */
+    static ControllerType fromVendorId(int vendorId) {
+        switch(vendorId) {
+            case VENDOR_MICROSOFT:
+                return XBOX;
+            case VENDOR_SONY:
+                return PLAYSTATION;
+            case VENDOR_NINTENDO:
+                return NINTENDO;
+            default:
+                return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Java Flight Recorder events for the things Jamepad does that can take a while: polling, opening and
+ * closing controllers, loading mappings and vibrating. They show up in the "Jamepad" category next to
+ * GC and everything else in a recording.
+ *
+ * All of them are disabled by default. Turn them on in your .jfc settings, or with something like
+ * recording.enable("com.studiohartman.jamepad.Poll"). While one is off, nothing is allocated for it:
+ * the begin method checks whether its type is enabled and returns null, and the commit method does
+ * nothing with null.
+ *
+ * The events themselves are in JfrEvents, which is built from src-jfr/ (the only code that needs
+ * jdk.jfr to compile) and only loaded by name here. If it isn't in the jar, or the VM doesn't have JFR,
+ * every method here does nothing. Callers only ever see the events as Objects.
+ *
+ * @author William Hartman
+ */
+abstract class FlightRecorderEvents {
+
+    private static final FlightRecorderEvents RECORDER = load();
+
+    private static FlightRecorderEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            Class<?> events = Class.forName("com.studiohartman.jamepad.JfrEvents");
+            return (FlightRecorderEvents) events.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static Object beginPoll() {
+        return RECORDER == null ? null : RECORDER.startPoll();
+    }
+
+    static void commitPoll(Object event, long frame, int eventsPolled, boolean reconnected, long nativeCalls) {
+        if(event != null) {
+            RECORDER.endPoll(event, frame, eventsPolled, reconnected, nativeCalls);
+        }
+    }
+
+    static Object beginDeviceOpen() {
+        return RECORDER == null ? null : RECORDER.startDeviceOpen();
+    }
+
+    static void commitDeviceOpen(Object event, ControllerIndex controller, int deviceIndex) {
+        if(event != null) {
+            RECORDER.endDeviceOpen(event, controller, deviceIndex);
+        }
+    }
+
+    static Object beginDeviceClose() {
+        return RECORDER == null ? null : RECORDER.startDeviceClose();
+    }
+
+    static void commitDeviceClose(Object event, int index, int instanceId, String guid) {
+        if(event != null) {
+            RECORDER.endDeviceClose(event, index, instanceId, guid);
+        }
+    }
+
+    static Object beginMappingLoad() {
+        return RECORDER == null ? null : RECORDER.startMappingLoad();
+    }
+
+    static void commitMappingLoad(Object event, String path, long bytes, boolean succeeded) {
+        if(event != null) {
+            RECORDER.endMappingLoad(event, path, bytes, succeeded);
+        }
+    }
+
+    static Object beginVibration() {
+        return RECORDER == null ? null : RECORDER.startVibration();
+    }
+
+    static void commitVibration(Object event, ControllerIndex controller, float leftMagnitude,
+                                float rightMagnitude, int durationMillis, boolean started) {
+        if(event != null) {
+            RECORDER.endVibration(event, controller, leftMagnitude, rightMagnitude, durationMillis, started);
+        }
+    }
+
+    //Each start method returns a begun event, or null if its type isn't enabled. Each end method is only
+    //passed an event returned by the matching start method.
+
+    abstract Object startPoll();
+
+    abstract void endPoll(Object event, long frame, int eventsPolled, boolean reconnected, long nativeCalls);
+
+    abstract Object startDeviceOpen();
+
+    abstract void endDeviceOpen(Object event, ControllerIndex controller, int deviceIndex);
+
+    abstract Object startDeviceClose();
+
+    abstract void endDeviceClose(Object event, int index, int instanceId, String guid);
+
+    abstract Object startMappingLoad();
+
+    abstract void endMappingLoad(Object event, String path, long bytes, boolean succeeded);
+
+    abstract Object startVibration();
+
+    abstract void endVibration(Object event, ControllerIndex controller, float leftMagnitude,
+                               float rightMagnitude, int durationMillis, boolean started);
+}
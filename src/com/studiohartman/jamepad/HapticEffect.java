@@ -0,0 +1,248 @@
+package com.studiohartman.jamepad;
+
+import java.util.Arrays;
+
+/**
+ * A rumble effect that can be played by a HapticsMixer. An effect is an envelope: a list of keyframes,
+ * each with a time and a magnitude for the left and right motors, with the magnitudes going in a
+ * straight line from one keyframe to the next. Two keyframes at the same time make a step.
+ *
+ * Effects are immutable, so it's fine to make them once and play them as often as you want, on as
+ * many controllers as you want.
+ *
+ * <pre>
+ * HapticEffect hit = HapticEffect.envelope(1, 0.6f, 20, 80, 150).withPriority(10);
+ * HapticEffect heartbeat = HapticEffect.sequence(
+ *         HapticEffect.constant(0.8f, 0, 60),
+ *         HapticEffect.constant(0, 0, 100),
+ *         HapticEffect.constant(0.5f, 0, 60));
+ * </pre>
+ *
+ * @author William Hartman
+ */
+public final class HapticEffect {
+
+    private final int[] times;
+    private final float[] left;
+    private final float[] right;
+    private final int priority;
+
+    private HapticEffect(int[] times, float[] left, float[] right, int priority) {
+        this.times = times;
+        this.left = left;
+        this.right = right;
+        this.priority = priority;
+    }
+
+    /**
+     * Make an effect from keyframes. The arrays must all be the same length, with at least one keyframe.
+     * Times must start at 0 and never go down, and magnitudes must be between 0 and 1.
+     *
+     * @param timesMillis The time of each keyframe in milliseconds, from the start of the effect
+     * @param leftMagnitudes The magnitude of the left motor at each keyframe
+     * @param rightMagnitudes The magnitude of the right motor at each keyframe
+     * @return The effect
+     */
+    public static HapticEffect keyframes(int[] timesMillis, float[] leftMagnitudes, float[] rightMagnitudes) {
+        int n = timesMillis.length;
+        if(n == 0 || leftMagnitudes.length != n || rightMagnitudes.length != n) {
+            throw new IllegalArgumentException("There must be at least one keyframe, with a time and two magnitudes each!");
+        }
+        if(timesMillis[0] != 0) {
+            throw new IllegalArgumentException("The first keyframe must be at time 0!");
+        }
+        for(int i = 0; i < n; i++) {
+            if(i > 0 && timesMillis[i] < timesMillis[i - 1]) {
+                throw new IllegalArgumentException("Keyframe times can't go down!");
+            }
+            checkMagnitude(leftMagnitudes[i]);
+            checkMagnitude(rightMagnitudes[i]);
+        }
+        return new HapticEffect(timesMillis.clone(), leftMagnitudes.clone(), rightMagnitudes.clone(), 0);
+    }
+
+    /**
+     * Make an effect that holds both motors at fixed magnitudes.
+     *
+     * @param leftMagnitude The magnitude of the left motor (between 0 and 1)
+     * @param rightMagnitude The magnitude of the right motor (between 0 and 1)
+     * @param durationMillis How long the effect lasts
+     * @return The effect
+     */
+    public static HapticEffect constant(float leftMagnitude, float rightMagnitude, int durationMillis) {
+        checkDuration(durationMillis);
+        return keyframes(new int[] {0, durationMillis},
+                new float[] {leftMagnitude, leftMagnitude},
+                new float[] {rightMagnitude, rightMagnitude});
+    }
+
+    /**
+     * Make an effect that ramps up from nothing to the passed magnitudes, holds them, then ramps back
+     * down to nothing.
+     *
+     * @param leftMagnitude The peak magnitude of the left motor (between 0 and 1)
+     * @param rightMagnitude The peak magnitude of the right motor (between 0 and 1)
+     * @param attackMillis How long it takes to ramp up
+     * @param sustainMillis How long the peak is held
+     * @param releaseMillis How long it takes to ramp down
+     * @return The effect
+     */
+    public static HapticEffect envelope(float leftMagnitude, float rightMagnitude, int attackMillis,
+                                        int sustainMillis, int releaseMillis) {
+        checkDuration(attackMillis);
+        checkDuration(sustainMillis);
+        checkDuration(releaseMillis);
+        int peak = attackMillis;
+        int fall = peak + sustainMillis;
+        int end = fall + releaseMillis;
+        return keyframes(new int[] {0, peak, fall, end},
+                new float[] {0, leftMagnitude, leftMagnitude, 0},
+                new float[] {0, rightMagnitude, rightMagnitude, 0});
+    }
+
+    /**
+     * Make an effect that plays the passed effects one after the other. The priority of the result is the
+     * highest priority of the passed effects.
+     *
+     * @param effects The effects to play, in order
+     * @return The effect
+     */
+    public static HapticEffect sequence(HapticEffect... effects) {
+        if(effects.length == 0) {
+            throw new IllegalArgumentException("A sequence needs at least one effect!");
+        }
+
+        int n = 0;
+        int priority = Integer.MIN_VALUE;
+        for(HapticEffect e: effects) {
+            n += e.times.length;
+            priority = Math.max(priority, e.priority);
+        }
+
+        int[] times = new int[n];
+        float[] left = new float[n];
+        float[] right = new float[n];
+        int offset = 0;
+        int i = 0;
+        for(HapticEffect e: effects) {
+            for(int k = 0; k < e.times.length; k++, i++) {
+                times[i] = offset + e.times[k];
+                left[i] = e.left[k];
+                right[i] = e.right[k];
+            }
+            offset += e.getDurationMillis();
+        }
+        return new HapticEffect(times, left, right, priority);
+    }
+
+    /**
+     * Returns a copy of this effect with the passed priority. While a controller is playing effects with
+     * different priorities, only the ones with the highest priority are felt. The default is 0.
+     *
+     * @param priority The priority of the effect
+     * @return The copy with the new priority
+     */
+    public HapticEffect withPriority(int priority) {
+        return new HapticEffect(times, left, right, priority);
+    }
+
+    /**
+     * Returns a copy of this effect with every magnitude multiplied by the passed scale.
+     *
+     * @param scale How much to scale the magnitudes by (between 0 and 1)
+     * @return The scaled copy
+     */
+    public HapticEffect scaled(float scale) {
+        checkMagnitude(scale);
+        float[] scaledLeft = new float[left.length];
+        float[] scaledRight = new float[right.length];
+        for(int i = 0; i < left.length; i++) {
+            scaledLeft[i] = left[i] * scale;
+            scaledRight[i] = right[i] * scale;
+        }
+        return new HapticEffect(times, scaledLeft, scaledRight, priority);
+    }
+
+    /**
+     * Returns how long this effect lasts.
+     *
+     * @return The time of the last keyframe in milliseconds
+     */
+    public int getDurationMillis() {
+        return times[times.length - 1];
+    }
+
+    /**
+     * Returns the priority of this effect. See withPriority().
+     *
+     * @return The priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the keyframe that starts the segment playing at the passed time, searching forward from
+     * the passed keyframe. Effects are always played forward, so HapticsMixer keeps the last keyframe
+     * for each playing effect and this is usually a step or two.
+     *
+     * @param timeMillis The time into the effect
+     * @param fromKeyframe The keyframe to start searching from
+     * @return The keyframe at or before the passed time
+     */
+    int keyframeAt(float timeMillis, int fromKeyframe) {
+        int k = fromKeyframe;
+        while(k + 1 < times.length && times[k + 1] <= timeMillis) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Returns the magnitude of the left motor at the passed time.
+     *
+     * @param timeMillis The time into the effect
+     * @param keyframe The keyframe from keyframeAt() for that time
+     * @return The magnitude of the left motor
+     */
+    float leftAt(float timeMillis, int keyframe) {
+        return interpolate(left, timeMillis, keyframe);
+    }
+
+    /**
+     * Returns the magnitude of the right motor at the passed time.
+     *
+     * @param timeMillis The time into the effect
+     * @param keyframe The keyframe from keyframeAt() for that time
+     * @return The magnitude of the right motor
+     */
+    float rightAt(float timeMillis, int keyframe) {
+        return interpolate(right, timeMillis, keyframe);
+    }
+
+    private float interpolate(float[] values, float timeMillis, int k) {
+        if(k + 1 >= times.length) {
+            return values[k];
+        }
+        float t = (timeMillis - times[k]) / (times[k + 1] - times[k]);
+        return values[k] + (values[k + 1] - values[k]) * Math.max(0, Math.min(1, t));
+    }
+
+    private static void checkMagnitude(float magnitude) {
+        if(!(magnitude >= 0 && magnitude <= 1)) {
+            throw new IllegalArgumentException("The passed values are not in the range 0 to 1!");
+        }
+    }
+
+    private static void checkDuration(int millis) {
+        if(millis < 0) {
+            throw new IllegalArgumentException("Durations can't be negative!");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HapticEffect{times=" + Arrays.toString(times) + ", left=" + Arrays.toString(left) +
+                ", right=" + Arrays.toString(right) + ", priority=" + priority + "}";
+    }
+}
@@ -0,0 +1,331 @@
+package com.studiohartman.jamepad;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class mixes the HapticEffects playing on the controllers of a ControllerManager on its own thread.
+ * Get one with ControllerManager.startHapticsMixer().
+ *
+ * Every part of a game can call play() whenever it wants, from any thread. Nothing is sent to the
+ * controller right then. Instead, on each tick the mixer works out every effect playing on each
+ * controller, mixes them, and queues at most one rumble command per controller, and only if the mixed
+ * output changed since the last one. So five things rumbling a controller in the same frame cost one
+ * native call instead of five, and nothing is lost to "last call wins".
+ *
+ * The mixer never touches the native code or the controllers itself. Queued commands are sent by
+ * whichever thread polls the controllers (the input pump, or the one calling update()) the next time it
+ * does. A command that hasn't been sent yet is replaced by the next one for the same controller.
+ *
+ * Effects are mixed by priority: only the effects with the highest priority playing on a controller are
+ * felt, and their magnitudes are added together (capped at 1).
+ *
+ * Each command is sent with a short duration and refreshed while the output holds steady, so the motors
+ * stop by themselves if the mixer is stopped or the game dies.
+ *
+ * @author William Hartman
+ */
+public final class HapticsMixer implements Runnable {
+
+    /**
+     * The duration each rumble command is sent with. A command is refreshed after half of this.
+     */
+    static final int COMMAND_MILLIS = 250;
+    private static final long REFRESH_NANOS = COMMAND_MILLIS * 1000000L / 2;
+
+    private static final int PLAY = 0;
+    private static final int CANCEL = 1;
+    private static final int CANCEL_ALL = 2;
+
+    private static final class Command {
+        final int type;
+        final int index;
+        final int handle;
+        final HapticEffect effect;
+        final long startNanos;
+
+        Command(int type, int index, int handle, HapticEffect effect, long startNanos) {
+            this.type = type;
+            this.index = index;
+            this.handle = handle;
+            this.effect = effect;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class Playing {
+        final int handle;
+        final HapticEffect effect;
+        final long startNanos;
+        int keyframe;
+
+        Playing(int handle, HapticEffect effect, long startNanos) {
+            this.handle = handle;
+            this.effect = effect;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Everything playing on one controller, and the last command sent to it.
+     */
+    private static final class Channel {
+        final ArrayList<Playing> playing = new ArrayList<>();
+        int sentLeft;
+        int sentRight;
+        long sentNanos;
+    }
+
+    private final ControllerManager manager;
+    private final long periodNanos;
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextHandle = new AtomicInteger(1);
+
+    //Only touched by the mixer thread
+    private Channel[] channels = new Channel[4];
+
+    private volatile long commandsSent;
+    private volatile long ticks;
+
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Constructor. The mixer doesn't start until start() is called.
+     *
+     * @param manager The ControllerManager whose controllers will be rumbled
+     * @param ticksPerSecond How many times per second effects are mixed and sent
+     */
+    HapticsMixer(ControllerManager manager, int ticksPerSecond) {
+        if(ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("The tick rate must be positive!");
+        }
+
+        this.manager = manager;
+        this.periodNanos = 1000000000L / ticksPerSecond;
+
+        thread = new Thread(this, "Jamepad haptics mixer");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop the mixer and wait for its thread to finish. Every controller it was rumbling is stopped first.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+
+        boolean interrupted = false;
+        while(thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start playing an effect on the controller at the passed index. It starts now, even though the
+     * mixer only picks it up on its next tick. This never blocks, and can be called from any thread.
+     *
+     * If there is no controller at that index, the effect still plays out (silently), and is felt if a
+     * controller is plugged in there before it ends.
+     *
+     * @param index The index of the controller
+     * @param effect The effect to play
+     * @return A handle that can be passed to cancel()
+     */
+    public int play(int index, HapticEffect effect) {
+        if(index < 0) {
+            throw new IllegalArgumentException("The controller index can't be negative!");
+        }
+        if(effect == null) {
+            throw new IllegalArgumentException("The effect can't be null!");
+        }
+
+        int handle = nextHandle.getAndIncrement();
+        commands.add(new Command(PLAY, index, handle, effect, System.nanoTime()));
+        return handle;
+    }
+
+    /**
+     * Stop an effect started by play(). If it already ended, nothing happens.
+     *
+     * @param handle The handle returned by play()
+     */
+    public void cancel(int handle) {
+        commands.add(new Command(CANCEL, -1, handle, null, 0));
+    }
+
+    /**
+     * Stop every effect playing on the controller at the passed index.
+     *
+     * @param index The index of the controller
+     */
+    public void cancelAll(int index) {
+        commands.add(new Command(CANCEL_ALL, index, 0, null, 0));
+    }
+
+    /**
+     * Returns the number of rumble commands queued for controllers so far.
+     *
+     * @return The number of commands queued
+     */
+    public long getCommandsSent() {
+        return commandsSent;
+    }
+
+    /**
+     * Returns the number of times effects have been mixed so far.
+     *
+     * @return The number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        try {
+            while(running) {
+                tick(System.nanoTime());
+
+                nextTick += periodNanos;
+                long now = System.nanoTime();
+                if(nextTick - now > 0) {
+                    LockSupport.parkNanos(this, nextTick - now);
+                } else {
+                    //We fell behind, so don't try to catch up with a burst of ticks
+                    nextTick = now;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            System.err.println("The haptics mixer failed, so it was stopped");
+            e.printStackTrace();
+            running = false;
+            manager.hapticsMixerFailed(this);
+        }
+
+        //Don't leave anything rumbling
+        for(int i = 0; i < channels.length; i++) {
+            Channel channel = channels[i];
+            if(channel != null) {
+                channel.playing.clear();
+                send(i, channel, 0, 0, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Take in everything queued by play() and cancel(), then mix and send the output for every
+     * controller.
+     *
+     * @param now The System.nanoTime() of this tick
+     */
+    void tick(long now) {
+        Command command;
+        while((command = commands.poll()) != null) {
+            apply(command);
+        }
+
+        for(int i = 0; i < channels.length; i++) {
+            Channel channel = channels[i];
+            if(channel != null && (!channel.playing.isEmpty() || channel.sentLeft != 0 || channel.sentRight != 0)) {
+                mix(i, channel, now);
+            }
+        }
+        ticks++;
+    }
+
+    private void apply(Command command) {
+        switch(command.type) {
+            case PLAY:
+                channel(command.index).playing.add(new Playing(command.handle, command.effect, command.startNanos));
+                break;
+            case CANCEL:
+                for(Channel channel: channels) {
+                    if(channel != null) {
+                        channel.playing.removeIf(p -> p.handle == command.handle);
+                    }
+                }
+                break;
+            case CANCEL_ALL:
+                if(command.index < channels.length && channels[command.index] != null) {
+                    channels[command.index].playing.clear();
+                }
+                break;
+        }
+    }
+
+    private Channel channel(int index) {
+        if(index >= channels.length) {
+            Channel[] newChannels = new Channel[Math.max(channels.length * 2, index + 1)];
+            System.arraycopy(channels, 0, newChannels, 0, channels.length);
+            channels = newChannels;
+        }
+        if(channels[index] == null) {
+            channels[index] = new Channel();
+        }
+        return channels[index];
+    }
+
+    private void mix(int index, Channel channel, long now) {
+        ArrayList<Playing> playing = channel.playing;
+
+        //Throw away effects that are over, and find the highest priority of the ones that aren't
+        int topPriority = Integer.MIN_VALUE;
+        for(int i = playing.size() - 1; i >= 0; i--) {
+            Playing p = playing.get(i);
+            if((now - p.startNanos) / 1000000L > p.effect.getDurationMillis()) {
+                playing.remove(i);
+            } else {
+                topPriority = Math.max(topPriority, p.effect.getPriority());
+            }
+        }
+
+        float left = 0;
+        float right = 0;
+        for(int i = 0; i < playing.size(); i++) {
+            Playing p = playing.get(i);
+            if(p.effect.getPriority() != topPriority) {
+                continue;
+            }
+            float t = Math.max(0, now - p.startNanos) / 1000000f;
+            p.keyframe = p.effect.keyframeAt(t, p.keyframe);
+            left += p.effect.leftAt(t, p.keyframe);
+            right += p.effect.rightAt(t, p.keyframe);
+        }
+
+        int leftMagnitude = (int) (65535 * Math.min(1, left));
+        int rightMagnitude = (int) (65535 * Math.min(1, right));
+        boolean changed = leftMagnitude != channel.sentLeft || rightMagnitude != channel.sentRight;
+        boolean silent = leftMagnitude == 0 && rightMagnitude == 0;
+        if(changed || (!silent && now - channel.sentNanos >= REFRESH_NANOS)) {
+            send(index, channel, leftMagnitude, rightMagnitude, now);
+        }
+    }
+
+    private void send(int index, Channel channel, int leftMagnitude, int rightMagnitude, long now) {
+        //Remember what was sent even if the controller isn't there, so an empty slot isn't retried every tick
+        channel.sentLeft = leftMagnitude;
+        channel.sentRight = rightMagnitude;
+        channel.sentNanos = now;
+
+        boolean silent = leftMagnitude == 0 && rightMagnitude == 0;
+        if(manager.queueRumble(index, leftMagnitude, rightMagnitude, silent ? 0 : COMMAND_MILLIS)) {
+            commandsSent++;
+        }
+    }
+}
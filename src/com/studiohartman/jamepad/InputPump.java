@@ -0,0 +1,279 @@
+package com.studiohartman.jamepad;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class runs a thread that owns all the native calls of a ControllerManager. It polls the
+ * controllers at a fixed rate and publishes a snapshot of each one, which any thread can read without
+ * blocking and without touching the native code.
+ *
+ * Each snapshot is guarded by a StampedLock. The pump thread takes the write lock while it overwrites a
+ * snapshot, and readers copy the snapshot under an optimistic read, retrying if the pump wrote to it in
+ * the meantime. Readers only fall back to a real read lock if they keep losing that race.
+ *
+ * Vibration requests from other threads are handed to the pump thread, which makes the native call on
+ * its next tick.
+ *
+ * Snapshots are only made for slots that have had a controller in them, and only the slots polled on a
+ * tick are published. The array of snapshots is replaced (never changed in place) when a new slot needs
+ * one, so readers always see a complete array.
+ *
+ * If polling throws, the exception is printed and the pump stops, the same as if stopInputPump() had been
+ * called, so the manager goes back to polling on whichever thread calls update().
+ *
+ * @author William Hartman
+ */
+final class InputPump implements Runnable {
+
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 4;
+    private static final long NO_VIBRATION = -1;
+
+    /**
+     * The published state of one slot, and the vibration waiting to be sent to it.
+     */
+    private static final class Snapshot {
+        final StampedLock lock = new StampedLock();
+        final ControllerStateBuffer state = new ControllerStateBuffer();
+        final AtomicLong pendingVibration = new AtomicLong(NO_VIBRATION);
+
+        Snapshot() {
+            state.setDisconnected();
+        }
+    }
+
+    private final ControllerManager manager;
+    private final ControllerSlots slots;
+    private final long periodNanos;
+
+    private volatile Snapshot[] snapshots;
+
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Constructor. The pump doesn't start until start() is called.
+     *
+     * @param manager The ControllerManager whose controllers will be polled
+     * @param slots The slots holding the manager's controllers
+     * @param pollsPerSecond How many times per second the controllers should be polled
+     */
+    InputPump(ControllerManager manager, ControllerSlots slots, int pollsPerSecond) {
+        if(pollsPerSecond <= 0) {
+            throw new IllegalArgumentException("The poll rate must be positive!");
+        }
+
+        this.manager = manager;
+        this.slots = slots;
+        this.periodNanos = 1000000000L / pollsPerSecond;
+
+        snapshots = new Snapshot[slots.size()];
+        for(int i = slots.nextPolled(0); i >= 0; i = slots.nextPolled(i + 1)) {
+            snapshots[i] = new Snapshot();
+        }
+
+        thread = new Thread(this, "Jamepad input pump");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop the pump and wait for its thread to finish, so no native calls are in flight afterwards.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+
+        boolean interrupted = false;
+        while(thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isOnPumpThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void run() {
+        try {
+            pump();
+        } catch (RuntimeException | Error e) {
+            System.err.println("The input pump failed, so it was stopped");
+            e.printStackTrace();
+            running = false;
+            manager.inputPumpFailed(this);
+        }
+    }
+
+    private void pump() {
+        long nextTick = System.nanoTime();
+        while(running) {
+            manager.updateNow();
+            for(int i = slots.nextPolled(0); i >= 0; i = slots.nextPolled(i + 1)) {
+                Snapshot snapshot = snapshotForPumping(i);
+                long stamp = snapshot.lock.writeLock();
+                try {
+                    snapshot.state.setFromController(slots.get(i));
+                } finally {
+                    snapshot.lock.unlockWrite(stamp);
+                }
+                doPendingVibration(snapshot, slots.get(i));
+            }
+
+            nextTick += periodNanos;
+            long now = System.nanoTime();
+            if(nextTick - now > 0) {
+                LockSupport.parkNanos(this, nextTick - now);
+            } else {
+                //We fell behind, so don't try to catch up with a burst of polls
+                nextTick = now;
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot of the slot at the passed index, making it first if needed. Only the pump
+     * thread calls this.
+     */
+    private Snapshot snapshotForPumping(int index) {
+        Snapshot[] current = snapshots;
+        if(index < current.length && current[index] != null) {
+            return current[index];
+        }
+
+        Snapshot[] grown = new Snapshot[Math.max(current.length, slots.size())];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[index] = new Snapshot();
+        snapshots = grown;
+        return grown[index];
+    }
+
+    /**
+     * Returns the snapshot of the slot at the passed index, or null if that slot has never had a
+     * controller in it.
+     */
+    private Snapshot snapshot(int index) {
+        Snapshot[] current = snapshots;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    /**
+     * Copy the latest snapshot of the controller at the passed index into the passed buffer.
+     *
+     * @param index The index of the controller
+     * @param out The buffer to copy into
+     */
+    void read(int index, ControllerStateBuffer out) {
+        Snapshot snapshot = snapshot(index);
+        if(snapshot == null) {
+            out.setDisconnected();
+            return;
+        }
+
+        StampedLock lock = snapshot.lock;
+        for(int i = 0; i < OPTIMISTIC_READ_ATTEMPTS; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0) {
+                out.copyFrom(snapshot.state);
+                if(lock.validate(stamp)) {
+                    return;
+                }
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            out.copyFrom(snapshot.state);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the latest snapshot of the controller at the passed index as an immutable ControllerState.
+     *
+     * @param index The index of the controller
+     * @return The latest state of the controller
+     */
+    ControllerState readState(int index) {
+        Snapshot snapshot = snapshot(index);
+        if(snapshot == null) {
+            return ControllerState.getDisconnectedControllerInstance();
+        }
+
+        StampedLock lock = snapshot.lock;
+        for(int i = 0; i < OPTIMISTIC_READ_ATTEMPTS; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0) {
+                ControllerState state = ControllerState.getInstanceFromBuffer(snapshot.state);
+                if(lock.validate(stamp)) {
+                    return state;
+                }
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            return ControllerState.getInstanceFromBuffer(snapshot.state);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Ask the pump thread to vibrate the controller at the passed index on its next tick. If another
+     * request for the same controller is still waiting, it is replaced. Requests for controllers that
+     * aren't connected are dropped.
+     *
+     * @param index The index of the controller
+     * @param leftMagnitude The magnitude of the left motor (between 0 and 1)
+     * @param rightMagnitude The magnitude of the right motor (between 0 and 1)
+     * @param duration_ms How long the vibration should last
+     * @return Whether or not the controller was connected when the request was made
+     */
+    boolean requestVibration(int index, float leftMagnitude, float rightMagnitude, int duration_ms) {
+        boolean leftInRange = leftMagnitude >= 0 && leftMagnitude <= 1;
+        boolean rightInRange = rightMagnitude >= 0 && rightMagnitude <= 1;
+        if(!(leftInRange && rightInRange)) {
+            throw new IllegalArgumentException("The passed values are not in the range 0 to 1!");
+        }
+
+        long left = (long) (65535 * leftMagnitude);
+        long right = (long) (65535 * rightMagnitude);
+        long duration = Math.max(0, duration_ms) & 0x7FFFFFFFL;
+        Snapshot snapshot = snapshot(index);
+        if(snapshot == null || !snapshot.state.isConnected) {
+            return false;
+        }
+        snapshot.pendingVibration.set((duration << 32) | (left << 16) | right);
+
+        return true;
+    }
+
+    private void doPendingVibration(Snapshot snapshot, ControllerIndex controller) {
+        long vibration = snapshot.pendingVibration.getAndSet(NO_VIBRATION);
+        if(vibration == NO_VIBRATION) {
+            return;
+        }
+
+        try {
+            controller.doVibration(((vibration >>> 16) & 0xFFFF) / 65535f,
+                    (vibration & 0xFFFF) / 65535f, (int) (vibration >>> 32));
+        } catch (ControllerUnpluggedException e) {
+            //Nothing to vibrate, the request is just dropped
+        }
+    }
+}
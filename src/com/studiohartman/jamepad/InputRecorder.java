@@ -0,0 +1,222 @@
+package com.studiohartman.jamepad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class writes the polled state of every controller to a compact binary file, one record per
+ * frame. The file can be played back with InputReplay.
+ *
+ * The file starts with a header:
+ * <pre>
+ * int   magic ("JPAD")
+ * byte  version
+ * varint number of controllers
+ * </pre>
+ * followed by one record per frame:
+ * <pre>
+ * varint nanoseconds since the previous frame
+ * varint number of changed controllers
+ * for each changed controller:
+ *     varint controller index
+ *     byte   flags (CONNECTED, NAME, BUTTONS, AXES)
+ *     if NAME:    short length, then that many bytes of UTF-8
+ *     if BUTTONS: int bitmask of held down buttons
+ *     if AXES:    byte bitmask of changed axes, then a short raw value for each
+ * </pre>
+ * Only what changed since the previous frame is written, so a frame where nothing changed costs two
+ * bytes. All numbers are little endian.
+ *
+ * Records are built in a direct buffer and written to a FileChannel when it fills up, so the file
+ * isn't touched on most frames. This class is not thread safe.
+ *
+ * @author William Hartman
+ */
+public final class InputRecorder implements Closeable {
+
+    static final int MAGIC = 0x4441504A;
+    static final byte VERSION = 1;
+
+    static final int FLAG_CONNECTED = 1;
+    static final int FLAG_NAME = 1 << 1;
+    static final int FLAG_BUTTONS = 1 << 2;
+    static final int FLAG_AXES = 1 << 3;
+
+    private static final int NUM_AXES = ControllerAxis.values().length;
+    private static final int MAX_CONTROLLER_RECORD_SIZE = 5 + 1 + 4 + 1 + 2 * NUM_AXES;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int numControllers;
+
+    private final boolean[] lastConnected;
+    private final String[] lastNames;
+    private final int[] lastButtons;
+    private final int[] lastAxes;
+    private final int[] changedControllers;
+    private long lastNanoTime;
+    private boolean firstFrame = true;
+
+    /**
+     * Constructor. Creates (or replaces) the passed file and writes the header.
+     *
+     * @param file The file to write to
+     * @param numControllers The number of controllers in each frame
+     * @throws IOException if the file can't be created or written to
+     */
+    public InputRecorder(Path file, int numControllers) throws IOException {
+        this.numControllers = numControllers;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        lastConnected = new boolean[numControllers];
+        lastNames = new String[numControllers];
+        lastButtons = new int[numControllers];
+        lastAxes = new int[numControllers * NUM_AXES];
+        changedControllers = new int[numControllers];
+
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        putVarint(numControllers);
+    }
+
+    /**
+     * Write a record for the current polled state of the passed controllers. The controllers should be
+     * in frame polling mode.
+     *
+     * Only the slots polled this frame are looked at, since the others can't have changed.
+     *
+     * @param slots The slots holding the controllers to record
+     * @param nanoTime The System.nanoTime() the frame was polled at
+     * @throws IOException if the file can't be written to
+     */
+    void recordFrame(ControllerSlots slots, long nanoTime) throws IOException {
+        int numChanged = 0;
+        for(int i = slots.nextPolled(0); i >= 0 && i < numControllers; i = slots.nextPolled(i + 1)) {
+            if(hasChanged(i, slots.get(i))) {
+                changedControllers[numChanged++] = i;
+            }
+        }
+
+        ensureSpace(20);
+        putVarint(firstFrame ? 0 : nanoTime - lastNanoTime);
+        putVarint(numChanged);
+        lastNanoTime = nanoTime;
+        firstFrame = false;
+
+        for(int n = 0; n < numChanged; n++) {
+            int i = changedControllers[n];
+            ControllerIndex c = slots.get(i);
+            boolean connected = c.isConnected();
+            String name = connected ? c.getPolledName() : null;
+            int buttons = c.getHeldButtonMask();
+
+            int flags = connected ? FLAG_CONNECTED : 0;
+            if(name != null && !name.equals(lastNames[i])) {
+                flags |= FLAG_NAME;
+            }
+            if(buttons != lastButtons[i]) {
+                flags |= FLAG_BUTTONS;
+            }
+            int axisMask = 0;
+            for(int a = 0; a < NUM_AXES; a++) {
+                if(c.getRawAxis(a) != lastAxes[i * NUM_AXES + a]) {
+                    axisMask |= 1 << a;
+                }
+            }
+            if(axisMask != 0) {
+                flags |= FLAG_AXES;
+            }
+
+            //Make room for the whole record at once, so a flush never lands in the middle of it
+            byte[] nameBytes = (flags & FLAG_NAME) != 0 ? name.getBytes(StandardCharsets.UTF_8) : null;
+            ensureSpace(MAX_CONTROLLER_RECORD_SIZE + (nameBytes != null ? 2 + nameBytes.length : 0));
+            putVarint(i);
+            buffer.put((byte) flags);
+            if(nameBytes != null) {
+                buffer.putShort((short) nameBytes.length);
+                buffer.put(nameBytes);
+                lastNames[i] = name;
+            }
+            if((flags & FLAG_BUTTONS) != 0) {
+                buffer.putInt(buttons);
+                lastButtons[i] = buttons;
+            }
+            if(axisMask != 0) {
+                buffer.put((byte) axisMask);
+                for(int a = 0; a < NUM_AXES; a++) {
+                    if((axisMask & (1 << a)) != 0) {
+                        int rawValue = c.getRawAxis(a);
+                        buffer.putShort((short) rawValue);
+                        lastAxes[i * NUM_AXES + a] = rawValue;
+                    }
+                }
+            }
+            lastConnected[i] = connected;
+        }
+    }
+
+    private boolean hasChanged(int i, ControllerIndex c) {
+        boolean connected = c.isConnected();
+        if(connected != lastConnected[i] || c.getHeldButtonMask() != lastButtons[i]) {
+            return true;
+        }
+        if(connected && !c.getPolledName().equals(lastNames[i])) {
+            return true;
+        }
+        for(int a = 0; a < NUM_AXES; a++) {
+            if(c.getRawAxis(a) != lastAxes[i * NUM_AXES + a]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void putVarint(long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensureSpace(int bytes) throws IOException {
+        if(buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Write everything buffered so far to the file.
+     *
+     * @throws IOException if the file can't be written to
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flush and close the file.
+     *
+     * @throws IOException if the file can't be written to or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.studiohartman.jamepad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class plays back a file written by InputRecorder. Pass it to ControllerManager.initReplay() to
+ * run a ControllerManager off the recording instead of SDL, with no controllers attached.
+ *
+ * The file is memory mapped, and each call to nextFrame() decodes one record. Nothing waits on the
+ * clock, so frames can be played back as fast as they are asked for. The recorded time between frames
+ * is available from getFrameNanoTime() if you want to play back in real time.
+ *
+ * This class is not thread safe.
+ *
+ * @author William Hartman
+ */
+public final class InputReplay implements Closeable {
+
+    private static final int NUM_AXES = ControllerAxis.values().length;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int numControllers;
+
+    private final boolean[] connected;
+    private final String[] names;
+    private final int[] buttons;
+    private final int[] axes;
+    private long frameNanoTime;
+    private long frameCount;
+
+    /**
+     * Constructor. Opens and maps the passed file, and reads its header.
+     *
+     * @param file The file to play back
+     * @throws IOException if the file can't be read or isn't a Jamepad recording
+     */
+    public InputReplay(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if(buffer.remaining() < 5 || buffer.getInt() != InputRecorder.MAGIC) {
+                throw new IOException("\"" + file + "\" is not a Jamepad recording!");
+            }
+            byte version = buffer.get();
+            if(version != InputRecorder.VERSION) {
+                throw new IOException("Unsupported Jamepad recording version " + version + "!");
+            }
+            long count = getVarint();
+            if(count < 0 || count > Integer.MAX_VALUE / NUM_AXES) {
+                throw new IOException("\"" + file + "\" has a bad number of controllers (" + count + ")!");
+            }
+            numControllers = (int) count;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        connected = new boolean[numControllers];
+        names = new String[numControllers];
+        buttons = new int[numControllers];
+        axes = new int[numControllers * NUM_AXES];
+    }
+
+    /**
+     * Decode the next frame. The state of every controller is updated to what was recorded for it.
+     *
+     * @return false if the end of the recording has been reached, in which case nothing changes
+     * @throws IllegalStateException if the recording is cut off in the middle of a frame, or has a frame
+     *                               for a controller that isn't in it
+     */
+    public boolean nextFrame() {
+        if(!buffer.hasRemaining()) {
+            return false;
+        }
+
+        try {
+            frameNanoTime += getVarint();
+            int numChanged = (int) getVarint();
+            for(int n = 0; n < numChanged; n++) {
+                readController();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("The recording ends in the middle of a frame!", e);
+        }
+
+        frameCount++;
+        return true;
+    }
+
+    private void readController() {
+        long index = getVarint();
+        if(index < 0 || index >= numControllers) {
+            throw new IllegalStateException("The recording has a frame for controller " + index +
+                    ", but only " + numControllers + " controllers!");
+        }
+        int i = (int) index;
+        int flags = buffer.get();
+
+        connected[i] = (flags & InputRecorder.FLAG_CONNECTED) != 0;
+        if((flags & InputRecorder.FLAG_NAME) != 0) {
+            byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(nameBytes);
+            names[i] = new String(nameBytes, StandardCharsets.UTF_8);
+        }
+        if((flags & InputRecorder.FLAG_BUTTONS) != 0) {
+            buttons[i] = buffer.getInt();
+        }
+        if((flags & InputRecorder.FLAG_AXES) != 0) {
+            int axisMask = buffer.get();
+            for(int a = 0; a < NUM_AXES; a++) {
+                if((axisMask & (1 << a)) != 0) {
+                    axes[i * NUM_AXES + a] = buffer.getShort();
+                }
+            }
+        }
+    }
+
+    private long getVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Returns the number of controllers in the recording.
+     *
+     * @return The number of recorded controllers
+     */
+    public int getNumControllers() {
+        return numControllers;
+    }
+
+    /**
+     * Returns the number of frames decoded so far.
+     *
+     * @return The number of frames played back
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the recorded time of the current frame, in nanoseconds since the first frame.
+     *
+     * @return The time of the current frame
+     */
+    public long getFrameNanoTime() {
+        return frameNanoTime;
+    }
+
+    /**
+     * Returns whether or not every frame has been played back.
+     *
+     * @return Whether or not the end of the recording has been reached
+     */
+    public boolean isFinished() {
+        return !buffer.hasRemaining();
+    }
+
+    /**
+     * Returns whether or not the controller at the passed index was connected in the current frame.
+     *
+     * @param index The index of the controller
+     * @return Whether or not the controller was connected
+     */
+    public boolean isConnected(int index) {
+        return connected[index];
+    }
+
+    /**
+     * Returns the name of the controller at the passed index in the current frame.
+     *
+     * @param index The index of the controller
+     * @return The name of the controller, or null if it has never been connected
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the buttons held down on the controller at the passed index in the current frame. Bit n
+     * is set if the button with ordinal n was held down.
+     *
+     * @param index The index of the controller
+     * @return The held down buttons
+     */
+    public int getButtonMask(int index) {
+        return buttons[index];
+    }
+
+    /**
+     * Returns the native value of an axis of the controller at the passed index in the current frame.
+     *
+     * @param index The index of the controller
+     * @param axis The ordinal of the axis
+     * @return The raw value of the axis
+     */
+    public int getRawAxis(int index, int axis) {
+        return axes[index * NUM_AXES + axis];
+    }
+
+    /**
+     * Unmap and close the file.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
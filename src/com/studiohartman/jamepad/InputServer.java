@@ -0,0 +1,574 @@
+package com.studiohartman.jamepad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * This class streams the polled state of every controller to other machines over UDP, so the input
+ * can be read somewhere other than where the controllers are plugged in. The other end is a
+ * RemoteControllerBackend, which makes a normal ControllerManager on that machine see the remote
+ * controllers. Start one with ControllerManager.startInputServer().
+ *
+ * By default the server only listens on the loopback interface. To stream to other machines, pass the
+ * address of the interface to listen on. At most MAX_CLIENTS clients are streamed to at once.
+ *
+ * Clients have to prove they can receive at their address before anything is streamed to them, so the
+ * server can't be used to flood an address someone else wrote on a datagram:
+ *
+ * - The client sends HELLO, padded to HELLO_SIZE bytes.
+ * - The server answers with COOKIE, which is no bigger than the HELLO. The cookie is a keyed hash of the
+ *   client's address, so the server doesn't remember anything about clients that never answer.
+ * - The client sends SUBSCRIBE with the cookie, and is sent a keyframe and then the stream.
+ *
+ * Subscribed clients send KEEPALIVE with the cookie about once a second, or they're dropped after
+ * CLIENT_TIMEOUT_NANOS. A client that loses a datagram sends SUBSCRIBE again to ask for a keyframe. BYE
+ * with the cookie unsubscribes. Every subscribed client gets the same stream.
+ *
+ * Every datagram starts with:
+ * <pre>
+ * int    magic ("JPNT")
+ * byte   version
+ * byte   type (HELLO, COOKIE, SUBSCRIBE, KEEPALIVE, BYE or FRAMES)
+ * </pre>
+ * HELLO is padded with zeros. COOKIE, SUBSCRIBE, KEEPALIVE and BYE are followed by the 8 byte cookie.
+ * FRAMES holds a batch of consecutive frames:
+ * <pre>
+ * varint sequence number of the first frame
+ * varint number of frames
+ * for each frame:
+ *     varint number of changed controllers, shifted left once, with the low bit set for a keyframe
+ *     for each changed controller:
+ *         varint controller index
+ *         byte   flags (CONNECTED, NAME, BUTTONS, AXES)
+ *         if NAME:    short length and UTF-8 bytes of the name, then the same for the GUID
+ *         if BUTTONS: varint of the held buttons XORed with the previous frame's
+ *         if AXES:    byte bitmask of changed axes, then a zigzag varint of each one's change
+ * </pre>
+ * Like InputRecorder, only what changed since the previous frame is written, and a frame where nothing
+ * changed is one byte. Frames are compared to the frame before them, except keyframes, which are
+ * compared to every controller being unplugged. A keyframe is sent when a client subscribes, when one
+ * asks for it after losing a datagram, and every keyframe interval frames, so a client that loses a
+ * datagram waits one round trip at most before it's back in step. Keep alives don't cause keyframes.
+ *
+ * Frames are batched into one datagram until there are batch frames of them or the datagram gets close
+ * to MAX_DATAGRAM_SIZE. With 16 controllers polled at 1000 Hz, a batch of 4 frames is 250 datagrams a
+ * second, and the bandwidth depends on how much the sticks move, not on how many controllers there are.
+ *
+ * Frames are published from update(), on the thread calling it. Nothing is allocated while encoding and
+ * sending frames, and nothing is encoded while no client is subscribed. A controller that shows up in a
+ * different slot is a new controller as far as clients are concerned, and its name is sent again.
+ *
+ * @author William Hartman
+ */
+public final class InputServer implements Closeable {
+
+    static final int MAGIC = 0x544E504A;
+    static final byte VERSION = 1;
+
+    static final int TYPE_HELLO = 1;
+    static final int TYPE_BYE = 2;
+    static final int TYPE_FRAMES = 3;
+    static final int TYPE_COOKIE = 4;
+    static final int TYPE_SUBSCRIBE = 5;
+    static final int TYPE_KEEPALIVE = 6;
+
+    static final int HEADER_SIZE = 6;
+    static final int CONTROL_SIZE = HEADER_SIZE + 8;
+
+    /**
+     * The size HELLO has to be padded to. It's at least as big as the COOKIE sent back, so answering a
+     * forged HELLO never sends more than was received.
+     */
+    static final int HELLO_SIZE = 16;
+
+    static final int FLAG_CONNECTED = 1;
+    static final int FLAG_NAME = 1 << 1;
+    static final int FLAG_BUTTONS = 1 << 2;
+    static final int FLAG_AXES = 1 << 3;
+
+    /**
+     * Batches are sent once they're bigger than this, which fits in one Ethernet frame. A keyframe with a
+     * lot of controllers can go over.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 1200;
+
+    /**
+     * How long a subscribed client can go without sending SUBSCRIBE or KEEPALIVE before it's dropped.
+     */
+    public static final long CLIENT_TIMEOUT_NANOS = 5000000000L;
+
+    /**
+     * The most clients streamed to at once. Clients that subscribe after that are ignored.
+     */
+    public static final int MAX_CLIENTS = 8;
+
+    private static final int NUM_AXES = ControllerAxis.values().length;
+    private static final int MAX_CONTROLLER_RECORD_SIZE = 5 + 1 + 5 + 1 + 3 * NUM_AXES;
+
+    private final DatagramChannel channel;
+    private final int numControllers;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer control = ByteBuffer.allocateDirect(CONTROL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final SocketAddress[] clients = new SocketAddress[MAX_CLIENTS];
+    private final long[] clientCookies = new long[MAX_CLIENTS];
+    private final long[] clientLastSeen = new long[MAX_CLIENTS];
+    private int numClients;
+    private final byte[] cookieSecret = new byte[32];
+    private final MessageDigest cookieDigest;
+
+    private volatile int batchFrames = 4;
+    private volatile int keyframeInterval = 1000;
+
+    private final boolean[] lastConnected;
+    private final String[] lastNames;
+    private final int[] lastButtons;
+    private final int[] lastAxes;
+    private final int[] changedControllers;
+
+    private long sequence;
+    private long framesSinceKeyframe;
+    private boolean keyframeRequested;
+    private int framesInBatch;
+    private int frameCountPosition;
+
+    private volatile long bytesSent;
+    private volatile long datagramsSent;
+    private volatile long framesSent;
+    private volatile long keyframesSent;
+
+    /**
+     * Constructor. Opens a UDP socket on the passed port of the loopback interface, so only clients on
+     * this machine can connect. Use InputServer(InetSocketAddress, int) to stream to other machines.
+     *
+     * @param port The port to listen for clients on, or 0 to pick a free one
+     * @param numControllers The number of controllers in each frame
+     * @throws IOException if the socket can't be opened
+     */
+    public InputServer(int port, int numControllers) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), numControllers);
+    }
+
+    /**
+     * Constructor. Opens a UDP socket on the passed address. Listening on the wildcard address streams to
+     * clients on any network the machine is on.
+     *
+     * @param address The address to listen for clients on
+     * @param numControllers The number of controllers in each frame
+     * @throws IOException if the socket can't be opened
+     */
+    public InputServer(InetSocketAddress address, int numControllers) throws IOException {
+        this.numControllers = numControllers;
+        try {
+            cookieDigest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't available!", e);
+        }
+        new SecureRandom().nextBytes(cookieSecret);
+
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(address);
+            channel.configureBlocking(false);
+        } catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        lastConnected = new boolean[numControllers];
+        lastNames = new String[numControllers];
+        lastButtons = new int[numControllers];
+        lastAxes = new int[numControllers * NUM_AXES];
+        changedControllers = new int[numControllers];
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch(IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the address the server is listening on.
+     *
+     * @return The address
+     * @throws IOException if the socket is closed
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Set the most frames sent in one datagram. More frames per datagram means less overhead, but each
+     * frame waits for the rest of its batch before it's sent. The default is 4.
+     *
+     * @param frames The number of frames per batch
+     */
+    public void setBatchFrames(int frames) {
+        if(frames <= 0) {
+            throw new IllegalArgumentException("The number of frames in a batch must be positive!");
+        }
+        batchFrames = frames;
+    }
+
+    /**
+     * Set how often a keyframe is sent even if nobody asks for one, in frames. The default is 1000.
+     *
+     * @param frames The number of frames between keyframes
+     */
+    public void setKeyframeInterval(int frames) {
+        if(frames <= 0) {
+            throw new IllegalArgumentException("The keyframe interval must be positive!");
+        }
+        keyframeInterval = frames;
+    }
+
+    /**
+     * Returns the number of clients subscribed as of the last frame.
+     *
+     * @return The number of clients
+     */
+    public int getNumClients() {
+        return numClients;
+    }
+
+    /**
+     * Returns the number of bytes sent so far, counting each client separately.
+     *
+     * @return The bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of datagrams sent so far, counting each client separately.
+     *
+     * @return The datagrams sent
+     */
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    /**
+     * Returns the number of frames encoded so far. Frames aren't encoded while nobody is subscribed.
+     *
+     * @return The frames sent
+     */
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * Returns the number of keyframes encoded so far.
+     *
+     * @return The keyframes sent
+     */
+    public long getKeyframesSent() {
+        return keyframesSent;
+    }
+
+    /**
+     * Encode the current polled state of the passed controllers, and send the batch if it's full. The
+     * controllers should be in frame polling mode.
+     *
+     * @param slots The slots holding the controllers to send
+     * @param nanoTime The System.nanoTime() the frame was polled at
+     * @throws IOException if the socket fails
+     */
+    void publishFrame(ControllerSlots slots, long nanoTime) throws IOException {
+        receiveFromClients(nanoTime);
+        if(numClients == 0) {
+            return;
+        }
+
+        boolean keyframe = keyframeRequested || framesSinceKeyframe >= keyframeInterval;
+        if(keyframe) {
+            keyframesSent++;
+            keyframeRequested = false;
+            framesSinceKeyframe = 0;
+            for(int i = 0; i < numControllers; i++) {
+                forget(i);
+            }
+        }
+        framesSinceKeyframe++;
+
+        int numChanged = 0;
+        for(int i = 0; i < numControllers; i++) {
+            ControllerIndex c = slots.get(i);
+            if(c != null ? hasChanged(i, c) : lastConnected[i]) {
+                changedControllers[numChanged++] = i;
+            }
+        }
+
+        if(framesInBatch == 0) {
+            out.clear();
+            out.putInt(MAGIC);
+            out.put(VERSION);
+            out.put((byte) TYPE_FRAMES);
+            putVarint(sequence);
+            //The number of frames is written when the batch is sent. One byte holds up to 127 of them
+            frameCountPosition = out.position();
+            out.put((byte) 0);
+        }
+        putVarint(((long) numChanged << 1) | (keyframe ? 1 : 0));
+        for(int n = 0; n < numChanged; n++) {
+            int i = changedControllers[n];
+            putController(i, slots.get(i));
+        }
+        sequence++;
+        framesSent++;
+
+        if(++framesInBatch >= Math.min(batchFrames, 127) || out.position() >= MAX_DATAGRAM_SIZE) {
+            sendBatch(nanoTime);
+        }
+    }
+
+    private boolean hasChanged(int i, ControllerIndex c) {
+        boolean connected = c.isConnected();
+        if(connected != lastConnected[i] || c.getHeldButtonMask() != lastButtons[i]) {
+            return true;
+        }
+        if(connected && !c.getPolledName().equals(lastNames[i])) {
+            return true;
+        }
+        for(int a = 0; a < NUM_AXES; a++) {
+            if(c.getRawAxis(a) != lastAxes[i * NUM_AXES + a]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void putController(int i, ControllerIndex c) {
+        boolean connected = c != null && c.isConnected();
+        int buttons = c != null ? c.getHeldButtonMask() : 0;
+
+        String name = connected ? c.getPolledName() : null;
+
+        int flags = connected ? FLAG_CONNECTED : 0;
+        if(connected && !name.equals(lastNames[i])) {
+            flags |= FLAG_NAME;
+        }
+        if(buttons != lastButtons[i]) {
+            flags |= FLAG_BUTTONS;
+        }
+        int axisMask = 0;
+        for(int a = 0; a < NUM_AXES; a++) {
+            if(c != null && c.getRawAxis(a) != lastAxes[i * NUM_AXES + a]) {
+                axisMask |= 1 << a;
+            }
+        }
+        if(axisMask != 0) {
+            flags |= FLAG_AXES;
+        }
+
+        putVarint(i);
+        out.put((byte) flags);
+        if((flags & FLAG_NAME) != 0) {
+            String guid = c.getGUIDIfOpen();
+            putString(name);
+            putString(guid != null ? guid : "");
+            lastNames[i] = name;
+        }
+        if((flags & FLAG_BUTTONS) != 0) {
+            putVarint((buttons ^ lastButtons[i]) & 0xFFFFFFFFL);
+            lastButtons[i] = buttons;
+        }
+        if(axisMask != 0) {
+            out.put((byte) axisMask);
+            for(int a = 0; a < NUM_AXES; a++) {
+                if((axisMask & (1 << a)) != 0) {
+                    int rawValue = c.getRawAxis(a);
+                    int delta = rawValue - lastAxes[i * NUM_AXES + a];
+                    putVarint((delta << 1) ^ (delta >> 31));
+                    lastAxes[i * NUM_AXES + a] = rawValue;
+                }
+            }
+        }
+        if(!connected) {
+            //So the name and GUID are sent again for whatever gets plugged in next
+            lastNames[i] = null;
+        }
+        lastConnected[i] = connected;
+    }
+
+    /**
+     * Make the next frame of a controller be compared to it being unplugged.
+     */
+    private void forget(int i) {
+        lastConnected[i] = false;
+        lastNames[i] = null;
+        lastButtons[i] = 0;
+        for(int a = 0; a < NUM_AXES; a++) {
+            lastAxes[i * NUM_AXES + a] = 0;
+        }
+    }
+
+    private void sendBatch(long nanoTime) throws IOException {
+        out.put(frameCountPosition, (byte) framesInBatch);
+        framesInBatch = 0;
+        out.flip();
+        int size = out.remaining();
+        for(int i = 0; i < numClients; i++) {
+            out.rewind();
+            if(channel.send(out, clients[i]) > 0) {
+                bytesSent += size;
+                datagramsSent++;
+            }
+        }
+        out.clear();
+    }
+
+    /**
+     * Handle every control datagram waiting on the socket, and drop clients that went quiet.
+     */
+    private void receiveFromClients(long nanoTime) throws IOException {
+        SocketAddress from;
+        while((from = receive()) != null) {
+            if(in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.get() != VERSION) {
+                continue;
+            }
+            int type = in.get();
+            if(type == TYPE_HELLO) {
+                if(in.limit() >= HELLO_SIZE) {
+                    sendCookie(from);
+                }
+                continue;
+            }
+            if(in.remaining() < 8) {
+                continue;
+            }
+            long cookie = in.getLong();
+
+            int client = indexOfClient(from);
+            if(client >= 0 && clientCookies[client] != cookie) {
+                continue;
+            }
+            if(type == TYPE_SUBSCRIBE) {
+                if(client < 0) {
+                    if(numClients == MAX_CLIENTS || cookie != cookieFor(from)) {
+                        continue;
+                    }
+                    client = numClients++;
+                    clients[client] = from;
+                    clientCookies[client] = cookie;
+                }
+                clientLastSeen[client] = nanoTime;
+                keyframeRequested = true;
+            } else if(type == TYPE_KEEPALIVE && client >= 0) {
+                clientLastSeen[client] = nanoTime;
+            } else if(type == TYPE_BYE && client >= 0) {
+                removeClient(client);
+            }
+        }
+
+        for(int i = numClients - 1; i >= 0; i--) {
+            if(nanoTime - clientLastSeen[i] > CLIENT_TIMEOUT_NANOS) {
+                removeClient(i);
+            }
+        }
+        if(numClients == 0) {
+            framesInBatch = 0;
+        }
+    }
+
+    private int indexOfClient(SocketAddress address) {
+        for(int i = 0; i < numClients; i++) {
+            if(clients[i].equals(address)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeClient(int i) {
+        numClients--;
+        clients[i] = clients[numClients];
+        clientCookies[i] = clientCookies[numClients];
+        clientLastSeen[i] = clientLastSeen[numClients];
+        clients[numClients] = null;
+    }
+
+    private void sendCookie(SocketAddress to) throws IOException {
+        control.clear();
+        control.putInt(MAGIC);
+        control.put(VERSION);
+        control.put((byte) TYPE_COOKIE);
+        control.putLong(cookieFor(to));
+        control.flip();
+        channel.send(control, to);
+    }
+
+    /**
+     * Returns the cookie for an address: the start of a SHA-256 of a random secret and the address.
+     */
+    private long cookieFor(SocketAddress address) {
+        InetSocketAddress inet = (InetSocketAddress) address;
+        cookieDigest.reset();
+        cookieDigest.update(cookieSecret);
+        cookieDigest.update(inet.getAddress().getAddress());
+        cookieDigest.update((byte) (inet.getPort() >> 8));
+        cookieDigest.update((byte) inet.getPort());
+        return ByteBuffer.wrap(cookieDigest.digest()).getLong();
+    }
+
+    private SocketAddress receive() throws IOException {
+        in.clear();
+        SocketAddress from = channel.receive(in);
+        in.flip();
+        return from;
+    }
+
+    private void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        ensureSpace(2 + length);
+        out.putShort((short) length);
+        out.put(bytes, 0, length);
+    }
+
+    private void putVarint(long value) {
+        ensureSpace(MAX_CONTROLLER_RECORD_SIZE);
+        while((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private void ensureSpace(int bytes) {
+        if(out.remaining() < bytes) {
+            throw new IllegalStateException("A frame is too big to send!");
+        }
+    }
+
+    /**
+     * Stop sending and close the socket. Clients see the controllers get unplugged
+     * once they stop hearing from the server.
+     *
+     * @throws IOException if the socket can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        numClients = 0;
+        channel.close();
+    }
+}
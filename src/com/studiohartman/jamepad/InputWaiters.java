@@ -0,0 +1,147 @@
+package com.studiohartman.jamepad;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class keeps the threads blocked in ControllerManager's await methods, and wakes them up when
+ * what they're waiting for happens.
+ *
+ * A waiting thread is parked, not sleeping in a loop, so it costs nothing until it's woken up. That
+ * makes it fine to have lots of waiters, including on virtual threads: nothing here holds a monitor
+ * while parked, so a virtual thread gives its carrier thread back while it waits.
+ *
+ * The wake up calls are made from update(), on the thread polling the controllers. When nobody is
+ * waiting, they're a check of an empty queue.
+ *
+ * @author William Hartman
+ */
+final class InputWaiters {
+
+    static final int BUTTON = 0;
+    static final int ANY_INPUT = 1;
+    static final int CONNECTION = 2;
+
+    /**
+     * How far an axis must be pushed to count as input for ANY_INPUT.
+     */
+    static final float ANY_INPUT_AXIS_THRESHOLD = 0.5f;
+
+    private static final int WAITING = -2;
+    private static final int CANCELLED = -1;
+
+    private static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        final int type;
+        final int controllerIndex;
+        final int button;
+        volatile int result = WAITING;
+
+        Waiter(int type, int controllerIndex, int button) {
+            this.type = type;
+            this.controllerIndex = controllerIndex;
+            this.button = button;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Returns whether or not any thread is waiting.
+     *
+     * @return Whether or not there are waiters
+     */
+    boolean isEmpty() {
+        return waiters.isEmpty();
+    }
+
+    /**
+     * Block the calling thread until something of the passed type happens, the timeout runs out, or
+     * cancelAll() is called.
+     *
+     * Whatever makes cancelAll() get called should be undone before it's called, and checked by
+     * stillPolled. That's checked once the waiter is added, so a waiter added just after cancelAll()
+     * doesn't wait forever.
+     *
+     * @param type BUTTON, ANY_INPUT or CONNECTION
+     * @param controllerIndex The index of the controller, for BUTTON
+     * @param button The ordinal of the button, for BUTTON
+     * @param timeoutNanos How long to wait, or a negative number to wait forever
+     * @param stillPolled Whether or not anything is still going to wake the waiter up
+     * @return The index of the controller it happened on, or -1 if it didn't happen
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    int await(int type, int controllerIndex, int button, long timeoutNanos, BooleanSupplier stillPolled)
+            throws InterruptedException {
+        Waiter waiter = new Waiter(type, controllerIndex, button);
+        long deadline = System.nanoTime() + timeoutNanos;
+        waiters.add(waiter);
+        try {
+            if(!stillPolled.getAsBoolean()) {
+                return CANCELLED;
+            }
+            int result;
+            while((result = waiter.result) == WAITING) {
+                if(Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if(timeoutNanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) {
+                        return CANCELLED;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            return result;
+        } finally {
+            waiters.remove(waiter);
+        }
+    }
+
+    void button(int controllerIndex, int button) {
+        for(Waiter w: waiters) {
+            if(w.type == ANY_INPUT || (w.type == BUTTON && w.controllerIndex == controllerIndex && w.button == button)) {
+                wake(w, controllerIndex);
+            }
+        }
+    }
+
+    void axis(int controllerIndex, float value) {
+        if(Math.abs(value) < ANY_INPUT_AXIS_THRESHOLD) {
+            return;
+        }
+        for(Waiter w: waiters) {
+            if(w.type == ANY_INPUT) {
+                wake(w, controllerIndex);
+            }
+        }
+    }
+
+    void connected(int controllerIndex) {
+        for(Waiter w: waiters) {
+            if(w.type == CONNECTION) {
+                wake(w, controllerIndex);
+            }
+        }
+    }
+
+    /**
+     * Wake up every waiting thread, telling them that what they were waiting for didn't happen.
+     */
+    void cancelAll() {
+        for(Waiter w: waiters) {
+            wake(w, CANCELLED);
+        }
+    }
+
+    private static void wake(Waiter w, int result) {
+        if(w.result == WAITING) {
+            w.result = result;
+            LockSupport.unpark(w.thread);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.studiohartman.jamepad;
+
+import java.util.ArrayList;
+
+/**
+ * This class keeps the ControllerListeners registered with a ControllerManager and calls them.
+ *
+ * Listeners are filed by what they're interested in: there is a list of listeners for each button,
+ * one for each axis, and one for connections. The lists are rebuilt whenever a listener is added or
+ * removed (which is rare), and swapped in all at once, so dispatching only reads them. An event only
+ * walks the listeners for its own button or axis, and nothing is allocated.
+ *
+ * Listeners can be added and removed from any thread. Dispatching is done on the thread calling
+ * ControllerManager.update().
+ *
+ * @author William Hartman
+ */
+final class ListenerDispatcher {
+
+    private static final ControllerButton[] BUTTONS = ControllerButton.values();
+    private static final ControllerAxis[] AXES = ControllerAxis.values();
+
+    private static final class Registration {
+        final ControllerListener listener;
+        final ControllerInterest interest;
+
+        //The last value passed to axisMoved() for each controller and axis. Only touched while dispatching.
+        final float[] lastAxisValues;
+
+        Registration(ControllerListener listener, ControllerInterest interest, int numControllers) {
+            this.listener = listener;
+            this.interest = interest;
+            lastAxisValues = new float[numControllers * AXES.length];
+        }
+    }
+
+    private static final class Tables {
+        final Registration[] all;
+        final Registration[] connections;
+        final Registration[][] byButton;
+        final Registration[][] byAxis;
+
+        Tables(Registration[] all) {
+            this.all = all;
+            ArrayList<Registration> matching = new ArrayList<>();
+
+            for(Registration r: all) {
+                if(r.interest.coversConnections()) {
+                    matching.add(r);
+                }
+            }
+            connections = matching.toArray(new Registration[0]);
+
+            byButton = new Registration[BUTTONS.length][];
+            for(int button = 0; button < BUTTONS.length; button++) {
+                matching.clear();
+                for(Registration r: all) {
+                    if(r.interest.coversButton(button)) {
+                        matching.add(r);
+                    }
+                }
+                byButton[button] = matching.toArray(new Registration[0]);
+            }
+
+            byAxis = new Registration[AXES.length][];
+            for(int axis = 0; axis < AXES.length; axis++) {
+                matching.clear();
+                for(Registration r: all) {
+                    if(r.interest.coversAxis(axis)) {
+                        matching.add(r);
+                    }
+                }
+                byAxis[axis] = matching.toArray(new Registration[0]);
+            }
+        }
+    }
+
+    private final int numControllers;
+    private volatile Tables tables = new Tables(new Registration[0]);
+
+    /**
+     * Constructor.
+     *
+     * @param numControllers The number of controller indices events can come from
+     */
+    ListenerDispatcher(int numControllers) {
+        this.numControllers = numControllers;
+    }
+
+    /**
+     * Register a listener. If it's already registered, its interest is replaced.
+     *
+     * @param listener The listener
+     * @param interest What the listener wants to hear about
+     */
+    synchronized void add(ControllerListener listener, ControllerInterest interest) {
+        Registration[] all = tables.all;
+        for(int i = 0; i < all.length; i++) {
+            if(all[i].listener == listener) {
+                Registration[] newAll = all.clone();
+                newAll[i] = new Registration(listener, interest, numControllers);
+                tables = new Tables(newAll);
+                return;
+            }
+        }
+
+        Registration[] newAll = new Registration[all.length + 1];
+        System.arraycopy(all, 0, newAll, 0, all.length);
+        newAll[all.length] = new Registration(listener, interest, numControllers);
+        tables = new Tables(newAll);
+    }
+
+    /**
+     * Unregister a listener.
+     *
+     * @param listener The listener
+     * @return Whether or not the listener was registered
+     */
+    synchronized boolean remove(ControllerListener listener) {
+        Registration[] all = tables.all;
+        for(int i = 0; i < all.length; i++) {
+            if(all[i].listener == listener) {
+                Registration[] newAll = new Registration[all.length - 1];
+                System.arraycopy(all, 0, newAll, 0, i);
+                System.arraycopy(all, i + 1, newAll, i, all.length - i - 1);
+                tables = new Tables(newAll);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether or not any listener is registered.
+     *
+     * @return Whether or not there are listeners
+     */
+    boolean isEmpty() {
+        return tables.all.length == 0;
+    }
+
+    void connected(int controllerIndex, ControllerInfo info) {
+        Tables t = tables;
+
+        //A new controller starts with its axes at rest
+        for(Registration r: t.all) {
+            resetAxes(r, controllerIndex);
+        }
+
+        for(Registration r: t.connections) {
+            if(r.interest.coversController(controllerIndex)) {
+                try {
+                    r.listener.connected(controllerIndex, info);
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                }
+            }
+        }
+    }
+
+    void disconnected(int controllerIndex) {
+        for(Registration r: tables.connections) {
+            if(r.interest.coversController(controllerIndex)) {
+                try {
+                    r.listener.disconnected(controllerIndex);
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                }
+            }
+        }
+    }
+
+    void button(int controllerIndex, int button, boolean down) {
+        ControllerButton b = BUTTONS[button];
+        for(Registration r: tables.byButton[button]) {
+            if(r.interest.coversController(controllerIndex)) {
+                try {
+                    if(down) {
+                        r.listener.buttonDown(controllerIndex, b);
+                    } else {
+                        r.listener.buttonUp(controllerIndex, b);
+                    }
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                }
+            }
+        }
+    }
+
+    void axis(int controllerIndex, int axis, float value) {
+        ControllerAxis a = AXES[axis];
+        for(Registration r: tables.byAxis[axis]) {
+            if(!r.interest.coversController(controllerIndex)) {
+                continue;
+            }
+
+            int slot = controllerIndex * AXES.length + axis;
+            float last = r.lastAxisValues[slot];
+            if(Math.abs(value - last) < r.interest.getAxisEpsilon() && !(value == 0 && last != 0)) {
+                continue;
+            }
+            r.lastAxisValues[slot] = value;
+
+            try {
+                r.listener.axisMoved(controllerIndex, a, value);
+            } catch (RuntimeException e) {
+                reportFailure(e);
+            }
+        }
+    }
+
+    private static void resetAxes(Registration r, int controllerIndex) {
+        int start = controllerIndex * AXES.length;
+        for(int slot = start; slot < start + AXES.length; slot++) {
+            r.lastAxisValues[slot] = 0;
+        }
+    }
+
+    private static void reportFailure(RuntimeException e) {
+        System.err.println("A ControllerListener threw an exception");
+        e.printStackTrace();
+    }
+}
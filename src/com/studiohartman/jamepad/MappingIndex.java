@@ -0,0 +1,437 @@
+package com.studiohartman.jamepad;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A controller mapping database (like gamecontrollerdb.txt) compiled into a binary file that is sorted by
+ * GUID and memory mapped when it's opened. Looking up the mapping for one controller is a binary search,
+ * and opening the index doesn't read any of it, so startup costs the same however big the database is.
+ *
+ * ControllerManager uses this when setMappingIndexFile() is called: the index is compiled from the text
+ * the first time (and again whenever the text changes), and a mapping is only handed to SDL when a
+ * device with that GUID is first seen. You can also compile an index at build time with main(), and
+ * ship it next to your game. Indexes remember the size and CRC-32 of the text they were compiled from,
+ * so one compiled from the same text is used as is, wherever it was compiled. When the text is in a jar,
+ * both come from the jar's directory, so the text isn't read at all.
+ *
+ * The index holds the mappings of every platform. Mappings whose GUID isn't 32 hex digits (like SDL's
+ * "xinput" mapping) are left out, since SDL has those built in.
+ *
+ * The file looks like this (big endian):
+ * <pre>
+ * int magic "JMIX", int version
+ * long size and long CRC-32 of the text it was compiled from
+ * int number of entries, int reserved
+ * entries, 32 bytes each, sorted by GUID:
+ *     long GUID high bits, long GUID low bits, int line number,
+ *     int offset and int length of the mapping text, int platform
+ * the mapping text, UTF-8
+ * </pre>
+ *
+ * @author William Hartman
+ */
+public final class MappingIndex implements Closeable {
+
+    private static final int MAGIC = 0x4A4D4958;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 32;
+
+    private static final String[] PLATFORMS = {null, "Windows", "Mac OS X", "Linux", "Android", "iOS"};
+    private static final int ANY_PLATFORM = 0;
+
+    private MappedByteBuffer buffer;
+    private final int numEntries;
+    private final int platform;
+
+    private MappingIndex(MappedByteBuffer buffer, String platformName) throws IOException {
+        this.buffer = buffer;
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a mapping index, or one made by a different version of Jamepad");
+        }
+        numEntries = buffer.getInt(24);
+        if(numEntries < 0 || HEADER_SIZE + (long) numEntries * ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("The mapping index is truncated");
+        }
+        platform = platformId(platformName);
+    }
+
+    /**
+     * Memory map a compiled index. Lookups return the mappings for the platform this is running on.
+     *
+     * @param file The index file
+     * @return The opened index
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static MappingIndex open(Path file) throws IOException {
+        return open(file, MappingParser.currentPlatform());
+    }
+
+    static MappingIndex open(Path file, String platformName) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappingIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), platformName);
+        }
+    }
+
+    /**
+     * Open the index at the passed path, compiling it from the mappings resource on the classpath first
+     * if it doesn't exist or was compiled from different text. The size and CRC-32 of the resource are
+     * compared with the ones the index was compiled from. If the resource is in a jar, those come from
+     * the jar's directory. Otherwise the resource is read to work out its CRC-32, which is still a lot
+     * quicker than parsing it.
+     *
+     * The header of the index is checked before it's mapped, so an out of date index isn't mapped while
+     * it's being replaced (which Windows doesn't allow).
+     *
+     * @param resourcePath The classpath path of the mapping text, like "/gamecontrollerdb.txt"
+     * @param file Where the index is kept
+     * @return The opened index
+     * @throws IOException if the resource can't be read or the index can't be written
+     */
+    public static MappingIndex openOrCompile(String resourcePath, Path file) throws IOException {
+        SourceKey source = SourceKey.ofResource(resourcePath);
+        if(!isCompiledFrom(file, source)) {
+            try(InputStream in = ControllerManager.openResource(resourcePath)) {
+                compile(in, file);
+            }
+        }
+        return open(file);
+    }
+
+    /**
+     * Returns whether or not the passed file is a complete index compiled from the passed text. Only the
+     * header is read, with a plain read, so nothing is left mapped.
+     */
+    private static boolean isCompiledFrom(Path file, SourceKey source) {
+        if(!Files.exists(file)) {
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long fileSize;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            while(header.hasRemaining() && channel.read(header) >= 0) {
+                //Keep reading until the header is full or the file ends
+            }
+        } catch (IOException e) {
+            //Broken, so it is compiled again
+            return false;
+        }
+
+        long numEntries = header.getInt(24);
+        return !header.hasRemaining() && header.getInt(0) == MAGIC && header.getInt(4) == VERSION &&
+                header.getLong(8) == source.size && header.getLong(16) == source.crc &&
+                numEntries >= 0 && HEADER_SIZE + numEntries * ENTRY_SIZE <= fileSize;
+    }
+
+    /**
+     * Compile mapping text into an index file. If the file already exists, it is replaced.
+     *
+     * @param text The mapping text, in the format of gamecontrollerdb.txt
+     * @param file Where to write the index
+     * @throws IOException if the text can't be read or the index can't be written
+     */
+    public static void compile(InputStream text, Path file) throws IOException {
+        SourceStream source = new SourceStream(text);
+        HashMap<String, Entry> entries = read(source);
+        write(entries, new SourceKey(source.size, source.getChecksum().getValue()), file);
+    }
+
+    /**
+     * The size and CRC-32 of the text an index was compiled from. The CRC-32 is the same one jars keep
+     * for each entry.
+     */
+    private static final class SourceKey {
+        final long size;
+        final long crc;
+
+        SourceKey(long size, long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+
+        static SourceKey ofResource(String resourcePath) throws IOException {
+            URL url = ControllerManager.class.getResource(resourcePath);
+            if(url == null) {
+                url = ClassLoader.getSystemResource(resourcePath);
+            }
+            if(url == null) {
+                throw new IOException("Cannot find resource on classpath " + resourcePath);
+            }
+
+            URLConnection connection = url.openConnection();
+            if(connection instanceof JarURLConnection) {
+                JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+                if(entry != null && entry.getSize() >= 0 && entry.getCrc() >= 0) {
+                    return new SourceKey(entry.getSize(), entry.getCrc());
+                }
+            }
+
+            try(SourceStream in = new SourceStream(connection.getInputStream())) {
+                byte[] chunk = new byte[1 << 16];
+                while(in.read(chunk) >= 0) {
+                    //Only the size and CRC-32 are wanted
+                }
+                return new SourceKey(in.size, in.getChecksum().getValue());
+            }
+        }
+    }
+
+    /**
+     * Works out the size and CRC-32 of the text while it's read.
+     */
+    private static final class SourceStream extends CheckedInputStream {
+        long size;
+
+        SourceStream(InputStream in) {
+            super(in, new CRC32());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                size++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int read = super.read(buf, off, len);
+            if(read > 0) {
+                size += read;
+            }
+            return read;
+        }
+    }
+
+    private static final class Entry {
+        long guidHigh;
+        long guidLow;
+        int line;
+        byte[] mapping;
+        int platform;
+    }
+
+    private static HashMap<String, Entry> read(InputStream text) throws IOException {
+        //Last one wins for each GUID and platform, like SDL
+        HashMap<String, Entry> entries = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.UTF_8), 1 << 16);
+        String line;
+        int lineNumber = 0;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            String mapping = line.trim();
+            if(mapping.isEmpty() || mapping.charAt(0) == '#') {
+                continue;
+            }
+
+            String guid = MappingParser.guidOf(mapping);
+            String platformName = MappingParser.platformOf(mapping);
+            int platformId = platformName == null ? ANY_PLATFORM : platformId(platformName);
+            if(guid == null || guid.length() != 32 || platformId < 0) {
+                continue;
+            }
+
+            Entry entry = new Entry();
+            entry.guidHigh = parseHex(guid, 0);
+            entry.guidLow = parseHex(guid, 16);
+            if(entry.guidHigh == -1 && entry.guidLow == -1 && !guid.equalsIgnoreCase("ffffffffffffffffffffffffffffffff")) {
+                continue;
+            }
+            entry.line = lineNumber;
+            entry.mapping = mapping.getBytes(StandardCharsets.UTF_8);
+            entry.platform = platformId;
+            entries.put(guid.toLowerCase() + '/' + platformId, entry);
+        }
+        return entries;
+    }
+
+    private static void write(HashMap<String, Entry> entries, SourceKey source, Path file) throws IOException {
+        ArrayList<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort((a, b) -> {
+            int byGuid = compareGuids(a.guidHigh, a.guidLow, b.guidHigh, b.guidLow);
+            return byGuid != 0 ? byGuid : Integer.compare(a.platform, b.platform);
+        });
+
+        int dataSize = 0;
+        for(Entry e: sorted) {
+            dataSize += e.mapping.length;
+        }
+        int dataStart = HEADER_SIZE + sorted.size() * ENTRY_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(dataStart + dataSize);
+        out.putInt(MAGIC).putInt(VERSION).putLong(source.size).putLong(source.crc).putInt(sorted.size()).putInt(0);
+        int offset = dataStart;
+        for(Entry e: sorted) {
+            out.putLong(e.guidHigh).putLong(e.guidLow).putInt(e.line).putInt(offset).putInt(e.mapping.length).putInt(e.platform);
+            offset += e.mapping.length;
+        }
+        for(Entry e: sorted) {
+            out.put(e.mapping);
+        }
+        out.flip();
+
+        //Write next to the real file and move it into place, so nobody ever maps a half written index
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path partial = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                while(out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            try {
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    /**
+     * Returns the mapping for the passed GUID on the platform this index was opened for, or null if there
+     * isn't one. If there is both a mapping for the platform and one for every platform, the one that
+     * came later in the text wins.
+     *
+     * @param guid The GUID, as 32 hex characters
+     * @return The mapping, or null
+     */
+    public String find(String guid) {
+        if(guid == null || guid.length() != 32) {
+            return null;
+        }
+        long high = parseHex(guid, 0);
+        long low = parseHex(guid, 16);
+
+        //Find the first entry for the GUID
+        int lo = 0;
+        int hi = numEntries;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = HEADER_SIZE + mid * ENTRY_SIZE;
+            if(compareGuids(buffer.getLong(at), buffer.getLong(at + 8), high, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        int best = -1;
+        int bestLine = -1;
+        for(int i = lo; i < numEntries; i++) {
+            int at = HEADER_SIZE + i * ENTRY_SIZE;
+            if(buffer.getLong(at) != high || buffer.getLong(at + 8) != low) {
+                break;
+            }
+            int entryPlatform = buffer.getInt(at + 28);
+            int line = buffer.getInt(at + 16);
+            if((entryPlatform == platform || entryPlatform == ANY_PLATFORM) && line > bestLine) {
+                best = at;
+                bestLine = line;
+            }
+        }
+        if(best < 0) {
+            return null;
+        }
+
+        byte[] mapping = new byte[buffer.getInt(best + 24)];
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.getInt(best + 20));
+        data.get(mapping);
+        return new String(mapping, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of mappings in the index, for every platform.
+     *
+     * @return The number of mappings
+     */
+    public int size() {
+        return numEntries;
+    }
+
+    /**
+     * Stop using the index. The memory is unmapped once the index is garbage collected.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    private static int platformId(String platformName) {
+        for(int i = 1; i < PLATFORMS.length; i++) {
+            if(PLATFORMS[i].equals(platformName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse 16 hex digits starting at the passed offset, or return -1 if they aren't all hex digits.
+     */
+    private static long parseHex(String guid, int offset) {
+        long value = 0;
+        for(int i = offset; i < offset + 16; i++) {
+            int digit = Character.digit(guid.charAt(i), 16);
+            if(digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static int compareGuids(long highA, long lowA, long highB, long lowB) {
+        int byHigh = Long.compare(highA ^ Long.MIN_VALUE, highB ^ Long.MIN_VALUE);
+        return byHigh != 0 ? byHigh : Long.compare(lowA ^ Long.MIN_VALUE, lowB ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * Compile a mapping index at build time.
+     *
+     * Usage: MappingIndex &lt;gamecontrollerdb.txt&gt; &lt;index file&gt;
+     *
+     * @param args The text file to read and the index file to write
+     * @throws IOException if the text can't be read or the index can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: MappingIndex <gamecontrollerdb.txt> <index file>");
+            System.exit(1);
+        }
+
+        try(InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            compile(in, Paths.get(args[1]));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.studiohartman.jamepad;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class reads SDL controller mappings (in the format of gamecontrollerdb.txt) in Java, so they can
+ * be handed to SDL one by one instead of SDL reading them from a file on disk.
+ *
+ * The file is streamed a line at a time. Like SDL does when it reads the file itself, mappings for other
+ * platforms are skipped, and if a GUID has more than one mapping, the last one wins. Only the winners are
+ * kept, so each GUID costs one native call when the mappings are applied.
+ *
+ * @author William Hartman
+ */
+final class MappingParser {
+
+    private static final String PLATFORM_FIELD = "platform:";
+
+    private final String platform;
+    private final LinkedHashMap<String, String> mappings = new LinkedHashMap<>();
+    private long bytesRead;
+
+    /**
+     * Constructor.
+     *
+     * @param platform The SDL name of the platform to keep mappings for, like "Windows" or "Linux"
+     */
+    MappingParser(String platform) {
+        this.platform = platform;
+    }
+
+    /**
+     * Read every mapping out of the passed stream. The stream isn't closed.
+     *
+     * @param in The stream to read
+     * @throws IOException if the stream can't be read
+     */
+    void read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        String line;
+        while((line = reader.readLine()) != null) {
+            bytesRead += line.length() + 1;
+            add(line);
+        }
+    }
+
+    /**
+     * Keep the passed line if it is a mapping for this platform.
+     *
+     * @param line One line of a mappings file
+     * @return Whether or not the line was kept
+     */
+    boolean add(String line) {
+        String mapping = line.trim();
+        if(mapping.isEmpty() || mapping.charAt(0) == '#') {
+            return false;
+        }
+
+        String guid = guidOf(mapping);
+        if(guid == null || !isForPlatform(mapping, platform)) {
+            return false;
+        }
+
+        //Re-insert so a GUID that shows up again moves to where its winning mapping is
+        mappings.remove(guid);
+        mappings.put(guid, mapping);
+        return true;
+    }
+
+    /**
+     * Returns the mappings that were kept, keyed by GUID, in the order they should be applied.
+     *
+     * @return The mappings
+     */
+    Map<String, String> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * Returns roughly how many bytes have been read, counting one per character.
+     *
+     * @return The number of bytes read
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the GUID a mapping is for (everything before the first comma), or null if the line isn't
+     * a mapping.
+     *
+     * @param mapping The mapping
+     * @return The GUID
+     */
+    static String guidOf(String mapping) {
+        int comma = mapping.indexOf(',');
+        return comma > 0 ? mapping.substring(0, comma) : null;
+    }
+
+    /**
+     * Returns whether or not a mapping should be used on the passed platform. Mappings without a platform
+     * field are used everywhere.
+     *
+     * @param mapping The mapping
+     * @param platform The SDL name of the platform
+     * @return Whether or not the mapping is for the platform
+     */
+    static boolean isForPlatform(String mapping, String platform) {
+        int field = mapping.indexOf(PLATFORM_FIELD);
+        if(field < 0) {
+            return true;
+        }
+
+        int start = field + PLATFORM_FIELD.length();
+        int end = mapping.indexOf(',', start);
+        if(end < 0) {
+            end = mapping.length();
+        }
+        return end - start == platform.length() && mapping.regionMatches(start, platform, 0, platform.length());
+    }
+
+    /**
+     * Returns the platform field of a mapping, or null if it doesn't have one.
+     *
+     * @param mapping The mapping
+     * @return The SDL name of the platform, like "Windows" or "Linux"
+     */
+    static String platformOf(String mapping) {
+        int field = mapping.indexOf(PLATFORM_FIELD);
+        if(field < 0) {
+            return null;
+        }
+
+        int start = field + PLATFORM_FIELD.length();
+        int end = mapping.indexOf(',', start);
+        return mapping.substring(start, end < 0 ? mapping.length() : end);
+    }
+
+    /**
+     * Returns the name SDL uses in mappings for the platform this JVM is running on.
+     *
+     * @return The platform name, like "Windows", "Mac OS X" or "Linux"
+     */
+    static String currentPlatform() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        String vm = System.getProperty("java.vm.name", "").toLowerCase();
+        if(os.startsWith("windows")) {
+            return "Windows";
+        } else if(os.startsWith("mac")) {
+            return "Mac OS X";
+        } else if(vm.contains("dalvik")) {
+            return "Android";
+        } else if(os.startsWith("ios")) {
+            return "iOS";
+        }
+        return "Linux";
+    }
+}
@@ -0,0 +1,130 @@
+package com.studiohartman.jamepad;
+
+/**
+ * A fixed size histogram of non-negative long values, like latencies in nanoseconds or counts per frame.
+ *
+ * Values are put into log-linear buckets the same way an HDR histogram does it: every power of two
+ * range is split into 8 equal sub-buckets. That keeps the error of any reported percentile under 12.5%
+ * over the whole range of a long, with less than 4KB of counts. Recording a value is a few bit
+ * operations and an array increment, and never allocates.
+ *
+ * Only one thread should record values. Other threads can read at any time, but may see a slightly
+ * stale view.
+ *
+ * @author William Hartman
+ */
+public final class MetricsHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private volatile long totalCount;
+    private long sum;
+    private long max;
+
+    /**
+     * Add a value to the histogram. Negative values are counted as 0.
+     *
+     * @param value The value to add
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(value)]++;
+        sum += value;
+        if(value > max) {
+            max = value;
+        }
+        totalCount = totalCount + 1;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return The number of values
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if nothing has been recorded.
+     *
+     * @return The largest value
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the mean of the recorded values, or 0 if nothing has been recorded.
+     *
+     * @return The mean value
+     */
+    public double getMean() {
+        long count = totalCount;
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value at the passed percentile. This is the highest value that falls in the same bucket
+     * as the real percentile, so it is never an underestimate by more than the bucket error.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = totalCount;
+        if(count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+        if(target == 0) {
+            target = 1;
+        }
+        long seen = 0;
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= target) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forget every recorded value.
+     */
+    public void reset() {
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        sum = 0;
+        max = 0;
+        totalCount = 0;
+    }
+
+    private static int bucketOf(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueIn(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (1L << exponent) + subBucket * width;
+        return lowest + width - 1;
+    }
+}
@@ -0,0 +1,557 @@
+package com.studiohartman.jamepad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ControllerBackend whose controllers are on another machine, streamed by an InputServer. Pass one to
+ * a ControllerManager, and the controllers plugged in over there show up, get unplugged, and have their
+ * buttons pressed over here, with events, listeners, frame polling and everything else working the same
+ * as with local ones.
+ *
+ * <pre>
+ * //On the machine with the controllers
+ * controllers.setFramePolling(true);
+ * controllers.startInputServer(new InetSocketAddress(7777));
+ *
+ * //On the other machine
+ * RemoteControllerBackend remote = new RemoteControllerBackend(new InetSocketAddress("input-box", 7777));
+ * ControllerManager controllers = new ControllerManager(16, "/gamecontrollerdb.txt", remote);
+ * controllers.initSDLGamepad();
+ * </pre>
+ *
+ * Servers only listen on loopback unless they're told otherwise, so the one on the other machine has to
+ * be started with startInputServer(InetSocketAddress).
+ *
+ * Datagrams are read in update(), and every frame received since the last update() is played into the
+ * controllers in order, so no button press is missed even if this side polls less often than the
+ * server. If a datagram is lost, frames are ignored until the keyframe asked for arrives, so the
+ * controllers hold their last known state for about one round trip instead of being wrong. If nothing
+ * arrives for STALE_NANOS, every remote controller is unplugged and the handshake starts over until the
+ * server is heard from again.
+ *
+ * The controllers are kept in a SimulatedControllerBackend, and vibration isn't sent back to the server.
+ *
+ * @author William Hartman
+ */
+public final class RemoteControllerBackend implements ControllerBackend, Closeable {
+
+    /**
+     * How long the server can go quiet before its controllers are unplugged.
+     */
+    public static final long STALE_NANOS = 1000000000L;
+
+    private static final long KEEPALIVE_INTERVAL_NANOS = 1000000000L;
+    private static final long RETRY_NANOS = 100000000L;
+    private static final int NUM_AXES = ControllerAxis.values().length;
+    private static final ControllerAxis[] AXES = ControllerAxis.values();
+
+    /**
+     * How many frames of events the simulated controllers hold, so nothing is dropped when this side
+     * calls update() a lot less often than the server sends frames. Each controller can make an event for
+     * every button and axis, plus being plugged in or unplugged, on every frame.
+     */
+    private static final int BUFFERED_FRAMES = 32;
+    private static final int MAX_EVENTS_PER_FRAME = ControllerButton.values().length + NUM_AXES + 2;
+
+    private final InetSocketAddress server;
+    private final int maxControllers;
+    private final SimulatedControllerBackend controllers;
+    private DatagramChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(InputServer.HELLO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    //The state of each remote controller, as of the last frame applied
+    private final boolean[] connected;
+    private final String[] names;
+    private final String[] guids;
+    private final int[] buttons;
+    private final int[] axes;
+    private final boolean[] touched;
+
+    //The simulated controller standing in for each remote one, and the name and GUID it was made with
+    private final int[] instanceIds;
+    private final String[] instanceNames;
+    private final String[] instanceGuids;
+
+    private boolean hasCookie;
+    private long cookie;
+    private boolean inStep;
+    private long expectedSequence;
+    private long lastReceived;
+    private long lastSent;
+    private boolean receiving;
+
+    private volatile long bytesReceived;
+    private volatile long datagramsReceived;
+    private volatile long framesReceived;
+    private volatile long framesLost;
+
+    /**
+     * Constructor. Follows up to 16 remote controllers.
+     *
+     * @param server The address of the InputServer
+     */
+    public RemoteControllerBackend(InetSocketAddress server) {
+        this(server, 16);
+    }
+
+    /**
+     * Constructor. Nothing is sent to the server until init() is called.
+     *
+     * @param server The address of the InputServer
+     * @param maxControllers The number of remote controllers to follow. Ones with higher indices are ignored.
+     */
+    public RemoteControllerBackend(InetSocketAddress server, int maxControllers) {
+        this.server = server;
+        this.maxControllers = maxControllers;
+        controllers = new SimulatedControllerBackend(Math.max(1, maxControllers) * MAX_EVENTS_PER_FRAME * BUFFERED_FRAMES);
+        connected = new boolean[maxControllers];
+        names = new String[maxControllers];
+        guids = new String[maxControllers];
+        buttons = new int[maxControllers];
+        axes = new int[maxControllers * NUM_AXES];
+        touched = new boolean[maxControllers];
+        instanceIds = new int[maxControllers];
+        instanceNames = new String[maxControllers];
+        instanceGuids = new String[maxControllers];
+        for(int i = 0; i < maxControllers; i++) {
+            instanceIds[i] = -1;
+        }
+    }
+
+    /**
+     * Returns whether or not the server has been heard from recently, so the controllers are up to date.
+     *
+     * @return Whether or not input is being received
+     */
+    public boolean isReceiving() {
+        return receiving;
+    }
+
+    /**
+     * Returns the number of bytes received from the server so far.
+     *
+     * @return The bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the number of datagrams received from the server so far.
+     *
+     * @return The datagrams received
+     */
+    public long getDatagramsReceived() {
+        return datagramsReceived;
+    }
+
+    /**
+     * Returns the number of frames received from the server and applied to the controllers so far.
+     *
+     * @return The frames received
+     */
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * Returns the number of frames that were lost, or ignored while waiting for a keyframe.
+     *
+     * @return The frames lost
+     */
+    public long getFramesLost() {
+        return framesLost;
+    }
+
+    @Override
+    public boolean init() {
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(server);
+        } catch(IOException e) {
+            System.err.println("Failed to open a socket to the input server at " + server);
+            e.printStackTrace();
+            return false;
+        }
+
+        hasCookie = false;
+        inStep = false;
+        lastReceived = System.nanoTime();
+        sendHandshake(lastReceived);
+        return controllers.init();
+    }
+
+    @Override
+    public void quit() {
+        if(channel != null) {
+            if(hasCookie) {
+                send(InputServer.TYPE_BYE);
+            }
+            try {
+                channel.close();
+            } catch(IOException e) {
+                System.err.println("Failed to close the socket to the input server");
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+        for(int i = 0; i < maxControllers; i++) {
+            connected[i] = false;
+            apply(i);
+        }
+        receiving = false;
+        controllers.quit();
+    }
+
+    /**
+     * Same as quit().
+     */
+    @Override
+    public void close() {
+        quit();
+    }
+
+    @Override
+    public void update() {
+        long now = System.nanoTime();
+        if(channel != null) {
+            while(receive()) {
+                lastReceived = now;
+                receiving = true;
+                readDatagram();
+            }
+
+            if(now - lastReceived > STALE_NANOS) {
+                //The server may have restarted with a new secret, so get a new cookie too
+                hasCookie = false;
+                inStep = false;
+                if(receiving) {
+                    receiving = false;
+                    for(int i = 0; i < maxControllers; i++) {
+                        connected[i] = false;
+                        apply(i);
+                    }
+                }
+            }
+            if(now - lastSent > (inStep ? KEEPALIVE_INTERVAL_NANOS : RETRY_NANOS)) {
+                sendHandshake(now);
+            }
+        }
+        controllers.update();
+    }
+
+    private boolean receive() {
+        in.clear();
+        try {
+            if(channel.receive(in) == null) {
+                return false;
+            }
+        } catch(IOException e) {
+            //Usually the server isn't up yet. The handshake is sent again until it is
+            return false;
+        }
+        in.flip();
+        bytesReceived += in.remaining();
+        datagramsReceived++;
+        return true;
+    }
+
+    private void readDatagram() {
+        if(in.remaining() < InputServer.HEADER_SIZE || in.getInt() != InputServer.MAGIC || in.get() != InputServer.VERSION) {
+            return;
+        }
+        int type = in.get();
+        if(type == InputServer.TYPE_COOKIE) {
+            if(!hasCookie && in.remaining() >= 8) {
+                cookie = in.getLong();
+                hasCookie = true;
+                sendHandshake(System.nanoTime());
+            }
+            return;
+        }
+        if(type != InputServer.TYPE_FRAMES) {
+            return;
+        }
+
+        try {
+            long sequence = getVarint();
+            long numFrames = getVarint();
+            for(long f = 0; f < numFrames; f++, sequence++) {
+                long header = getVarint();
+                boolean keyframe = (header & 1) != 0;
+                int numChanged = (int) (header >>> 1);
+
+                boolean apply;
+                if(keyframe) {
+                    apply = true;
+                    inStep = true;
+                    for(int i = 0; i < maxControllers; i++) {
+                        forget(i);
+                    }
+                } else if(inStep && sequence == expectedSequence) {
+                    apply = true;
+                } else {
+                    if(inStep && sequence > expectedSequence) {
+                        //Lost a datagram, so ask for a keyframe and ignore everything until it comes
+                        inStep = false;
+                        framesLost += sequence - expectedSequence;
+                        sendHandshake(System.nanoTime());
+                    }
+                    apply = false;
+                    if(sequence >= expectedSequence) {
+                        framesLost++;
+                    }
+                }
+
+                for(int n = 0; n < numChanged; n++) {
+                    readController(apply);
+                }
+
+                if(apply) {
+                    expectedSequence = sequence + 1;
+                    framesReceived++;
+                    for(int i = 0; i < maxControllers; i++) {
+                        if(touched[i] || keyframe) {
+                            touched[i] = false;
+                            apply(i);
+                        }
+                    }
+                }
+            }
+        } catch(RuntimeException e) {
+            //A datagram that doesn't parse can't be trusted, so get back in step with a keyframe
+            inStep = false;
+            sendHandshake(System.nanoTime());
+        }
+    }
+
+    private void readController(boolean apply) {
+        int i = (int) getVarint();
+        int flags = in.get();
+        String name = null;
+        String guid = null;
+        if((flags & InputServer.FLAG_NAME) != 0) {
+            name = getString();
+            guid = getString();
+        }
+        int buttonChange = (flags & InputServer.FLAG_BUTTONS) != 0 ? (int) getVarint() : 0;
+        int axisMask = (flags & InputServer.FLAG_AXES) != 0 ? in.get() : 0;
+
+        boolean keep = apply && i < maxControllers;
+        for(int a = 0; a < NUM_AXES; a++) {
+            if((axisMask & (1 << a)) != 0) {
+                int zigzag = (int) getVarint();
+                if(keep) {
+                    axes[i * NUM_AXES + a] += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+        }
+        if(!keep) {
+            return;
+        }
+
+        connected[i] = (flags & InputServer.FLAG_CONNECTED) != 0;
+        if(name != null) {
+            names[i] = name;
+            guids[i] = guid.isEmpty() ? ControllerInfo.UNKNOWN_GUID : guid;
+        } else if(names[i] == null) {
+            names[i] = "Unnamed Controller";
+            guids[i] = ControllerInfo.UNKNOWN_GUID;
+        }
+        buttons[i] ^= buttonChange;
+        touched[i] = true;
+    }
+
+    /**
+     * Make the simulated controller for a remote one match it.
+     */
+    private void apply(int i) {
+        int id = instanceIds[i];
+        if(id >= 0 && (!connected[i] || !names[i].equals(instanceNames[i]) || !guids[i].equals(instanceGuids[i]))) {
+            controllers.disconnect(id);
+            instanceIds[i] = id = -1;
+        }
+        if(!connected[i]) {
+            return;
+        }
+
+        if(id < 0) {
+            id = controllers.connect(names[i], guids[i]);
+            instanceIds[i] = id;
+            instanceNames[i] = names[i];
+            instanceGuids[i] = guids[i];
+        }
+        controllers.setButtons(id, buttons[i]);
+        for(int a = 0; a < NUM_AXES; a++) {
+            controllers.setAxis(id, AXES[a], axes[i * NUM_AXES + a]);
+        }
+    }
+
+    /**
+     * Set a remote controller back to unplugged, which is what keyframes are compared to.
+     */
+    private void forget(int i) {
+        connected[i] = false;
+        buttons[i] = 0;
+        for(int a = 0; a < NUM_AXES; a++) {
+            axes[i * NUM_AXES + a] = 0;
+        }
+    }
+
+    private long getVarint() {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Bad varint!");
+    }
+
+    private String getString() {
+        int length = in.getShort();
+        if(length < 0 || length > in.remaining()) {
+            throw new IllegalStateException("Bad string length!");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send whatever gets this side closer to being in step: HELLO for a cookie, SUBSCRIBE with it to get
+     * a keyframe, or KEEPALIVE once frames are coming in.
+     */
+    private void sendHandshake(long now) {
+        lastSent = now;
+        if(!hasCookie) {
+            send(InputServer.TYPE_HELLO);
+        } else {
+            send(inStep ? InputServer.TYPE_KEEPALIVE : InputServer.TYPE_SUBSCRIBE);
+        }
+    }
+
+    private void send(int type) {
+        out.clear();
+        out.putInt(InputServer.MAGIC);
+        out.put(InputServer.VERSION);
+        out.put((byte) type);
+        if(type == InputServer.TYPE_HELLO) {
+            //Padded, so the cookie sent back is never bigger than what asked for it
+            while(out.hasRemaining()) {
+                out.put((byte) 0);
+            }
+        } else {
+            out.putLong(cookie);
+        }
+        out.flip();
+        try {
+            channel.write(out);
+        } catch(IOException e) {
+            //Nobody is listening yet. The handshake is sent again later
+        }
+    }
+
+    @Override
+    public boolean pollEvent(Event out) {
+        return controllers.pollEvent(out);
+    }
+
+    @Override
+    public int getNumDevices() {
+        return controllers.getNumDevices();
+    }
+
+    @Override
+    public boolean isGameController(int deviceIndex) {
+        return controllers.isGameController(deviceIndex);
+    }
+
+    @Override
+    public int getDeviceInstanceId(int deviceIndex) {
+        return controllers.getDeviceInstanceId(deviceIndex);
+    }
+
+    @Override
+    public String getDeviceGUID(int deviceIndex) {
+        return controllers.getDeviceGUID(deviceIndex);
+    }
+
+    @Override
+    public long open(int deviceIndex) {
+        return controllers.open(deviceIndex);
+    }
+
+    @Override
+    public void close(long handle) {
+        controllers.close(handle);
+    }
+
+    @Override
+    public boolean isAttached(long handle) {
+        return controllers.isAttached(handle);
+    }
+
+    @Override
+    public int getInstanceId(long handle) {
+        return controllers.getInstanceId(handle);
+    }
+
+    @Override
+    public boolean getButton(long handle, int button) {
+        return controllers.getButton(handle, button);
+    }
+
+    @Override
+    public int getAxis(long handle, int axis) {
+        return controllers.getAxis(handle, axis);
+    }
+
+    @Override
+    public String getName(long handle) {
+        return controllers.getName(handle);
+    }
+
+    @Override
+    public String getGUID(long handle) {
+        return controllers.getGUID(handle);
+    }
+
+    @Override
+    public int getVendor(long handle) {
+        return controllers.getVendor(handle);
+    }
+
+    @Override
+    public int getProduct(long handle) {
+        return controllers.getProduct(handle);
+    }
+
+    /**
+     * Vibration isn't sent to the server, so this always returns false.
+     */
+    @Override
+    public boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int duration_ms) {
+        return false;
+    }
+
+    @Override
+    public boolean addMappingsFromFile(String path) {
+        return controllers.addMappingsFromFile(path);
+    }
+
+    @Override
+    public int addMapping(String mapping) {
+        return controllers.addMapping(mapping);
+    }
+}
@@ -0,0 +1,216 @@
+package com.studiohartman.jamepad;
+
+import org.libsdl.SDL;
+
+import static org.libsdl.SDL.Event.SDL_CONTROLLERAXISMOTION;
+import static org.libsdl.SDL.Event.SDL_CONTROLLERBUTTONDOWN;
+import static org.libsdl.SDL.Event.SDL_CONTROLLERBUTTONUP;
+import static org.libsdl.SDL.Event.SDL_JOYDEVICEADDED;
+import static org.libsdl.SDL.Event.SDL_JOYDEVICEREMOVED;
+
+/**
+ * The default ControllerBackend. Everything here goes straight to SDL through sdl2gdx.
+ *
+ * @author William Hartman
+ */
+public final class SDLControllerBackend implements ControllerBackend {
+
+    private SDL.Event event;
+
+    @Override
+    public boolean init() {
+        if (SDL.SDL_Init(SDL.SDL_INIT_EVENTS | SDL.SDL_INIT_JOYSTICK | SDL.SDL_INIT_GAMECONTROLLER) != 0){
+            return false;
+        }
+        event = new SDL.Event();
+        while(SDL.SDL_PollEvent(event)){}
+        return true;
+    }
+    /*
+        if (SDL_Init(SDL_INIT_EVENTS | SDL_INIT_JOYSTICK | SDL_INIT_GAMECONTROLLER) != 0) {
+            printf("NATIVE METHOD: SDL_Init failed: %s\n", SDL_GetError());
+            return JNI_FALSE;
+        }
+
+        //We don't want any controller connections events (which are automatically generated at init)
+        //since they interfere with us detecting new controllers, so we go through all events and clear them.
+        while (SDL_PollEvent(&event));
+
+        return JNI_TRUE;
+    */
+
+    @Override
+    public void quit() {
+        SDL.SDL_Quit();
+    }
+
+    @Override
+    public void update() {
+        SDL.SDL_GameControllerUpdate();
+    }
+
+    @Override
+    public boolean pollEvent(Event out) {
+        if(!SDL.SDL_PollEvent(event)) {
+            return false;
+        }
+
+        out.timestamp = event.timestamp;
+        out.code = 0;
+        out.value = 0;
+        out.which = event.which;
+        switch(event.type) {
+            case SDL_JOYDEVICEADDED:
+                out.type = Event.DEVICE_ADDED;
+                break;
+            case SDL_JOYDEVICEREMOVED:
+                out.type = Event.DEVICE_REMOVED;
+                break;
+            case SDL_CONTROLLERBUTTONDOWN:
+                out.type = Event.BUTTON_DOWN;
+                out.code = event.button;
+                out.value = 1;
+                break;
+            case SDL_CONTROLLERBUTTONUP:
+                out.type = Event.BUTTON_UP;
+                out.code = event.button;
+                break;
+            case SDL_CONTROLLERAXISMOTION:
+                out.type = Event.AXIS_MOTION;
+                out.code = event.axis;
+                out.value = event.value;
+                break;
+            default:
+                out.type = Event.OTHER;
+        }
+        return true;
+    }
+
+    @Override
+    public int getNumDevices() {
+        return SDL.SDL_NumJoysticks();
+    }
+
+    @Override
+    public boolean isGameController(int deviceIndex) {
+        return SDL.SDL_IsGameController(deviceIndex);
+    }
+
+    @Override
+    public int getDeviceInstanceId(int deviceIndex) {
+        return SDL.SDL_JoystickGetDeviceInstanceID(deviceIndex);
+    }
+
+    @Override
+    public String getDeviceGUID(int deviceIndex) {
+        long joystick = SDL.SDL_JoystickOpen(deviceIndex);
+        if(joystick == 0) {
+            return null;
+        }
+        String guid = SDL.SDL_JoystickGetGUIDString(joystick);
+        SDL.SDL_JoystickClose(joystick);
+        return guid;
+    }
+
+    @Override
+    public long open(int deviceIndex) {
+        return SDL.SDL_GameControllerOpen(deviceIndex);
+    }
+
+    @Override
+    public void close(long handle) {
+        if(handle != 0 && SDL.SDL_GameControllerGetAttached(handle)) {
+            SDL.SDL_GameControllerClose(handle);
+        }
+    } /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        if(pad && SDL_GameControllerGetAttached(pad)) {
+            SDL_GameControllerClose(pad);
+        }
+        pad = NULL;
+    */
+
+    @Override
+    public boolean isAttached(long handle) {
+        return (handle != 0 && SDL.SDL_GameControllerGetAttached(handle));
+    } /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        if (pad && SDL_GameControllerGetAttached(pad)) {
+            return JNI_TRUE;
+        }
+        return JNI_FALSE;
+    */
+
+    @Override
+    public int getInstanceId(long handle) {
+        return SDL.SDL_JoystickInstanceID(SDL.SDL_GameControllerGetJoystick(handle));
+    }
+
+    @Override
+    public boolean getButton(long handle, int button) {
+        return SDL.SDL_GameControllerGetButton(handle, button)==1;
+    } /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return SDL_GameControllerGetButton(pad, (SDL_GameControllerButton) buttonIndex);
+    */
+
+    @Override
+    public int getAxis(long handle, int axis) {
+        return SDL.SDL_GameControllerGetAxis(handle, axis);
+    } /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return SDL_GameControllerGetAxis(pad, (SDL_GameControllerAxis) axisIndex);
+    */
+
+    @Override
+    public String getName(long handle) {
+        return SDL.SDL_GameControllerName(handle);
+    } /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return env->NewStringUTF(SDL_GameControllerName(pad));
+    */
+
+    @Override
+    public String getGUID(long handle) {
+        long joystick = SDL.SDL_GameControllerGetJoystick(handle);
+        return SDL.SDL_JoystickGetGUIDString(joystick);
+    } /*
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
+        char guid[33];
+        SDL_JoystickGetGUIDString(SDL_JoystickGetGUID(joystick), guid, sizeof(guid));
+        return env->NewStringUTF(guid);
+    */
+
+    @Override
+    public int getVendor(long handle) {
+        return SDL.SDL_GameControllerGetVendor(handle);
+    } /*
+        return SDL_GameControllerGetVendor((SDL_GameController*) controllerPtr);
+    */
+
+    @Override
+    public int getProduct(long handle) {
+        return SDL.SDL_GameControllerGetProduct(handle);
+    } /*
+        return SDL_GameControllerGetProduct((SDL_GameController*) controllerPtr);
+    */
+
+    @Override
+    public boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int duration_ms) {
+        long joystick = SDL.SDL_GameControllerGetJoystick(handle);
+        return SDL.SDL_JoystickRumble(joystick, leftMagnitude, rightMagnitude, duration_ms);
+    } /*
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
+        return SDL_JoystickRumble(joystick, leftMagnitude, rightMagnitude,  duration_ms) == 0;
+    */
+
+    @Override
+    public boolean addMappingsFromFile(String path) {
+        return (SDL.SDL_GameControllerAddMappingsFromFile(path) > 0);
+    }
+
+    @Override
+    public int addMapping(String mapping) {
+        return SDL.SDL_GameControllerAddMapping(mapping);
+    }
+}
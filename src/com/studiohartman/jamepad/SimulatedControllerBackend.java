@@ -0,0 +1,529 @@
+package com.studiohartman.jamepad;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ControllerBackend that keeps everything in memory. Controllers are plugged in, unplugged, and
+ * have their buttons and axes set by calling methods on this class, and ControllerManager sees them
+ * exactly as it would see real ones from SDL, events and all.
+ *
+ * This lets you run and load test code that uses Jamepad without SDL or any input devices. Nothing
+ * is allocated when reading or scripting input, so it can run at thousands of frames per second.
+ *
+ * <pre>
+ * SimulatedControllerBackend backend = new SimulatedControllerBackend();
+ * ControllerManager controllers = new ControllerManager(4, "/gamecontrollerdb.txt", backend);
+ * controllers.initSDLGamepad();
+ *
+ * int pad = backend.connect("Simulated Controller");
+ * backend.setButton(pad, ControllerButton.A, true);
+ * controllers.update();
+ * </pre>
+ *
+ * All the methods are synchronized, so input can be scripted from a different thread than the one
+ * using the ControllerManager (like when the input pump is running).
+ *
+ * @author William Hartman
+ */
+public final class SimulatedControllerBackend implements ControllerBackend {
+
+    private static final int NUM_AXES = ControllerAxis.values().length;
+
+    private static final class Device {
+        final int instanceId;
+        final String name;
+        final String guid;
+        boolean attached = true;
+        int buttons;
+        final int[] axes = new int[NUM_AXES];
+        int leftRumble;
+        int rightRumble;
+        int rumbleDuration;
+        int rumbleCount;
+
+        Device(int instanceId, String name, String guid) {
+            this.instanceId = instanceId;
+            this.name = name;
+            this.guid = guid;
+        }
+    }
+
+    private final ArrayList<Device> pluggedIn = new ArrayList<>();
+    private Device[] byInstanceId = new Device[16];
+    private int nextInstanceId;
+    private boolean initialized;
+    private int timestamp;
+
+    private final int[] eventTypes;
+    private final int[] eventTimestamps;
+    private final int[] eventWhich;
+    private final int[] eventCodes;
+    private final int[] eventValues;
+    private int eventHead;
+    private int eventCount;
+
+    private long updateCount;
+    private long buttonReads;
+    private long axisReads;
+    private volatile int initDelayMillis;
+    private final HashMap<String, String> mappings = new HashMap<>();
+
+    /**
+     * Constructor. Makes a backend with no controllers plugged in, whose event queue holds 4096 events.
+     */
+    public SimulatedControllerBackend() {
+        this(4096);
+    }
+
+    /**
+     * Constructor. Makes a backend with no controllers plugged in.
+     *
+     * @param eventCapacity The number of events the event queue can hold before the oldest are dropped
+     */
+    public SimulatedControllerBackend(int eventCapacity) {
+        eventTypes = new int[eventCapacity];
+        eventTimestamps = new int[eventCapacity];
+        eventWhich = new int[eventCapacity];
+        eventCodes = new int[eventCapacity];
+        eventValues = new int[eventCapacity];
+    }
+
+    /**
+     * Plug in a new simulated controller. It is added after all the controllers already plugged in, and
+     * reports an all zero GUID.
+     *
+     * @param name The name the controller will report
+     * @return The instance ID of the new controller, used to script it
+     */
+    public int connect(String name) {
+        return connect(name, "00000000000000000000000000000000");
+    }
+
+    /**
+     * Plug in a new simulated controller with the passed GUID. It is added after all the controllers
+     * already plugged in. The vendor and product IDs are read out of the GUID the same way SDL lays
+     * them out, so "030000005e0400008e02000014010000" is an Xbox 360 controller (045e:028e).
+     *
+     * @param name The name the controller will report
+     * @param guid The GUID the controller will report, as 32 hex characters
+     * @return The instance ID of the new controller, used to script it
+     */
+    public synchronized int connect(String name, String guid) {
+        int instanceId = nextInstanceId++;
+        if(instanceId == byInstanceId.length) {
+            Device[] newByInstanceId = new Device[byInstanceId.length * 2];
+            System.arraycopy(byInstanceId, 0, newByInstanceId, 0, byInstanceId.length);
+            byInstanceId = newByInstanceId;
+        }
+
+        Device device = new Device(instanceId, name, guid);
+        byInstanceId[instanceId] = device;
+        pluggedIn.add(device);
+        if(initialized) {
+            addEvent(Event.DEVICE_ADDED, pluggedIn.size() - 1, 0, 0);
+        }
+        return instanceId;
+    }
+
+    /**
+     * Unplug a simulated controller. If it isn't plugged in, nothing happens.
+     *
+     * @param instanceId The instance ID returned by connect()
+     */
+    public synchronized void disconnect(int instanceId) {
+        Device device = device(instanceId);
+        if(device == null || !device.attached) {
+            return;
+        }
+
+        device.attached = false;
+        pluggedIn.remove(device);
+        if(initialized) {
+            addEvent(Event.DEVICE_REMOVED, instanceId, 0, 0);
+        }
+    }
+
+    /**
+     * Press or release a button on a simulated controller.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @param button The button
+     * @param pressed Whether or not the button should be held down
+     */
+    public synchronized void setButton(int instanceId, ControllerButton button, boolean pressed) {
+        Device device = attachedDevice(instanceId);
+        int bit = 1 << button.ordinal();
+        if(((device.buttons & bit) != 0) == pressed) {
+            return;
+        }
+
+        device.buttons ^= bit;
+        addEvent(pressed ? Event.BUTTON_DOWN : Event.BUTTON_UP, instanceId, button.ordinal(), pressed ? 1 : 0);
+    }
+
+    /**
+     * Set every button of a simulated controller at once. Bit n of the mask is the button with
+     * ordinal n.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @param buttonMask The buttons that should be held down
+     */
+    public synchronized void setButtons(int instanceId, int buttonMask) {
+        Device device = attachedDevice(instanceId);
+        int changed = device.buttons ^ buttonMask;
+        device.buttons = buttonMask;
+        for(int i = 0; changed != 0; i++, changed >>>= 1) {
+            if((changed & 1) != 0) {
+                boolean pressed = (buttonMask & (1 << i)) != 0;
+                addEvent(pressed ? Event.BUTTON_DOWN : Event.BUTTON_UP, instanceId, i, pressed ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Move an axis on a simulated controller.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @param axis The axis
+     * @param rawValue The native value of the axis (-32768 to 32767)
+     */
+    public synchronized void setAxis(int instanceId, ControllerAxis axis, int rawValue) {
+        Device device = attachedDevice(instanceId);
+        int clamped = Math.max(-32768, Math.min(32767, rawValue));
+        if(device.axes[axis.ordinal()] == clamped) {
+            return;
+        }
+
+        device.axes[axis.ordinal()] = clamped;
+        addEvent(Event.AXIS_MOTION, instanceId, axis.ordinal(), clamped);
+    }
+
+    /**
+     * Set the timestamp, in milliseconds, that new events will have.
+     *
+     * @param timestamp The timestamp for new events
+     */
+    public synchronized void setTimestamp(int timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the left motor speed of the last vibration sent to a simulated controller.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @return The speed of the left motor (0 to 65535)
+     */
+    public synchronized int getLeftRumble(int instanceId) {
+        Device device = device(instanceId);
+        return device == null ? 0 : device.leftRumble;
+    }
+
+    /**
+     * Returns the right motor speed of the last vibration sent to a simulated controller.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @return The speed of the right motor (0 to 65535)
+     */
+    public synchronized int getRightRumble(int instanceId) {
+        Device device = device(instanceId);
+        return device == null ? 0 : device.rightRumble;
+    }
+
+    /**
+     * Returns the duration of the last vibration sent to a simulated controller.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @return The duration of the vibration in milliseconds
+     */
+    public synchronized int getRumbleDuration(int instanceId) {
+        Device device = device(instanceId);
+        return device == null ? 0 : device.rumbleDuration;
+    }
+
+    /**
+     * Returns the number of rumble commands sent to a simulated controller.
+     *
+     * @param instanceId The instance ID returned by connect()
+     * @return The number of rumble commands
+     */
+    public synchronized int getRumbleCount(int instanceId) {
+        Device device = device(instanceId);
+        return device == null ? 0 : device.rumbleCount;
+    }
+
+    /**
+     * Make init() take the passed amount of time, to stand in for how long SDL takes to start up.
+     * The default is 0.
+     *
+     * @param millis How long init() should take
+     */
+    public void setInitDelayMillis(int millis) {
+        if(millis < 0) {
+            throw new IllegalArgumentException("The delay can't be negative!");
+        }
+        initDelayMillis = millis;
+    }
+
+    /**
+     * Returns the mapping added for the passed GUID, or null if there isn't one.
+     *
+     * @param guid The GUID, as 32 hex characters
+     * @return The mapping
+     */
+    public synchronized String getMapping(String guid) {
+        return mappings.get(guid);
+    }
+
+    /**
+     * Returns the number of GUIDs that have a mapping.
+     *
+     * @return The number of mappings
+     */
+    public synchronized int getNumMappings() {
+        return mappings.size();
+    }
+
+    /**
+     * Returns the number of times update() has been called by ControllerManager.
+     *
+     * @return The number of updates
+     */
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Returns the number of times a button has been read by ControllerManager, over every controller.
+     *
+     * @return The number of button reads
+     */
+    public synchronized long getButtonReadCount() {
+        return buttonReads;
+    }
+
+    /**
+     * Returns the number of times an axis has been read by ControllerManager, over every controller.
+     *
+     * @return The number of axis reads
+     */
+    public synchronized long getAxisReadCount() {
+        return axisReads;
+    }
+
+    private Device device(int instanceId) {
+        return instanceId >= 0 && instanceId < byInstanceId.length ? byInstanceId[instanceId] : null;
+    }
+
+    private Device attachedDevice(int instanceId) {
+        Device device = device(instanceId);
+        if(device == null || !device.attached) {
+            throw new IllegalArgumentException("No simulated controller with instance ID " + instanceId + " is plugged in!");
+        }
+        return device;
+    }
+
+    private Device handleDevice(long handle) {
+        return device((int) (handle - 1));
+    }
+
+    private void addEvent(int type, int which, int code, int value) {
+        if(eventCount == eventTypes.length) {
+            eventHead = (eventHead + 1) % eventTypes.length;
+            eventCount--;
+        }
+
+        int tail = (eventHead + eventCount) % eventTypes.length;
+        eventTypes[tail] = type;
+        eventTimestamps[tail] = timestamp;
+        eventWhich[tail] = which;
+        eventCodes[tail] = code;
+        eventValues[tail] = value;
+        eventCount++;
+    }
+
+    @Override
+    public boolean init() {
+        long delayNanos = initDelayMillis * 1000000L;
+        long start = System.nanoTime();
+        while(System.nanoTime() - start < delayNanos) {
+            LockSupport.parkNanos(delayNanos - (System.nanoTime() - start));
+        }
+
+        synchronized(this) {
+            initialized = true;
+            eventCount = 0;
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized void quit() {
+        initialized = false;
+        eventCount = 0;
+    }
+
+    @Override
+    public synchronized void update() {
+        updateCount++;
+    }
+
+    @Override
+    public synchronized boolean pollEvent(Event out) {
+        if(eventCount == 0) {
+            return false;
+        }
+
+        out.type = eventTypes[eventHead];
+        out.timestamp = eventTimestamps[eventHead];
+        out.which = eventWhich[eventHead];
+        out.code = eventCodes[eventHead];
+        out.value = eventValues[eventHead];
+        eventHead = (eventHead + 1) % eventTypes.length;
+        eventCount--;
+        return true;
+    }
+
+    @Override
+    public synchronized int getNumDevices() {
+        return pluggedIn.size();
+    }
+
+    @Override
+    public synchronized boolean isGameController(int deviceIndex) {
+        return deviceIndex >= 0 && deviceIndex < pluggedIn.size();
+    }
+
+    @Override
+    public synchronized int getDeviceInstanceId(int deviceIndex) {
+        return isGameController(deviceIndex) ? pluggedIn.get(deviceIndex).instanceId : -1;
+    }
+
+    @Override
+    public synchronized String getDeviceGUID(int deviceIndex) {
+        return isGameController(deviceIndex) ? pluggedIn.get(deviceIndex).guid : null;
+    }
+
+    @Override
+    public synchronized long open(int deviceIndex) {
+        return isGameController(deviceIndex) ? pluggedIn.get(deviceIndex).instanceId + 1L : 0;
+    }
+
+    @Override
+    public void close(long handle) {
+    }
+
+    @Override
+    public synchronized boolean isAttached(long handle) {
+        Device device = handleDevice(handle);
+        return device != null && device.attached;
+    }
+
+    @Override
+    public int getInstanceId(long handle) {
+        return (int) (handle - 1);
+    }
+
+    @Override
+    public synchronized boolean getButton(long handle, int button) {
+        buttonReads++;
+        Device device = handleDevice(handle);
+        return device != null && device.attached && (device.buttons & (1 << button)) != 0;
+    }
+
+    @Override
+    public synchronized int getAxis(long handle, int axis) {
+        axisReads++;
+        Device device = handleDevice(handle);
+        return device != null && device.attached ? device.axes[axis] : 0;
+    }
+
+    @Override
+    public synchronized String getName(long handle) {
+        Device device = handleDevice(handle);
+        return device == null ? null : device.name;
+    }
+
+    @Override
+    public synchronized String getGUID(long handle) {
+        Device device = handleDevice(handle);
+        return device == null ? null : device.guid;
+    }
+
+    @Override
+    public synchronized int getVendor(long handle) {
+        Device device = handleDevice(handle);
+        return device == null ? 0 : guidWord(device.guid, 4);
+    }
+
+    @Override
+    public synchronized int getProduct(long handle) {
+        Device device = handleDevice(handle);
+        return device == null ? 0 : guidWord(device.guid, 8);
+    }
+
+    /**
+     * Reads the little endian 16 bit word starting at the passed byte of a GUID string.
+     */
+    private static int guidWord(String guid, int byteIndex) {
+        if(guid == null || guid.length() < (byteIndex + 2) * 2) {
+            return 0;
+        }
+        try {
+            int low = Integer.parseInt(guid.substring(byteIndex * 2, byteIndex * 2 + 2), 16);
+            int high = Integer.parseInt(guid.substring(byteIndex * 2 + 2, byteIndex * 2 + 4), 16);
+            return (high << 8) | low;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int duration_ms) {
+        Device device = handleDevice(handle);
+        if(device == null || !device.attached) {
+            return false;
+        }
+
+        device.leftRumble = leftMagnitude;
+        device.rightRumble = rightMagnitude;
+        device.rumbleDuration = duration_ms;
+        device.rumbleCount++;
+        return true;
+    }
+
+    /**
+     * Reads the file the same way SDL does: platforms other than the one this is running on are skipped.
+     */
+    @Override
+    public boolean addMappingsFromFile(String path) {
+        MappingParser parser = new MappingParser(MappingParser.currentPlatform());
+        try(InputStream in = Files.newInputStream(Paths.get(path))) {
+            parser.read(in);
+        } catch (IOException e) {
+            return false;
+        }
+
+        int added = 0;
+        for(String mapping: parser.getMappings().values()) {
+            if(addMapping(mapping) >= 0) {
+                added++;
+            }
+        }
+        return added > 0;
+    }
+
+    @Override
+    public synchronized int addMapping(String mapping) {
+        String guid = MappingParser.guidOf(mapping);
+        if(guid == null) {
+            return -1;
+        }
+        return mappings.put(guid, mapping) == null ? 1 : 0;
+    }
+}
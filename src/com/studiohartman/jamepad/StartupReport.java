@@ -0,0 +1,128 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Where the time went in the last initSDLGamepad() call. Get it with ControllerManager.getStartupReport().
+ *
+ * The phases are:
+ *
+ * - SDL init: starting up the native library.
+ * - Mapping prepare: reading the mappings file (or opening the mapping index). This runs on its own
+ *   thread at the same time as SDL init, so the total can be less than the sum.
+ * - Mapping apply: handing the mappings to SDL, which has to wait for SDL init.
+ * - Controller open: opening every controller that's plugged in.
+ * - Warm up: polling every controller over and over so the JIT compiles the polling code before the
+ *   game starts. This is 0 unless warm up frames were asked for.
+ *
+ * @author William Hartman
+ */
+public final class StartupReport {
+
+    long sdlInitNanos;
+    long mappingPrepareNanos;
+    long mappingApplyNanos;
+    long controllerOpenNanos;
+    long warmUpNanos;
+    long totalNanos;
+    boolean mappingsLoaded;
+    int controllersOpened;
+    int warmUpFrames;
+
+    StartupReport() {
+    }
+
+    /**
+     * Returns how long the native library took to start up.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getSdlInitNanos() {
+        return sdlInitNanos;
+    }
+
+    /**
+     * Returns how long it took to read the mappings file or open the mapping index.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getMappingPrepareNanos() {
+        return mappingPrepareNanos;
+    }
+
+    /**
+     * Returns how long it took to hand the mappings to SDL, after SDL was ready for them.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getMappingApplyNanos() {
+        return mappingApplyNanos;
+    }
+
+    /**
+     * Returns how long it took to open the controllers that were plugged in.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getControllerOpenNanos() {
+        return controllerOpenNanos;
+    }
+
+    /**
+     * Returns how long the warm up took.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    /**
+     * Returns how long the whole init took, from start to finish.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns whether or not the mappings were loaded. If they weren't, SDL's built in mappings are used.
+     *
+     * @return Whether or not the mappings were loaded
+     */
+    public boolean isMappingsLoaded() {
+        return mappingsLoaded;
+    }
+
+    /**
+     * Returns the number of controllers that were opened.
+     *
+     * @return The number of controllers
+     */
+    public int getControllersOpened() {
+        return controllersOpened;
+    }
+
+    /**
+     * Returns the number of frames polled to warm up.
+     *
+     * @return The number of warm up frames
+     */
+    public int getWarmUpFrames() {
+        return warmUpFrames;
+    }
+
+    @Override
+    public String toString() {
+        return "Jamepad startup took " + millis(totalNanos) + "ms\n" +
+                "  SDL init:         " + millis(sdlInitNanos) + "ms\n" +
+                "  Mapping prepare:  " + millis(mappingPrepareNanos) + "ms (during SDL init)" +
+                (mappingsLoaded ? "" : " (failed)") + "\n" +
+                "  Mapping apply:    " + millis(mappingApplyNanos) + "ms\n" +
+                "  Controller open:  " + millis(controllerOpenNanos) + "ms (" + controllersOpened + " opened)\n" +
+                "  Warm up:          " + millis(warmUpNanos) + "ms (" + warmUpFrames + " frames)";
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1000000.0);
+    }
+}
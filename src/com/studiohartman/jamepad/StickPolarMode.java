@@ -0,0 +1,94 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This is an enumerated type for how the stick angle and magnitude fields of ControllerState and
+ * ControllerStateBuffer are filled in. Set it with ControllerManager.setStickPolarMode().
+ *
+ * Working out the angles means two calls to atan2, which cost more than everything else in a
+ * ControllerState put together. Most games only look at the x and y values, so you can ask for a cheaper
+ * approximation, or skip them altogether.
+ *
+ * @author William Hartman
+ */
+public enum StickPolarMode {
+
+    /**
+     * The angles and magnitudes are worked out with Math.atan2() and Math.sqrt() for every state. This
+     * is the default.
+     */
+    EXACT,
+
+    /**
+     * The angles are worked out with a polynomial approximation of atan2. The largest error is under
+     * 0.0002 degrees, which is far smaller than the noise on any real stick. The magnitudes still use
+     * Math.sqrt(), since the JIT turns that into one instruction that is faster than any approximation.
+     */
+    FAST,
+
+    /**
+     * The angle and magnitude fields aren't filled in, and are set to NaN. Use getLeftStickAngle() and
+     * the other getters, which work them out when they're called.
+     */
+    LAZY;
+
+    private static final float DEGREES_PER_RADIAN = (float) (180 / Math.PI);
+
+    /**
+     * Returns the angle of a stick in degrees, worked out the way this mode says to.
+     */
+    float angle(float x, float y) {
+        if(this == EXACT) {
+            return exactAngle(x, y);
+        } else if(this == FAST) {
+            return fastAngle(x, y);
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Returns how far a stick is pushed, worked out the way this mode says to.
+     */
+    float magnitude(float x, float y) {
+        if(this == LAZY) {
+            return Float.NaN;
+        }
+        return exactMagnitude(x, y);
+    }
+
+    static float exactAngle(float x, float y) {
+        return (float) Math.toDegrees(Math.atan2(y, x));
+    }
+
+    static float exactMagnitude(float x, float y) {
+        return (float) Math.sqrt((x * x) + (y * y));
+    }
+
+    /**
+     * atan2 in degrees, from a degree 11 odd minimax polynomial for atan on [0, 1] and the usual octant
+     * folding. Returns the same range as Math.atan2(), -180 to 180.
+     */
+    static float fastAngle(float x, float y) {
+        float absX = Math.abs(x);
+        float absY = Math.abs(y);
+        float max = Math.max(absX, absY);
+        if(max == 0) {
+            //Match Math.atan2(), which gives 0 or 180 for the center depending on the sign of x
+            return exactAngle(x, y);
+        }
+
+        float a = Math.min(absX, absY) / max;
+        float s = a * a;
+        float r = ((((-0.0117212f * s + 0.05265332f) * s - 0.11643287f) * s + 0.19354346f) * s - 0.33262347f) * s
+                * a + 0.99997726f * a;
+        if(absY > absX) {
+            r = 1.57079637f - r;
+        }
+        if(x < 0) {
+            r = 3.14159274f - r;
+        }
+        if(y < 0 || (y == 0 && 1 / y < 0)) {
+            r = -r;
+        }
+        return r * DEGREES_PER_RADIAN;
+    }
+}
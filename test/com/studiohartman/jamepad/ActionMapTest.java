@@ -0,0 +1,82 @@
+package com.studiohartman.jamepad;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that chords hide the actions bound to some of their buttons, and only those.
+ *
+ * @author William Hartman
+ */
+public class ActionMapTest {
+
+    private ActionMap actions;
+    private ActionState out;
+    private final ControllerStateBuffer state = new ControllerStateBuffer();
+
+    @Before
+    public void setUp() {
+        actions = new ActionMap();
+        out = new ActionState();
+        state.isConnected = true;
+    }
+
+    private void evaluate(ControllerButton... held) {
+        int mask = 0;
+        for(ControllerButton button: held) {
+            mask |= 1 << button.ordinal();
+        }
+        state.buttonMask = mask;
+        actions.evaluate(state, out);
+    }
+
+    @Test
+    public void chordHidesItsButtons() {
+        int jump = actions.defineAction("jump");
+        int dodge = actions.defineAction("dodge");
+        actions.bindButton(jump, ControllerButton.A);
+        actions.bindChord(dodge, ControllerButton.LEFTBUMPER, ControllerButton.A);
+
+        evaluate(ControllerButton.A);
+        assertTrue(out.isHeld(jump));
+        assertFalse(out.isHeld(dodge));
+
+        evaluate(ControllerButton.LEFTBUMPER, ControllerButton.A);
+        assertTrue(out.isHeld(dodge));
+        assertFalse("button under a chord", out.isHeld(jump));
+    }
+
+    @Test
+    public void biggerChordHidesSmallerOnes() {
+        int small = actions.defineAction("small");
+        int big = actions.defineAction("big");
+        actions.bindChord(small, ControllerButton.LEFTBUMPER, ControllerButton.A);
+        actions.bindChord(big, ControllerButton.LEFTBUMPER, ControllerButton.A, ControllerButton.B);
+
+        evaluate(ControllerButton.LEFTBUMPER, ControllerButton.A);
+        assertTrue(out.isHeld(small));
+        assertFalse(out.isHeld(big));
+
+        evaluate(ControllerButton.LEFTBUMPER, ControllerButton.A, ControllerButton.B);
+        assertTrue(out.isHeld(big));
+        assertFalse("chord inside a bigger chord", out.isHeld(small));
+    }
+
+    @Test
+    public void chordsOfTheSameSizeDontHideEachOther() {
+        int left = actions.defineAction("left");
+        int right = actions.defineAction("right");
+        int alsoLeft = actions.defineAction("also left");
+        actions.bindChord(left, ControllerButton.LEFTBUMPER, ControllerButton.A);
+        actions.bindChord(right, ControllerButton.LEFTBUMPER, ControllerButton.B);
+        actions.bindChord(alsoLeft, ControllerButton.LEFTBUMPER, ControllerButton.A);
+
+        evaluate(ControllerButton.LEFTBUMPER, ControllerButton.A, ControllerButton.B);
+        assertTrue(out.isHeld(left));
+        assertTrue(out.isHeld(right));
+        assertTrue(out.isHeld(alsoLeft));
+    }
+}
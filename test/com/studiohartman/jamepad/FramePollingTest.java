@@ -0,0 +1,81 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that frame polling pumps the backend once per update(), and reads each button and axis of each
+ * controller once, no matter how many times they're read in between. Runs against a
+ * SimulatedControllerBackend, so no SDL is needed.
+ *
+ * @author William Hartman
+ */
+public class FramePollingTest {
+
+    private static final int NUM_CONTROLLERS = 4;
+    private static final int NUM_BUTTONS = ControllerButton.values().length;
+    private static final int NUM_AXES = ControllerAxis.values().length;
+
+    private SimulatedControllerBackend backend;
+    private ControllerManager controllers;
+    private final int[] instanceIds = new int[NUM_CONTROLLERS];
+
+    @Before
+    public void setUp() {
+        backend = new SimulatedControllerBackend();
+        for(int i = 0; i < NUM_CONTROLLERS; i++) {
+            instanceIds[i] = backend.connect("Test Controller " + i);
+        }
+        controllers = new ControllerManager(NUM_CONTROLLERS, "/gamecontrollerdb.txt", backend);
+        controllers.setFramePolling(true);
+        controllers.initSDLGamepad();
+    }
+
+    @After
+    public void tearDown() {
+        controllers.quitSDLGamepad();
+    }
+
+    @Test
+    public void updatesTheBackendOncePerFrame() throws ControllerUnpluggedException {
+        ControllerStateBuffer state = new ControllerStateBuffer();
+        for(int frame = 0; frame < 100; frame++) {
+            backend.setButton(instanceIds[frame % NUM_CONTROLLERS], ControllerButton.A, (frame & 1) == 0);
+            backend.setAxis(instanceIds[(frame + 1) % NUM_CONTROLLERS], ControllerAxis.LEFTX, frame * 100);
+
+            long updatesBefore = backend.getUpdateCount();
+            long buttonReadsBefore = backend.getButtonReadCount();
+            long axisReadsBefore = backend.getAxisReadCount();
+            controllers.update();
+            for(int i = 0; i < NUM_CONTROLLERS; i++) {
+                controllers.getState(i, state);
+                controllers.getState(i);
+                ControllerIndex c = controllers.getControllerIndex(i);
+                c.isButtonPressed(ControllerButton.A);
+                c.isButtonJustPressed(ControllerButton.B);
+                c.getAxisState(ControllerAxis.LEFTX);
+            }
+            assertEquals("backend updates on frame " + frame, 1, backend.getUpdateCount() - updatesBefore);
+            assertEquals("button reads on frame " + frame, NUM_CONTROLLERS * NUM_BUTTONS,
+                    backend.getButtonReadCount() - buttonReadsBefore);
+            assertEquals("axis reads on frame " + frame, NUM_CONTROLLERS * NUM_AXES,
+                    backend.getAxisReadCount() - axisReadsBefore);
+        }
+    }
+
+    @Test
+    public void readsFromTheSnapshotBetweenUpdates() throws ControllerUnpluggedException {
+        controllers.update();
+        backend.setButton(instanceIds[0], ControllerButton.A, true);
+        assertFalse(controllers.getControllerIndex(0).isButtonPressed(ControllerButton.A));
+
+        controllers.update();
+        assertTrue(controllers.getControllerIndex(0).isButtonPressed(ControllerButton.A));
+        assertTrue(controllers.getControllerIndex(0).isButtonJustPressed(ControllerButton.A));
+    }
+}
@@ -0,0 +1,159 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Records a SimulatedControllerBackend with InputRecorder and plays it back with InputReplay, checking
+ * that every frame comes back the way it went in, and that broken recordings are refused with the
+ * documented exceptions.
+ *
+ * @author William Hartman
+ */
+public class InputReplayTest {
+
+    private static final int NUM_CONTROLLERS = 3;
+    private static final int NUM_FRAMES = 50;
+    private static final int NUM_AXES = ControllerAxis.values().length;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("jamepad", ".rec");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void playsBackWhatWasRecorded() throws IOException {
+        SimulatedControllerBackend backend = new SimulatedControllerBackend();
+        int[] instanceIds = new int[NUM_CONTROLLERS];
+        for(int i = 0; i < NUM_CONTROLLERS; i++) {
+            instanceIds[i] = backend.connect("Test Controller " + i);
+        }
+        ControllerManager recording = new ControllerManager(NUM_CONTROLLERS, "/gamecontrollerdb.txt", backend);
+        recording.setFramePolling(true);
+        recording.initSDLGamepad();
+
+        ArrayList<int[]> expectedButtons = new ArrayList<>();
+        ArrayList<int[]> expectedAxes = new ArrayList<>();
+        ArrayList<boolean[]> expectedConnected = new ArrayList<>();
+        try {
+            recording.startRecording(file);
+            for(int frame = 0; frame < NUM_FRAMES; frame++) {
+                //The last controller is unplugged halfway through
+                int plugged = frame < NUM_FRAMES / 2 ? NUM_CONTROLLERS : NUM_CONTROLLERS - 1;
+                if(frame == NUM_FRAMES / 2) {
+                    backend.disconnect(instanceIds[NUM_CONTROLLERS - 1]);
+                }
+                backend.setButton(instanceIds[frame % plugged], ControllerButton.A, (frame & 1) == 0);
+                backend.setButton(instanceIds[(frame + 1) % plugged], ControllerButton.START, frame % 3 == 0);
+                backend.setAxis(instanceIds[(frame + 2) % plugged], ControllerAxis.LEFTX, frame * 600 - 15000);
+                recording.update();
+
+                int[] buttons = new int[NUM_CONTROLLERS];
+                int[] axes = new int[NUM_CONTROLLERS * NUM_AXES];
+                boolean[] connected = new boolean[NUM_CONTROLLERS];
+                for(int i = 0; i < NUM_CONTROLLERS; i++) {
+                    ControllerIndex c = recording.getControllerIndex(i);
+                    connected[i] = c.isConnected();
+                    buttons[i] = c.getHeldButtonMask();
+                    for(int a = 0; a < NUM_AXES; a++) {
+                        axes[i * NUM_AXES + a] = c.getRawAxis(a);
+                    }
+                }
+                expectedButtons.add(buttons);
+                expectedAxes.add(axes);
+                expectedConnected.add(connected);
+            }
+            recording.stopRecording();
+        } finally {
+            recording.quitSDLGamepad();
+        }
+
+        try(InputReplay replay = new InputReplay(file)) {
+            assertEquals(NUM_CONTROLLERS, replay.getNumControllers());
+            for(int frame = 0; frame < NUM_FRAMES; frame++) {
+                assertTrue("frame " + frame + " missing", replay.nextFrame());
+                int[] axes = new int[NUM_CONTROLLERS * NUM_AXES];
+                for(int i = 0; i < NUM_CONTROLLERS; i++) {
+                    assertEquals("connected on frame " + frame, expectedConnected.get(frame)[i], replay.isConnected(i));
+                    assertEquals("buttons on frame " + frame, expectedButtons.get(frame)[i], replay.getButtonMask(i));
+                    for(int a = 0; a < NUM_AXES; a++) {
+                        axes[i * NUM_AXES + a] = replay.getRawAxis(i, a);
+                    }
+                }
+                assertArrayEquals("axes on frame " + frame, expectedAxes.get(frame), axes);
+            }
+            assertEquals("Test Controller 0", replay.getName(0));
+            assertFalse("frames after the end", replay.nextFrame());
+            assertTrue(replay.isFinished());
+        }
+    }
+
+    @Test
+    public void refusesABadNumberOfControllers() throws IOException {
+        ByteBuffer out = header();
+        //A varint bigger than an int, which used to come out negative
+        for(int i = 0; i < 4; i++) {
+            out.put((byte) 0xFF);
+        }
+        out.put((byte) 0x7F);
+        write(out);
+
+        try {
+            new InputReplay(file).close();
+            fail("A recording with a bad number of controllers was opened");
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void refusesAFrameForAControllerThatIsntThere() throws IOException {
+        ByteBuffer out = header();
+        out.put((byte) 2);
+        //One frame, 0ns after the last, with one controller in it, at index 5
+        out.put((byte) 0).put((byte) 1).put((byte) 5).put((byte) InputRecorder.FLAG_CONNECTED);
+        write(out);
+
+        try(InputReplay replay = new InputReplay(file)) {
+            replay.nextFrame();
+            fail("A frame for a controller that isn't in the recording was played back");
+        } catch (IllegalStateException e) {
+            //Expected
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer out = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(InputRecorder.MAGIC);
+        out.put(InputRecorder.VERSION);
+        return out;
+    }
+
+    private void write(ByteBuffer out) throws IOException {
+        out.flip();
+        byte[] bytes = new byte[out.remaining()];
+        out.get(bytes);
+        Files.write(file, bytes);
+    }
+}
@@ -0,0 +1,239 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streams a SimulatedControllerBackend from an InputServer to a RemoteControllerBackend over loopback,
+ * and checks that what comes out matches what went in, that keep alives don't cost a keyframe, and that
+ * nothing is streamed to an address that didn't answer its cookie.
+ *
+ * @author William Hartman
+ */
+public class InputStreamingTest {
+
+    private static final int NUM_CONTROLLERS = 4;
+    private static final long TIMEOUT_MILLIS = 3000;
+
+    private SimulatedControllerBackend backend;
+    private final int[] instanceIds = new int[NUM_CONTROLLERS];
+    private ControllerManager server;
+    private InputServer inputServer;
+    private RemoteControllerBackend remote;
+    private ControllerManager client;
+    private final ArrayList<DatagramChannel> rawClients = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        backend = new SimulatedControllerBackend();
+        for(int i = 0; i < NUM_CONTROLLERS; i++) {
+            instanceIds[i] = backend.connect("Test Controller " + i);
+        }
+        server = new ControllerManager(NUM_CONTROLLERS, "/gamecontrollerdb.txt", backend);
+        server.setFramePolling(true);
+        server.initSDLGamepad();
+        inputServer = server.startInputServer(0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if(client != null) {
+            client.quitSDLGamepad();
+        }
+        for(DatagramChannel channel : rawClients) {
+            channel.close();
+        }
+        server.quitSDLGamepad();
+    }
+
+    private void connectClient() {
+        remote = new RemoteControllerBackend(new InetSocketAddress("127.0.0.1", inputServer.getPort()), NUM_CONTROLLERS);
+        client = new ControllerManager(NUM_CONTROLLERS, "/gamecontrollerdb.txt", remote);
+        client.initSDLGamepad();
+    }
+
+    /**
+     * Update both sides, a millisecond apart, until the condition holds or TIMEOUT_MILLIS runs out.
+     */
+    private boolean updateUntil(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(System.currentTimeMillis() < end) {
+            server.update();
+            if(client != null) {
+                client.update();
+            }
+            if(condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(1);
+        }
+        return false;
+    }
+
+    private void updateFor(long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while(System.currentTimeMillis() < end) {
+            server.update();
+            if(client != null) {
+                client.update();
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private boolean clientMatchesServer() {
+        for(int i = 0; i < NUM_CONTROLLERS; i++) {
+            ControllerState expected = server.getState(i);
+            ControllerState actual = client.getState(i);
+            if(expected.isConnected != actual.isConnected || expected.a != actual.a || expected.b != actual.b ||
+                    expected.leftStickX != actual.leftStickX || expected.rightTrigger != actual.rightTrigger) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void streamsStateToTheClient() throws InterruptedException {
+        backend.setAxis(instanceIds[1], ControllerAxis.LEFTX, 20000);
+        backend.setAxis(instanceIds[2], ControllerAxis.TRIGGERRIGHT, 30000);
+        connectClient();
+        assertTrue("client got in step", updateUntil(() -> remote.isReceiving() && clientMatchesServer()));
+        assertEquals("Test Controller 3", client.getControllerIndex(3).getPolledName());
+
+        backend.setButton(instanceIds[0], ControllerButton.A, true);
+        assertTrue("button press streamed", updateUntil(() -> client.getState(0).a));
+        assertTrue(clientMatchesServer());
+
+        backend.disconnect(instanceIds[3]);
+        assertTrue("unplug streamed", updateUntil(() -> !client.getState(3).isConnected));
+        assertTrue(clientMatchesServer());
+    }
+
+    @Test
+    public void keepAlivesDontSendKeyframes() throws InterruptedException {
+        inputServer.setKeyframeInterval(Integer.MAX_VALUE);
+        connectClient();
+        assertTrue("client got in step", updateUntil(() -> remote.isReceiving() && clientMatchesServer()));
+        updateFor(100);
+
+        //Long enough for a couple of keep alives
+        long keyframes = inputServer.getKeyframesSent();
+        long lost = remote.getFramesLost();
+        updateFor(2500);
+        assertEquals("no frames lost", lost, remote.getFramesLost());
+        assertEquals("keyframes sent", keyframes, inputServer.getKeyframesSent());
+        assertEquals(1, inputServer.getNumClients());
+        assertTrue(remote.isReceiving());
+    }
+
+    @Test
+    public void onlyStreamsToClientsThatAnsweredTheCookie() throws IOException, InterruptedException {
+        DatagramChannel raw = openRawClient();
+
+        //Too short to be answered, since the answer would be bigger
+        sendRaw(raw, InputServer.TYPE_HELLO, InputServer.HEADER_SIZE, 0);
+        updateFor(50);
+        assertNull("short HELLO answered", receiveRaw(raw));
+
+        sendRaw(raw, InputServer.TYPE_HELLO, InputServer.HELLO_SIZE, 0);
+        ByteBuffer reply = receiveRaw(raw, 500);
+        assertNotNull("padded HELLO answered", reply);
+        assertTrue("reply bigger than HELLO", reply.remaining() <= InputServer.HELLO_SIZE);
+        assertEquals(InputServer.TYPE_COOKIE, reply.get(5));
+        long cookie = reply.getLong(InputServer.HEADER_SIZE);
+        assertEquals("subscribed by HELLO", 0, inputServer.getNumClients());
+
+        sendRaw(raw, InputServer.TYPE_SUBSCRIBE, InputServer.CONTROL_SIZE, cookie + 1);
+        updateFor(50);
+        assertEquals("subscribed with a wrong cookie", 0, inputServer.getNumClients());
+        assertNull("streamed with a wrong cookie", receiveRaw(raw));
+
+        sendRaw(raw, InputServer.TYPE_SUBSCRIBE, InputServer.CONTROL_SIZE, cookie);
+        reply = receiveRaw(raw, 500);
+        assertNotNull("streamed with the cookie", reply);
+        assertEquals(InputServer.TYPE_FRAMES, reply.get(5));
+        assertEquals(1, inputServer.getNumClients());
+
+        sendRaw(raw, InputServer.TYPE_BYE, InputServer.CONTROL_SIZE, cookie);
+        updateFor(50);
+        assertEquals("unsubscribed by BYE", 0, inputServer.getNumClients());
+    }
+
+    @Test
+    public void capsTheNumberOfClients() throws IOException, InterruptedException {
+        for(int i = 0; i < InputServer.MAX_CLIENTS + 2; i++) {
+            DatagramChannel raw = openRawClient();
+            sendRaw(raw, InputServer.TYPE_HELLO, InputServer.HELLO_SIZE, 0);
+            ByteBuffer reply = receiveRaw(raw, 500);
+            assertNotNull("HELLO answered", reply);
+            sendRaw(raw, InputServer.TYPE_SUBSCRIBE, InputServer.CONTROL_SIZE, reply.getLong(InputServer.HEADER_SIZE));
+        }
+        updateFor(50);
+        assertEquals(InputServer.MAX_CLIENTS, inputServer.getNumClients());
+    }
+
+    @Test
+    public void listensOnLoopbackByDefault() throws IOException {
+        InetSocketAddress address = server.getInputServer().getLocalAddress();
+        assertTrue(address.getAddress().isLoopbackAddress());
+        assertFalse(address.getAddress().isAnyLocalAddress());
+    }
+
+    private DatagramChannel openRawClient() throws IOException {
+        DatagramChannel raw = DatagramChannel.open();
+        rawClients.add(raw);
+        raw.configureBlocking(false);
+        raw.connect(new InetSocketAddress("127.0.0.1", inputServer.getPort()));
+        return raw;
+    }
+
+    private void sendRaw(DatagramChannel raw, int type, int size, long cookie) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(InputServer.MAGIC);
+        out.put(InputServer.VERSION);
+        out.put((byte) type);
+        if(out.remaining() >= 8 && type != InputServer.TYPE_HELLO) {
+            out.putLong(cookie);
+        }
+        out.clear();
+        raw.write(out);
+    }
+
+    private ByteBuffer receiveRaw(DatagramChannel raw) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(2048).order(ByteOrder.LITTLE_ENDIAN);
+        if(raw.read(in) <= 0) {
+            return null;
+        }
+        in.flip();
+        return in;
+    }
+
+    private ByteBuffer receiveRaw(DatagramChannel raw, long millis) throws IOException, InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while(System.currentTimeMillis() < end) {
+            server.update();
+            ByteBuffer in = receiveRaw(raw);
+            if(in != null) {
+                return in;
+            }
+            Thread.sleep(1);
+        }
+        return null;
+    }
+}
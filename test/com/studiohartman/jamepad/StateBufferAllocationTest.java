@@ -0,0 +1,85 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reading controllers into a reused ControllerStateBuffer doesn't allocate once things are
+ * warmed up, with and without frame polling. Needs a JVM that can count allocated bytes per thread,
+ * which HotSpot can.
+ *
+ * @author William Hartman
+ */
+public class StateBufferAllocationTest {
+
+    private static final int NUM_CONTROLLERS = 4;
+    private static final int FRAMES = 20000;
+
+    private SimulatedControllerBackend backend;
+    private ControllerManager controllers;
+    private final int[] instanceIds = new int[NUM_CONTROLLERS];
+    private final ControllerStateBuffer state = new ControllerStateBuffer();
+
+    @Before
+    public void setUp() {
+        backend = new SimulatedControllerBackend();
+        for(int i = 0; i < NUM_CONTROLLERS; i++) {
+            instanceIds[i] = backend.connect("Test Controller " + i);
+        }
+        controllers = new ControllerManager(NUM_CONTROLLERS, "/gamecontrollerdb.txt", backend);
+    }
+
+    @After
+    public void tearDown() {
+        controllers.quitSDLGamepad();
+    }
+
+    @Test
+    public void getStateDoesNotAllocateWithFramePolling() {
+        controllers.setFramePolling(true);
+        controllers.initSDLGamepad();
+        assertEquals(0, allocatedBytes(true));
+    }
+
+    @Test
+    public void getStateDoesNotAllocateWithoutFramePolling() {
+        controllers.initSDLGamepad();
+        assertEquals(0, allocatedBytes(false));
+    }
+
+    /**
+     * Run the frames twice to warm up, and return what the third run allocated.
+     */
+    private long allocatedBytes(boolean update) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assertTrue("the JVM can't count allocated bytes", threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        runFrames(update);
+        runFrames(update);
+        long before = allocations.getThreadAllocatedBytes(thread);
+        runFrames(update);
+        return allocations.getThreadAllocatedBytes(thread) - before;
+    }
+
+    private void runFrames(boolean update) {
+        for(int frame = 0; frame < FRAMES; frame++) {
+            backend.setAxis(instanceIds[frame % NUM_CONTROLLERS], ControllerAxis.LEFTX, (frame * 37) % 65536 - 32768);
+            backend.setButton(instanceIds[frame % NUM_CONTROLLERS], ControllerButton.A, (frame & 2) == 0);
+            if(update) {
+                controllers.update();
+            }
+            for(int i = 0; i < NUM_CONTROLLERS; i++) {
+                controllers.getState(i, state);
+            }
+        }
+    }
+}